@@ -43,6 +43,10 @@ android {
     room {
         schemaDirectory("$projectDir/schemas")
     }
+    sourceSets {
+        // The exported schemas, read by MigrationTestHelper in the unit tests
+        getByName("test").assets.srcDir("$projectDir/schemas")
+    }
     testOptions {
         unitTests {
             isIncludeAndroidResources = true
@@ -43,7 +43,7 @@ import org.sedo.satmesh.utils.AndroidKeyManager;
 		SignalSignedPreKeyEntity.class, SignalIdentityKeyEntity.class,
 		SignalKeyExchangeState.class, RouteEntry.class, RouteRequestEntry.class,
 		RouteUsage.class, BroadcastStatusEntry.class, RouteUsageBacktracking.class},
-		version = 6)
+		version = 7)
 public abstract class AppDatabase extends RoomDatabase {
 
 	// Define migrations here
@@ -248,6 +248,14 @@ public abstract class AppDatabase extends RoomDatabase {
 		}
 	};
 
+	static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+		@Override
+		public void migrate(@NonNull SupportSQLiteDatabase database) {
+			// The existing routes keep a null cost, estimated from their hop count
+			database.execSQL("ALTER TABLE `route_entry` ADD COLUMN `link_cost` INTEGER");
+		}
+	};
+
 	private static volatile AppDatabase INSTANCE;
 
 	public static AppDatabase getDB(Context context) {
@@ -258,7 +266,7 @@ public abstract class AppDatabase extends RoomDatabase {
 					SupportOpenHelperFactory factory = new SupportOpenHelperFactory(AndroidKeyManager.getOrCreateAppCipherPassphrase(context));
 					INSTANCE = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, "satmesh_db")
 							.openHelperFactory(factory)
-							.addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
+							.addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7)
 							.build();
 				}
 			}
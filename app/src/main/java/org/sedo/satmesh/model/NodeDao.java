@@ -6,9 +6,11 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object (DAO) for the {@link Node} entity.
@@ -35,6 +37,28 @@ public interface NodeDao {
 	@Update
 	void update(Node node);
 
+	/**
+	 * Sets the last seen timestamp of a Node, unless the stored one is more recent.
+	 *
+	 * @param addressName The Signal Protocol address name of the Node.
+	 * @param lastSeen    The last seen timestamp, in milliseconds.
+	 * @return The number of rows affected.
+	 */
+	@Query("UPDATE node SET lastSeen = :lastSeen WHERE addressName = :addressName AND (lastSeen IS NULL OR lastSeen < :lastSeen)")
+	int updateLastSeen(String addressName, long lastSeen);
+
+	/**
+	 * Sets the last seen timestamps of several Nodes in a single transaction.
+	 *
+	 * @param lastSeen The last seen timestamps, keyed by Signal Protocol address name.
+	 */
+	@Transaction
+	default void updateLastSeen(Map<String, Long> lastSeen) {
+		for (Map.Entry<String, Long> entry : lastSeen.entrySet()) {
+			updateLastSeen(entry.getKey(), entry.getValue());
+		}
+	}
+
 	/**
 	 * Retrieves a Node by its unique Signal Protocol address name.
 	 * This is useful for finding a specific contact or the local host node.
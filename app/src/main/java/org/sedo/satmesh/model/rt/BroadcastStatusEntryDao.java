@@ -7,6 +7,8 @@ import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Update;
 
+import java.util.List;
+
 /**
  * Data Access Object (DAO) for the BroadcastStatusEntry entity.
  * Manages the status of route request messages broadcasted to individual neighbors.
@@ -51,6 +53,15 @@ public interface BroadcastStatusEntryDao {
 	@Query("DELETE FROM broadcast_status_entry WHERE request_uuid = :requestUuid")
 	int deleteAllByRequestUuid(String requestUuid);
 
+	/**
+	 * Deletes all BroadcastStatusEntry of several route requests.
+	 *
+	 * @param requestUuids The UUIDs of the route requests.
+	 * @return The number of rows deleted.
+	 */
+	@Query("DELETE FROM broadcast_status_entry WHERE request_uuid IN (:requestUuids)")
+	int deleteAllByRequestUuids(List<String> requestUuids);
+
 	/**
 	 * Gets a specific BroadcastStatusEntry based on its composite primary key.
 	 *
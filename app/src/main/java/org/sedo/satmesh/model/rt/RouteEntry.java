@@ -52,6 +52,11 @@ public class RouteEntry {
 	@ColumnInfo(name = "hop_count")
 	private Integer hopCount;
 
+	// The ETX-style cost of the path from the current node to the destination, in hundredths of
+	// expected transmissions. Null for the routes learned before the costs were tracked.
+	@ColumnInfo(name = "link_cost")
+	private Integer linkCost;
+
 	/*
 	 * The date of last use of this route.
 	 * This timestamp is critical for implementing the 12-hour inactivity expiration logic.
@@ -113,6 +118,14 @@ public class RouteEntry {
 		this.hopCount = hopCount;
 	}
 
+	public Integer getLinkCost() {
+		return linkCost;
+	}
+
+	public void setLinkCost(Integer linkCost) {
+		this.linkCost = linkCost;
+	}
+
 	public Long getLastUseTimestamp() {
 		return lastUseTimestamp;
 	}
@@ -131,12 +144,13 @@ public class RouteEntry {
 				&& Objects.equals(nextHopLocalId, that.nextHopLocalId)
 				&& Objects.equals(previousHopLocalId, that.previousHopLocalId)
 				&& Objects.equals(hopCount, that.hopCount)
+				&& Objects.equals(linkCost, that.linkCost)
 				&& Objects.equals(lastUseTimestamp, that.lastUseTimestamp);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(discoveryUuid, destinationNodeLocalId, nextHopLocalId, previousHopLocalId, hopCount, lastUseTimestamp);
+		return Objects.hash(discoveryUuid, destinationNodeLocalId, nextHopLocalId, previousHopLocalId, hopCount, linkCost, lastUseTimestamp);
 	}
 
 	@NonNull
@@ -149,6 +163,7 @@ public class RouteEntry {
 				", nextHopLocalId=" + nextHopLocalId +
 				", previousHopLocalId=" + previousHopLocalId +
 				", hopCount=" + hopCount +
+				", linkCost=" + linkCost +
 				", lastUseTimestamp=" + lastUseTimestamp +
 				'}';
 	}
@@ -9,6 +9,8 @@ import androidx.room.Update;
 
 import org.sedo.satmesh.nearby.data.RouteWithUsage;
 
+import java.util.List;
+
 /**
  * Data Access Object (DAO) for the RouteEntry entity.
  * Provides methods to interact with the 'route_entries' table in the local database.
@@ -70,6 +72,7 @@ public interface RouteEntryDao {
 			"RE.next_hop_local_id AS next_hop_local_id, " +
 			"RE.previous_hop_local_id AS previous_hop_local_id, " +
 			"RE.hop_count AS hop_count, " +
+			"RE.link_cost AS link_cost, " +
 			"RE.last_use_timestamp AS last_use_timestamp, " +
 			// Select fields from RouteUsage
 			"RU.usage_request_uuid AS usage_usage_request_uuid, " +
@@ -86,4 +89,25 @@ public interface RouteEntryDao {
 			"ORDER BY RE.last_use_timestamp DESC " +
 			"LIMIT 1")
 	RouteWithUsage findMostRecentRouteByDestination(long destinationNodeLocalId);
+
+	/**
+	 * Retrieves the discovery UUIDs of the routes passing through a neighbor: the routes whose
+	 * next or previous hop is the neighbor, and the routes one of whose usages comes from it.
+	 *
+	 * @param neighborNodeLocalId The local ID of the neighbor node.
+	 * @return The discovery UUIDs of the routes, without duplicates.
+	 */
+	@Query("SELECT discovery_uuid FROM route_entry " +
+			"WHERE next_hop_local_id = :neighborNodeLocalId OR previous_hop_local_id = :neighborNodeLocalId " +
+			"UNION " +
+			"SELECT route_entry_discovery_uuid FROM route_usage WHERE previous_hop_local_id = :neighborNodeLocalId")
+	List<String> findRouteUuidsThroughNeighbor(long neighborNodeLocalId);
+
+	/**
+	 * Retrieves all the RouteEntry records, to warm the in-memory route table.
+	 *
+	 * @return The list of all RouteEntry objects.
+	 */
+	@Query("SELECT * FROM route_entry")
+	List<RouteEntry> getAll();
 }
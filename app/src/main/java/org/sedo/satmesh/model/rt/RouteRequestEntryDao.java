@@ -6,6 +6,8 @@ import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Update;
 
+import java.util.List;
+
 /**
  * Data Access Object (DAO) for the RouteRequestEntry entity.
  * Manages the state of active route discovery requests originating from or passing through this node.
@@ -48,4 +50,19 @@ public interface RouteRequestEntryDao {
 	 */
 	@Query("SELECT * FROM route_request_entry WHERE request_uuid = :requestUuid LIMIT 1")
 	RouteRequestEntry getRequestByUuid(String requestUuid);
+
+	/**
+	 * Deletes the RouteRequestEntries of several request UUIDs.
+	 * @param requestUuids The UUIDs of the route requests to delete.
+	 * @return The number of rows deleted.
+	 */
+	@Query("DELETE FROM route_request_entry WHERE request_uuid IN (:requestUuids)")
+	int deleteByRequestUuids(List<String> requestUuids);
+
+	/**
+	 * Retrieves all the RouteRequestEntries, i.e. the route requests still pending.
+	 * @return The list of all route request entries.
+	 */
+	@Query("SELECT * FROM route_request_entry")
+	List<RouteRequestEntry> getAll();
 }
@@ -5,6 +5,8 @@ import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 
+import java.util.List;
+
 /**
  * Data Access Object for the route_usage_backtracking table.
  * This interface provides methods for inserting, deleting, and finding RouteUsageBacktracking entries.
@@ -30,4 +32,12 @@ public interface RouteUsageBacktrackingDao {
 	 */
 	@Query("DELETE FROM route_usage_backtracking WHERE usage_uuid IN (SELECT usage_request_uuid FROM route_usage WHERE route_entry_discovery_uuid = :routeUuid)")
 	void deleteByRouteUuid(String routeUuid);
+
+	/**
+	 * Retrieves all the RouteUsageBacktracking entries, to warm the in-memory route table.
+	 *
+	 * @return The list of all entries.
+	 */
+	@Query("SELECT * FROM route_usage_backtracking")
+	List<RouteUsageBacktracking> getAll();
 }
@@ -71,4 +71,12 @@ public interface RouteUsageDao {
 	 */
 	@Query("SELECT * FROM route_usage WHERE route_entry_discovery_uuid = :routeUuid")
 	List<RouteUsage> findByRouteUuid(String routeUuid);
+
+	/**
+	 * Retrieves all the RouteUsage records, to warm the in-memory route table.
+	 *
+	 * @return The list of all RouteUsage objects.
+	 */
+	@Query("SELECT * FROM route_usage")
+	List<RouteUsage> getAll();
 }
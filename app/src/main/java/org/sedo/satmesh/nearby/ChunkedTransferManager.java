@@ -0,0 +1,751 @@
+package org.sedo.satmesh.nearby;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+import com.google.protobuf.ByteString;
+
+import org.sedo.satmesh.model.Node;
+import org.sedo.satmesh.nearby.data.PayloadListener;
+import org.sedo.satmesh.nearby.data.RouteWithUsage;
+import org.sedo.satmesh.nearby.data.TransferListener;
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.nearby.transfer.ChunkCipher;
+import org.sedo.satmesh.nearby.transfer.ChunkReassembler;
+import org.sedo.satmesh.nearby.transfer.ChunkStreams;
+import org.sedo.satmesh.nearby.transfer.ContentSource;
+import org.sedo.satmesh.proto.ChunkStreamHeader;
+import org.sedo.satmesh.proto.NearbyMessage;
+import org.sedo.satmesh.proto.NearbyMessageBody;
+import org.sedo.satmesh.proto.NearbyMessageType;
+import org.sedo.satmesh.proto.TransferChunk;
+import org.sedo.satmesh.proto.TransferOffer;
+import org.sedo.satmesh.proto.TransferResume;
+import org.sedo.satmesh.ui.data.NodeRepository;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transfers large contents as encrypted chunks carried by STREAM payloads.
+ * <p>
+ * The sender announces a transfer with a {@link TransferOffer}, Signal encrypted like any other
+ * message. The destination answers with a {@link TransferResume} holding the offset it already
+ * has, then the sender streams the chunks from this offset to the neighbor on the way: the
+ * destination itself, or the next hop of the route toward it. Relays forward the stream as it
+ * arrives, without decrypting nor buffering it, so their memory use doesn't depend on the size
+ * of the transfer. The destination writes the chunks into a partial file and confirms the
+ * completion with a {@link TransferResume} at the end of the content.
+ * </p>
+ * <p>
+ * A broken or stalled stream is retried by offering the transfer again: the partial file of the
+ * destination tells where to resume. A transfer abandoned after too many attempts is kept, so
+ * that {@link #resumeTransfer(String, TransmissionCallback)} can offer it again later with the same
+ * ID and key: the destination then answers with the offset it already acknowledged.
+ * </p>
+ * <p>
+ * Each stream, sent, received or relayed, holds a thread for its whole duration. At most
+ * {@value #MAX_STREAMS} streams are admitted at once: beyond, the destination answers the offers
+ * with a busy {@link TransferResume}, and the streams reaching a saturated node are closed, so
+ * that their sender retries later instead of queueing behind long transfers.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public class ChunkedTransferManager implements PayloadListener {
+
+	private static final String TAG = "ChunkedTransferManager";
+	private static final int MAX_STREAMS = 8;
+	private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+	private static final int RELAY_BUFFER_SIZE = 8 * 1024;
+	private static final int MIN_CHUNK_SIZE = 1024;
+	private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+	private static final int MAX_ATTEMPTS = 5;
+	private static final long RETRY_DELAY_MS = 5_000L;
+	private static final long BUSY_RETRY_DELAY_MS = 10_000L;
+	private static final long IDLE_TIMEOUT_MS = 60_000L; // Without progress nor answer, the attempt is considered lost
+	private static final long IDLE_CHECK_PERIOD_MS = 15_000L;
+	private static final String TRANSFERS_DIR = "transfers";
+	private static final String PARTIAL_SUFFIX = ".part";
+
+	private final NearbyManager nearbyManager;
+	private final NearbySignalMessenger messenger;
+	private final NearbyRouteManager routeManager;
+	private final NodeRepository nodeRepository;
+	private final ContentResolver contentResolver;
+	private final String hostAddressName;
+	private final File transfersDir;
+	// Each admitted stream, sent, received or relayed, holds one of these threads and one slot
+	private final ExecutorService streamPool = Executors.newCachedThreadPool();
+	private final Semaphore streamSlots = new Semaphore(MAX_STREAMS);
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final Map<String, OutgoingTransfer> outgoingTransfers = new ConcurrentHashMap<>();
+	// Transfers abandoned after too many attempts, by ID, until they are resumed
+	private final Map<String, OutgoingTransfer> abandonedTransfers = new ConcurrentHashMap<>();
+	private final Map<String, IncomingTransfer> incomingTransfers = new ConcurrentHashMap<>();
+	// Streams this node sends or relays, by payload ID
+	private final Map<Long, ActiveStream> activeStreams = new ConcurrentHashMap<>();
+	private final List<TransferListener> transferListeners = new CopyOnWriteArrayList<>();
+
+	ChunkedTransferManager(
+			@NonNull Context context, @NonNull NearbyManager nearbyManager, @NonNull NearbySignalMessenger messenger,
+			@NonNull NearbyRouteManager routeManager, @NonNull String hostAddressName) {
+		this.nearbyManager = nearbyManager;
+		this.messenger = messenger;
+		this.routeManager = routeManager;
+		this.nodeRepository = new NodeRepository(context);
+		this.contentResolver = context.getApplicationContext().getContentResolver();
+		this.hostAddressName = hostAddressName;
+		this.transfersDir = new File(context.getFilesDir(), TRANSFERS_DIR);
+		if (!transfersDir.isDirectory() && !transfersDir.mkdirs()) {
+			Log.e(TAG, "Unable to create the transfers directory " + transfersDir);
+		}
+		scheduler.scheduleWithFixedDelay(this::checkIdleTransfers, IDLE_CHECK_PERIOD_MS, IDLE_CHECK_PERIOD_MS, TimeUnit.MILLISECONDS);
+		nearbyManager.addPayloadListener(this);
+	}
+
+	private static void closeQuietly(@Nullable Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			Log.w(TAG, "Failed to close " + closeable, e);
+		}
+	}
+
+	public void addTransferListener(@Nullable TransferListener listener) {
+		if (listener != null && !transferListeners.contains(listener)) {
+			transferListeners.add(listener);
+		}
+	}
+
+	public void removeTransferListener(@Nullable TransferListener listener) {
+		if (listener != null) {
+			transferListeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Returns a source reading the content behind the given URI.
+	 */
+	@NonNull
+	public ContentSource contentOf(@NonNull Uri uri) {
+		return new ContentSource() {
+			@Override
+			public long size() throws IOException {
+				try (AssetFileDescriptor descriptor = contentResolver.openAssetFileDescriptor(uri, "r")) {
+					if (descriptor == null || descriptor.getLength() == AssetFileDescriptor.UNKNOWN_LENGTH) {
+						throw new IOException("Unknown size of the content " + uri);
+					}
+					return descriptor.getLength();
+				}
+			}
+
+			@NonNull
+			@Override
+			public InputStream open(long offset) throws IOException {
+				InputStream in = contentResolver.openInputStream(uri);
+				if (in == null) {
+					throw new FileNotFoundException("Unable to open the content " + uri);
+				}
+				try {
+					ContentSource.skipFully(in, offset);
+				} catch (IOException e) {
+					closeQuietly(in);
+					throw e;
+				}
+				return in;
+			}
+		};
+	}
+
+	/**
+	 * Starts sending a content to a remote node, neighbor or not.
+	 * The progress and the result are reported to the {@link TransferListener}s.
+	 *
+	 * @param recipientAddressName The address name of the destination.
+	 * @param source               The content to send, which must remain readable until the transfer completes.
+	 * @param contentType          The type of the content, one of {@code Message.MESSAGE_TYPE_*}.
+	 * @param fileName             The name under which the content is presented to the recipient, if any.
+	 * @param callback             If not null, notified once: of the first offer sent, or of the
+	 *                             abandonment of the transfer.
+	 * @return the ID of the transfer
+	 * @throws IOException if the size of the content can't be read
+	 */
+	@NonNull
+	public String startTransfer(
+			@NonNull String recipientAddressName, @NonNull ContentSource source, int contentType,
+			@Nullable String fileName, @Nullable TransmissionCallback callback) throws IOException {
+		String transferId = UUID.randomUUID().toString();
+		byte[] key = ChunkCipher.newKey();
+		TransferOffer offer = TransferOffer.newBuilder()
+				.setTransferId(transferId)
+				.setTotalSize(source.size())
+				.setChunkSize(ChunkStreams.DEFAULT_CHUNK_SIZE)
+				.setContentType(contentType)
+				.setFileName(fileName == null ? "" : fileName)
+				.setContentKey(ByteString.copyFrom(key))
+				.setTimestamp(System.currentTimeMillis())
+				.build();
+		OutgoingTransfer transfer = new OutgoingTransfer(recipientAddressName, source, offer, new ChunkCipher(key, transferId));
+		transfer.callback = callback;
+		outgoingTransfers.put(transferId, transfer);
+		Log.d(TAG, "Starting transfer " + transferId + " of " + offer.getTotalSize() + " bytes to " + recipientAddressName);
+		scheduler.execute(() -> sendOffer(transfer, true));
+		return transferId;
+	}
+
+	/**
+	 * Resumes a transfer abandoned after too many attempts. The same offer is sent again, so the
+	 * destination answers with the offset of its partial file, and only the remaining chunks
+	 * are streamed.
+	 *
+	 * @param transferId The ID of the abandoned transfer.
+	 * @param callback   If not null, notified once: of the first offer sent, or of a new
+	 *                   abandonment of the transfer.
+	 * @return {@code false} if the transfer isn't known as abandoned, as after a restart of the
+	 * service: it has to be started again.
+	 */
+	public boolean resumeTransfer(@NonNull String transferId, @Nullable TransmissionCallback callback) {
+		OutgoingTransfer transfer = abandonedTransfers.remove(transferId);
+		if (transfer == null) {
+			return false;
+		}
+		long totalSize = transfer.offer.getTotalSize();
+		synchronized (transfer) {
+			transfer.attempts = 0;
+			transfer.callback = callback;
+			outgoingTransfers.put(transferId, transfer);
+		}
+		Log.d(TAG, "Resuming transfer " + transferId + " to " + transfer.recipient + " from offset " + transfer.acknowledgedOffset);
+		transferListeners.forEach(l -> l.onTransferProgress(transferId, transfer.acknowledgedOffset, totalSize));
+		scheduler.execute(() -> sendOffer(transfer, true));
+		return true;
+	}
+
+	/**
+	 * Offers a transfer to its destination.
+	 *
+	 * @param newAttempt Whether the offer counts as an attempt, it doesn't when the previous offer
+	 *                   was postponed because of the saturation of the streams.
+	 */
+	private void sendOffer(@NonNull OutgoingTransfer transfer, boolean newAttempt) {
+		synchronized (transfer) {
+			if (newAttempt) {
+				transfer.attempts++;
+			}
+			transfer.retryPending = false;
+			transfer.lastActivity = System.currentTimeMillis();
+		}
+		NearbyMessageBody body = NearbyMessageBody.newBuilder()
+				.setMessageTypeValue(NearbyMessageType.TRANSFER_OFFER_VALUE)
+				.setBinaryData(transfer.offer.toByteString())
+				.build();
+		TransmissionCallback callback = new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload payload) {
+				Log.d(TAG, "Offer of transfer " + transfer.offer.getTransferId() + " sent to " + transfer.recipient);
+				TransmissionCallback transferCallback = transfer.takeCallback();
+				if (transferCallback != null) {
+					transferCallback.onSuccess(payload);
+				}
+			}
+
+			@Override
+			public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+				retry(transfer, cause);
+			}
+		};
+		messenger.sendNearbyMessageInternal(body, transfer.recipient, callback, callback, null);
+	}
+
+	/**
+	 * Abandons the current attempt of a transfer, then offers it again after a delay,
+	 * unless it has already been attempted too many times.
+	 */
+	private void retry(@NonNull OutgoingTransfer transfer, @Nullable Exception cause) {
+		String transferId = transfer.offer.getTransferId();
+		boolean abandoned;
+		TransmissionCallback transferCallback = null;
+		synchronized (transfer) {
+			if (transfer.retryPending || outgoingTransfers.get(transferId) != transfer) {
+				return;
+			}
+			transfer.retryPending = true;
+			if (transfer.stream != null) {
+				closeQuietly(transfer.stream.input);
+				transfer.stream = null;
+			}
+			abandoned = transfer.attempts >= MAX_ATTEMPTS;
+			if (abandoned) {
+				Log.e(TAG, "Transfer " + transferId + " to " + transfer.recipient + " abandoned after " + transfer.attempts + " attempts.", cause);
+				outgoingTransfers.remove(transferId);
+				transferCallback = transfer.takeCallback();
+				abandonedTransfers.put(transferId, transfer);
+			}
+		}
+		if (abandoned) {
+			if (transferCallback != null) {
+				transferCallback.onFailure(null, cause);
+			}
+			transferListeners.forEach(l -> l.onTransferFailed(transferId, cause));
+			return;
+		}
+		Log.w(TAG, "Attempt " + transfer.attempts + " of transfer " + transferId + " failed, retrying.", cause);
+		scheduler.schedule(() -> sendOffer(transfer, true), RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Offers a transfer again later, without counting an attempt: the sender or the destination
+	 * has no stream slot left, the link itself works.
+	 */
+	private void postpone(@NonNull OutgoingTransfer transfer) {
+		String transferId = transfer.offer.getTransferId();
+		synchronized (transfer) {
+			if (transfer.retryPending || transfer.stream != null || outgoingTransfers.get(transferId) != transfer) {
+				return;
+			}
+			transfer.retryPending = true;
+			transfer.lastActivity = System.currentTimeMillis();
+		}
+		Log.d(TAG, "Too many streams for transfer " + transferId + ", offering it again later.");
+		scheduler.schedule(() -> sendOffer(transfer, false), BUSY_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private void checkIdleTransfers() {
+		long now = System.currentTimeMillis();
+		for (OutgoingTransfer transfer : outgoingTransfers.values()) {
+			if (now - transfer.lastActivity > IDLE_TIMEOUT_MS) {
+				retry(transfer, null);
+			}
+		}
+	}
+
+	/**
+	 * Handles a transfer offer: replies with the offset from which the content is expected.
+	 *
+	 * @param senderAddressName The address name of the sender.
+	 * @param offer             The offer.
+	 * @param payloadId         The ID of the payload that carried the offer.
+	 */
+	protected void handleOffer(@NonNull String senderAddressName, @NonNull TransferOffer offer, long payloadId) {
+		String transferId = offer.getTransferId();
+		// The transfer ID names the files of the transfer
+		if (!transferId.matches("[A-Za-z0-9-]{1,64}") || offer.getTotalSize() < 0
+				|| offer.getChunkSize() < MIN_CHUNK_SIZE || offer.getChunkSize() > MAX_CHUNK_SIZE
+				|| offer.getContentKey().size() != ChunkCipher.KEY_SIZE_BYTES) {
+			Log.w(TAG, "Invalid transfer offer from " + senderAddressName + " ignored.");
+			return;
+		}
+		if (completedFile(offer).exists()) {
+			// The confirmation of the completion was probably lost
+			sendResume(senderAddressName, transferId, offer.getTotalSize(), false);
+			return;
+		}
+		if (streamSlots.availablePermits() == 0) {
+			// The stream would be rejected, the offer is neither lost nor failed
+			Log.d(TAG, "Transfer " + transferId + " offered by " + senderAddressName + " while the streams are saturated.");
+			sendResume(senderAddressName, transferId, 0L, true);
+			return;
+		}
+		IncomingTransfer transfer = incomingTransfers.computeIfAbsent(transferId,
+				id -> new IncomingTransfer(senderAddressName, offer, payloadId));
+		if (!transfer.sender.equals(senderAddressName)) {
+			Log.w(TAG, "Offer of transfer " + transferId + " from " + senderAddressName + " while it comes from " + transfer.sender);
+			return;
+		}
+		long nextOffset = ChunkReassembler.resumeOffset(partialFile(transferId), offer.getTotalSize(), offer.getChunkSize());
+		Log.d(TAG, "Transfer " + transferId + " offered by " + senderAddressName + ", expecting offset " + nextOffset);
+		sendResume(senderAddressName, transferId, nextOffset, false);
+	}
+
+	private void sendResume(@NonNull String recipientAddressName, @NonNull String transferId, long nextOffset, boolean busy) {
+		NearbyMessageBody body = NearbyMessageBody.newBuilder()
+				.setMessageTypeValue(NearbyMessageType.TRANSFER_RESUME_VALUE)
+				.setBinaryData(TransferResume.newBuilder().setTransferId(transferId).setNextOffset(nextOffset).setBusy(busy)
+						.build().toByteString())
+				.build();
+		TransmissionCallback callback = new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload payload) {
+			}
+
+			@Override
+			public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+				// The sender offers the transfer again if it doesn't receive the resume
+				Log.w(TAG, "Failed to send the resume of transfer " + transferId + " to " + recipientAddressName, cause);
+			}
+		};
+		messenger.sendNearbyMessageInternal(body, recipientAddressName, callback, callback, null);
+	}
+
+	/**
+	 * Handles the answer of the destination of an outgoing transfer: streams the chunks
+	 * from the requested offset, or completes the transfer if the whole content is received.
+	 */
+	protected void handleResume(@NonNull String senderAddressName, @NonNull TransferResume resume) {
+		scheduler.execute(() -> {
+			String transferId = resume.getTransferId();
+			OutgoingTransfer transfer = outgoingTransfers.get(transferId);
+			if (transfer == null || !transfer.recipient.equals(senderAddressName)) {
+				Log.d(TAG, "Resume of unknown transfer " + transferId + " from " + senderAddressName + " ignored.");
+				return;
+			}
+			if (resume.getBusy()) {
+				postpone(transfer);
+				return;
+			}
+			long totalSize = transfer.offer.getTotalSize();
+			synchronized (transfer) {
+				transfer.lastActivity = System.currentTimeMillis();
+				transfer.acknowledgedOffset = Math.max(transfer.acknowledgedOffset, resume.getNextOffset());
+				if (resume.getNextOffset() >= totalSize) {
+					outgoingTransfers.remove(transferId);
+					transfer.stream = null;
+				} else if (transfer.stream != null || transfer.retryPending) {
+					// Answer to an older offer
+					Log.d(TAG, "Transfer " + transferId + " already in progress.");
+					return;
+				}
+			}
+			if (!outgoingTransfers.containsKey(transferId)) {
+				Log.d(TAG, "Transfer " + transferId + " completed.");
+				transferListeners.forEach(l -> {
+					l.onTransferProgress(transferId, totalSize, totalSize);
+					l.onOutgoingTransferCompleted(transferId, senderAddressName);
+				});
+				return;
+			}
+			startStream(transfer, resume.getNextOffset());
+		});
+	}
+
+	private void startStream(@NonNull OutgoingTransfer transfer, long offset) {
+		ChunkStreamHeader.Builder header = ChunkStreamHeader.newBuilder()
+				.setTransferId(transfer.offer.getTransferId())
+				.setSourceNodeId(hostAddressName)
+				.setDestinationNodeId(transfer.recipient);
+		String endpointId = nearbyManager.getLinkedEndpointId(transfer.recipient);
+		if (endpointId == null) {
+			RouteWithUsage routeWithUsage = routeManager.getIfExistRouteAndUsageFor(transfer.recipient);
+			Node destination = nodeRepository.findNodeSync(transfer.recipient);
+			NearbyRouteManager.NextHop nextHop = routeWithUsage == null || destination == null ? null
+					: routeManager.resolveNextHopSync(destination, routeWithUsage);
+			if (nextHop != null) {
+				endpointId = nearbyManager.getLinkedEndpointId(nextHop.addressName());
+				header.setRouteUuid(nextHop.routeUuid())
+						.setRouteUsageUuid(nextHop.routeUsageUuid())
+						.setForBacktracking(nextHop.forBacktracking());
+			}
+		}
+		if (endpointId == null) {
+			retry(transfer, new IOException("No neighbor toward " + transfer.recipient));
+			return;
+		}
+		if (!streamSlots.tryAcquire()) {
+			postpone(transfer);
+			return;
+		}
+		PipedOutputStream pipeOutput = new PipedOutputStream();
+		ActiveStream stream;
+		Payload payload;
+		try {
+			stream = new ActiveStream(transfer.offer.getTransferId(), new PipedInputStream(pipeOutput, PIPE_BUFFER_SIZE), offset);
+			payload = Payload.fromStream(stream.input);
+		} catch (IOException e) {
+			streamSlots.release();
+			retry(transfer, e);
+			return;
+		}
+		synchronized (transfer) {
+			transfer.stream = stream;
+		}
+		activeStreams.put(payload.getId(), stream);
+		Log.d(TAG, "Streaming transfer " + transfer.offer.getTransferId() + " from offset " + offset + " to " + endpointId);
+		nearbyManager.sendStreamPayload(endpointId, payload, accepted -> {
+			if (!accepted && activeStreams.remove(payload.getId()) != null && transfer.stream == stream) {
+				retry(transfer, null);
+			}
+		});
+		ChunkStreamHeader streamHeader = header.build();
+		streamPool.execute(() -> {
+			try (PipedOutputStream out = pipeOutput) {
+				ChunkStreams.writeTransfer(out, streamHeader, transfer.source, offset, transfer.offer.getChunkSize(),
+						transfer.cipher, written -> stream.written = written);
+			} catch (IOException | GeneralSecurityException e) {
+				// The transfer update of the payload triggers the retry
+				Log.w(TAG, "Streaming of transfer " + transfer.offer.getTransferId() + " interrupted.", e);
+			} finally {
+				streamSlots.release();
+			}
+		});
+	}
+
+	@Override
+	public void onMessageReceived(@NonNull String endpointId, @NonNull NearbyMessage message, long payloadId) {
+		// Offers and resumes are Signal encrypted, they are handed over by NearbySignalMessenger
+	}
+
+	@Override
+	public void onPayloadTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update) {
+		ActiveStream stream = activeStreams.get(update.getPayloadId());
+		if (stream == null) {
+			return;
+		}
+		int status = update.getStatus();
+		OutgoingTransfer transfer = stream.transferId == null ? null : outgoingTransfers.get(stream.transferId);
+		if (transfer != null) {
+			transfer.lastActivity = System.currentTimeMillis();
+		}
+		if (status == PayloadTransferUpdate.Status.IN_PROGRESS) {
+			if (transfer != null) {
+				// The stream bytes are the content plus a small framing overhead
+				long totalSize = transfer.offer.getTotalSize();
+				long transferred = Math.min(totalSize, Math.min(stream.written, stream.startOffset + update.getBytesTransferred()));
+				transferListeners.forEach(l -> l.onTransferProgress(stream.transferId, transferred, totalSize));
+			}
+			return;
+		}
+		activeStreams.remove(update.getPayloadId());
+		if (status != PayloadTransferUpdate.Status.SUCCESS) {
+			Log.w(TAG, "Stream payload " + update.getPayloadId() + " to " + endpointId + " failed with status " + status);
+			closeQuietly(stream.input);
+			if (transfer != null && transfer.stream == stream) {
+				retry(transfer, null);
+			}
+		}
+		// On success, the completion is confirmed by the destination
+	}
+
+	@Override
+	public void onStreamReceived(@NonNull String endpointId, @NonNull Payload payload) {
+		Payload.Stream stream = payload.asStream();
+		if (stream == null) {
+			return;
+		}
+		InputStream in = stream.asInputStream();
+		if (!streamSlots.tryAcquire()) {
+			// Its sender notices the failure of the payload and retries later
+			Log.w(TAG, "Too many streams, the stream payload " + payload.getId() + " from " + endpointId + " is rejected.");
+			closeQuietly(in);
+			return;
+		}
+		streamPool.execute(() -> {
+			try {
+				ChunkStreamHeader header = ChunkStreams.readHeader(in);
+				if (hostAddressName.equals(header.getDestinationNodeId())) {
+					receive(header, in);
+				} else {
+					relay(header, in);
+				}
+			} catch (IOException e) {
+				Log.w(TAG, "Failed to read the stream payload " + payload.getId() + " from " + endpointId, e);
+			} finally {
+				closeQuietly(in);
+				streamSlots.release();
+			}
+		});
+	}
+
+	/**
+	 * Writes the chunks of a stream intended to this node.
+	 */
+	private void receive(@NonNull ChunkStreamHeader header, @NonNull InputStream in) {
+		String transferId = header.getTransferId();
+		IncomingTransfer transfer = incomingTransfers.get(transferId);
+		if (transfer == null || !transfer.sender.equals(header.getSourceNodeId())) {
+			Log.w(TAG, "Stream of unknown transfer " + transferId + " from " + header.getSourceNodeId() + " ignored.");
+			return;
+		}
+		// A new stream replaces the previous one, which is probably stalled
+		InputStream previous;
+		synchronized (transfer) {
+			previous = transfer.input;
+			transfer.input = in;
+		}
+		closeQuietly(previous);
+
+		TransferOffer offer = transfer.offer;
+		File partial = partialFile(transferId);
+		boolean complete = false;
+		transfer.lock.lock();
+		try (ChunkReassembler reassembler = new ChunkReassembler(partial, offer.getTotalSize(), offer.getChunkSize(),
+				new ChunkCipher(offer.getContentKey().toByteArray(), transferId))) {
+			TransferChunk chunk;
+			while (!complete && (chunk = ChunkStreams.readChunk(in)) != null) {
+				complete = reassembler.accept(chunk);
+				long received = reassembler.getNextOffset();
+				transferListeners.forEach(l -> l.onTransferProgress(transferId, received, offer.getTotalSize()));
+			}
+			if (!complete) {
+				Log.w(TAG, "Stream of transfer " + transferId + " ended at offset " + reassembler.getNextOffset());
+			}
+		} catch (IOException | GeneralSecurityException e) {
+			// The chunks written so far are kept, the sender retries from the last of them
+			Log.w(TAG, "Stream of transfer " + transferId + " interrupted.", e);
+		} finally {
+			transfer.lock.unlock();
+		}
+		if (!complete) {
+			return;
+		}
+		File target = completedFile(offer);
+		if (!partial.renameTo(target)) {
+			Log.e(TAG, "Unable to move the content of transfer " + transferId + " to " + target);
+			return;
+		}
+		incomingTransfers.remove(transferId);
+		Log.d(TAG, "Transfer " + transferId + " from " + transfer.sender + " completed.");
+		transferListeners.forEach(l -> l.onIncomingTransferCompleted(transfer.sender, offer, target, transfer.payloadId));
+		sendResume(transfer.sender, transferId, offer.getTotalSize(), false);
+	}
+
+	/**
+	 * Forwards a stream to the next hop of its route, as its bytes arrive.
+	 */
+	private void relay(@NonNull ChunkStreamHeader header, @NonNull InputStream in) throws IOException {
+		if (header.getRouteUuid().isEmpty()) {
+			Log.w(TAG, "Stream of transfer " + header.getTransferId() + " intended to the neighbor " + header.getDestinationNodeId() + " ignored.");
+			return;
+		}
+		String nextHop = routeManager.resolveRelayNextHopSync(header.getRouteUuid(), header.getRouteUsageUuid(), header.getForBacktracking());
+		String endpointId = nearbyManager.getLinkedEndpointId(nextHop);
+		if (endpointId == null) {
+			Log.w(TAG, "No neighbor to relay the stream of transfer " + header.getTransferId() + " to.");
+			return;
+		}
+		PipedOutputStream pipeOutput = new PipedOutputStream();
+		ActiveStream stream = new ActiveStream(null, new PipedInputStream(pipeOutput, PIPE_BUFFER_SIZE), 0L);
+		Payload payload = Payload.fromStream(stream.input);
+		activeStreams.put(payload.getId(), stream);
+		nearbyManager.sendStreamPayload(endpointId, payload, accepted -> {
+			if (!accepted) {
+				activeStreams.remove(payload.getId());
+				closeQuietly(stream.input);
+			}
+		});
+		try (PipedOutputStream out = pipeOutput) {
+			long copied = ChunkStreams.relay(in, out, header, new byte[RELAY_BUFFER_SIZE]);
+			Log.d(TAG, "Relayed " + copied + " bytes of transfer " + header.getTransferId() + " to " + nextHop);
+		}
+	}
+
+	@NonNull
+	private File partialFile(@NonNull String transferId) {
+		return new File(transfersDir, transferId + PARTIAL_SUFFIX);
+	}
+
+	@NonNull
+	private File completedFile(@NonNull TransferOffer offer) {
+		// Only the last segment of the name suggested by the sender is kept
+		String name = new File(offer.getFileName()).getName();
+		return new File(transfersDir, offer.getTransferId() + (name.isEmpty() ? "" : "-" + name));
+	}
+
+	/**
+	 * Stops the streams and the retries, and unregisters from the {@link NearbyManager}.
+	 * The partial files are kept for a later resume.
+	 */
+	public void shutdown() {
+		nearbyManager.removePayloadListener(this);
+		scheduler.shutdownNow();
+		activeStreams.values().forEach(stream -> closeQuietly(stream.input));
+		activeStreams.clear();
+		incomingTransfers.values().forEach(transfer -> closeQuietly(transfer.input));
+		streamPool.shutdownNow();
+		Log.d(TAG, "ChunkedTransferManager shut down.");
+	}
+
+	private static final class OutgoingTransfer {
+		final String recipient;
+		final ContentSource source;
+		final TransferOffer offer;
+		final ChunkCipher cipher;
+		int attempts;
+		boolean retryPending;
+		volatile long lastActivity;
+		// The offset up to which the destination confirmed the reception
+		volatile long acknowledgedOffset;
+		@Nullable
+		TransmissionCallback callback;
+		@Nullable
+		volatile ActiveStream stream;
+
+		OutgoingTransfer(@NonNull String recipient, @NonNull ContentSource source, @NonNull TransferOffer offer, @NonNull ChunkCipher cipher) {
+			this.recipient = recipient;
+			this.source = source;
+			this.offer = offer;
+			this.cipher = cipher;
+			this.lastActivity = System.currentTimeMillis();
+		}
+
+		@Nullable
+		synchronized TransmissionCallback takeCallback() {
+			TransmissionCallback taken = callback;
+			callback = null;
+			return taken;
+		}
+	}
+
+	private static final class IncomingTransfer {
+		final String sender;
+		final TransferOffer offer;
+		final long payloadId;
+		// Serializes the streams writing the partial file
+		final ReentrantLock lock = new ReentrantLock();
+		@Nullable
+		InputStream input;
+
+		IncomingTransfer(@NonNull String sender, @NonNull TransferOffer offer, long payloadId) {
+			this.sender = sender;
+			this.offer = offer;
+			this.payloadId = payloadId;
+		}
+	}
+
+	/**
+	 * A stream payload sent or relayed by this node. The input is the end of the pipe read by
+	 * Nearby: closing it stops the writer.
+	 */
+	private static final class ActiveStream {
+		@Nullable
+		final String transferId; // null for relayed streams
+		final PipedInputStream input;
+		final long startOffset;
+		volatile long written;
+
+		ActiveStream(@Nullable String transferId, @NonNull PipedInputStream input, long startOffset) {
+			this.transferId = transferId;
+			this.input = input;
+			this.startOffset = startOffset;
+			this.written = startOffset;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection state of the endpoints known by {@link NearbyManager}, indexed both by
+ * endpoint ID and by the address name of the remote node.
+ * <p>
+ * Reads are lock-free. Updates lock the stripes of the endpoint ID and of the address
+ * names involved, so that both indices change together. Each update gives the entry a new
+ * epoch: a deferred action captures the epoch of the entry it was decided on and is applied
+ * only if no other update came in the meantime, see {@link #putIfEpoch}.
+ * </p>
+ * The list of connected neighbors is an immutable snapshot, rebuilt only when an endpoint
+ * enters or leaves the connected state.
+ *
+ * @author hsedo777
+ */
+class ConnectionTable {
+
+	static final int STATUS_FOUND = 0;
+	static final int STATUS_INITIATED_FROM_REMOTE = 1;
+	static final int STATUS_INITIATED_FROM_HOST = 2;
+	static final int STATUS_CONNECTED = 4;
+	static final int STATUS_DISCONNECTED = 5;
+	private static final int STRIPE_COUNT = 16;
+
+	private final Map<String, Entry> byEndpointId = new ConcurrentHashMap<>();
+	/*
+	 * Address name -> endpoint ID, for the entries that aren't disconnected
+	 */
+	private final Map<String, String> endpointIdByAddressName = new ConcurrentHashMap<>();
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPE_COUNT];
+	private final AtomicLong epochs = new AtomicLong();
+	private final Object snapshotLock = new Object();
+	private volatile Snapshot connected = Snapshot.EMPTY;
+
+	ConnectionTable() {
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	private static boolean isConnected(@Nullable Entry entry) {
+		return entry != null && entry.status == STATUS_CONNECTED;
+	}
+
+	@Nullable
+	Entry get(@NonNull String endpointId) {
+		return byEndpointId.get(endpointId);
+	}
+
+	@Nullable
+	String getAddressName(@NonNull String endpointId) {
+		Entry entry = byEndpointId.get(endpointId);
+		return entry == null ? null : entry.addressName;
+	}
+
+	@Nullable
+	String getEndpointId(@NonNull String addressName) {
+		return endpointIdByAddressName.get(addressName);
+	}
+
+	/**
+	 * Sets the state of the endpoint, whatever its current state.
+	 *
+	 * @return the new entry
+	 */
+	@NonNull
+	Entry put(@NonNull String endpointId, @NonNull String addressName, @ConnectivityStatus int status) {
+		while (true) {
+			Entry current = byEndpointId.get(endpointId);
+			Entry updated = update(endpointId, current, addressName, status);
+			if (updated != null) {
+				return updated;
+			}
+			// Concurrent update between the read and the locking, retry
+		}
+	}
+
+	/**
+	 * Sets the state of the endpoint only if its entry still has the given epoch.
+	 *
+	 * @return the new entry, or {@code null} if the entry changed or was removed since that epoch
+	 */
+	@Nullable
+	Entry putIfEpoch(@NonNull String endpointId, long expectedEpoch, @NonNull String addressName, @ConnectivityStatus int status) {
+		Entry current = byEndpointId.get(endpointId);
+		if (current == null || current.epoch != expectedEpoch) {
+			return null;
+		}
+		return update(endpointId, current, addressName, status);
+	}
+
+	/**
+	 * Binds the address name to the endpoint, without touching the state of the endpoint.
+	 */
+	void bindAddress(@NonNull String addressName, @NonNull String endpointId) {
+		lock(endpointId, addressName, null);
+		try {
+			endpointIdByAddressName.put(addressName, endpointId);
+		} finally {
+			unlock(endpointId, addressName, null);
+		}
+	}
+
+	/**
+	 * Removes the endpoint, and its address binding if any.
+	 *
+	 * @return the removed entry, or {@code null} if the endpoint was unknown
+	 */
+	@Nullable
+	Entry remove(@NonNull String endpointId) {
+		while (true) {
+			Entry current = byEndpointId.get(endpointId);
+			if (current == null) {
+				return null;
+			}
+			if (removeIfEpoch(endpointId, current.epoch)) {
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * Removes the endpoint only if its entry still has the given epoch.
+	 *
+	 * @return {@code true} if the entry was removed
+	 */
+	boolean removeIfEpoch(@NonNull String endpointId, long expectedEpoch) {
+		Entry current = byEndpointId.get(endpointId);
+		if (current == null || current.epoch != expectedEpoch) {
+			return false;
+		}
+		lock(endpointId, current.addressName, null);
+		try {
+			if (byEndpointId.get(endpointId) != current) {
+				return false;
+			}
+			byEndpointId.remove(endpointId);
+			endpointIdByAddressName.remove(current.addressName, endpointId);
+		} finally {
+			unlock(endpointId, current.addressName, null);
+		}
+		if (isConnected(current)) {
+			rebuildSnapshot();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the address names of the connected endpoints. The list is immutable.
+	 */
+	@NonNull
+	List<String> getConnectedAddressNames() {
+		return connected.addressNames;
+	}
+
+	/**
+	 * Returns the IDs of the connected endpoints. The list is immutable.
+	 */
+	@NonNull
+	List<String> getConnectedEndpointIds() {
+		return connected.endpointIds;
+	}
+
+	void clear() {
+		List<String> endpointIds = new ArrayList<>(byEndpointId.keySet());
+		for (String endpointId : endpointIds) {
+			remove(endpointId);
+		}
+	}
+
+	@Nullable
+	private Entry update(@NonNull String endpointId, @Nullable Entry current, @NonNull String addressName,
+	                     @ConnectivityStatus int status) {
+		String previousAddress = current == null ? null : current.addressName;
+		Entry updated;
+		lock(endpointId, addressName, previousAddress);
+		try {
+			if (byEndpointId.get(endpointId) != current) {
+				return null;
+			}
+			updated = new Entry(endpointId, addressName, status, epochs.incrementAndGet());
+			byEndpointId.put(endpointId, updated);
+			if (previousAddress != null && !previousAddress.equals(addressName)) {
+				endpointIdByAddressName.remove(previousAddress, endpointId);
+			}
+			if (status == STATUS_DISCONNECTED) {
+				endpointIdByAddressName.remove(addressName, endpointId);
+			} else {
+				endpointIdByAddressName.put(addressName, endpointId);
+			}
+		} finally {
+			unlock(endpointId, addressName, previousAddress);
+		}
+		boolean wasConnected = isConnected(current);
+		boolean nowConnected = isConnected(updated);
+		if (wasConnected != nowConnected || (nowConnected && !addressName.equals(previousAddress))) {
+			rebuildSnapshot();
+		}
+		return updated;
+	}
+
+	/*
+	 * Rebuilt after the maps are updated: the last rebuild sees every finished transition
+	 */
+	private void rebuildSnapshot() {
+		synchronized (snapshotLock) {
+			List<String> endpointIds = new ArrayList<>();
+			List<String> addressNames = new ArrayList<>();
+			for (Entry entry : byEndpointId.values()) {
+				if (isConnected(entry)) {
+					endpointIds.add(entry.endpointId);
+					addressNames.add(entry.addressName);
+				}
+			}
+			connected = new Snapshot(Collections.unmodifiableList(endpointIds), Collections.unmodifiableList(addressNames));
+		}
+	}
+
+	/*
+	 * Stripes are always locked in increasing index order, to avoid deadlocks
+	 */
+	@NonNull
+	private int[] stripeIndexes(@NonNull String first, @Nullable String second, @Nullable String third) {
+		int[] indexes = {stripeOf(first), second == null ? -1 : stripeOf(second), third == null ? -1 : stripeOf(third)};
+		Arrays.sort(indexes);
+		return indexes;
+	}
+
+	private int stripeOf(@NonNull String key) {
+		int hash = key.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), STRIPE_COUNT);
+	}
+
+	private void lock(@NonNull String first, @Nullable String second, @Nullable String third) {
+		int previous = -1;
+		for (int index : stripeIndexes(first, second, third)) {
+			if (index != previous && index >= 0) {
+				stripes[index].lock();
+			}
+			previous = index;
+		}
+	}
+
+	private void unlock(@NonNull String first, @Nullable String second, @Nullable String third) {
+		int previous = -1;
+		for (int index : stripeIndexes(first, second, third)) {
+			if (index != previous && index >= 0) {
+				stripes[index].unlock();
+			}
+			previous = index;
+		}
+	}
+
+	@IntDef({STATUS_INITIATED_FROM_REMOTE, STATUS_INITIATED_FROM_HOST, STATUS_CONNECTED, STATUS_DISCONNECTED, STATUS_FOUND})
+	@Retention(RetentionPolicy.SOURCE)
+	@interface ConnectivityStatus {
+	}
+
+	/**
+	 * State of an endpoint.
+	 *
+	 * @param epoch increases on every update of the table
+	 */
+	record Entry(@NonNull String endpointId, @NonNull String addressName, @ConnectivityStatus int status, long epoch) {
+	}
+
+	private record Snapshot(@NonNull List<String> endpointIds, @NonNull List<String> addressNames) {
+		static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyList());
+	}
+}
@@ -0,0 +1,324 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Distance-vector routing table of the proactive routing mode, kept as DSDV does.
+ * <p>
+ * Each node advertises itself with a sequence number it alone increases, by steps of two, when
+ * its neighborhood changes. A route is replaced by an advertisement carrying a newer sequence
+ * number, or the same number at a lower link cost: as stale information never wins over fresh
+ * one, routing loops can't form and the count-to-infinity problem doesn't arise. A node whose
+ * route breaks makes its sequence number odd, which is newer than the one of the route, and
+ * advertises it so that the nodes routing through it drop the route as well.
+ * </p>
+ * The table only remembers the destinations changed since the last beacon, so that the beacons
+ * stay incremental; a full one is sent to the new neighbors. All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+class DistanceVectorTable {
+
+	/**
+	 * Default time during which a broken route is remembered, along with its sequence number.
+	 */
+	static final long DEFAULT_BROKEN_ROUTE_RETENTION_MILLIS = 10L * 60 * 1000;
+
+	private final String localAddressName;
+	private final Clock clock;
+	private final int maxHops;
+	private final long brokenRouteRetentionMillis;
+	// Destination address name -> route
+	private final Map<String, Route> routes = new HashMap<>();
+	// Destinations changed since the last beacon, the host included
+	private final Set<String> changed = new LinkedHashSet<>();
+	private int sequenceNumber;
+
+	/**
+	 * @param localAddressName           the address name of the host node
+	 * @param clock                      source of the time
+	 * @param maxHops                    the number of hops beyond which the routes are ignored
+	 * @param brokenRouteRetentionMillis time during which a broken route is remembered
+	 */
+	DistanceVectorTable(@NonNull String localAddressName, @NonNull Clock clock, int maxHops, long brokenRouteRetentionMillis) {
+		this.localAddressName = localAddressName;
+		this.clock = clock;
+		this.maxHops = maxHops;
+		this.brokenRouteRetentionMillis = brokenRouteRetentionMillis;
+		// Counted in seconds, so that a restarted node goes on with numbers newer than before
+		this.sequenceNumber = (int) (clock.nowMillis() / 1000L) << 1;
+		changed.add(localAddressName);
+	}
+
+	/**
+	 * Tells whether a sequence number is newer than another one, with serial number arithmetic.
+	 */
+	static boolean isNewer(int sequenceNumber, int than) {
+		return sequenceNumber - than > 0;
+	}
+
+	private static boolean isBroken(int sequenceNumber) {
+		return (sequenceNumber & 1) != 0;
+	}
+
+	/**
+	 * Records a change of the host neighborhood: its next advertisement carries a new sequence number.
+	 */
+	synchronized void onNeighborhoodChanged() {
+		sequenceNumber += 2;
+		changed.add(localAddressName);
+	}
+
+	/**
+	 * Processes the advertisements of a neighbor.
+	 *
+	 * @param neighbor       The address name of the neighbor.
+	 * @param linkCost       The cost of the link toward the neighbor.
+	 * @param advertisements The destinations advertised by the neighbor.
+	 * @param full           Whether the advertisements are all the routes of the neighbor.
+	 * @return the routes of the host that changed
+	 */
+	@NonNull
+	synchronized List<Update> onAdvertisements(
+			@NonNull String neighbor, int linkCost, @NonNull List<Advertisement> advertisements, boolean full) {
+		long now = clock.nowMillis();
+		List<Update> updates = new ArrayList<>();
+		Set<String> advertised = full ? new HashSet<>() : null;
+		for (Advertisement advertisement : advertisements) {
+			String destination = advertisement.destination();
+			if (advertised != null) {
+				advertised.add(destination);
+			}
+			if (destination.equals(localAddressName)) {
+				if (isNewer(advertisement.sequenceNumber(), sequenceNumber)) {
+					// An old number of a previous run came back: jump ahead of it
+					sequenceNumber = (advertisement.sequenceNumber() | 1) + 1;
+					changed.add(localAddressName);
+				}
+				continue;
+			}
+			Route route = routes.get(destination);
+			if (isBroken(advertisement.sequenceNumber())) {
+				// Only breaks the routes through the neighbor, the others may still be valid
+				if (route != null && !route.isBroken() && route.nextHop.equals(neighbor)
+						&& !isNewer(route.sequenceNumber, advertisement.sequenceNumber())) {
+					route.sequenceNumber = advertisement.sequenceNumber();
+					breakRoute(destination, route, now, updates);
+				}
+				continue;
+			}
+			int hopCount = advertisement.hopCount() + 1;
+			if (hopCount > maxHops) {
+				continue;
+			}
+			int cost = (int) Math.min(Integer.MAX_VALUE, Integer.toUnsignedLong(advertisement.linkCost()) + linkCost);
+			boolean accepted = route == null || isNewer(advertisement.sequenceNumber(), route.sequenceNumber)
+					|| (advertisement.sequenceNumber() == route.sequenceNumber && !route.isBroken()
+					&& (cost < route.linkCost || route.nextHop.equals(neighbor)));
+			if (!accepted) {
+				continue;
+			}
+			if (route == null) {
+				route = new Route();
+				routes.put(destination, route);
+			}
+			boolean moved = route.isBroken() || !neighbor.equals(route.nextHop)
+					|| route.hopCount != hopCount || route.linkCost != cost;
+			if (moved || route.sequenceNumber != advertisement.sequenceNumber()) {
+				changed.add(destination);
+			}
+			route.nextHop = neighbor;
+			route.sequenceNumber = advertisement.sequenceNumber();
+			route.hopCount = hopCount;
+			route.linkCost = cost;
+			route.updatedAt = now;
+			if (moved) {
+				updates.add(new Update(destination, neighbor, hopCount, cost));
+			}
+		}
+		if (advertised != null) {
+			// The neighbor no longer reaches the destinations it didn't list
+			for (Map.Entry<String, Route> entry : routes.entrySet()) {
+				Route route = entry.getValue();
+				if (!route.isBroken() && neighbor.equals(route.nextHop) && !advertised.contains(entry.getKey())) {
+					route.sequenceNumber++;
+					breakRoute(entry.getKey(), route, now, updates);
+				}
+			}
+		}
+		return updates;
+	}
+
+	/**
+	 * Breaks the routes through a neighbor, e.g. disconnected.
+	 *
+	 * @return the routes of the host that changed
+	 */
+	@NonNull
+	synchronized List<Update> onNeighborLost(@NonNull String neighbor) {
+		long now = clock.nowMillis();
+		List<Update> updates = new ArrayList<>();
+		for (Map.Entry<String, Route> entry : routes.entrySet()) {
+			Route route = entry.getValue();
+			if (!route.isBroken() && neighbor.equals(route.nextHop)) {
+				route.sequenceNumber++;
+				breakRoute(entry.getKey(), route, now, updates);
+			}
+		}
+		onNeighborhoodChanged();
+		return updates;
+	}
+
+	/**
+	 * Breaks the route toward a destination, e.g. found unusable while sending.
+	 *
+	 * @return whether the route was valid
+	 */
+	synchronized boolean onRouteLost(@NonNull String destination) {
+		Route route = routes.get(destination);
+		if (route == null || route.isBroken()) {
+			return false;
+		}
+		route.sequenceNumber++;
+		breakRoute(destination, route, clock.nowMillis(), null);
+		return true;
+	}
+
+	private void breakRoute(@NonNull String destination, @NonNull Route route, long now, @Nullable List<Update> updates) {
+		route.updatedAt = now;
+		changed.add(destination);
+		if (updates != null) {
+			updates.add(new Update(destination, null, route.hopCount, route.linkCost));
+		}
+	}
+
+	/**
+	 * Returns whether some routes changed since the last beacon.
+	 */
+	synchronized boolean hasChanges() {
+		return !changed.isEmpty();
+	}
+
+	/**
+	 * Returns the advertisements of the routes changed since the last call, and forgets the changes.
+	 */
+	@NonNull
+	synchronized List<Advertisement> drainChanges() {
+		List<Advertisement> advertisements = new ArrayList<>(changed.size());
+		for (String destination : changed) {
+			Advertisement advertisement = advertise(destination);
+			if (advertisement != null) {
+				advertisements.add(advertisement);
+			}
+		}
+		changed.clear();
+		purgeBrokenRoutes();
+		return advertisements;
+	}
+
+	/**
+	 * Returns the advertisements of all the routes, for a full beacon.
+	 */
+	@NonNull
+	synchronized List<Advertisement> snapshot() {
+		purgeBrokenRoutes();
+		List<Advertisement> advertisements = new ArrayList<>(routes.size() + 1);
+		advertisements.add(advertise(localAddressName));
+		for (String destination : routes.keySet()) {
+			advertisements.add(advertise(destination));
+		}
+		return advertisements;
+	}
+
+	@Nullable
+	private Advertisement advertise(@NonNull String destination) {
+		if (destination.equals(localAddressName)) {
+			return new Advertisement(localAddressName, sequenceNumber, 0, 0, null);
+		}
+		Route route = routes.get(destination);
+		return route == null ? null
+				: new Advertisement(destination, route.sequenceNumber, route.hopCount, route.linkCost, route.nextHop);
+	}
+
+	private void purgeBrokenRoutes() {
+		long now = clock.nowMillis();
+		Iterator<Route> iterator = routes.values().iterator();
+		while (iterator.hasNext()) {
+			Route route = iterator.next();
+			if (route.isBroken() && now - route.updatedAt > brokenRouteRetentionMillis) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the address name of the next hop toward a destination, or {@code null} if it isn't reachable.
+	 */
+	@Nullable
+	synchronized String nextHop(@NonNull String destination) {
+		Route route = routes.get(destination);
+		return route == null || route.isBroken() ? null : route.nextHop;
+	}
+
+	/**
+	 * Returns the number of reachable destinations.
+	 */
+	synchronized int size() {
+		int size = 0;
+		for (Route route : routes.values()) {
+			if (!route.isBroken()) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private static final class Route {
+		String nextHop;
+		int sequenceNumber;
+		int hopCount;
+		int linkCost;
+		long updatedAt;
+
+		boolean isBroken() {
+			return DistanceVectorTable.isBroken(sequenceNumber);
+		}
+	}
+
+	/**
+	 * A destination advertised in a beacon.
+	 *
+	 * @param destination    The address name of the destination.
+	 * @param sequenceNumber The sequence number of the route, odd if broken.
+	 * @param hopCount       The number of hops from the advertising node.
+	 * @param linkCost       The link cost from the advertising node.
+	 * @param nextHop        The next hop of the advertising node, never sent: a route isn't
+	 *                       advertised to its own next hop.
+	 */
+	record Advertisement(@NonNull String destination, int sequenceNumber, int hopCount, int linkCost,
+	                     @Nullable String nextHop) {
+	}
+
+	/**
+	 * A change of the route of the host toward a destination.
+	 *
+	 * @param destination The address name of the destination.
+	 * @param nextHop     The address name of the new next hop, {@code null} if the route broke.
+	 * @param hopCount    The number of hops of the route.
+	 * @param linkCost    The link cost of the route.
+	 */
+	record Update(@NonNull String destination, @Nullable String nextHop, int hopCount, int linkCost) {
+	}
+}
@@ -0,0 +1,101 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Radii of the expanding ring search of the route discoveries.
+ * <p>
+ * Instead of flooding the whole network at once, a discovery first floods a small ring around the
+ * host, i.e. a route request with few {@code remaining_hops}. Without an answer in a time
+ * proportional to the radius, or once every branch answered that the route wasn't found, a new
+ * request floods a ring twice as large, up to the maximum radius. A close destination is then
+ * found at the cost of a few neighbors, not of the whole network.
+ * </p>
+ * The radius is the number of relays a request may cross: the destination is reached with a radius
+ * of the hop count of its route. The first ring toward a destination reached before starts at the
+ * hop count learned then. All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+class ExpandingRing {
+
+	/**
+	 * Default radius of the first ring toward an unknown destination: up to three hops away.
+	 */
+	static final int DEFAULT_INITIAL_RADIUS = 2;
+	/**
+	 * Default time allowed to a hop to relay a request, then its response.
+	 */
+	static final long DEFAULT_HOP_TIMEOUT_MILLIS = 1_000L;
+	/**
+	 * Default number of destinations whose hop count is remembered.
+	 */
+	static final int DEFAULT_MAX_LEARNED = 256;
+
+	private final int initialRadius;
+	private final int maxRadius;
+	private final long hopTimeoutMillis;
+	// Destination address name -> hop count of its last route, in access order
+	private final LinkedHashMap<String, Integer> learnedHopCounts;
+
+	/**
+	 * @param initialRadius    the radius of the first ring toward an unknown destination
+	 * @param maxRadius        the radius of the last ring
+	 * @param hopTimeoutMillis the time allowed to a hop to relay a request, then its response
+	 * @param maxLearned       the number of destinations whose hop count is remembered
+	 */
+	ExpandingRing(int initialRadius, int maxRadius, long hopTimeoutMillis, int maxLearned) {
+		if (initialRadius < 1 || maxRadius < initialRadius || hopTimeoutMillis <= 0 || maxLearned < 1) {
+			throw new IllegalArgumentException("Invalid expanding ring parameters");
+		}
+		this.initialRadius = initialRadius;
+		this.maxRadius = maxRadius;
+		this.hopTimeoutMillis = hopTimeoutMillis;
+		this.learnedHopCounts = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > maxLearned;
+			}
+		};
+	}
+
+	/**
+	 * Returns the radius of the first ring toward a destination: the hop count of its last route
+	 * if any, the initial radius otherwise.
+	 */
+	synchronized int firstRadius(@NonNull String destination) {
+		Integer hopCount = learnedHopCounts.get(destination);
+		if (hopCount == null) {
+			return initialRadius;
+		}
+		return Math.max(1, Math.min(maxRadius, hopCount));
+	}
+
+	/**
+	 * Returns the radius of the ring following a ring of the given radius, 0 after the last ring.
+	 */
+	int nextRadius(int radius) {
+		if (radius >= maxRadius) {
+			return 0;
+		}
+		return Math.min(maxRadius, Math.max(radius + 1, radius * 2));
+	}
+
+	/**
+	 * Returns the time to wait for the outcome of a ring before expanding it: the round trip
+	 * through its relays, up to the destination.
+	 */
+	long timeoutMillis(int radius) {
+		return 2L * (radius + 1) * hopTimeoutMillis;
+	}
+
+	/**
+	 * Records the hop count of a route found toward a destination.
+	 */
+	synchronized void learn(@NonNull String destination, int hopCount) {
+		learnedHopCounts.put(destination, hopCount);
+	}
+}
@@ -0,0 +1,106 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Forwarding information base of the relayed traffic: for each route, usage and direction a
+ * routed message may travel, the neighbor to forward it to and the endpoint it is connected through.
+ * <p>
+ * It is filled when this node takes part to a route and on the first message relayed on a
+ * route usage, and emptied of the destroyed routes. The endpoints are bound on first use and
+ * unbound when the neighbor disconnects, the entries themselves outlive the disconnections:
+ * the routes through a lost neighbor are destroyed on their own.
+ * </p>
+ * A lookup neither locks nor allocates.
+ *
+ * @author hsedo777
+ */
+class ForwardingTable {
+
+	// Route UUID -> hops of its usages
+	private final Map<String, RouteHops> routes = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the next hop of the messages relayed on the given route usage, in the given direction.
+	 *
+	 * @return the next hop, or {@code null} if unknown
+	 */
+	@Nullable
+	Hop lookup(@NonNull String routeUuid, @NonNull String usageUuid, boolean forBacktracking) {
+		RouteHops hops = routes.get(routeUuid);
+		if (hops == null) {
+			return null;
+		}
+		return (forBacktracking ? hops.backward : hops.forward).get(usageUuid);
+	}
+
+	/**
+	 * Records the next hop of the messages relayed on the given route usage, in the given direction.
+	 *
+	 * @param addressName the address name of the neighbor to forward the messages to
+	 * @return the recorded hop, not yet bound to an endpoint
+	 */
+	@NonNull
+	Hop put(@NonNull String routeUuid, @NonNull String usageUuid, boolean forBacktracking, @NonNull String addressName) {
+		Hop hop = new Hop(addressName);
+		RouteHops hops = routes.computeIfAbsent(routeUuid, uuid -> new RouteHops());
+		(forBacktracking ? hops.backward : hops.forward).put(usageUuid, hop);
+		return hop;
+	}
+
+	/**
+	 * Forgets the hops of a route, for all its usages and both directions.
+	 */
+	void removeRoute(@NonNull String routeUuid) {
+		routes.remove(routeUuid);
+	}
+
+	/**
+	 * Unbinds the endpoint of the hops leading to a neighbor, e.g. when it disconnects.
+	 */
+	void unbindEndpoint(@NonNull String addressName) {
+		for (RouteHops hops : routes.values()) {
+			unbindEndpoint(hops.forward, addressName);
+			unbindEndpoint(hops.backward, addressName);
+		}
+	}
+
+	private static void unbindEndpoint(@NonNull Map<String, Hop> hops, @NonNull String addressName) {
+		for (Hop hop : hops.values()) {
+			if (hop.addressName.equals(addressName)) {
+				hop.endpointId = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of routes having at least a hop.
+	 */
+	int size() {
+		return routes.size();
+	}
+
+	private static final class RouteHops {
+		// Usage UUID -> hop
+		final Map<String, Hop> forward = new ConcurrentHashMap<>();
+		final Map<String, Hop> backward = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * The neighbor to forward a message to.
+	 */
+	static final class Hop {
+		@NonNull
+		final String addressName;
+		@Nullable
+		volatile String endpointId;
+
+		Hop(@NonNull String addressName) {
+			this.addressName = addressName;
+		}
+	}
+}
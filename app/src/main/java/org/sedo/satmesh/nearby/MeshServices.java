@@ -0,0 +1,90 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.nearby.codec.RoutingWireCodec;
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.proto.NearbyMessageBody;
+import org.whispersystems.libsignal.protocol.CiphertextMessage;
+
+import java.util.function.Consumer;
+
+/**
+ * Services a {@link NearbyManager} relies on above the link layer: the encryption of the
+ * messages, the routing toward the nodes that aren't neighbors and the handling of the routed
+ * messages reaching this node.
+ * <p>
+ * The application implements it with {@link NearbySignalMessenger}, on top of its
+ * {@link NearbyRouteManager}. Each manager is bound to its own services, so that several
+ * nodes can run in the same process, e.g. on a
+ * {@link org.sedo.satmesh.nearby.transport.LoopbackMeshNetwork}.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public interface MeshServices {
+
+	/**
+	 * Encodes a body sent to a neighbor, in the compact routing format if the neighbor supports it.
+	 *
+	 * @param plainMessageBody    The body to send.
+	 * @param neighborAddressName The address name of the neighbor.
+	 */
+	@NonNull
+	RoutingWireCodec.Encoded encodeForNeighbor(@NonNull NearbyMessageBody plainMessageBody, @NonNull String neighborAddressName);
+
+	/**
+	 * Encrypts data for a node, neighbor or not.
+	 *
+	 * @param plainMessage         The data to encrypt.
+	 * @param recipientAddressName The address name of the recipient.
+	 * @throws Exception if the data can't be encrypted, e.g. there is no session with the recipient
+	 */
+	@NonNull
+	CiphertextMessage encrypt(@NonNull byte[] plainMessage, @NonNull String recipientAddressName) throws Exception;
+
+	/**
+	 * Decrypts data received from a node, neighbor or not.
+	 *
+	 * @param cipherData        The serialized ciphertext.
+	 * @param senderAddressName The address name of the sender.
+	 * @return the plain data, or {@code null} if it can't be decrypted
+	 * @throws Exception if the ciphertext is invalid
+	 */
+	@Nullable
+	byte[] decrypt(@NonNull byte[] cipherData, @NonNull String senderAddressName) throws Exception;
+
+	/**
+	 * Sends a body to a node that isn't a neighbor, through a route discovered if needed.
+	 *
+	 * @param recipientAddressName         The address name of the final recipient.
+	 * @param plainMessageBody             The body, end-to-end encrypted by the route.
+	 * @param routeTransmissionCallback    Notified of the sending of the message to the first hop of the route.
+	 * @param onDiscoveryInitiatedCallback If not null, notified of whether a route discovery was initiated.
+	 */
+	void sendThroughRoute(
+			@NonNull String recipientAddressName, @NonNull NearbyMessageBody plainMessageBody,
+			@NonNull TransmissionCallback routeTransmissionCallback, @Nullable Consumer<Boolean> onDiscoveryInitiatedCallback);
+
+	/**
+	 * Called when a route toward the destination has been found.
+	 */
+	void onRouteFound(@NonNull String destinationAddressName);
+
+	/**
+	 * Called when no route toward the destination could be found.
+	 */
+	void onRouteNotFound(@NonNull String destinationAddressName);
+
+	/**
+	 * Handles a routed message whose final destination is this node.
+	 *
+	 * @param originalSenderAddressName The address name of the original sender.
+	 * @param messageBody               The body, already end-to-end decrypted.
+	 * @param payloadId                 The ID of the payload that carried the message on its last hop.
+	 * @throws Exception if the body can't be handled
+	 */
+	void onRoutedMessageReceived(
+			@NonNull String originalSenderAddressName, @NonNull NearbyMessageBody messageBody, long payloadId) throws Exception;
+}
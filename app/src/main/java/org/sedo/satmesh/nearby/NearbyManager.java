@@ -1,105 +1,149 @@
 package org.sedo.satmesh.nearby;
 
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_CONNECTED;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_DISCONNECTED;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_FOUND;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_INITIATED_FROM_HOST;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_INITIATED_FROM_REMOTE;
+
 import android.content.Context;
 import android.util.Log;
 
-import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.android.gms.common.api.Status;
-import com.google.android.gms.nearby.Nearby;
-import com.google.android.gms.nearby.connection.AdvertisingOptions;
-import com.google.android.gms.nearby.connection.ConnectionInfo;
-import com.google.android.gms.nearby.connection.ConnectionLifecycleCallback;
-import com.google.android.gms.nearby.connection.ConnectionResolution;
-import com.google.android.gms.nearby.connection.ConnectionsClient;
-import com.google.android.gms.nearby.connection.DiscoveredEndpointInfo;
-import com.google.android.gms.nearby.connection.DiscoveryOptions;
-import com.google.android.gms.nearby.connection.EndpointDiscoveryCallback;
 import com.google.android.gms.nearby.connection.Payload;
-import com.google.android.gms.nearby.connection.PayloadCallback;
 import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
-import com.google.android.gms.nearby.connection.Strategy;
-import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import org.sedo.satmesh.model.rt.RouteEntry;
+import org.sedo.satmesh.nearby.codec.EnvelopeCodec;
+import org.sedo.satmesh.nearby.codec.PeerCapabilities;
+import org.sedo.satmesh.nearby.codec.RoutingWireCodec;
+import org.sedo.satmesh.nearby.data.BackpressureListener;
 import org.sedo.satmesh.nearby.data.DeviceConnectionListener;
+import org.sedo.satmesh.nearby.data.NeighborLivenessListener;
 import org.sedo.satmesh.nearby.data.PayloadListener;
 import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.nearby.link.KeepaliveMonitor;
+import org.sedo.satmesh.nearby.link.LinkQualityMonitor;
+import org.sedo.satmesh.nearby.transport.EndpointFlowController;
+import org.sedo.satmesh.nearby.transport.KeyedLaneExecutor;
+import org.sedo.satmesh.nearby.transport.MeshTransport;
+import org.sedo.satmesh.nearby.transport.NearbyConnectionsTransport;
+import org.sedo.satmesh.nearby.transport.OutboundCoalescer;
+import org.sedo.satmesh.nearby.transport.PriorityTaskScheduler;
+import org.sedo.satmesh.nearby.transport.TrafficClass;
+import org.sedo.satmesh.proto.BatchedFrame;
+import org.sedo.satmesh.proto.Heartbeat;
 import org.sedo.satmesh.proto.NearbyMessage;
 import org.sedo.satmesh.proto.NearbyMessageBody;
 import org.sedo.satmesh.ui.data.NodeState;
 import org.sedo.satmesh.ui.data.NodeTransientStateRepository;
+import org.sedo.satmesh.utils.Clock;
 import org.sedo.satmesh.utils.DataLog;
 import org.sedo.satmesh.utils.DataLog.TransmissionEventType;
 import org.sedo.satmesh.utils.DataLog.TransmissionStatus;
 import org.whispersystems.libsignal.protocol.CiphertextMessage;
 
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 public class NearbyManager {
 
 	private static final String TAG = "NearbyManager";
-	private static final String SERVICE_ID = "org.sedo.satmesh.SECURE_MESSENGER"; // Unique service ID for the app
-	private static final Strategy STRATEGY = Strategy.P2P_CLUSTER;
-	// Connection status
-	private final static int STATUS_FOUND = 0;
-	private final static int STATUS_INITIATED_FROM_REMOTE = 1;
-	private final static int STATUS_INITIATED_FROM_HOST = 2;
-	private final static int STATUS_CONNECTED = 4;
-	private final static int STATUS_DISCONNECTED = 5;
 	private static volatile NearbyManager INSTANCE;
 
 	/*
-	 * Map to store endpoints connection state: endpointId -> remote device's state
-	 */
-	private final Map<String, ConnectionState> endpointStates = new ConcurrentHashMap<>();
-	/*
-	 * Maps device' SignalProtocol address to its endpoint
-	 * This map will contain only *currently connected endpoints, as determined by the
-	 * `connectedEndpointAddresses` map. It will be cleared on disconnect.
+	 * Connection state of the endpoints, indexed by endpoint ID and by SignalProtocol address name.
+	 * An address name is bound to its endpoint from the discovery until the disconnection.
 	 */
-	private final Map<String, String> addressNameToEndpointId = new ConcurrentHashMap<>();
+	private final ConnectionTable connections = new ConnectionTable();
 	private final List<DeviceConnectionListener> deviceConnectionListeners = new CopyOnWriteArrayList<>();// Thread-safe list
 	private final List<PayloadListener> payloadListeners = new CopyOnWriteArrayList<>();
-	private final ConnectionsClient connectionsClient;
+	private final List<BackpressureListener> backpressureListeners = new CopyOnWriteArrayList<>();
+	private final List<NeighborLivenessListener> livenessListeners = new CopyOnWriteArrayList<>();
+	private final MeshTransport transport;
 	// Use local address name as advertising name
 	private final String localAddressName;
-	private final ExecutorService executorService;
+	// Connection states shown by the UI
+	private final NodeTransientStateRepository transientStates;
+	/*
+	 * Runs the outgoing work: one lane per recipient address name keeps the order required
+	 * by its Signal session, lanes of distinct recipients run in parallel
+	 */
+	private final KeyedLaneExecutor outboundLanes;
+	// Runs the delayed flushes of the coalescer and the in-flight timeouts of the flow controller
+	private final ScheduledExecutorService transmissionScheduler;
+	private final OutboundCoalescer coalescer;
+	private final LinkQualityMonitor linkQualityMonitor = new LinkQualityMonitor(Clock.SYSTEM);
+	// Optional features of the neighbors, keyed by address name
+	private final PeerCapabilities peerCapabilities = new PeerCapabilities();
+	private final EndpointFlowController flowController;
+	private final KeepaliveMonitor keepaliveMonitor;
 	/**
-	 * PayloadCallback handles incoming data payloads.
-	 * It processes received bytes as Protobuf messages and dispatches them.
+	 * Listener of the transport events.
+	 * It processes received payloads, tracks the lifecycle of connections and
+	 * the discovered endpoints, then dispatches them to the registered listeners.
 	 */
-	private final PayloadCallback payloadCallback = new PayloadCallback() {
+	private final MeshTransport.Listener transportListener = new MeshTransport.Listener() {
 		@Override
 		public void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload) {
 			// Ensure payload has bytes and get the associated device name
-			ConnectionState state = endpointStates.get(endpointId);
+			ConnectionTable.Entry state = connections.get(endpointId);
 			if (state == null) {
 				// This could happen if a payload arrives just after a disconnect event
 				Log.w(TAG, "Payload received from unknown or disconnected endpoint: " + endpointId);
 				return;
 			}
 			DataLog.logTransmissionEvent(TransmissionEventType.RECEIVE, endpointId, payload.getId(), 0, TransmissionStatus.SUCCESS);
-			if (state.status != STATUS_CONNECTED) {
+			keepaliveMonitor.onReceived(endpointId);
+			if (state.status() != STATUS_CONNECTED) {
 				// Inconsistent state, we are receiving payload from the device, so we ae connected
 				Log.d(TAG, "Inconsistent state, we are receiving payload from the device in status: "
-						+ state.status + ", distinct of connection status");
-				putState(endpointId, state.addressName, STATUS_CONNECTED, NodeState.ON_CONNECTED);
+						+ state.status() + ", distinct of connection status");
+				// Unless a concurrent transition already happened
+				if (connections.putIfEpoch(endpointId, state.epoch(), state.addressName(), STATUS_CONNECTED) != null) {
+					transientStates.updateTransientNodeState(state.addressName(), NodeState.ON_CONNECTED);
+				}
+			}
+			Log.d(TAG, "Payload received from " + state.addressName() + " (Endpoint ID: " + endpointId + ")");
+			if (payload.getType() == Payload.Type.STREAM) {
+				// Chunked transfers, consumed as they arrive
+				payloadListeners.forEach(l -> l.onStreamReceived(endpointId, payload));
+				return;
+			}
+			byte[] data = payload.asBytes();
+			if (payload.getType() != Payload.Type.BYTES || data == null) {
+				Log.e(TAG, "Received payload " + payload.getId() + " without bytes from " + endpointId);
+				return;
+			}
+			try {
+				NearbyMessage message = NearbyMessage.parseFrom(data);
+				if (message.getPayloadContentCase() != NearbyMessage.PayloadContentCase.BATCH) {
+					dispatchMessage(endpointId, message, payload.getId());
+					return;
+				}
+				// Unpack the frames the sender coalesced; a node sending batches unpacks them too
+				peerCapabilities.add(state.addressName(), PeerCapabilities.BATCHING);
+				for (BatchedFrame frame : message.getBatch().getFramesList()) {
+					// The body of the frame is a view of the batch, not a copy
+					NearbyMessage inner = EnvelopeCodec.parseAliased(NearbyMessage.parser(), frame.getNearbyMessage());
+					if (inner.getPayloadContentCase() == NearbyMessage.PayloadContentCase.BATCH) {
+						Log.w(TAG, "Nested batch in payload " + payload.getId() + " from " + endpointId + " ignored.");
+						continue;
+					}
+					dispatchMessage(endpointId, inner, frame.getFrameId());
+				}
+			} catch (InvalidProtocolBufferException e) {
+				Log.e(TAG, "Failed to parse NearbyMessage from " + endpointId, e);
 			}
-			Log.d(TAG, "Payload received from " + state.addressName + " (Endpoint ID: " + endpointId + ")");
-			payloadListeners.forEach(l -> l.onPayloadReceived(endpointId, payload));
 		}
 
 		@Override
@@ -112,43 +156,40 @@ public class NearbyManager {
 			Log.d(TAG, "Payload transfer update: " + update.getPayloadId() + " Status: " + update.getStatus() +
 					" Bytes: " + update.getBytesTransferred() + "/" + update.getTotalBytes() +
 					" from " + endpointId);
+			flowController.onPayloadTransferUpdate(endpointId, update);
+			linkQualityMonitor.onTransferUpdate(endpointId, update);
 			payloadListeners.forEach(l -> l.onPayloadTransferUpdate(endpointId, update));
 		}
-	};
-	/**
-	 * ConnectionLifecycleCallback handles the lifecycle of connections.
-	 * It initiates connection, processes results, and handles disconnections.
-	 */
-	private final ConnectionLifecycleCallback connectionLifecycleCallback = new ConnectionLifecycleCallback() {
+
 		@Override
-		public void onConnectionInitiated(@NonNull String endpointId, @NonNull ConnectionInfo connectionInfo) {
-			ConnectionState state = endpointStates.get(endpointId);
+		public void onConnectionInitiated(@NonNull String endpointId, @NonNull String endpointName) {
+			ConnectionTable.Entry state = connections.get(endpointId);
 			if (state != null) {
 				Log.d(TAG, "Receiving connection in state=" + state);
 			}
-			DataLog.logNodeEvent(DataLog.NodeDiscoveryEvent.INIT_BY_REMOTE, connectionInfo.getEndpointName(), endpointId, null);
-			Log.d(TAG, "Connection initiated with: " + endpointId + " Name: " + connectionInfo.getEndpointName());
-			putState(endpointId, connectionInfo.getEndpointName(), STATUS_INITIATED_FROM_REMOTE, NodeState.ON_CONNECTING);
-			addressNameToEndpointId.put(connectionInfo.getEndpointName(), endpointId); // Keep track of pending connections
-			deviceConnectionListeners.forEach(listener -> listener.onConnectionInitiated(endpointId, connectionInfo.getEndpointName()));
+			DataLog.logNodeEvent(DataLog.NodeDiscoveryEvent.INIT_BY_REMOTE, endpointName, endpointId, null);
+			Log.d(TAG, "Connection initiated with: " + endpointId + " Name: " + endpointName);
+			// Also keeps track of the pending connection by address name
+			putState(endpointId, endpointName, STATUS_INITIATED_FROM_REMOTE, NodeState.ON_CONNECTING);
+			deviceConnectionListeners.forEach(listener -> listener.onConnectionInitiated(endpointId, endpointName));
 			// NearbySignalMessenger, as listener, will now explicitly call acceptConnection, allowing for async processing.
 		}
 
 		@Override
-		public void onConnectionResult(@NonNull String endpointId, @NonNull ConnectionResolution result) {
-			ConnectionState state = endpointStates.get(endpointId);
+		public void onConnectionResult(@NonNull String endpointId, @NonNull Status result) {
+			ConnectionTable.Entry state = connections.get(endpointId);
 			if (state == null) {
 				// Very very bad
 				Log.e(TAG, "onConnectionResult: Endpoint ID " + endpointId + " not found in connection state map. Orphaned connection result.");
 				return;
 			}
-			String remoteAddressName = state.addressName;
-			if (result.getStatus().isSuccess()) {
+			String remoteAddressName = state.addressName();
+			if (result.isSuccess()) {
 				Log.d(TAG, "Connection established with: " + remoteAddressName + " (EndpointId: " + endpointId + ")");
-				int status = state.status;
+				int status = state.status();
 				// Store the mapping between endpointId and the remote device's SignalProtocolAddress name
 				putState(endpointId, remoteAddressName, STATUS_CONNECTED, NodeState.ON_CONNECTED);
-				addressNameToEndpointId.put(remoteAddressName, endpointId); // Update the core mapping
+				keepaliveMonitor.track(endpointId);
 
 				deviceConnectionListeners.forEach(listener -> listener.onDeviceConnected(endpointId, remoteAddressName));
 				if (status == STATUS_INITIATED_FROM_REMOTE) {
@@ -156,8 +197,8 @@ public class NearbyManager {
 					DataLog.logNodeEvent(DataLog.NodeDiscoveryEvent.ACCEPT, remoteAddressName, endpointId, null);
 				}
 			} else {
-				Log.e(TAG, "Connection failed with: " + remoteAddressName + " (EndpointId: " + endpointId + "). Status: " + result.getStatus().getStatusMessage());
-				deviceConnectionListeners.forEach(l -> l.onConnectionFailed(endpointId, remoteAddressName, result.getStatus()));
+				Log.e(TAG, "Connection failed with: " + remoteAddressName + " (EndpointId: " + endpointId + "). Status: " + result.getStatusMessage());
+				deviceConnectionListeners.forEach(l -> l.onConnectionFailed(endpointId, remoteAddressName, result));
 				// If connection failed reset in found state, then the host device can request connection again
 				putState(endpointId, remoteAddressName, STATUS_FOUND, NodeState.ON_ENDPOINT_FOUND);
 			}
@@ -166,44 +207,45 @@ public class NearbyManager {
 		@Override
 		public void onDisconnected(@NonNull String endpointId) {
 			Log.d(TAG, "Disconnected from: " + endpointId);
-			ConnectionState state = endpointStates.remove(endpointId);
-			if (state == null) {
+			ConnectionTable.Entry state = connections.get(endpointId);
+			if (state == null || state.status() == STATUS_DISCONNECTED) {
 				Log.w(TAG, "onDisconnected: Endpoint ID " + endpointId + " not found in the endpoints map.");
 				return;
 			}
-			String deviceAddress = state.addressName;
-			addressNameToEndpointId.remove(deviceAddress); // Remove from the core mapping
-			if (state.status == STATUS_CONNECTED) {
+			String deviceAddress = state.addressName();
+			// Also releases the address name binding
+			putState(endpointId, deviceAddress, STATUS_DISCONNECTED, NodeState.ON_DISCONNECTED);
+			coalescer.discard(endpointId);
+			flowController.discard(endpointId);
+			linkQualityMonitor.forget(endpointId);
+			keepaliveMonitor.forget(endpointId);
+			if (state.status() == STATUS_CONNECTED) {
 				deviceConnectionListeners.forEach(l -> l.onDeviceDisconnected(endpointId, deviceAddress));
 			} else {
 				// Notify as a connection failed, as it never truly completed.
 				deviceConnectionListeners.forEach(l -> l.onConnectionFailed(endpointId, deviceAddress, Status.RESULT_CANCELED));
 			}
-			putState(endpointId, state.addressName, STATUS_DISCONNECTED, NodeState.ON_DISCONNECTED);
 		}
-	};
 
-	EndpointDiscoveryCallback endpointDiscoveryCallback = new EndpointDiscoveryCallback() {
 		@Override
-		public void onEndpointFound(@NonNull String endpointId, DiscoveredEndpointInfo info) {
-			Log.d(TAG, "Endpoint found: " + info.getEndpointName() + " with ID: " + endpointId);
-			if (localAddressName.equals(info.getEndpointName())) {
+		public void onEndpointFound(@NonNull String endpointId, @NonNull String endpointName) {
+			Log.d(TAG, "Endpoint found: " + endpointName + " with ID: " + endpointId);
+			if (localAddressName.equals(endpointName)) {
 				Log.w(TAG, "Node self auto-detect, address=" + localAddressName);
 				return;
 			}
 
-			// Add to addressNameToEndpointId if not already present
-			addressNameToEndpointId.put(info.getEndpointName(), endpointId);
-			ConnectionState state = endpointStates.get(endpointId);
+			connections.bindAddress(endpointName, endpointId);
+			ConnectionTable.Entry state = connections.get(endpointId);
 
 			// Check if this finding is really new
 			if (state != null) {
-				Log.i(TAG, "Endpoint " + info.getEndpointName() + " already connected or in pending state. Not requesting connection.");
+				Log.i(TAG, "Endpoint " + endpointName + " already connected or in pending state. Not requesting connection.");
 				return;
 			}
 
-			putState(endpointId, info.getEndpointName(), STATUS_FOUND, NodeState.ON_ENDPOINT_FOUND);
-			deviceConnectionListeners.forEach(l -> l.onEndpointFound(endpointId, info.getEndpointName()));
+			putState(endpointId, endpointName, STATUS_FOUND, NodeState.ON_ENDPOINT_FOUND);
+			deviceConnectionListeners.forEach(l -> l.onEndpointFound(endpointId, endpointName));
 			/*
 			 * We don't automatically request connection here. `NearbySignalMessenger`
 			 * will do that based on its session logic or explicit user action after discovering.
@@ -212,23 +254,26 @@ public class NearbyManager {
 
 		@Override
 		public void onEndpointLost(@NonNull String endpointId) {
-			ConnectionState state = endpointStates.get(endpointId);
+			ConnectionTable.Entry state = connections.get(endpointId);
 			if (state == null) {
 				Log.w(TAG, "onEndpointLost: unable to locate the endpoint with ID: " + endpointId);
 				return;
 			}
-			String endpointName = state.addressName;
+			String endpointName = state.addressName();
 			Log.d(TAG, "Endpoint lost: " + state + " (endpoint.idID: " + endpointId + ")");
 
 			// Remove from relevant maps if it's not a currently connected endpoint
 			// If it's connected, the onDisconnected callback will handle it.
-			if (state.status == STATUS_CONNECTED) {
-				DataLog.logNodeEvent(DataLog.NodeDiscoveryEvent.LOST, state.addressName, endpointId, "but still connected");
+			if (state.status() == STATUS_CONNECTED) {
+				DataLog.logNodeEvent(DataLog.NodeDiscoveryEvent.LOST, state.addressName(), endpointId, "but still connected");
+				return;
+			}
+			if (!connections.removeIfEpoch(endpointId, state.epoch())) {
+				Log.d(TAG, "Endpoint " + endpointId + " changed of state while being lost, ignored.");
 				return;
 			}
-			endpointStates.remove(endpointId);
 			Log.d(TAG, "lost.state=" + state);
-			NodeTransientStateRepository.getInstance().updateTransientNodeState(endpointName, NodeState.ON_ENDPOINT_LOST);
+			transientStates.updateTransientNodeState(endpointName, NodeState.ON_ENDPOINT_LOST);
 			deviceConnectionListeners.forEach(l -> l.onEndpointLost(endpointId, endpointName));
 		}
 	};
@@ -240,18 +285,79 @@ public class NearbyManager {
 	 * True if we are discovering.
 	 */
 	private volatile boolean isDiscovering = false;
+	/**
+	 * Encryption and routing of this node, bound once its messenger is created.
+	 */
+	private volatile MeshServices services;
 
-	private NearbyManager(@NonNull Context context, @NonNull String localAddressName) {
-		this.connectionsClient = Nearby.getConnectionsClient(context);
+	/**
+	 * Creates a manager on top of the given transport.
+	 * Outside the singleton, this is intended for tests running several nodes in the same process:
+	 * each one is given its own transient states and bound to its own {@link MeshServices}.
+	 *
+	 * @param transport        the link layer used to reach neighbors
+	 * @param localAddressName the address name of the host node, used as advertising name
+	 * @param transientStates  the repository receiving the connection states of the neighbors
+	 */
+	@VisibleForTesting
+	NearbyManager(@NonNull MeshTransport transport, @NonNull String localAddressName,
+	              @NonNull NodeTransientStateRepository transientStates) {
+		this.transport = transport;
 		this.localAddressName = localAddressName;
-		this.executorService = Executors.newSingleThreadExecutor();
+		this.transientStates = transientStates;
+		this.outboundLanes = new KeyedLaneExecutor(Executors.newFixedThreadPool(KeyedLaneExecutor.DEFAULT_LANE_COUNT),
+				KeyedLaneExecutor.DEFAULT_LANE_COUNT, Clock.SYSTEM, PriorityTaskScheduler.DEFAULT_MAX_WAIT_MILLIS);
+		this.outboundLanes.setFailureListener(cause -> Log.e(TAG, "Outgoing task failed.", cause));
+		this.transmissionScheduler = Executors.newSingleThreadScheduledExecutor();
+		this.flowController = new EndpointFlowController(transmissionScheduler, this::dispatchPayload,
+				EndpointFlowController.DEFAULT_WINDOW, EndpointFlowController.DEFAULT_MAX_QUEUED,
+				EndpointFlowController.DEFAULT_IN_FLIGHT_TIMEOUT_MILLIS);
+		this.flowController.setCongestionListener(this::onCongestionChanged);
+		this.coalescer = new OutboundCoalescer(transmissionScheduler, this::sendPayload, this::acceptsBatches,
+				OutboundCoalescer.DEFAULT_WINDOW_MILLIS, OutboundCoalescer.DEFAULT_BUDGET_BYTES);
+		this.keepaliveMonitor = new KeepaliveMonitor(transmissionScheduler, Clock.SYSTEM, linkQualityMonitor,
+				this::sendHeartbeat, KeepaliveMonitor.DEFAULT_INTERVAL_MILLIS, KeepaliveMonitor.DEFAULT_TICK_MILLIS);
+		this.keepaliveMonitor.setLivenessListener(new KeepaliveMonitor.LivenessListener() {
+			@Override
+			public void onSuspected(@NonNull String endpointId, double phi) {
+				onLivenessChanged(endpointId, true, phi);
+			}
+
+			@Override
+			public void onRecovered(@NonNull String endpointId) {
+				onLivenessChanged(endpointId, false, 0.0);
+			}
+		});
+		this.keepaliveMonitor.start();
+		transport.setListener(transportListener);
 	}
 
 	public static NearbyManager getInstance(@NonNull Context context, @NonNull String localName) {
 		if (INSTANCE == null) {
 			synchronized (NearbyManager.class) {
 				if (INSTANCE == null) {
-					INSTANCE = new NearbyManager(context, localName);
+					INSTANCE = new NearbyManager(new NearbyConnectionsTransport(context), localName,
+							NodeTransientStateRepository.getInstance());
+				}
+			}
+		}
+		return INSTANCE;
+	}
+
+	/**
+	 * Initializes the singleton on top of a custom transport, such as a node of
+	 * {@link org.sedo.satmesh.nearby.transport.LoopbackMeshNetwork}.
+	 * Has no effect on the transport if the manager is already initialized.
+	 *
+	 * @param transport the link layer used to reach neighbors
+	 * @param localName the address name of the host node
+	 * @return the singleton instance
+	 */
+	public static NearbyManager getInstance(@NonNull MeshTransport transport, @NonNull String localName) {
+		if (INSTANCE == null) {
+			synchronized (NearbyManager.class) {
+				if (INSTANCE == null) {
+					INSTANCE = new NearbyManager(transport, localName, NodeTransientStateRepository.getInstance());
 				}
 			}
 		}
@@ -265,9 +371,38 @@ public class NearbyManager {
 		return INSTANCE;
 	}
 
-	private void putState(@NonNull String endpointId, @NonNull String addressName, @ConnectivityStatus int status, @NonNull NodeState state) {
-		endpointStates.put(endpointId, new ConnectionState(addressName, status));
-		NodeTransientStateRepository.getInstance().updateTransientNodeState(addressName, state);
+	/**
+	 * Binds the services the manager relies on to encrypt and route the messages.
+	 *
+	 * @param services the services of this node, usually its {@link NearbySignalMessenger}
+	 */
+	void bindServices(@NonNull MeshServices services) {
+		this.services = services;
+	}
+
+	@NonNull
+	private MeshServices services() {
+		MeshServices bound = services;
+		if (bound == null) {
+			throw new IllegalStateException("No services bound to the nearby manager of " + localAddressName);
+		}
+		return bound;
+	}
+
+	private void dispatchMessage(@NonNull String endpointId, @NonNull NearbyMessage message, long payloadId) {
+		if (message.getPayloadContentCase() == NearbyMessage.PayloadContentCase.HEARTBEAT) {
+			// Link level probes stop here
+			Heartbeat heartbeat = message.getHeartbeat();
+			keepaliveMonitor.onProbeReceived(endpointId, new KeepaliveMonitor.Probe(
+					heartbeat.getTimestamp(), heartbeat.getEchoTimestamp(), heartbeat.getEchoDelayMillis()));
+			return;
+		}
+		payloadListeners.forEach(l -> l.onMessageReceived(endpointId, message, payloadId));
+	}
+
+	private void putState(@NonNull String endpointId, @NonNull String addressName, @ConnectionTable.ConnectivityStatus int status, @NonNull NodeState state) {
+		connections.put(endpointId, addressName, status);
+		transientStates.updateTransientNodeState(addressName, state);
 	}
 
 	/**
@@ -314,6 +449,157 @@ public class NearbyManager {
 		}
 	}
 
+	/**
+	 * Adds the listener for the congestion events of the links.
+	 *
+	 * @param listener The implementation of {@link BackpressureListener}.
+	 */
+	public void addBackpressureListener(BackpressureListener listener) {
+		if (listener != null && !this.backpressureListeners.contains(listener)) {
+			this.backpressureListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Removes the listener for the congestion events of the links.
+	 *
+	 * @param listener The implementation of {@link BackpressureListener}.
+	 */
+	public void removeBackpressureListener(BackpressureListener listener) {
+		if (listener != null) {
+			this.backpressureListeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the link toward the specified neighbor is congested.
+	 * Senders should defer the traffic that can wait. Non neighbors are never congested.
+	 *
+	 * @param addressName The SignalProtocolAddress name of the neighbor.
+	 */
+	public boolean isBackpressured(@Nullable String addressName) {
+		String endpointId = getLinkedEndpointId(addressName);
+		return endpointId != null && flowController.isCongested(endpointId);
+	}
+
+	/**
+	 * Returns the number of payloads waiting to be handed over to the transport for the endpoint.
+	 */
+	public int getQueueDepth(@NonNull String endpointId) {
+		return flowController.getQueueDepth(endpointId);
+	}
+
+	/**
+	 * Returns the number of payloads in flight toward the endpoint.
+	 */
+	public int getInFlightCount(@NonNull String endpointId) {
+		return flowController.getInFlightCount(endpointId);
+	}
+
+	/**
+	 * Returns the flow control statistics of each endpoint, keyed by endpoint ID.
+	 */
+	@NonNull
+	public Map<String, EndpointFlowController.FlowStats> getFlowStats() {
+		return flowController.getStats();
+	}
+
+	/**
+	 * Returns the optional features advertised by the neighbors, keyed by address name.
+	 */
+	@NonNull
+	public PeerCapabilities getPeerCapabilities() {
+		return peerCapabilities;
+	}
+
+	/**
+	 * Returns the estimator of the quality of the links toward the neighbors, keyed by endpoint ID.
+	 */
+	@NonNull
+	public LinkQualityMonitor getLinkQualityMonitor() {
+		return linkQualityMonitor;
+	}
+
+	/**
+	 * Returns the quality of the link toward a neighbor, or {@code null} if it isn't connected
+	 * or nothing is known about its link yet.
+	 *
+	 * @param addressName The SignalProtocolAddress name of the neighbor.
+	 */
+	@Nullable
+	public LinkQualityMonitor.LinkQuality getLinkQuality(@Nullable String addressName) {
+		String endpointId = getLinkedEndpointId(addressName);
+		return endpointId == null ? null : linkQualityMonitor.getQuality(endpointId);
+	}
+
+	/**
+	 * Returns the ETX-style cost of the link toward a neighbor, in
+	 * {@link LinkQualityMonitor#LINK_COST_UNIT}s: a unit if nothing is known about it.
+	 *
+	 * @param addressName The SignalProtocolAddress name of the neighbor.
+	 * @see LinkQualityMonitor#linkCost(LinkQualityMonitor.LinkQuality)
+	 */
+	public int getLinkCost(@Nullable String addressName) {
+		return LinkQualityMonitor.linkCost(getLinkQuality(addressName));
+	}
+
+	/**
+	 * Adds the listener for the liveness of the neighbors.
+	 *
+	 * @param listener The implementation of {@link NeighborLivenessListener}.
+	 */
+	public void addNeighborLivenessListener(NeighborLivenessListener listener) {
+		if (listener != null && !this.livenessListeners.contains(listener)) {
+			this.livenessListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Removes the listener for the liveness of the neighbors.
+	 *
+	 * @param listener The implementation of {@link NeighborLivenessListener}.
+	 */
+	public void removeNeighborLivenessListener(NeighborLivenessListener listener) {
+		if (listener != null) {
+			this.livenessListeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the specified neighbor is connected but stopped answering the
+	 * keepalive probes: its link is most probably dead. Non neighbors are never suspected.
+	 *
+	 * @param addressName The SignalProtocolAddress name of the neighbor.
+	 */
+	public boolean isNeighborSuspected(@Nullable String addressName) {
+		String endpointId = getLinkedEndpointId(addressName);
+		return endpointId != null && keepaliveMonitor.isSuspected(endpointId);
+	}
+
+	private void onLivenessChanged(@NonNull String endpointId, boolean suspected, double phi) {
+		String addressName = getAddressNameForEndpoint(endpointId);
+		if (addressName == null) {
+			return;
+		}
+		if (suspected) {
+			Log.w(TAG, "Neighbor " + addressName + " (Endpoint ID: " + endpointId + ") suspected dead, phi=" + phi);
+			transientStates.updateTransientNodeState(addressName, NodeState.ON_DISCONNECTED);
+			livenessListeners.forEach(l -> l.onNeighborSuspected(addressName));
+		} else {
+			Log.i(TAG, "Neighbor " + addressName + " (Endpoint ID: " + endpointId + ") beats again.");
+			transientStates.updateTransientNodeState(addressName, NodeState.ON_CONNECTED);
+			livenessListeners.forEach(l -> l.onNeighborRecovered(addressName));
+		}
+	}
+
+	private void onCongestionChanged(@NonNull String endpointId, boolean congested) {
+		String addressName = getAddressNameForEndpoint(endpointId);
+		Log.d(TAG, "Endpoint " + endpointId + " (" + addressName + ") congested=" + congested);
+		if (addressName != null) {
+			backpressureListeners.forEach(l -> l.onBackpressureChanged(addressName, congested));
+		}
+	}
+
 	/**
 	 * Returns the SignalProtocolAddress name associated with a given Nearby endpoint ID.
 	 * It checks both currently connected and pending/incoming connections.
@@ -323,22 +609,22 @@ public class NearbyManager {
 	 */
 	@Nullable
 	public String getAddressNameForEndpoint(String endpointId) {
-		ConnectionState state = endpointStates.get(endpointId);
-		return state != null ? state.addressName : null;
+		return connections.getAddressName(endpointId);
 	}
 
+	/**
+	 * Returns the address names of the connected neighbors.
+	 * The list is an immutable snapshot, maintained on connection state changes.
+	 */
 	@NonNull
 	protected List<String> getConnectedEndpointsAddressNames() {
-		return endpointStates.values().stream().
-				filter(connectionState -> connectionState.status == NearbyManager.STATUS_CONNECTED)
-				.map(connectionState -> connectionState.addressName)
-				.collect(Collectors.toList());
+		return connections.getConnectedAddressNames();
 	}
 
 	/**
 	 * Gets the linked endpoint ID to the specified node address name.
-	 * This relies on the `addressNameToEndpointId` map which is populated
-	 * upon successful connection or connection initiation.
+	 * This relies on the connection table, whose address index is populated
+	 * upon discovery, connection initiation or successful connection.
 	 *
 	 * @param addressName The SignalProtocolAddress name to look up.
 	 * @return The associated endpoint ID, or null if not found.
@@ -348,7 +634,7 @@ public class NearbyManager {
 		if (addressName == null) {
 			return null;
 		}
-		return addressNameToEndpointId.get(addressName);
+		return connections.getEndpointId(addressName);
 	}
 
 	/**
@@ -367,27 +653,25 @@ public class NearbyManager {
 			Log.i(TAG, "Already advertising, skipping startAdvertising call.");
 			return;
 		}
-		AdvertisingOptions advertisingOptions = new AdvertisingOptions.Builder()
-				.setStrategy(STRATEGY).build();
-		connectionsClient.startAdvertising(
-						this.localAddressName,
-						SERVICE_ID,
-						connectionLifecycleCallback,
-						advertisingOptions
-				).addOnSuccessListener(unused -> {
-					Log.d(TAG, "Advertising started successfully");
+		transport.startAdvertising(this.localAddressName, new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+				Log.d(TAG, "Advertising started successfully");
+				isAdvertising = true;
+			}
+
+			@Override
+			public void onFailure(@NonNull Exception e) {
+				if (e.getMessage() != null && e.getMessage().contains("STATUS_ALREADY_ADVERTISING")) {
+					Log.d(TAG, "Advertising already started successfully");
 					isAdvertising = true;
-				})
-				.addOnFailureListener(e -> {
-					if (e.getMessage() != null && e.getMessage().contains("STATUS_ALREADY_ADVERTISING")) {
-						Log.d(TAG, "Advertising already started successfully");
-						isAdvertising = true;
-						return;
-					}
-					if (!isAdvertising) {
-						Log.e(TAG, "Failed to start advertising", e);
-					}
-				});
+					return;
+				}
+				if (!isAdvertising) {
+					Log.e(TAG, "Failed to start advertising", e);
+				}
+			}
+		});
 	}
 
 	/**
@@ -398,7 +682,7 @@ public class NearbyManager {
 			Log.i(TAG, "Not advertising, skipping stopAdvertising call.");
 			return;
 		}
-		connectionsClient.stopAdvertising();
+		transport.stopAdvertising();
 		isAdvertising = false;
 		Log.d(TAG, "Advertising stopped");
 	}
@@ -414,24 +698,24 @@ public class NearbyManager {
 	 * @param remoteAddressName The SignalProtocolAddress name of the remote device. This helps track the connection.
 	 */
 	public void requestConnection(@NonNull String remoteEndpointId, @NonNull String remoteAddressName) {
-		ConnectionState state = endpointStates.get(remoteEndpointId);
+		ConnectionTable.Entry state = connections.get(remoteEndpointId);
 		if (state != null) {
-			if (state.status == STATUS_CONNECTED) {
+			if (state.status() == STATUS_CONNECTED) {
 				Log.i(TAG, "Already connected to " + remoteAddressName + ". Skipping connection request.");
-				NodeTransientStateRepository.getInstance().updateTransientNodeState(remoteAddressName, NodeState.ON_CONNECTED);
+				transientStates.updateTransientNodeState(remoteAddressName, NodeState.ON_CONNECTED);
 				return;
 			}
-			if (state.status == STATUS_INITIATED_FROM_REMOTE) {
+			if (state.status() == STATUS_INITIATED_FROM_REMOTE) {
 				Log.i(TAG, "Incoming connection already initiated by " + remoteAddressName + ". Skipping outgoing request.");
-				NodeTransientStateRepository.getInstance().updateTransientNodeState(remoteAddressName, NodeState.ON_CONNECTING);
+				transientStates.updateTransientNodeState(remoteAddressName, NodeState.ON_CONNECTING);
 				return;
 			}
 		}
 
 		Log.d(TAG, "Requesting connection to " + remoteAddressName + " (EndpointId: " + remoteEndpointId + ")");
-		addressNameToEndpointId.put(remoteAddressName, remoteEndpointId); // Store the mapping early
+		connections.bindAddress(remoteAddressName, remoteEndpointId); // Store the mapping early
 
-		connectionsClient.requestConnection(this.localAddressName, remoteEndpointId, connectionLifecycleCallback);
+		transport.requestConnection(this.localAddressName, remoteEndpointId);
 		putState(remoteEndpointId, remoteAddressName, STATUS_INITIATED_FROM_HOST, NodeState.ON_CONNECTING); // Mark as pending
 	}
 
@@ -441,15 +725,15 @@ public class NearbyManager {
 	 * @param remoteEndpointId The ID of the remote endpoint to accept the connection from.
 	 */
 	public void acceptConnection(@NonNull String remoteEndpointId) {
-		ConnectionState state = endpointStates.get(remoteEndpointId);
-		if (state == null || state.status != STATUS_INITIATED_FROM_REMOTE) {
+		ConnectionTable.Entry state = connections.get(remoteEndpointId);
+		if (state == null || state.status() != STATUS_INITIATED_FROM_REMOTE) {
 			Log.w(TAG, "Attempted to accept connection from " + remoteEndpointId + " which was not in incoming connections.");
 			return;
 		}
 
 		Log.d(TAG, "Accepting connection from: " + remoteEndpointId);
 		// Actual connection establishment/failure handled in onConnectionResult
-		connectionsClient.acceptConnection(remoteEndpointId, payloadCallback);
+		transport.acceptConnection(remoteEndpointId);
 	}
 
 	/**
@@ -458,11 +742,11 @@ public class NearbyManager {
 	 * @param remoteEndpointId The ID of the remote endpoint to reject the connection from.
 	 */
 	public void rejectConnection(@NonNull String remoteEndpointId) {
-		ConnectionState state = endpointStates.get(remoteEndpointId);
-		if (state != null && state.status == STATUS_INITIATED_FROM_REMOTE) {
-			connectionsClient.rejectConnection(remoteEndpointId);
+		ConnectionTable.Entry state = connections.get(remoteEndpointId);
+		if (state != null && state.status() == STATUS_INITIATED_FROM_REMOTE) {
+			transport.rejectConnection(remoteEndpointId);
 			Log.d(TAG, "Rejected connection from: " + remoteEndpointId);
-			// addressNameToEndpointId will be cleaned up by onConnectionResult due to status failure
+			// The connection table will be updated by onConnectionResult due to status failure
 		} else {
 			Log.w(TAG, "Attempted to reject connection from " + remoteEndpointId + " which was not in incoming connections.");
 		}
@@ -474,9 +758,9 @@ public class NearbyManager {
 	 * @param remoteEndpointId The ID of the remote endpoint to disconnect from.
 	 */
 	public void disconnectFromEndpoint(@NonNull String remoteEndpointId) {
-		ConnectionState state = endpointStates.get(remoteEndpointId);
-		if (state != null && state.status == STATUS_CONNECTED) {
-			connectionsClient.disconnectFromEndpoint(remoteEndpointId);
+		ConnectionTable.Entry state = connections.get(remoteEndpointId);
+		if (state != null && state.status() == STATUS_CONNECTED) {
+			transport.disconnectFromEndpoint(remoteEndpointId);
 			Log.d(TAG, "Requested disconnection from: " + remoteEndpointId);
 			// Cleanup maps will happen in onDisconnected callback
 		} else {
@@ -492,24 +776,25 @@ public class NearbyManager {
 			Log.i(TAG, "Already discovering, skipping startDiscovery call.");
 			return;
 		}
-		DiscoveryOptions discoveryOptions = new DiscoveryOptions.Builder()
-				.setStrategy(STRATEGY).build();
+		transport.startDiscovery(new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+				Log.d(TAG, "Discovering started successfully!");
+				isDiscovering = true;
+			}
 
-		connectionsClient.startDiscovery(SERVICE_ID, endpointDiscoveryCallback, discoveryOptions)
-				.addOnSuccessListener(unused -> {
+			@Override
+			public void onFailure(@NonNull Exception e) {
+				if (e.getMessage() != null && e.getMessage().contains("STATUS_ALREADY_DISCOVERING")) {
 					Log.d(TAG, "Discovering started successfully!");
 					isDiscovering = true;
-				})
-				.addOnFailureListener(e -> {
-					if (e.getMessage() != null && e.getMessage().contains("STATUS_ALREADY_DISCOVERING")) {
-						Log.d(TAG, "Discovering started successfully!");
-						isDiscovering = true;
-						return;
-					}
-					if (!isDiscovering) {
-						Log.w(TAG, "Discovering failed!", e);
-					}
-				});
+					return;
+				}
+				if (!isDiscovering) {
+					Log.w(TAG, "Discovering failed!", e);
+				}
+			}
+		});
 	}
 
 	/**
@@ -520,7 +805,7 @@ public class NearbyManager {
 			Log.i(TAG, "Not discovering, skipping stopDiscovery call.");
 			return;
 		}
-		connectionsClient.stopDiscovery();
+		transport.stopDiscovery();
 		isDiscovering = false;
 		Log.d(TAG, "Discovery stopped");
 	}
@@ -534,18 +819,18 @@ public class NearbyManager {
 			return;
 		}
 		// Disconnect from all active connections
-		Set<String> endpointsToDisconnect = endpointStates.entrySet().stream()
-				.filter(entry -> entry.getValue().status == STATUS_CONNECTED)
-				.map(Map.Entry::getKey)
-				.collect(java.util.stream.Collectors.toSet());
+		List<String> endpointsToDisconnect = connections.getConnectedEndpointIds();
 		Log.d(TAG, "Disconnecting from " + endpointsToDisconnect.size() + " active connections.");
-		endpointsToDisconnect.forEach(connectionsClient::disconnectFromEndpoint);
+		endpointsToDisconnect.forEach(transport::disconnectFromEndpoint);
 		stopDiscovery();
 		stopAdvertising();
 		// Clear all maps
-		endpointStates.clear();
-		addressNameToEndpointId.clear();
-		executorService.shutdownNow();
+		connections.clear();
+		coalescer.discardAll();
+		flowController.discardAll();
+		keepaliveMonitor.stop();
+		transmissionScheduler.shutdownNow();
+		outboundLanes.shutdown();
 		Log.d(TAG, "All Nearby interactions stopped and connections reset.");
 	}
 
@@ -562,7 +847,21 @@ public class NearbyManager {
 	protected void encryptAndSendInternal(
 			@Nullable String endpointId, @NonNull String recipientAddressName,
 			@NonNull NearbyMessageBody plainMessageBody, @NonNull TransmissionCallback transmissionCallback) {
-		executorService.execute(() -> {
+		encryptAndSendInternal(endpointId, recipientAddressName, plainMessageBody, transmissionCallback,
+				TrafficClass.of(plainMessageBody));
+	}
+
+	/**
+	 * Same as {@link #encryptAndSendInternal(String, String, NearbyMessageBody, TransmissionCallback)},
+	 * with an explicit scheduling class.
+	 *
+	 * @param trafficClass the priority of the encryption and the sending among the outgoing work
+	 */
+	protected void encryptAndSendInternal(
+			@Nullable String endpointId, @NonNull String recipientAddressName,
+			@NonNull NearbyMessageBody plainMessageBody, @NonNull TransmissionCallback transmissionCallback,
+			@NonNull TrafficClass trafficClass) {
+		outboundLanes.execute(recipientAddressName, trafficClass, () -> {
 			try {
 				final String endpoint = endpointId == null ? getLinkedEndpointId(recipientAddressName) : endpointId;
 				if (endpoint == null) {
@@ -570,10 +869,27 @@ public class NearbyManager {
 					transmissionCallback.onFailure(null, null); // Notify failure
 					return;
 				}
-				CiphertextMessage ciphertextMessage = NearbySignalMessenger.getInstance().encrypt(plainMessageBody.toByteArray(), recipientAddressName);
-				// Encapsulate the message
-				NearbyMessage nearbyMessage = NearbyMessage.newBuilder().setExchange(false).setBody(ByteString.copyFrom(ciphertextMessage.serialize())).build();
-				sendNearbyMessage(endpoint, nearbyMessage.toByteArray(), transmissionCallback);
+				MeshServices services = services();
+				// Compacted here, in the order of the sends on the link
+				RoutingWireCodec.Encoded encoded = services.encodeForNeighbor(plainMessageBody, recipientAddressName);
+				CiphertextMessage ciphertextMessage = services.encrypt(encoded.body().toByteArray(), recipientAddressName);
+				TransmissionCallback callback = transmissionCallback;
+				if (encoded.definesRefs()) {
+					callback = new TransmissionCallback() {
+						@Override
+						public void onSuccess(@NonNull Payload payload) {
+							encoded.onDelivered();
+							transmissionCallback.onSuccess(payload);
+						}
+
+						@Override
+						public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+							transmissionCallback.onFailure(payload, cause);
+						}
+					};
+				}
+				// Encapsulate the message, the ciphertext is copied once, into the payload
+				sendNearbyMessage(endpoint, EnvelopeCodec.encodeBody(ciphertextMessage.serialize()), callback);
 				Log.d(TAG, "NearbyMessage (type: ENCRYPTED_DATA) sent to " + recipientAddressName);
 			} catch (Exception e) {
 				Log.e(TAG, "Error serializing or sending NearbyMessage to " + recipientAddressName, e);
@@ -624,16 +940,28 @@ public class NearbyManager {
 			@NonNull String recipientAddressName, @NonNull TransmissionCallback transmissionCallback,
 			@NonNull TransmissionCallback routeTransmissionCallback,
 			@Nullable Consumer<Boolean> onDiscoveryInitiatedCallback) {
-		executorService.execute(() -> {
+		sendRoutableNearbyMessageInternal(plainMessageBody, recipientAddressName, transmissionCallback,
+				routeTransmissionCallback, onDiscoveryInitiatedCallback, TrafficClass.of(plainMessageBody));
+	}
+
+	/**
+	 * Same as {@link #sendRoutableNearbyMessageInternal(NearbyMessageBody, String, TransmissionCallback, TransmissionCallback, Consumer)},
+	 * with an explicit scheduling class, such as {@link TrafficClass#BULK} for retransmissions.
+	 *
+	 * @param trafficClass the priority of the message among the outgoing work
+	 */
+	protected void sendRoutableNearbyMessageInternal(
+			@NonNull NearbyMessageBody plainMessageBody,
+			@NonNull String recipientAddressName, @NonNull TransmissionCallback transmissionCallback,
+			@NonNull TransmissionCallback routeTransmissionCallback,
+			@Nullable Consumer<Boolean> onDiscoveryInitiatedCallback, @NonNull TrafficClass trafficClass) {
+		outboundLanes.execute(recipientAddressName, trafficClass, () -> {
 			final String endpointId = getLinkedEndpointId(recipientAddressName);
 			if (endpointId == null) {
 				Log.e(TAG, "There is no direct connection to address '" + recipientAddressName + "', we are going to attempt to find a route.");
 				try {
-					NearbyRouteManager nearbyRouteManager = NearbySignalMessenger.getInstance().getNearbyRouteManager();
-					nearbyRouteManager.discoverRouteIfNeeded(recipientAddressName,
-							routeWithUsage -> nearbyRouteManager.sendMessageThroughRoute(
-									recipientAddressName, this.localAddressName, routeWithUsage, plainMessageBody, routeTransmissionCallback),
-							onDiscoveryInitiatedCallback, localAddressName);
+					services().sendThroughRoute(recipientAddressName, plainMessageBody, routeTransmissionCallback,
+							onDiscoveryInitiatedCallback);
 				} catch (Exception e) {
 					Log.e(TAG, "Handling route for message transmission failed.", e);
 					transmissionCallback.onFailure(null, e); // Notify failure
@@ -641,13 +969,17 @@ public class NearbyManager {
 				return;
 			}
 
-			encryptAndSendInternal(endpointId, recipientAddressName, plainMessageBody, transmissionCallback);
+			encryptAndSendInternal(endpointId, recipientAddressName, plainMessageBody, transmissionCallback, trafficClass);
 		});
 	}
 
 	/**
 	 * Helper method to send a raw byte array payload over a connection.
 	 * This is the method `NearbySignalMessenger` will call.
+	 * <p>
+	 * The data, a serialized {@link NearbyMessage}, may be coalesced with other messages sent to
+	 * the same endpoint in a short window; the callback is notified for this message only.
+	 * </p>
 	 *
 	 * @param endpointId The ID of the endpoint to send the message to.
 	 * @param data       The raw byte array to send.
@@ -660,38 +992,132 @@ public class NearbyManager {
 			if (callback != null) callback.onFailure(null, null);
 			return;
 		}
+		coalescer.enqueue(endpointId, data, callback);
+	}
+
+	/**
+	 * Tells whether the neighbor behind an endpoint advertised {@link PeerCapabilities#BATCHING}:
+	 * the nodes of the previous releases drop the batches, with all their frames.
+	 */
+	private boolean acceptsBatches(@NonNull String endpointId) {
+		String addressName = getAddressNameForEndpoint(endpointId);
+		return addressName != null && peerCapabilities.supports(addressName, PeerCapabilities.BATCHING);
+	}
+
+	/**
+	 * Submits a payload, single message or batch, to the flow control of its endpoint.
+	 * The callback is notified once the transfer completes.
+	 */
+	private void sendPayload(@NonNull String endpointId, @NonNull Payload payload, @NonNull TransmissionCallback callback) {
+		final int size = payload.asBytes() == null ? 0 : payload.asBytes().length;
+		flowController.submit(endpointId, payload, new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload sent) {
+				Log.d(TAG, "Payload ID " + sent.getId() + " sent successfully to " + endpointId);
+				DataLog.logTransmissionEvent(TransmissionEventType.SEND, endpointId, sent.getId(), size, TransmissionStatus.SUCCESS);
+				callback.onSuccess(sent);
+			}
+
+			@Override
+			public void onFailure(@Nullable Payload failed, @Nullable Exception cause) {
+				Log.e(TAG, "Failed to send Payload ID " + payload.getId() + " to " + endpointId, cause);
+				DataLog.logTransmissionEvent(TransmissionEventType.SEND, endpointId, payload.getId(), size, TransmissionStatus.FAILURE);
+				callback.onFailure(failed, cause);
+			}
+		});
+	}
+
+	/**
+	 * Sends a STREAM payload to a neighbor. Streams bypass the coalescing and the flow control
+	 * of the small messages: a single stream payload carries a whole transfer, paced by the
+	 * transport as the stream is read.
+	 *
+	 * @param endpointId The ID of the endpoint to send the stream to.
+	 * @param payload    The STREAM payload.
+	 * @param onAccepted Notified of whether the transport accepted the payload. Completion of the
+	 *                   transfer is reported through {@link PayloadListener#onPayloadTransferUpdate}.
+	 */
+	public void sendStreamPayload(@NonNull String endpointId, @NonNull Payload payload, @NonNull Consumer<Boolean> onAccepted) {
+		transport.sendPayload(endpointId, payload, new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+				DataLog.logTransmissionEvent(TransmissionEventType.SEND, endpointId, payload.getId(), 0, TransmissionStatus.SUCCESS);
+				onAccepted.accept(true);
+			}
+
+			@Override
+			public void onFailure(@NonNull Exception e) {
+				Log.e(TAG, "Transport rejected stream Payload ID " + payload.getId() + " to " + endpointId, e);
+				DataLog.logTransmissionEvent(TransmissionEventType.SEND, endpointId, payload.getId(), 0, TransmissionStatus.FAILURE);
+				onAccepted.accept(false);
+			}
+		});
+	}
+
+	/**
+	 * Sends a keepalive probe to a neighbor. Probes are sent in clear and bypass the coalescing
+	 * and the flow control: they are tiny, and have to reach the neighbor when nothing else does.
+	 */
+	private void sendHeartbeat(@NonNull String endpointId, @NonNull KeepaliveMonitor.Probe probe) {
+		NearbyMessage message = NearbyMessage.newBuilder()
+				.setHeartbeat(Heartbeat.newBuilder()
+						.setTimestamp(probe.timestamp())
+						.setEchoTimestamp(probe.echoTimestamp())
+						.setEchoDelayMillis(probe.echoDelayMillis()))
+				.build();
+		Payload payload = Payload.fromBytes(message.toByteArray());
+		transport.sendPayload(endpointId, payload, new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+			}
+
+			@Override
+			public void onFailure(@NonNull Exception e) {
+				Log.w(TAG, "Transport rejected the keepalive probe to " + endpointId, e);
+				linkQualityMonitor.onSendFailed(endpointId);
+			}
+		});
+	}
 
-		Payload payload = Payload.fromBytes(data); // Create payload from bytes
-		connectionsClient.sendPayload(endpointId, payload)
-				.addOnSuccessListener(unused -> {
-					Log.d(TAG, "Payload ID " + payload.getId() + " sent successfully to " + endpointId);
-					DataLog.logTransmissionEvent(TransmissionEventType.SEND, endpointId, payload.getId(), data.length, TransmissionStatus.SUCCESS);
-					if (callback != null) {
-						callback.onSuccess(payload);
+	/**
+	 * Hands a payload over to the transport, on behalf of the flow controller.
+	 */
+	private void dispatchPayload(@NonNull String endpointId, @NonNull Payload payload, @NonNull MeshTransport.OperationCallback callback) {
+		// The peer takes any payload as a heartbeat, no probe is needed meanwhile
+		keepaliveMonitor.onSent(endpointId);
+		transport.sendPayload(endpointId, payload, new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+				callback.onSuccess();
+			}
+
+			@Override
+			public void onFailure(@NonNull Exception e) {
+				Log.e(TAG, "Transport rejected Payload ID " + payload.getId() + " to " + endpointId, e);
+				linkQualityMonitor.onSendFailed(endpointId);
+				callback.onFailure(e);
+				// The device is probably disconnected, try force disconnection
+				final ConnectionTable.Entry failedState = connections.get(endpointId);
+				if (failedState == null) {
+					Log.e(TAG, "Payload sending failed to endpoint=" + endpointId + " in unknown state.");
+					return;
+				}
+				outboundLanes.execute(endpointId, TrafficClass.CONTROL, () -> {
+					ConnectionTable.Entry state = connections.get(endpointId);
+					if (state == null || state.epoch() != failedState.epoch()) {
+						// The endpoint changed of state in the meantime, e.g. it reconnected
+						Log.d(TAG, "Stale sending failure on endpoint=" + endpointId + " ignored.");
+						return;
 					}
-				})
-				.addOnFailureListener(e -> {
-					Log.e(TAG, "Failed to send Payload ID " + payload.getId() + " to " + endpointId, e);
-					DataLog.logTransmissionEvent(TransmissionEventType.SEND, endpointId, payload.getId(), data.length, TransmissionStatus.FAILURE);
-					if (callback != null) {
-						callback.onFailure(payload, e);
+					if (state.status() == STATUS_CONNECTED) {
+						// Cleanup will happen in onDisconnected callback
+						disconnectFromEndpoint(endpointId);
+					} else {
+						connections.removeIfEpoch(endpointId, state.epoch());
 					}
-					// The device is probably disconnected, try force disconnection
-					executorService.execute(() -> {
-						ConnectionState state = endpointStates.remove(endpointId);
-						if (state != null) {
-							// Try disconnection
-							disconnectFromEndpoint(endpointId);
-						} else {
-							String address = addressNameToEndpointId.entrySet().stream().filter(entry -> endpointId.equals(entry.getValue()))
-									.map(Map.Entry::getKey).findFirst().orElse(null);
-							Log.e(TAG, "Payload sending failed to endpoint=" + endpointId + " in unknown state and with extracted address=" + address);
-							if (address != null) {
-								addressNameToEndpointId.remove(address);
-							}
-						}
-					});
 				});
+			}
+		});
 	}
 
 	/**
@@ -706,8 +1132,8 @@ public class NearbyManager {
 	 */
 	public void onRouteFound(@NonNull String destinationAddressName, @NonNull RouteEntry routeEntry) {
 		Log.d(TAG, destinationAddressName + ", route=" + routeEntry);
-		NodeTransientStateRepository.getInstance().updateTransientNodeState(destinationAddressName, NodeState.ON_CONNECTED);
-		NearbySignalMessenger.getInstance().onRouteFound(destinationAddressName);
+		transientStates.updateTransientNodeState(destinationAddressName, NodeState.ON_CONNECTED);
+		services().onRouteFound(destinationAddressName);
 	}
 
 	/**
@@ -723,8 +1149,8 @@ public class NearbyManager {
 	 */
 	public void onRouteNotFound(@NonNull String requestUuid, @NonNull String destinationAddressName, int finalStatus) {
 		Log.d(TAG, requestUuid + " " + destinationAddressName + " " + finalStatus);
-		NodeTransientStateRepository.getInstance().updateTransientNodeState(destinationAddressName, NodeState.ON_DISCONNECTED);
-		NearbySignalMessenger.getInstance().onRouteNotFound(destinationAddressName);
+		transientStates.updateTransientNodeState(destinationAddressName, NodeState.ON_DISCONNECTED);
+		services().onRouteNotFound(destinationAddressName);
 	}
 
 	/**
@@ -747,17 +1173,10 @@ public class NearbyManager {
 			@NonNull String originalSenderAddress, @NonNull NearbyMessageBody internalNearbyMessageBody,
 			long payloadId) {
 		try {
-			NearbySignalMessenger.getInstance().parseDecryptedMessage(internalNearbyMessageBody, originalSenderAddress, payloadId, true);
+			services().onRoutedMessageReceived(originalSenderAddress, internalNearbyMessageBody, payloadId);
 		} catch (Exception e) {
 			Log.e(TAG, "Error processing encrypted message from " + originalSenderAddress, e);
 		}
 	}
 
-	@IntDef({STATUS_INITIATED_FROM_REMOTE, STATUS_INITIATED_FROM_HOST, STATUS_CONNECTED, STATUS_DISCONNECTED, STATUS_FOUND})
-	@Retention(RetentionPolicy.SOURCE)
-	@interface ConnectivityStatus {
-	}
-
-	private record ConnectionState(@NonNull String addressName, @ConnectivityStatus int status) {
-	}
 }
@@ -1,27 +1,35 @@
 package org.sedo.satmesh.nearby;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.preference.PreferenceManager;
 
 import com.google.android.gms.nearby.connection.Payload;
 import com.google.protobuf.ByteString;
 
 import org.jetbrains.annotations.NotNull;
+import org.sedo.satmesh.R;
 import org.sedo.satmesh.model.Node;
 import org.sedo.satmesh.model.rt.BroadcastStatusEntry;
 import org.sedo.satmesh.model.rt.RouteEntry;
 import org.sedo.satmesh.model.rt.RouteRequestEntry;
 import org.sedo.satmesh.model.rt.RouteUsage;
 import org.sedo.satmesh.model.rt.RouteUsageBacktracking;
+import org.sedo.satmesh.nearby.codec.PeerCapabilities;
 import org.sedo.satmesh.nearby.data.RouteRepository;
 import org.sedo.satmesh.nearby.data.RouteWithUsage;
 import org.sedo.satmesh.nearby.data.SelectionCallback;
 import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.nearby.link.LinkQualityMonitor;
 import org.sedo.satmesh.proto.NearbyMessageBody;
 import org.sedo.satmesh.proto.NearbyMessageType;
+import org.sedo.satmesh.proto.RouteAdvertisement;
+import org.sedo.satmesh.proto.RouteBeacon;
 import org.sedo.satmesh.proto.RouteDestroyMessage;
 import org.sedo.satmesh.proto.RouteRequestMessage;
 import org.sedo.satmesh.proto.RouteResponseMessage;
@@ -30,10 +38,12 @@ import org.sedo.satmesh.proto.RoutedMessage;
 import org.sedo.satmesh.proto.RoutedMessageBody;
 import org.sedo.satmesh.ui.data.NodeRepository;
 import org.sedo.satmesh.ui.data.NodeRepository.NodeCallback;
+import org.sedo.satmesh.utils.Clock;
 import org.sedo.satmesh.utils.DataLog;
 import org.sedo.satmesh.utils.ObjectHolder;
 import org.whispersystems.libsignal.protocol.CiphertextMessage;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,10 +52,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -53,30 +68,114 @@ public class NearbyRouteManager {
 
 	// Constants
 	private static final long ROUTE_MAX_INACTIVITY_MILLIS = 12L * 60 * 60 * 1000; // 12 hours of inactivity before considering a route stale
-	private static final int DEFAULT_ROUTE_HOPS = 10; // Default max hops for route discovery
+	static final int DEFAULT_ROUTE_HOPS = 10; // Default max hops for route discovery
 	private static final long DEFAULT_ROUTE_TTL_MILLIS = 5L * 60 * 1000; // 5 minutes TTL for a route request message
+	// A known route costing more than twice a lossless path of its length isn't reused: the flood may find a better one
+	private static final double MAX_REUSED_ROUTE_COST_STRETCH = 2.0;
+	// A late route replaces the route in use only if this much cheaper, so that close costs don't flap
+	private static final double PREFERRED_ROUTE_COST_RATIO = 0.8;
+	// A larger routing table spans several beacons
+	private static final int MAX_ADVERTISEMENTS_PER_BEACON = 256;
+	// Prefix of the names the proactive route UUIDs are derived from
+	private static final String PROACTIVE_ROUTE_NAMESPACE = "satmesh-dv:";
 
 	private static final String TAG = "NearbyRouteManager";
 
 	private final NearbyManager nearbyManager;
+	private final MeshServices services;
 	private final NodeRepository nodeRepository;
 	private final RouteRepository routeRepository;
+	private final ForwardingTable forwardingTable = new ForwardingTable();
+	private final RouteAlternatives routeAlternatives = new RouteAlternatives(RouteAlternatives.DEFAULT_MAX_ROUTES);
+	private final PendingDiscoveries pendingDiscoveries = new PendingDiscoveries(PendingDiscoveries.DEFAULT_MAX_WAITERS,
+			DEFAULT_ROUTE_TTL_MILLIS + RouteRequestReaper.DEFAULT_GRACE_MILLIS);
+	private final ExpandingRing expandingRing = new ExpandingRing(ExpandingRing.DEFAULT_INITIAL_RADIUS, DEFAULT_ROUTE_HOPS,
+			ExpandingRing.DEFAULT_HOP_TIMEOUT_MILLIS, ExpandingRing.DEFAULT_MAX_LEARNED);
+	private final RouteRequestPipeline routeRequestPipeline = new RouteRequestPipeline(new RouteRequestStore());
+	private final RouteRepairs routeRepairs = new RouteRepairs(RouteRepairs.DEFAULT_MAX_RADIUS, RouteRepairs.DEFAULT_MAX_REPAIRS,
+			RouteRepairs.DEFAULT_MAX_BUFFERED);
 	private final ExecutorService executor;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final String localAddressName;
+	private final RouteRequestReaper requestReaper;
+	private final PeerCapabilities peerCapabilities;
+	private final DistanceVectorTable distanceVectors;
+	private final TrickleTimer beaconTimer;
+	// Neighbors owed a beacon listing all the routes, e.g. just connected
+	private final Set<String> fullBeaconNeighbors = ConcurrentHashMap.newKeySet();
+	private final SharedPreferences preferences;
+	private final String proactiveRoutingKey;
+	private final String relayPolicyKey;
+	private final RebroadcastSuppressor rebroadcastSuppressor;
+	// Held here: the preferences only keep a weak reference to their listeners
+	private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener;
+	private volatile boolean proactiveRouting;
 
 	/**
 	 * Constructor for NearbyRouteManager.
 	 *
-	 * @param nearbyManager Instance of NearbyManager for network operations.
-	 * @param context       the application context
-	 * @param executor      Executor service for background operations.
+	 * @param nearbyManager    Instance of NearbyManager for network operations.
+	 * @param services         The services of the host node, encrypting the routed messages.
+	 * @param context          the application context
+	 * @param executor         Executor service for background operations.
+	 * @param localAddressName The address name of the host node.
+	 * @param peerCapabilities The optional features supported by the neighbors.
 	 */
 	protected NearbyRouteManager(
-			@NonNull NearbyManager nearbyManager,
-			@NonNull Context context, @NonNull ExecutorService executor) {
+			@NonNull NearbyManager nearbyManager, @NonNull MeshServices services,
+			@NonNull Context context, @NonNull ExecutorService executor,
+			@NonNull String localAddressName, @NonNull PeerCapabilities peerCapabilities) {
+		this(nearbyManager, services, context, executor, localAddressName, peerCapabilities,
+				new NodeRepository(context), new RouteRepository(context));
+	}
+
+	/**
+	 * Same as {@link #NearbyRouteManager(NearbyManager, MeshServices, Context, ExecutorService, String, PeerCapabilities)},
+	 * over given repositories: each node of a mesh simulated in a single process keeps its
+	 * routing tables in its own database.
+	 *
+	 * @param nodeRepository  The nodes known by the host node.
+	 * @param routeRepository The routing tables of the host node.
+	 */
+	@VisibleForTesting
+	NearbyRouteManager(
+			@NonNull NearbyManager nearbyManager, @NonNull MeshServices services,
+			@NonNull Context context, @NonNull ExecutorService executor,
+			@NonNull String localAddressName, @NonNull PeerCapabilities peerCapabilities,
+			@NonNull NodeRepository nodeRepository, @NonNull RouteRepository routeRepository) {
 		this.nearbyManager = nearbyManager;
-		this.nodeRepository = new NodeRepository(context);
-		this.routeRepository = new RouteRepository(context);
+		this.services = services;
+		this.nodeRepository = nodeRepository;
+		this.routeRepository = routeRepository;
 		this.executor = executor;
+		this.peerCapabilities = peerCapabilities;
+		this.localAddressName = localAddressName;
+		this.requestReaper = new RouteRequestReaper(scheduler, Clock.SYSTEM,
+				expired -> executor.execute(() -> reapRouteRequests(expired)),
+				RouteRequestReaper.DEFAULT_TICK_MILLIS, RouteRequestReaper.DEFAULT_WHEEL_SIZE,
+				RouteRequestReaper.DEFAULT_GRACE_MILLIS);
+		executor.execute(this::trackStoredRouteRequests);
+		this.requestReaper.start();
+		this.distanceVectors = new DistanceVectorTable(localAddressName, Clock.SYSTEM, DEFAULT_ROUTE_HOPS,
+				DistanceVectorTable.DEFAULT_BROKEN_ROUTE_RETENTION_MILLIS);
+		this.beaconTimer = new TrickleTimer(scheduler, this::sendRouteBeacons,
+				TrickleTimer.DEFAULT_MIN_INTERVAL_MILLIS, TrickleTimer.DEFAULT_MAX_INTERVAL_MILLIS, new Random());
+		this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		this.proactiveRoutingKey = context.getString(R.string.pref_key_proactive_routing);
+		this.relayPolicyKey = context.getString(R.string.pref_key_route_request_relaying);
+		this.rebroadcastSuppressor = new RebroadcastSuppressor(
+				RebroadcastSuppressor.Policy.fromValue(preferences.getString(relayPolicyKey, null)),
+				RebroadcastSuppressor.DEFAULT_COUNTER_THRESHOLD, RebroadcastSuppressor.DEFAULT_MAX_ASSESSMENT_DELAY_MILLIS,
+				RebroadcastSuppressor.DEFAULT_MAX_SUPPRESSED, new Random());
+		this.preferenceListener = (sharedPreferences, key) -> {
+			if (proactiveRoutingKey.equals(key)) {
+				setProactiveRouting(sharedPreferences.getBoolean(key, false));
+			} else if (relayPolicyKey.equals(key)) {
+				rebroadcastSuppressor.setPolicy(RebroadcastSuppressor.Policy.fromValue(sharedPreferences.getString(key, null)));
+			}
+		};
+		preferences.registerOnSharedPreferenceChangeListener(preferenceListener);
+		setProactiveRouting(preferences.getBoolean(proactiveRoutingKey, false));
 	}
 
 	// Helper method for data collection
@@ -197,12 +296,31 @@ public class NearbyRouteManager {
 	private void broadcastRouteRequestToNeighbors(
 			@NonNull RouteRequestMessage routeRequestMessage, @Nullable String excludeSenderAddressName,
 			@NonNull Consumer<Integer> successCountCallback) {
+		broadcastRouteRequestToNeighbors(routeRequestMessage, excludeSenderAddressName, Collections.emptySet(), successCountCallback);
+	}
+
+	/**
+	 * Same as {@link #broadcastRouteRequestToNeighbors(RouteRequestMessage, String, Consumer)},
+	 * skipping as well the neighbors known to hold the request already.
+	 *
+	 * @param skippedNeighbors The address names of the neighbors not to send the request to.
+	 */
+	private void broadcastRouteRequestToNeighbors(
+			@NonNull RouteRequestMessage routeRequestMessage, @Nullable String excludeSenderAddressName,
+			@NonNull Set<String> skippedNeighbors, @NonNull Consumer<Integer> successCountCallback) {
 		Log.d(TAG, "Broadcasting RouteRequest with UUID: " + routeRequestMessage.getUuid() +
 				" to all neighbors (excluding: " + (excludeSenderAddressName != null ? excludeSenderAddressName : "none") + ")");
 
-		List<String> connectedNeighbors = nearbyManager.getConnectedEndpointsAddressNames();
-		if (excludeSenderAddressName != null) {
-			connectedNeighbors.removeIf(s -> s.equals(excludeSenderAddressName));
+		String destinationAddressName = routeRequestMessage.getDestinationNodeId();
+		List<String> connectedNeighbors = new ArrayList<>();
+		for (String neighbor : nearbyManager.getConnectedEndpointsAddressNames()) {
+			// Congested neighbors are skipped, unless it's the destination: they would delay the flood.
+			// Neighbors suspected dead are always skipped.
+			if (!neighbor.equals(excludeSenderAddressName) && !skippedNeighbors.contains(neighbor)
+					&& !nearbyManager.isNeighborSuspected(neighbor)
+					&& (neighbor.equals(destinationAddressName) || !nearbyManager.isBackpressured(neighbor))) {
+				connectedNeighbors.add(neighbor);
+			}
 		}
 		if (connectedNeighbors.isEmpty()) {
 			Log.d(TAG, "No connected neighbors to broadcast RouteRequest to.");
@@ -212,10 +330,13 @@ public class NearbyRouteManager {
 		}
 
 		// Optimisation
-		String destinationAddressName = routeRequestMessage.getDestinationNodeId();
 		List<String> targets = connectedNeighbors.contains(destinationAddressName) ?
 				Collections.singletonList(destinationAddressName) : connectedNeighbors;
 
+		List<Integer> listedNeighbors = rebroadcastSuppressor.listedNeighbors(targets);
+		RouteRequestMessage sentRequest = listedNeighbors.isEmpty() && routeRequestMessage.getRelayNeighborsCount() == 0 ? routeRequestMessage
+				: routeRequestMessage.toBuilder().clearRelayNeighbors().addAllRelayNeighbors(listedNeighbors).build();
+
 		int total = targets.size();
 		Map<String, Boolean> statuses = new ConcurrentHashMap<>();
 		ObjectHolder<Boolean> hasOneSuccessAtLeast = new ObjectHolder<>();
@@ -237,7 +358,7 @@ public class NearbyRouteManager {
 			 * The `sendRouteRequestMessage` method itself will handle the DB insertion
 			 * for BroadcastStatusEntry upon successful payload send.
 			 */
-			sendRouteRequestMessage(neighborAddressName, routeRequestMessage, new BroadcastRequestCallback() {
+			sendRouteRequestMessage(neighborAddressName, sentRequest, new BroadcastRequestCallback() {
 				@Override
 				public void onSuccess(@NotNull String neighborAddressName) {
 					if (!hasOneSuccessAtLeast.getValue()) {
@@ -270,10 +391,14 @@ public class NearbyRouteManager {
 	 * when a route is needed for a specific destination.
 	 * This method first checks for an existing usable route. If no such route is found,
 	 * it generates a new route request UUID, stores the request locally, and broadcasts it to neighbors.
+	 * The request first floods a small ring around the host, expanded until the route is found or
+	 * the maximum number of hops is reached, see {@link ExpandingRing}.
+	 * A single discovery runs per destination: the callers arriving while it is in flight wait for
+	 * its outcome instead of starting their own.
 	 * This method runs on the executor thread.
 	 *
 	 * @param destinationNodeAddressName   The SignalProtocolAddress.name of the node to which a route is desired.
-	 * @param onRouteFoundCallback         A callback executed if an existing, usable route is found.
+	 * @param onRouteFoundCallback         A callback executed once a usable route is found, existing or discovered.
 	 *                                     The {@code RouteWithUsage} object representing the found route is passed to the callback.
 	 * @param onDiscoveryInitiatedCallback A callback executed to inform the caller about the status of the new discovery.
 	 *                                     A {@code true} value indicates the request was broadcasted to at least one neighbor.
@@ -292,59 +417,57 @@ public class NearbyRouteManager {
 		try {
 			Log.d(TAG, "Entering route discovery initialization for destination: " + destinationNodeAddressName);
 
+			executor.execute(() -> {
+				// Steady state: the destination and its route are cached, no need to read the database
+				Long destinationNodeLocalId = nodeRepository.findNodeIdSync(destinationNodeAddressName);
+				RouteWithUsage knownRoute = destinationNodeLocalId == null ? null : findUsableRouteSync(destinationNodeLocalId);
+				if (knownRoute != null) {
+					Log.d(TAG, "Existing active route found for " + destinationNodeAddressName + ". Using it.");
+					onRouteFoundCallback.accept(knownRoute);
+					return;
+				}
+				PendingDiscoveries.Waiter waiter = new PendingDiscoveries.Waiter(onRouteFoundCallback, discoveryCallback);
+				switch (pendingDiscoveries.join(destinationNodeAddressName, waiter, System.currentTimeMillis())) {
+					case LEAD -> discoverRoute(destinationNodeAddressName, localHostAddress);
+					case WAITING -> Log.d(TAG, "Waiting for the discovery in flight toward " + destinationNodeAddressName);
+					case INITIATED -> {
+						Log.d(TAG, "Waiting for the discovery in flight toward " + destinationNodeAddressName);
+						discoveryCallback.accept(true);
+					}
+					case REJECTED -> {
+						Log.w(TAG, "Too many messages waiting for a route toward " + destinationNodeAddressName);
+						discoveryCallback.accept(false);
+					}
+				}
+			});
+		} catch (Exception e) {
+			Log.e(TAG, "Unable to initiate route discovery", e);
+			discoveryCallback.accept(false);
+		}
+	}
+
+	private void discoverRoute(@NonNull String destinationNodeAddressName, @NonNull String localHostAddress) {
+		Consumer<Boolean> discoveryCallback = initiated -> notifyDiscoveryInitiated(destinationNodeAddressName, initiated);
+		try {
 			// 1. Resolve destinationNodeAddressName to destinationNodeLocalId
 			nodeRepository.findOrCreateNodeAsync(destinationNodeAddressName, new NodeCallback() {
 				@Override
 				public void onNodeReady(@NonNull Node node) {
 					executor.execute(() -> {
 						// 2. Check for an existing, active, and recently used route to the destination
-						RouteWithUsage routeWithUsage = routeRepository.findMostRecentRouteByDestinationSync(node.getId());
+						RouteWithUsage routeWithUsage = findUsableRouteSync(node.getId());
 						if (routeWithUsage != null) {
 							Log.d(TAG, "Existing active route found for " + destinationNodeAddressName + ". Using it.");
 							// Notify the higher layer that a route is available
-							onRouteFoundCallback.accept(routeWithUsage);
+							flushDiscoveryWaiters(destinationNodeAddressName, routeWithUsage);
 							return;
 						} else {
 							Log.d(TAG, "No existing active route found for " + destinationNodeAddressName + ". Initiating new discovery.");
 						}
 
 						// If we reach here, so no route was found, or the existing one was stale.
-						// Proceed with new route discovery.
-
-						// 3. Generate a new UUID for the route request
-						String requestUuid = UUID.randomUUID().toString();
-
-						// 4. Store the initial RouteRequestEntry
-						RouteRequestEntry newRequestEntry = new RouteRequestEntry(requestUuid);
-						newRequestEntry.setDestinationNodeLocalId(node.getId());
-						newRequestEntry.setPreviousHopLocalId(null); // Null because this is the original source node
-						routeRepository.insertRouteRequest(newRequestEntry, aBoolean -> {
-							if (aBoolean) {
-								Log.d(TAG, "New RouteRequestEntry created for UUID: " + requestUuid);
-								// 5. Construct the RouteRequestMessage Protobuf
-								RouteRequestMessage routeRequest = RouteRequestMessage.newBuilder()
-										.setUuid(requestUuid)
-										.setDestinationNodeId(destinationNodeAddressName)
-										.setRemainingHops(DEFAULT_ROUTE_HOPS)
-										.setMaxTtl(System.currentTimeMillis() + DEFAULT_ROUTE_TTL_MILLIS)
-										.setInitiatorNodeId(localHostAddress)
-										.build();
-
-								// 6. Broadcast the request to all neighbors (no exclusion for initial broadcast)
-								broadcastRouteRequestToNeighbors(routeRequest, null, sentToNeighborsCount -> {
-									// Inform caller about the discovery initiation status
-									discoveryCallback.accept(sentToNeighborsCount > 0);
-
-									if (sentToNeighborsCount == 0) {
-										Log.w(TAG, "Route request " + requestUuid + " initiated, but no neighbors to broadcast to. Discovery might fail.");
-										routeRepository.deleteRouteRequestByRequestUuid(requestUuid);
-									}
-								});
-							} else {
-								Log.w(TAG, "Failed to create new RouteRequestEntry for UUID: " + requestUuid);
-								discoveryCallback.accept(false);
-							}
-						});
+						// Proceed with new route discovery, starting with the smallest ring.
+						startRing(node, expandingRing.firstRadius(destinationNodeAddressName), localHostAddress);
 					});
 				}
 
@@ -361,6 +484,123 @@ public class NearbyRouteManager {
 		}
 	}
 
+	/**
+	 * Floods a ring of the discovery toward a destination: stores a new route request allowed to
+	 * cross up to {@code radius} relays, then broadcasts it. Unless it is the last ring, it is
+	 * expanded if still without outcome after a time proportional to its radius.
+	 * This method runs on the executor thread.
+	 *
+	 * @param destination      The destination node of the discovery.
+	 * @param radius           The {@code remaining_hops} of the route request.
+	 * @param localHostAddress The SignalProtocolAddress.name of the local host Node.
+	 */
+	private void startRing(@NonNull Node destination, int radius, @NonNull String localHostAddress) {
+		String destinationNodeAddressName = destination.getAddressName();
+		// 3. Generate a new UUID for the route request
+		String requestUuid = UUID.randomUUID().toString();
+
+		// 4. Store the initial RouteRequestEntry
+		RouteRequestEntry newRequestEntry = new RouteRequestEntry(requestUuid);
+		newRequestEntry.setDestinationNodeLocalId(destination.getId());
+		newRequestEntry.setPreviousHopLocalId(null); // Null because this is the original source node
+		long maxTtl = System.currentTimeMillis() + DEFAULT_ROUTE_TTL_MILLIS;
+		routeRepository.insertRouteRequest(newRequestEntry, maxTtl, aBoolean -> {
+			if (aBoolean) {
+				Log.d(TAG, "New RouteRequestEntry created for UUID: " + requestUuid + " (ring radius " + radius + ")");
+				requestReaper.schedule(requestUuid, maxTtl);
+				// 5. Construct the RouteRequestMessage Protobuf
+				RouteRequestMessage routeRequest = RouteRequestMessage.newBuilder()
+						.setUuid(requestUuid)
+						.setDestinationNodeId(destinationNodeAddressName)
+						.setRemainingHops(radius)
+						.setMaxTtl(maxTtl)
+						.setInitiatorNodeId(localHostAddress)
+						.build();
+				pendingDiscoveries.onRingStarted(destinationNodeAddressName, requestUuid, radius, System.currentTimeMillis());
+
+				// 6. Broadcast the request to all neighbors (no exclusion for initial broadcast)
+				broadcastRouteRequestToNeighbors(routeRequest, null, sentToNeighborsCount -> {
+					// Inform caller about the discovery initiation status
+					notifyDiscoveryInitiated(destinationNodeAddressName, sentToNeighborsCount > 0);
+
+					if (sentToNeighborsCount == 0) {
+						Log.w(TAG, "Route request " + requestUuid + " initiated, but no neighbors to broadcast to. Discovery might fail.");
+						routeRepository.deleteRouteRequestByRequestUuid(requestUuid);
+						requestReaper.cancel(requestUuid);
+					} else if (expandingRing.nextRadius(radius) > 0) {
+						scheduler.schedule(() -> executor.execute(() -> onRingTimeout(destination, requestUuid)),
+								expandingRing.timeoutMillis(radius), TimeUnit.MILLISECONDS);
+					}
+				});
+			} else {
+				Log.w(TAG, "Failed to create new RouteRequestEntry for UUID: " + requestUuid);
+				notifyDiscoveryInitiated(destinationNodeAddressName, false);
+			}
+		});
+	}
+
+	/**
+	 * Expands the ring of a route request of this node still without outcome: the request is
+	 * dropped, its late responses are ignored. This method runs on the executor thread.
+	 */
+	private void onRingTimeout(@NonNull Node destination, @NonNull String requestUuid) {
+		int radius = pendingDiscoveries.endRing(destination.getAddressName(), requestUuid);
+		if (radius <= 0) {
+			// Found, failed or expanded meanwhile
+			return;
+		}
+		Log.d(TAG, "No outcome for the route request " + requestUuid + " toward " + destination.getAddressName() + ", expanding its ring.");
+		requestReaper.cancel(requestUuid);
+		routeRepository.deleteRouteRequestByRequestUuid(requestUuid);
+		routeRepository.dropBroadcastStatusesByRequestUuid(requestUuid);
+		startRing(destination, expandingRing.nextRadius(radius), localAddressName);
+	}
+
+	/**
+	 * Handles the failure of a route request of this node, its state already dropped: the
+	 * discovery goes on with a larger ring, unless the request was of the last ring. The failure of
+	 * a ring already expanded is ignored. This method runs on the executor thread.
+	 *
+	 * @return whether the discovery goes on, else the failure is definitive
+	 */
+	private boolean expandRingOnFailure(@NonNull Node destination, @NonNull String requestUuid) {
+		int radius = pendingDiscoveries.endRing(destination.getAddressName(), requestUuid);
+		if (radius < 0) {
+			Log.d(TAG, "Route request " + requestUuid + " failed, but its ring was already expanded.");
+			return true;
+		}
+		int nextRadius = radius == 0 ? 0 : expandingRing.nextRadius(radius);
+		if (nextRadius == 0) {
+			return false;
+		}
+		Log.d(TAG, "Route request " + requestUuid + " failed within " + radius + " hop(s), expanding to " + nextRadius + ".");
+		startRing(destination, nextRadius, localAddressName);
+		return true;
+	}
+
+	/**
+	 * Notifies the callers waiting for the discovery toward a destination of whether it reached at
+	 * least one neighbor. A discovery that didn't is over.
+	 */
+	private void notifyDiscoveryInitiated(@NonNull String destinationAddressName, boolean initiated) {
+		for (PendingDiscoveries.Waiter waiter : pendingDiscoveries.onInitiated(destinationAddressName, initiated)) {
+			waiter.onInitiated().accept(initiated);
+		}
+	}
+
+	/**
+	 * Ends the discovery toward a destination, handing the route to the callers waiting for it.
+	 */
+	private void flushDiscoveryWaiters(@NonNull String destinationAddressName, @NonNull RouteWithUsage route) {
+		List<PendingDiscoveries.Waiter> waiters = pendingDiscoveries.complete(destinationAddressName);
+		if (!waiters.isEmpty()) {
+			Log.d(TAG, "Route toward " + destinationAddressName + " found, flushing " + waiters.size() + " waiting message(s).");
+		}
+		for (PendingDiscoveries.Waiter waiter : waiters) {
+			waiter.onRouteFound().accept(route);
+		}
+	}
+
 	/**
 	 * Helper method to send a RouteResponseMessage.
 	 * This method runs on caller thread.
@@ -399,301 +639,244 @@ public class NearbyRouteManager {
 		}
 	}
 
-	private void handleIncomingRouteRequestAlreadyInProgress(RouteRequestMessage routeRequest, Node sender, Consumer<Boolean> stopProcessing) {
-		executor.execute(() -> {
-			RouteRequestEntry existingRequest = routeRepository.findRouteRequestByUuidSync(routeRequest.getUuid());
-
-			if (existingRequest != null) {
-				Log.d(TAG, "RouteRequest with UUID " + routeRequest.getUuid() + " already in progress. Sending REQUEST_ALREADY_IN_PROGRESS response.");
-				RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
-						.setRequestUuid(routeRequest.getUuid())
-						.setStatusValue(RouteResponseStatus.REQUEST_ALREADY_IN_PROGRESS_VALUE)
-						.setHopCount(0)
-						.build();
+	private void sendRequestAlreadyInProgress(RouteRequestMessage routeRequest, String senderAddressName) {
+		Log.d(TAG, "RouteRequest with UUID " + routeRequest.getUuid() + " already in progress. Sending REQUEST_ALREADY_IN_PROGRESS response.");
+		RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
+				.setRequestUuid(routeRequest.getUuid())
+				.setStatusValue(RouteResponseStatus.REQUEST_ALREADY_IN_PROGRESS_VALUE)
+				.setHopCount(0)
+				.build();
 
-				sendRouteResponseMessage(sender.getAddressName(), responseMessage,
-						new TransmissionCallback() {
-							@Override
-							public void onSuccess(@NonNull Payload payload) {
-								DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
-										params(routeRequest.getDestinationNodeId(), sender.getAddressName(), responseMessage.getStatusValue(),
-												routeRequest.getRemainingHops()));
-								Log.d(TAG, "Sent REQUEST_ALREADY_IN_PROGRESS response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							}
+		sendRouteResponseMessage(senderAddressName, responseMessage,
+				new TransmissionCallback() {
+					@Override
+					public void onSuccess(@NonNull Payload payload) {
+						DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
+								params(routeRequest.getDestinationNodeId(), senderAddressName, responseMessage.getStatusValue(),
+										routeRequest.getRemainingHops()));
+						Log.d(TAG, "Sent REQUEST_ALREADY_IN_PROGRESS response for " + routeRequest.getUuid() + " to " + senderAddressName);
+					}
 
-							@Override
-							public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
-								Log.e(TAG, "Failed to send REQUEST_ALREADY_IN_PROGRESS response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							}
-						});
-				stopProcessing.accept(true); // Stop processing, request is redundant.
-				return;
-			}
-			stopProcessing.accept(false);
-		});
+					@Override
+					public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+						Log.e(TAG, "Failed to send REQUEST_ALREADY_IN_PROGRESS response for " + routeRequest.getUuid() + " to " + senderAddressName);
+					}
+				});
 	}
 
-	private void handleIncomingRouteRequestExpiration(
-			RouteRequestMessage routeRequest, Node sender, String localHostAddress, Consumer<Boolean> stopProcessing) {
-		executor.execute(() -> {
-			long currentTime = System.currentTimeMillis();
-			if (routeRequest.getMaxTtl() < currentTime) {
-				Log.d(TAG, "RouteRequest " + routeRequest.getUuid() + " has expired (TTL reached). Sending TTL_EXPIRED response.");
-				RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
-						.setRequestUuid(routeRequest.getUuid())
-						.setStatusValue(RouteResponseStatus.TTL_EXPIRED_VALUE)
-						.setHopCount(0)
-						.build();
-				sendRouteResponseMessage(sender.getAddressName(), responseMessage,
-						new TransmissionCallback() {
-							@Override
-							public void onSuccess(@NonNull Payload payload) {
-								DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
-										params(routeRequest.getDestinationNodeId(), sender.getAddressName(), responseMessage.getStatusValue(),
-												routeRequest.getRemainingHops()));
-								Log.d(TAG, "Sent TTL_EXPIRED response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							}
+	/**
+	 * Answers a route request this node doesn't process with a failure status.
+	 * This method runs on the caller thread.
+	 */
+	private void sendRouteRequestRejection(RouteRequestMessage routeRequest, String senderAddressName, RouteResponseStatus status) {
+		Log.d(TAG, "RouteRequest " + routeRequest.getUuid() + " rejected. Sending " + status + " response.");
+		RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
+				.setRequestUuid(routeRequest.getUuid())
+				.setStatusValue(status.getNumber())
+				.setHopCount(0)
+				.build();
+		sendRouteResponseMessage(senderAddressName, responseMessage,
+				new TransmissionCallback() {
+					@Override
+					public void onSuccess(@NonNull Payload payload) {
+						DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
+								params(routeRequest.getDestinationNodeId(), senderAddressName, responseMessage.getStatusValue(),
+										routeRequest.getRemainingHops()));
+						Log.d(TAG, "Sent " + status + " response for " + routeRequest.getUuid() + " to " + senderAddressName);
+					}
 
-							@Override
-							public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
-								Log.e(TAG, "Failed to send TTL_EXPIRED response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							}
-						});
-				stopProcessing.accept(true);
-				return; // Stop processing.
-			}
+					@Override
+					public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+						Log.e(TAG, "Failed to send " + status + " response for " + routeRequest.getUuid() + " to " + senderAddressName);
+					}
+				});
+	}
 
-			boolean isHostTheDestination = localHostAddress.equals(routeRequest.getDestinationNodeId());
-			if (routeRequest.getRemainingHops() <= 0 && !isHostTheDestination) {
-				Log.d(TAG, "RouteRequest " + routeRequest.getUuid() + " has reached max hops. Sending MAX_HOPS_REACHED response.");
-				RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
-						.setRequestUuid(routeRequest.getUuid())
-						.setStatusValue(RouteResponseStatus.MAX_HOPS_REACHED_VALUE)
-						.setHopCount(0)
-						.build();
-				sendRouteResponseMessage(sender.getAddressName(), responseMessage,
-						new TransmissionCallback() {
-							@Override
-							public void onSuccess(@NonNull Payload payload) {
-								DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
-										params(routeRequest.getDestinationNodeId(), sender.getAddressName(), responseMessage.getStatusValue(),
-												routeRequest.getRemainingHops()));
-								Log.d(TAG, "Sent MAX_HOPS_REACHED response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							}
+	/**
+	 * Answers {@code ROUTE_FOUND} to a route request whose route has been recorded: this node is its
+	 * destination or reuses a known route. The route recorded by the destination is dropped if the
+	 * answer can't be sent. This method runs on the caller thread.
+	 */
+	private void sendRouteFound(RouteRequestMessage routeRequest, String senderAddressName, RouteRequestPipeline.Verdict verdict) {
+		boolean isHostTheDestination = verdict.outcome() == RouteRequestPipeline.Outcome.DESTINATION;
+		RouteEntry route = Objects.requireNonNull(verdict.route());
+		Log.d(TAG, (isHostTheDestination ? "Current node is the destination for RouteRequest " : "Known route reused for RouteRequest ")
+				+ routeRequest.getUuid() + ". Sending ROUTE_FOUND response.");
+		RouteResponseMessage.Builder responseBuilder = RouteResponseMessage.newBuilder()
+				.setRequestUuid(routeRequest.getUuid())
+				.setStatusValue(RouteResponseStatus.ROUTE_FOUND_VALUE)
+				.setHopCount(Objects.requireNonNullElse(route.getHopCount(), 0)); // This is very important
+		if (!isHostTheDestination) {
+			responseBuilder.setLinkCost(routeCost(route));
+		}
+		RouteResponseMessage responseMessage = responseBuilder.build();
+		sendRouteResponseMessage(senderAddressName, responseMessage, new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload payload) {
+				if (isHostTheDestination) {
+					DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
+							params(routeRequest.getDestinationNodeId(), senderAddressName, responseMessage.getStatusValue(),
+									routeRequest.getRemainingHops()));
+				}
+				Log.d(TAG, "Sent ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + senderAddressName);
+			}
 
-							@Override
-							public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
-								Log.e(TAG, "Failed to send MAX_HOPS_REACHED response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							}
-						});
-				stopProcessing.accept(true);
-				return; // Stop processing.
+			@Override
+			public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+				Log.e(TAG, "Failed to send ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + senderAddressName);
+				if (isHostTheDestination) {
+					routeRepository.dropRouteAndItsUsages(route);
+				}
 			}
-			stopProcessing.accept(false);
 		});
 	}
 
-	private void handleIncomingRouteRequestIfDestination(RouteRequestMessage routeRequest, Node sender, String localHostAddress, Consumer<Boolean> stopProcessing) {
-		boolean isHostTheDestination = localHostAddress.equals(routeRequest.getDestinationNodeId());
-		if (isHostTheDestination) {
-			Log.d(TAG, "Current node is the destination for RouteRequest " + routeRequest.getUuid() + ". Sending ROUTE_FOUND response.");
-
-			// Send ROUTE_FOUND response back to the previous hop (sender of this request)
-			RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
-					.setRequestUuid(routeRequest.getUuid())
-					.setStatusValue(RouteResponseStatus.ROUTE_FOUND_VALUE)
-					.setHopCount(0)
-					.build();
-			sendRouteResponseMessage(sender.getAddressName(), responseMessage,
-					new TransmissionCallback() {
-						@Override
-						public void onSuccess(@NonNull Payload payload) {
-							DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
-									params(routeRequest.getDestinationNodeId(), sender.getAddressName(), responseMessage.getStatusValue(),
-											routeRequest.getRemainingHops()));
-							Log.d(TAG, "Sent ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-							nodeRepository.findOrCreateNodeAsync(routeRequest.getInitiatorNodeId(), new NodeCallback() {
-								@Override
-								public void onNodeReady(@NonNull Node initiatorNode) {
-									// Store the route entry in the database
-									RouteEntry routeEntry = new RouteEntry();
-									routeEntry.setDiscoveryUuid(routeRequest.getUuid());
-									routeEntry.setDestinationNodeLocalId(null); // Cause the host if the destination
-									routeEntry.setHopCount(0);
-									routeEntry.setNextHopLocalId(null);
-									routeEntry.setPreviousHopLocalId(sender.getId());
-									routeEntry.setLastUseTimestamp(System.currentTimeMillis());
-									routeRepository.insertRouteEntry(routeEntry, onSuccess -> {
-										if (onSuccess) {
-											Log.d(TAG, "RouteEntry stored for UUID: " + routeRequest.getUuid());
-											RouteUsage usage = new RouteUsage(routeRequest.getUuid());
-											usage.setRouteEntryDiscoveryUuid(routeRequest.getUuid());
-											usage.setPreviousHopLocalId(sender.getId());
-											routeRepository.insertRouteUsage(usage, ok -> {
-												if (ok) {
-													Log.d(TAG, "RouteUsage stored for UUID: " + routeRequest.getUuid());
-													// Now persist the backtracking path
-													RouteUsageBacktracking backtracking = new RouteUsageBacktracking(routeRequest.getUuid(), initiatorNode.getId());
-													routeRepository.insertRouteUsageBacktracking(backtracking, yes -> {
-														if (yes) {
-															Log.d(TAG, "RouteUsageBacktracking stored for UUID: " + routeRequest.getUuid());
-														} else {
-															Log.e(TAG, "Failed to store RouteUsageBacktracking for UUID: " + routeRequest.getUuid());
-														}
-													});
-												} else {
-													Log.e(TAG, "Failed to store RouteUsage for UUID: " + routeRequest.getUuid());
-												}
-											});
-										} else {
-											Log.w(TAG, "Impossible to persist the RouteEntry for UUID: " + routeRequest.getUuid() + ".");
-										}
-									});
-								}
+	/**
+	 * Relays a route request recorded on this node: at once if the relay policy floods or if its
+	 * destination is a neighbor, else once the copies of the neighbors have been counted.
+	 * This method runs on the caller thread.
+	 */
+	private void relayAcceptedRouteRequest(RouteRequestMessage routeRequest, String senderAddressName) {
+		Log.d(TAG, "New RouteRequestEntry created for UUID: " + routeRequest.getUuid());
+		requestReaper.schedule(routeRequest.getUuid(), routeRequest.getMaxTtl());
+		// A neighbor destination is answered at once, else the copies of the neighbors are awaited
+		if (rebroadcastSuppressor.getPolicy() == RebroadcastSuppressor.Policy.FLOOD
+				|| nearbyManager.getConnectedEndpointsAddressNames().contains(routeRequest.getDestinationNodeId())) {
+			relayRouteRequest(routeRequest, senderAddressName, Collections.emptySet());
+			return;
+		}
+		long assessmentDelay = rebroadcastSuppressor.begin(routeRequest.getUuid(), senderAddressName,
+				routeRequest.getRelayNeighborsList());
+		scheduler.schedule(() -> executor.execute(() -> concludeRelayAssessment(routeRequest, senderAddressName)),
+				assessmentDelay, TimeUnit.MILLISECONDS);
+	}
 
-								@Override
-								public void onError(@NonNull String errorMessage) {
-									Log.e(TAG, "Failed to store RouteEntry for UUID: " + routeRequest.getUuid() + ". Error: " + errorMessage);
-								}
-							});
-						}
+	/**
+	 * Database accesses of the {@link RouteRequestPipeline}, through the repositories.
+	 */
+	private final class RouteRequestStore implements RouteRequestPipeline.Store {
 
-						@Override
-						public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
-							Log.e(TAG, "Failed to send ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-						}
-					}
-			);
+		@Override
+		public <T> T runInTransaction(@NonNull Callable<T> body) {
+			return routeRepository.runInTransactionSync(body);
 		}
-		stopProcessing.accept(isHostTheDestination);
-	}
 
-	private void handleIncomingRouteRequestForRouteReuse(RouteRequestMessage routeRequest, Node sender, Consumer<Boolean> stopProcessing) {
-		executor.execute(() -> {
-			RouteWithUsage routeWithUsage = getIfExistRouteAndUsageFor(routeRequest.getDestinationNodeId());
-			if (routeWithUsage != null) {
-				Log.d(TAG, "Route already exists for intermediate node.");
-				if (routeRequest.getRemainingHops() >= routeWithUsage.routeEntry.getHopCount()) {
-					Log.d(TAG, "Route is usable. Sending ROUTE_FOUND response.");
-					RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
-							.setRequestUuid(routeRequest.getUuid())
-							.setStatusValue(RouteResponseStatus.ROUTE_FOUND_VALUE)
-							.setHopCount(routeWithUsage.routeEntry.getHopCount()) // This is very important
-							.build();
-					sendRouteResponseMessage(sender.getAddressName(), responseMessage, new TransmissionCallback() {
-						@Override
-						public void onSuccess(@NonNull Payload payload) {
-							// Save usages
-							nodeRepository.findOrCreateNodeAsync(routeRequest.getInitiatorNodeId(), new NodeCallback() {
-								@Override
-								public void onNodeReady(@NonNull Node initiator) {
-									RouteUsage usage = new RouteUsage(routeRequest.getUuid());
-									usage.setPreviousHopLocalId(sender.getId()); // This is very important for backtracking
-									usage.setRouteEntryDiscoveryUuid(routeWithUsage.routeEntry.getDiscoveryUuid());
-									routeRepository.insertRouteUsage(usage, ok -> {
-										if (ok) {
-											Log.d(TAG, "RouteUsage stored for usage  UUID: " + routeRequest.getUuid());
-											RouteUsageBacktracking backtracking = new RouteUsageBacktracking(routeRequest.getUuid(), initiator.getId());
-											routeRepository.insertRouteUsageBacktracking(backtracking, yes -> {
-												if (yes) {
-													Log.d(TAG, "RouteUsageBacktracking stored for UUID: " + routeRequest.getUuid());
-												} else {
-													Log.e(TAG, "Failed to store RouteUsageBacktracking for UUID: " + routeRequest.getUuid());
-												}
-											});
-										} else {
-											Log.e(TAG, "Failed to store RouteUsage for usage UUID: " + routeRequest.getUuid());
-										}
-									});
-								}
+		@Override
+		public long findOrCreateNodeIdSync(@NonNull String addressName) {
+			return nodeRepository.findOrCreateNodeSync(addressName).getId();
+		}
 
-								@Override
-								public void onError(@NonNull String errorMessage) {
-									Log.e(TAG, "Failed to store RouteUsage for usage UUID: " + routeRequest.getUuid() + ". Error: " + errorMessage);
-								}
-							});
-						}
+		@Override
+		public boolean hasRouteRequestSync(@NonNull String requestUuid) {
+			// The first copy of a request is known from memory
+			Boolean inProgress = routeRepository.isRouteRequestInProgress(requestUuid);
+			return inProgress != null ? inProgress : routeRepository.findRouteRequestByUuidSync(requestUuid) != null;
+		}
 
-						@Override
-						public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
-							Log.e(TAG, "Failed to send ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-						}
-					});
-					stopProcessing.accept(true);
-					return;
-				} else {
-					// Else the existing route is not usable, continue processing.
-					Log.d(TAG, "Route is stale. Continuing processing.");
-				}
+		@Nullable
+		@Override
+		public RouteWithUsage findReusableRouteSync(@NonNull String destinationAddressName, int remainingHops) {
+			RouteWithUsage routeWithUsage = getIfExistRouteAndUsageFor(destinationAddressName);
+			if (routeWithUsage == null) {
+				return null;
 			}
-			stopProcessing.accept(false);
-		});
+			if (remainingHops >= routeWithUsage.routeEntry.getHopCount() && isReusable(routeWithUsage.routeEntry)) {
+				return routeWithUsage;
+			}
+			Log.d(TAG, "Route is too long or too costly. Continuing processing.");
+			return null;
+		}
+
+		@Override
+		public void insertRouteRequestSync(@NonNull RouteRequestEntry requestEntry, long maxTtl) {
+			routeRepository.insertRouteRequestSync(requestEntry, maxTtl);
+		}
+
+		@Override
+		public void insertRouteEntrySync(@NonNull RouteEntry routeEntry) {
+			routeRepository.insertRouteEntrySync(routeEntry);
+		}
+
+		@Override
+		public void insertRouteUsageSync(@NonNull RouteUsage routeUsage) {
+			routeRepository.insertRouteUsageSync(routeUsage);
+		}
+
+		@Override
+		public void insertRouteUsageBacktrackingSync(@NonNull RouteUsageBacktracking backtracking) {
+			routeRepository.insertRouteUsageBacktrackingSync(backtracking);
+		}
 	}
 
-	private void handleIncomingRouteRequestRelay(RouteRequestMessage routeRequest, Node sender) {
-		// Ensure destination exists
-		nodeRepository.findOrCreateNodeAsync(routeRequest.getDestinationNodeId(), new NodeCallback() {
-			@Override
-			public void onNodeReady(@NonNull Node destination) {
-				RouteRequestEntry newRequestEntry = new RouteRequestEntry(routeRequest.getUuid());
-				newRequestEntry.setDestinationNodeLocalId(destination.getId());
-				newRequestEntry.setPreviousHopLocalId(sender.getId()); // The node that sent us this request
-				routeRepository.insertRouteRequest(newRequestEntry, onSuccess -> {
-					if (onSuccess) {
-						Log.d(TAG, "New RouteRequestEntry created for UUID: " + routeRequest.getUuid());
-						// Decrement hops and relay the request to other neighbors
-						int newRemainingHops = routeRequest.getRemainingHops() - 1;
-						RouteRequestMessage relayedRouteRequest = routeRequest.toBuilder()
-								.setRemainingHops(newRemainingHops)
+	/**
+	 * Relays a route request once the copies of the neighbors have been counted: the request is
+	 * dropped if redundant, else forwarded to the neighbors which don't hold it yet.
+	 * This method runs on the executor thread.
+	 */
+	private void concludeRelayAssessment(RouteRequestMessage routeRequest, String senderAddressName) {
+		RebroadcastSuppressor.Decision decision = rebroadcastSuppressor.conclude(routeRequest.getUuid(),
+				nearbyManager.getConnectedEndpointsAddressNames(), routeRequest.getMaxTtl(), System.currentTimeMillis());
+		if (!decision.suppressed()) {
+			relayRouteRequest(routeRequest, senderAddressName, decision.skipped());
+			return;
+		}
+		Log.d(TAG, "Route request " + routeRequest.getUuid() + " already reached the neighborhood, not relaying it.");
+		// The neighbors relaying it answer for this branch; the next copies are duplicates
+		routeRepository.deleteRouteRequestByRequestUuid(routeRequest.getUuid());
+		requestReaper.cancel(routeRequest.getUuid());
+		sendRequestAlreadyInProgress(routeRequest, senderAddressName);
+	}
+
+	/**
+	 * Decrements the hops of a route request stored on this node and forwards it to the other
+	 * neighbors, or answers {@code NO_ROUTE_FOUND} to its sender if there is none.
+	 *
+	 * @param skippedNeighbors The neighbors known to hold the request already.
+	 */
+	private void relayRouteRequest(RouteRequestMessage routeRequest, String senderAddressName, Set<String> skippedNeighbors) {
+		// Decrement hops and relay the request to other neighbors
+		int newRemainingHops = routeRequest.getRemainingHops() - 1;
+		RouteRequestMessage relayedRouteRequest = routeRequest.toBuilder()
+				.setRemainingHops(newRemainingHops)
+				.build();
+		// Broadcast the request to all neighbors, excluding the sender of this request
+		broadcastRouteRequestToNeighbors(relayedRouteRequest, senderAddressName, skippedNeighbors,
+				sentToNeighborsCount -> {
+					if (sentToNeighborsCount == 0) {
+						Log.w(TAG, "Route request " + routeRequest.getUuid() + " received, but no other neighbors to relay to. Sending NO_ROUTE_FOUND response back.");
+						// If no other neighbors to relay to, this branch of discovery ends here.
+						RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
+								.setRequestUuid(routeRequest.getUuid())
+								.setStatusValue(RouteResponseStatus.NO_ROUTE_FOUND_VALUE)
+								.setHopCount(0) // Initiator of the result
 								.build();
-						// Broadcast the request to all neighbors, excluding the sender of this request
-						broadcastRouteRequestToNeighbors(relayedRouteRequest, sender.getAddressName(),
-								sentToNeighborsCount -> {
-									if (sentToNeighborsCount == 0) {
-										Log.w(TAG, "Route request " + routeRequest.getUuid() + " received, but no other neighbors to relay to. Sending NO_ROUTE_FOUND response back.");
-										// If no other neighbors to relay to, this branch of discovery ends here.
-										RouteResponseMessage responseMessage = RouteResponseMessage.newBuilder()
-												.setRequestUuid(routeRequest.getUuid())
-												.setStatusValue(RouteResponseStatus.NO_ROUTE_FOUND_VALUE)
-												.setHopCount(0) // Initiator of the result
-												.build();
-										sendRouteResponseMessage(sender.getAddressName(), responseMessage,
-												new TransmissionCallback() {
-													@Override
-													public void onSuccess(@NonNull Payload payload) {
-														DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
-																params(routeRequest.getDestinationNodeId(), sender.getAddressName(), responseMessage.getStatusValue(),
-																		routeRequest.getRemainingHops()));
-														/*
-														 * using `routeRequest.getRemainingHops()` is not an error
-														 * the remaining hops will be match with route init log to
-														 * determine the number of hops from source to here.
-														 */
-														Log.d(TAG, "Sent NO_ROUTE_FOUND response for " + routeRequest.getUuid() + " (no relays) to " + sender.getAddressName());
-													}
-
-													@Override
-													public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
-														Log.e(TAG, "Failed to send NO_ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + sender.getAddressName());
-													}
-												});
-										// Drop the new mapping from database
-										routeRepository.deleteRouteRequestByRequestUuid(routeRequest.getUuid());
-									} else {
-										Log.d(TAG, "Route request " + routeRequest.getUuid() + " relayed to " + sentToNeighborsCount + " neighbors. New hops: " + newRemainingHops);
+						sendRouteResponseMessage(senderAddressName, responseMessage,
+								new TransmissionCallback() {
+									@Override
+									public void onSuccess(@NonNull Payload payload) {
+										DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_SENT, routeRequest.getUuid(),
+												params(routeRequest.getDestinationNodeId(), senderAddressName, responseMessage.getStatusValue(),
+														routeRequest.getRemainingHops()));
+										/*
+										 * using `routeRequest.getRemainingHops()` is not an error
+										 * the remaining hops will be match with route init log to
+										 * determine the number of hops from source to here.
+										 */
+										Log.d(TAG, "Sent NO_ROUTE_FOUND response for " + routeRequest.getUuid() + " (no relays) to " + senderAddressName);
+									}
+
+									@Override
+									public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+										Log.e(TAG, "Failed to send NO_ROUTE_FOUND response for " + routeRequest.getUuid() + " to " + senderAddressName);
 									}
 								});
+						// Drop the new mapping from database
+						routeRepository.deleteRouteRequestByRequestUuid(routeRequest.getUuid());
+						requestReaper.cancel(routeRequest.getUuid());
 					} else {
-						Log.w(TAG, "Failed to create new RouteRequestEntry for UUID: " + routeRequest.getUuid());
+						Log.d(TAG, "Route request " + routeRequest.getUuid() + " relayed to " + sentToNeighborsCount + " neighbors. New hops: " + newRemainingHops);
 					}
 				});
-			}
-
-			@Override
-			public void onError(@NonNull String errorMessage) {
-				Log.e(TAG, "Failed to resolve the destination Node on an intermediate node. Error: " + errorMessage);
-			}
-		});
 	}
 
 	/**
@@ -720,59 +903,53 @@ public class NearbyRouteManager {
 		// 3. Check the message's TTL (Time-To-Live) and remaining_hops.
 		//    - If expired or zero hops, send "TTL_EXPIRED" or "MAX_HOPS_REACHED" response to the sender.
 		// 4. Determine if the current node is the intended destination for the route request. If yes:
-		//    - A route has been found! Send a "ROUTE_FOUND" response to the sender (previous hop)
 		//    - Store a RouteEntry in the database. This is useful for the route backtracking.
+		//    - A route has been found! Send a "ROUTE_FOUND" response to the sender (previous hop)
 		// 5. If the current node is not the destination (it's an intermediate node):
 		//    5.a Check if there is an active route to the destination. If yes:			(optimisation)
-		//      - Respond with a "ROUTE_FOUND" response to the sender (previous hop).
 		//      - Store the RouteUsage and RouteUsageBacktracking entries.
+		//      - Respond with a "ROUTE_FOUND" response to the sender (previous hop).
 		//    5.b If no active route is found:
 		//      - Store the incoming RouteRequestEntry to remember the previous hop for the response path.
 		//      - Decrement the remaining_hops count.
+		//      - Unless the relay policy floods, wait for a random delay while counting the copies
+		//        of the request sent by the other neighbors. Drop a redundant request, answering
+		//        "REQUEST_ALREADY_IN_PROGRESS" to the sender.
 		//      - Forward (broadcast) the updated RouteRequestMessage to all other connected neighbors,
-		//        excluding the node from which this request was received.
+		//        excluding the node from which this request was received and those holding it already.
 		//      - If no other neighbors are available for relay, send a "NO_ROUTE_FOUND" response back to the sender.
+		// The database part of the steps 1 to 5.b, up to the storage of the RouteRequestEntry, is
+		// evaluated by the RouteRequestPipeline in a single transaction: the responses and relays
+		// are sent once it is committed.
+
+		// Duplicates of a flooded request are rejected from memory, before any database access.
+		// The copies of a request this node didn't relay are duplicates as well.
+		if (Boolean.TRUE.equals(routeRepository.isRouteRequestInProgress(routeRequest.getUuid()))
+				|| rebroadcastSuppressor.isSuppressed(routeRequest.getUuid(), System.currentTimeMillis())) {
+			rebroadcastSuppressor.onDuplicate(routeRequest.getUuid(), senderAddressName, routeRequest.getRelayNeighborsList());
+			sendRequestAlreadyInProgress(routeRequest, senderAddressName);
+			return;
+		}
 
-		// 1. Resolve sender's address name to a local Node ID, creating the node if it's new.
-		nodeRepository.findOrCreateNodeAsync(senderAddressName, new NodeCallback() {
-			@Override
-			public void onNodeReady(@NonNull Node senderNode) {
-				long senderNodeLocalId = senderNode.getId();
-				String resolvedSenderAddressName = senderNode.getAddressName();
-				Log.d(TAG, "Resolved sender " + resolvedSenderAddressName + " to local ID: " + senderNodeLocalId + ". Continuing RouteRequest processing for UUID: " + routeRequest.getUuid());
-
-				// 2. Check if UUID exists in RouteRequestEntry (prevent loops/redundant processing).
-				handleIncomingRouteRequestAlreadyInProgress(routeRequest, senderNode, stopIfAlready -> {
-					if (stopIfAlready) {
-						return;
-					}
-					// 3. Check TTL and remaining_hops.
-					handleIncomingRouteRequestExpiration(routeRequest, senderNode, localHostAddress, stopIfExpired -> {
-						if (stopIfExpired) {
-							return;
-						}
-						// 4. Check if current node is the destination.
-						handleIncomingRouteRequestIfDestination(routeRequest, senderNode, localHostAddress, stopIfDestination -> {
-							if (stopIfDestination) {
-								return;
-							}
-							// If we reach here, this is an intermediate node
-							// 5.a
-							handleIncomingRouteRequestForRouteReuse(routeRequest, senderNode, stopIfReuse -> {
-								if (stopIfReuse) {
-									return;
-								}
-								// 5.b If we reach here, then the request is valid for relaying
-								handleIncomingRouteRequestRelay(routeRequest, senderNode);
-							});
-						});
-					});
-				});
+		// Steps 1 to 5.b are evaluated in a single transaction, then the answer or the relay is sent
+		executor.execute(() -> {
+			RouteRequestPipeline.Verdict verdict;
+			try {
+				verdict = routeRequestPipeline.evaluate(routeRequest, senderAddressName, localHostAddress, System.currentTimeMillis());
+			} catch (Exception e) {
+				Log.e(TAG, "Failed to evaluate RouteRequest " + routeRequest.getUuid() + " from " + senderAddressName + ". Aborting RouteRequest processing.", e);
+				return;
 			}
-
-			@Override
-			public void onError(@NonNull String errorMessage) {
-				Log.e(TAG, "Failed to resolve or create sender node " + senderAddressName + ": " + errorMessage + ". Aborting RouteRequest processing.");
+			Log.d(TAG, "RouteRequest " + routeRequest.getUuid() + " from local ID " + verdict.senderLocalId() + ": " + verdict.outcome());
+			switch (verdict.outcome()) {
+				case DUPLICATE -> {
+					rebroadcastSuppressor.onDuplicate(routeRequest.getUuid(), senderAddressName, routeRequest.getRelayNeighborsList());
+					sendRequestAlreadyInProgress(routeRequest, senderAddressName);
+				}
+				case TTL_EXPIRED -> sendRouteRequestRejection(routeRequest, senderAddressName, RouteResponseStatus.TTL_EXPIRED);
+				case MAX_HOPS_REACHED -> sendRouteRequestRejection(routeRequest, senderAddressName, RouteResponseStatus.MAX_HOPS_REACHED);
+				case DESTINATION, ROUTE_REUSED -> sendRouteFound(routeRequest, senderAddressName, verdict);
+				case RELAY -> relayAcceptedRouteRequest(routeRequest, senderAddressName);
 			}
 		});
 	}
@@ -781,6 +958,7 @@ public class NearbyRouteManager {
 			RouteResponseMessage routeResponse, Node sender, Node destination,
 			@Nullable Node previousHop, boolean isOriginalSource) {
 		routeRepository.deleteRouteRequestByRequestUuid(routeResponse.getRequestUuid());
+		requestReaper.cancel(routeResponse.getRequestUuid());
 		DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.REQUEST_ENTRY_DEL, routeResponse.getRequestUuid(),
 				params(destination.getAddressName(), null, routeResponse.getStatusValue(), routeResponse.getHopCount()));
 		Log.d(TAG, "Deleted RouteRequestEntry for UUID: " + routeResponse.getRequestUuid() + " (ROUTE_FOUND)");
@@ -795,6 +973,8 @@ public class NearbyRouteManager {
 		} else {
 			newRouteEntry.setHopCount(routeResponse.getHopCount() + 1);
 		}
+		int linkCost = receivedRouteCost(routeResponse, sender.getAddressName());
+		newRouteEntry.setLinkCost(linkCost);
 		if (previousHop != null) {
 			newRouteEntry.setPreviousHopLocalId(previousHop.getId());
 		}
@@ -809,9 +989,19 @@ public class NearbyRouteManager {
 				DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.BROADCAST_STATUS_DEL, routeResponse.getRequestUuid(),
 						params(null, null, routeResponse.getStatusValue(), routeResponse.getHopCount()));
 				Log.d(TAG, "Deleted all BroadcastStatusEntries for UUID: " + routeResponse.getRequestUuid() + " (ROUTE_FOUND)");
-				if (isOriginalSource) {
+				if (isOriginalSource && routeRepairs.isRepairRequest(routeResponse.getRequestUuid())) {
+					// A sub-path of a route this node relays, not a route of its own
+					executor.execute(() -> completeRouteRepair(newRouteEntry, sender));
+				} else if (isOriginalSource) {
+					// The next discoveries toward the destination start with a ring reaching it
+					expandingRing.learn(destination.getAddressName(), routeResponse.getHopCount());
+					// The messages waiting for the route go first, then the route is announced
+					flushDiscoveryWaiters(destination.getAddressName(), new RouteWithUsage(newRouteEntry, null, null));
 					// The route is established. Use a dedicated method NearbyManager.onRouteFound
 					nearbyManager.onRouteFound(destination.getAddressName(), newRouteEntry);
+					// The other branches reaching the destination are kept as alternatives
+					routeAlternatives.onDiscoveryCompleted(routeResponse.getRequestUuid(), destination.getId(), sender.getId(),
+							System.currentTimeMillis() + DEFAULT_ROUTE_TTL_MILLIS);
 					DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_FOUND, routeResponse.getRequestUuid(),
 							params(null, null, routeResponse.getStatusValue(), routeResponse.getHopCount()));
 					Log.d(TAG, "Notified NearbyManager.onRouteFound for UUID " + routeResponse.getRequestUuid() + " to " + destination.getAddressName());
@@ -821,8 +1011,13 @@ public class NearbyRouteManager {
 						Log.e(TAG, "Failed to retrieve previous hop node for forwarding ROUTE_FOUND response for UUID " + routeResponse.getRequestUuid());
 						return;
 					}
+					// This node relays the route: both ends use the discovery UUID as usage UUID
+					String routeUuid = routeResponse.getRequestUuid();
+					forwardingTable.put(routeUuid, routeUuid, false, sender.getAddressName());
+					forwardingTable.put(routeUuid, routeUuid, true, previousHop.getAddressName());
 					RouteResponseMessage nextRouteResponse = routeResponse.toBuilder()
 							.setHopCount(routeResponse.getHopCount() + 1)
+							.setLinkCost(linkCost)
 							.build();
 					sendRouteResponseMessage(previousHop.getAddressName(), nextRouteResponse, TransmissionCallback.NULL_CALLBACK);
 				}
@@ -848,6 +1043,7 @@ public class NearbyRouteManager {
 								params(null, null, routeResponse.getStatusValue(), routeResponse.getHopCount()));
 					}
 				});
+		requestReaper.cancel(routeResponse.getRequestUuid());
 		routeRepository.deleteRouteRequestByRequestUuid(
 				routeResponse.getRequestUuid(), deletedCount -> {
 					Log.d(TAG, "Deleted " + deletedCount + " RouteRequestEntries for UUID: " + routeResponse.getRequestUuid());
@@ -858,6 +1054,12 @@ public class NearbyRouteManager {
 				});
 
 		if (isOriginalSource) {
+			if (failRouteRepair(routeResponse.getRequestUuid())
+					|| expandRingOnFailure(destination, routeResponse.getRequestUuid())) {
+				return;
+			}
+			// The waiting messages are left to the resends
+			pendingDiscoveries.complete(destination.getAddressName());
 			// Notify the higher layer that the route could not be found.
 			nearbyManager.onRouteNotFound(routeResponse.getRequestUuid(), destination.getAddressName(), routeResponse.getStatusValue());
 			Log.d(TAG, "Notified NearbyManager.onRouteNotFound for UUID " + routeResponse.getRequestUuid() + " with status: " + routeResponse.getStatusValue());
@@ -888,8 +1090,8 @@ public class NearbyRouteManager {
 						// All broadcasts have been processed
 
 						if (isOriginalSource) {
-							// 5.c.i.
-							Log.e(TAG, "Unexpected REQUEST_ALREADY_IN_PROGRESS response for UUID " + broadcastStatus.getRequestUuid() + " at original source. Potential UUID collision.");
+							// 5.c.i. Each neighbor left the request to the others, or the UUID collided
+							Log.w(TAG, "Only REQUEST_ALREADY_IN_PROGRESS responses for UUID " + broadcastStatus.getRequestUuid() + " at original source.");
 						}
 						finalizeHandlingRouteNotFound(routeResponse, destination, previousHop, isOriginalSource);
 					} else {
@@ -988,9 +1190,9 @@ public class NearbyRouteManager {
 		//       i. Delete all BroadcastStatusEntry entries for that request_uuid.
 		//       ii. Delete the RouteRequestEntry.
 		//       iii. If N_previous_hop_of_the_request is NULL (N_current is the original source node):
-		//          1. Undesirable behavior: given that the source is the sole holder of the request,
-		//             it's not normal for an immediate neighbor to respond this way.
-		//          2. It looks like a UUID collision. Log the error.
+		//          1. Each immediate neighbor left the request to the others (see RebroadcastSuppressor),
+		//             or the UUID collided.
+		//          2. Log it.
 		//          3. Notify the upper layer via `NearbyManager.onRouteNotFound`. Return.
 		//       iv. Else (N_current is an intermediate node):
 		//          1. Forward the original message_response_route (with REQUEST_ALREADY_IN_PROGRESS status)
@@ -1066,6 +1268,14 @@ public class NearbyRouteManager {
 
 					@Override
 					public void onFailure(@Nullable Exception cause) {
+						if (responseStatus == RouteResponseStatus.ROUTE_FOUND_VALUE) {
+							int linkCost = receivedRouteCost(routeResponse, senderAddressName);
+							if (routeAlternatives.offer(requestUuid, sender.getId(), routeResponse.getHopCount(), linkCost, System.currentTimeMillis())) {
+								Log.d(TAG, "Late ROUTE_FOUND for UUID " + requestUuid + " from " + senderAddressName + " kept as an alternative route.");
+								executor.execute(() -> preferCheaperRouteSync(requestUuid, sender.getId(), linkCost));
+								return;
+							}
+						}
 						DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_RESP_LATE, requestUuid,
 								params(null, senderAddressName, responseStatus, routeResponse.getHopCount()));
 						Log.w(TAG, "RouteResponseMessage with UUID " + requestUuid + " received, but no corresponding RouteRequestEntry found. Ignoring response.");
@@ -1080,32 +1290,388 @@ public class NearbyRouteManager {
 		});
 	}
 
-	// Route destroying methods
+	// Route request expiry
 
 	/**
-	 * Adds non-null items to the provided collection.
-	 *
-	 * @param <T>   The generic type of the items and the collection.
-	 * @param list  The collection to add items to.
-	 * @param items The items to add. Only non-null items will be added.
+	 * Tracks the route requests left pending by a previous run. Their TTL being unknown, they
+	 * are given a full one from now.
 	 */
-	@SafeVarargs
-	private <T> void addIfNotNull(Collection<T> list, T... items) {
-		for (T item : items) {
-			if (item != null) {
-				list.add(item);
+	private void trackStoredRouteRequests() {
+		try {
+			long maxTtl = System.currentTimeMillis() + DEFAULT_ROUTE_TTL_MILLIS;
+			List<RouteRequestEntry> pending = routeRepository.getRouteRequestsSync();
+			for (RouteRequestEntry entry : pending) {
+				requestReaper.schedule(entry.getRequestUuid(), maxTtl);
 			}
+			Log.d(TAG, "Tracking " + pending.size() + " stored route request(s) until their expiry.");
+		} catch (Exception e) {
+			Log.e(TAG, "Failed to load the stored route requests: ", e);
 		}
 	}
 
 	/**
-	 * Sends a {@link RouteDestroyMessage} to a specific neighbor to invalidate a given route.
+	 * Completes the route requests whose TTL expired without all the responses: their state is
+	 * purged in a single transaction, then each one completes as if a {@code TTL_EXPIRED}
+	 * response came back, notifying the upper layer on the original source and the previous hop
+	 * on a relay. This method runs on the executor thread.
 	 *
-	 * @param neighborAddressName The address name of the neighbor to send the message to.
-	 * @param routeUuid           The UUID of the route in destruction.
+	 * @param requestUuids The UUIDs of the expired route requests.
 	 */
-	private void dispatchRouteDestroyToNeighbor(@NonNull String neighborAddressName, @NonNull String routeUuid) {
-		RouteDestroyMessage routeDestroyMessage = RouteDestroyMessage.newBuilder()
+	private void reapRouteRequests(@NonNull List<String> requestUuids) {
+		List<RouteRequestEntry> entries = new ArrayList<>();
+		List<String> expiredUuids = new ArrayList<>();
+		for (String requestUuid : requestUuids) {
+			RouteRequestEntry entry = routeRepository.findRouteRequestByUuidSync(requestUuid);
+			if (entry != null) {
+				// Else completed meanwhile
+				entries.add(entry);
+				expiredUuids.add(requestUuid);
+			}
+		}
+		if (entries.isEmpty()) {
+			return;
+		}
+		try {
+			int purged = routeRepository.purgeRouteRequestsSync(expiredUuids);
+			Log.d(TAG, "Purged " + purged + " expired route request(s).");
+		} catch (Exception e) {
+			Log.e(TAG, "Failed to purge the expired route requests: ", e);
+			return;
+		}
+		for (RouteRequestEntry entry : entries) {
+			String requestUuid = entry.getRequestUuid();
+			DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.REQUEST_ENTRY_DEL, requestUuid,
+					params(null, null, RouteResponseStatus.TTL_EXPIRED_VALUE, 0));
+			Node destination = entry.getDestinationNodeLocalId() == null ? null
+					: nodeRepository.findNodeSync(entry.getDestinationNodeLocalId());
+			if (entry.getPreviousHopLocalId() == null) {
+				if (destination == null) {
+					Log.e(TAG, "Expired route request " + requestUuid + " has no known destination.");
+					continue;
+				}
+				if (failRouteRepair(requestUuid) || expandRingOnFailure(destination, requestUuid)) {
+					continue;
+				}
+				pendingDiscoveries.complete(destination.getAddressName());
+				nearbyManager.onRouteNotFound(requestUuid, destination.getAddressName(), RouteResponseStatus.TTL_EXPIRED_VALUE);
+				Log.d(TAG, "Route request " + requestUuid + " expired. Notified NearbyManager.onRouteNotFound.");
+				DataLog.logRouteEvent(DataLog.RouteDiscoveryEvent.ROUTE_FAILED, requestUuid,
+						params(null, null, RouteResponseStatus.TTL_EXPIRED_VALUE, 0));
+			} else {
+				Node previousHop = nodeRepository.findNodeSync(entry.getPreviousHopLocalId());
+				if (previousHop == null) {
+					Log.e(TAG, "Failed to retrieve previous hop node for the expired route request " + requestUuid);
+					continue;
+				}
+				RouteResponseMessage expiredResponse = RouteResponseMessage.newBuilder()
+						.setRequestUuid(requestUuid)
+						.setStatusValue(RouteResponseStatus.TTL_EXPIRED_VALUE)
+						.setHopCount(0)
+						.build();
+				sendRouteResponseMessage(previousHop.getAddressName(), expiredResponse, TransmissionCallback.NULL_CALLBACK);
+			}
+		}
+	}
+
+	/**
+	 * Returns the metrics of the expiry of the route requests: number of requests pending and
+	 * rate of the ones expired without completion.
+	 */
+	@NonNull
+	public RouteRequestReaper.ReaperStats getRequestReaperStats() {
+		return requestReaper.getStats();
+	}
+
+	/**
+	 * Stops tracking the route requests expiry. The pending ones are tracked again on the next start.
+	 */
+	public void shutdown() {
+		requestReaper.stop();
+		beaconTimer.stop();
+		preferences.unregisterOnSharedPreferenceChangeListener(preferenceListener);
+		scheduler.shutdownNow();
+	}
+
+	// Proactive routing methods
+
+	/**
+	 * Derives the UUID of the proactive routes toward a destination. It is the same on every node,
+	 * so that the relays find their own route entry toward the destination from the routed messages.
+	 */
+	@NonNull
+	static String proactiveRouteUuid(@NonNull String destinationAddressName) {
+		return UUID.nameUUIDFromBytes((PROACTIVE_ROUTE_NAMESPACE + destinationAddressName)
+				.getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	/**
+	 * Tells whether a route has been learned from the route beacons rather than discovered: the
+	 * discoveries use random UUIDs, the proactive routes name-based ones.
+	 */
+	static boolean isProactiveRoute(@NonNull String routeUuid) {
+		try {
+			return UUID.fromString(routeUuid).version() == 3;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns whether the proactive routing is enabled in the settings.
+	 */
+	public boolean isProactiveRoutingEnabled() {
+		return proactiveRouting;
+	}
+
+	private void setProactiveRouting(boolean enabled) {
+		if (proactiveRouting == enabled) {
+			return;
+		}
+		proactiveRouting = enabled;
+		Log.d(TAG, "Proactive routing " + (enabled ? "enabled" : "disabled"));
+		if (enabled) {
+			distanceVectors.onNeighborhoodChanged();
+			fullBeaconNeighbors.addAll(nearbyManager.getConnectedEndpointsAddressNames());
+			beaconTimer.reset();
+		} else {
+			beaconTimer.stop();
+			fullBeaconNeighbors.clear();
+		}
+	}
+
+	/**
+	 * Starts exchanging route beacons with a neighbor whose session is ready and which takes part
+	 * in the proactive routing. It receives a full beacon soon.
+	 *
+	 * @param neighborAddressName The address name of the neighbor.
+	 */
+	public void onNeighborJoined(@NonNull String neighborAddressName) {
+		if (!proactiveRouting || !peerCapabilities.supports(neighborAddressName, PeerCapabilities.ROUTE_BEACONS)) {
+			return;
+		}
+		fullBeaconNeighbors.add(neighborAddressName);
+		distanceVectors.onNeighborhoodChanged();
+		beaconTimer.reset();
+	}
+
+	/**
+	 * Sends the pending route beacons to the neighbors: all the routes to the neighbors owed a full
+	 * beacon, the changed ones to the others. Runs on the beacon timer.
+	 *
+	 * @return whether some beacon has been sent
+	 */
+	private boolean sendRouteBeacons() {
+		if (!proactiveRouting) {
+			return false;
+		}
+		List<DistanceVectorTable.Advertisement> changes = distanceVectors.drainChanges();
+		List<DistanceVectorTable.Advertisement> snapshot = null;
+		boolean sent = false;
+		for (String neighbor : nearbyManager.getConnectedEndpointsAddressNames()) {
+			if (!peerCapabilities.supports(neighbor, PeerCapabilities.ROUTE_BEACONS)) {
+				continue;
+			}
+			if (fullBeaconNeighbors.remove(neighbor)) {
+				if (snapshot == null) {
+					snapshot = distanceVectors.snapshot();
+				}
+				sent |= sendRouteBeacon(neighbor, snapshot, true);
+			} else {
+				sent |= sendRouteBeacon(neighbor, changes, false);
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Sends advertisements to a neighbor, in as many beacons as needed.
+	 *
+	 * @return whether some beacon has been sent
+	 */
+	private boolean sendRouteBeacon(
+			@NonNull String neighborAddressName, @NonNull List<DistanceVectorTable.Advertisement> advertisements, boolean full) {
+		List<RouteAdvertisement> routes = new ArrayList<>(advertisements.size());
+		for (DistanceVectorTable.Advertisement advertisement : advertisements) {
+			// Split horizon: a route is never advertised to its next hop
+			if (!neighborAddressName.equals(advertisement.nextHop())) {
+				routes.add(RouteAdvertisement.newBuilder()
+						.setDestinationNodeId(advertisement.destination())
+						.setSequenceNumber(advertisement.sequenceNumber())
+						.setHopCount(advertisement.hopCount())
+						.setLinkCost(advertisement.linkCost())
+						.build());
+			}
+		}
+		if (routes.isEmpty() && !full) {
+			return false;
+		}
+		// Split across beacons, the table can't be told complete: the neighbor won't drop the missing routes
+		boolean complete = full && routes.size() <= MAX_ADVERTISEMENTS_PER_BEACON;
+		int from = 0;
+		do {
+			int to = Math.min(routes.size(), from + MAX_ADVERTISEMENTS_PER_BEACON);
+			RouteBeacon beacon = RouteBeacon.newBuilder()
+					.setFull(complete)
+					.addAllRoutes(routes.subList(from, to))
+					.build();
+			NearbyMessageBody nearbyMessageBody = NearbyMessageBody.newBuilder()
+					.setMessageTypeValue(NearbyMessageType.ROUTE_BEACON_VALUE)
+					.setBinaryData(beacon.toByteString()).build();
+			nearbyManager.encryptAndSendInternal(null, neighborAddressName, nearbyMessageBody, new TransmissionCallback() {
+				@Override
+				public void onSuccess(@NonNull Payload payload) {
+					Log.d(TAG, "Route beacon sent to " + neighborAddressName);
+				}
+
+				@Override
+				public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+					Log.w(TAG, "Failed to send a route beacon to " + neighborAddressName, cause);
+					// The advertisements are lost for this neighbor, it gets them all next time
+					fullBeaconNeighbors.add(neighborAddressName);
+				}
+			});
+			from = to;
+		} while (from < routes.size());
+		return true;
+	}
+
+	/**
+	 * Handles an incoming {@link RouteBeacon}: the routes it advertises update the routing table of
+	 * this node, and seed the route entries so that the messages to these destinations don't wait
+	 * for a discovery. Ignored while the proactive routing is disabled.
+	 *
+	 * @param senderAddressName The address name of the neighbor that sent the beacon.
+	 * @param routeBeacon       The received beacon.
+	 */
+	public void handleIncomingRouteBeacon(@NonNull String senderAddressName, @NonNull RouteBeacon routeBeacon) {
+		if (!proactiveRouting) {
+			Log.d(TAG, "Proactive routing disabled, route beacon from " + senderAddressName + " ignored.");
+			return;
+		}
+		if (!peerCapabilities.supports(senderAddressName, PeerCapabilities.ROUTE_BEACONS)) {
+			// The neighbor enabled the proactive routing after the negotiation: it needs all the routes
+			peerCapabilities.add(senderAddressName, PeerCapabilities.ROUTE_BEACONS);
+			onNeighborJoined(senderAddressName);
+		}
+		List<DistanceVectorTable.Advertisement> advertisements = new ArrayList<>(routeBeacon.getRoutesCount());
+		for (RouteAdvertisement route : routeBeacon.getRoutesList()) {
+			advertisements.add(new DistanceVectorTable.Advertisement(route.getDestinationNodeId(),
+					route.getSequenceNumber(), route.getHopCount(), route.getLinkCost(), null));
+		}
+		executor.execute(() -> applyDistanceVectorUpdates(distanceVectors.onAdvertisements(senderAddressName,
+				nearbyManager.getLinkCost(senderAddressName), advertisements, routeBeacon.getFull())));
+	}
+
+	/**
+	 * Reflects the changes of the routing table in the route entries, and wakes the beacon timer
+	 * up so that the neighbors learn them.
+	 */
+	private void applyDistanceVectorUpdates(@NonNull List<DistanceVectorTable.Update> updates) {
+		for (DistanceVectorTable.Update update : updates) {
+			String routeUuid = proactiveRouteUuid(update.destination());
+			forwardingTable.removeRoute(routeUuid);
+			if (update.nextHop() == null) {
+				RouteEntry route = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
+				if (route != null) {
+					routeRepository.dropRouteAndItsUsages(route);
+				}
+			} else {
+				storeProactiveRoute(routeUuid, update);
+			}
+		}
+		if (distanceVectors.hasChanges()) {
+			beaconTimer.reset();
+		}
+	}
+
+	private void storeProactiveRoute(@NonNull String routeUuid, @NonNull DistanceVectorTable.Update update) {
+		nodeRepository.findOrCreateNodeAsync(update.destination(), new NodeCallback() {
+			@Override
+			public void onNodeReady(@NonNull Node destination) {
+				// A later change of the route may have been applied meanwhile
+				if (!Objects.equals(update.nextHop(), distanceVectors.nextHop(update.destination()))) {
+					return;
+				}
+				Long nextHopLocalId = nodeRepository.findNodeIdSync(Objects.requireNonNull(update.nextHop()));
+				if (nextHopLocalId == null) {
+					Log.w(TAG, "Next hop " + update.nextHop() + " of proactive route " + routeUuid + " not found.");
+					return;
+				}
+				RouteEntry route = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
+				boolean isNew = route == null;
+				if (isNew) {
+					route = new RouteEntry();
+					route.setDiscoveryUuid(routeUuid);
+				}
+				route.setDestinationNodeLocalId(destination.getId());
+				route.setNextHopLocalId(nextHopLocalId);
+				route.setPreviousHopLocalId(null);
+				route.setHopCount(update.hopCount());
+				route.setLinkCost(update.linkCost());
+				route.setLastUseTimestamp(System.currentTimeMillis());
+				if (isNew) {
+					routeRepository.insertRouteEntry(route, success -> {
+						if (success) {
+							Log.d(TAG, "Proactive route to " + update.destination() + " stored through " + update.nextHop());
+						}
+					});
+				} else {
+					routeRepository.updateRouteEntry(route, null);
+				}
+				// Spares the discovery in flight, if any
+				flushDiscoveryWaiters(update.destination(), new RouteWithUsage(route, null, null));
+			}
+
+			@Override
+			public void onError(@NonNull String errorMessage) {
+				Log.w(TAG, "Unable to store the proactive route to " + update.destination() + ": " + errorMessage);
+			}
+		});
+	}
+
+	/**
+	 * Drops the proactive route of this node found unusable, and advertises its loss.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 */
+	private void dropProactiveRouteSync(@NonNull String routeUuid) {
+		RouteEntry route = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
+		if (route == null) {
+			return;
+		}
+		routeRepository.dropRouteAndItsUsages(route);
+		Long destinationNodeLocalId = route.getDestinationNodeLocalId();
+		String destination = destinationNodeLocalId == null ? null : nodeRepository.findAddressNameSync(destinationNodeLocalId);
+		if (destination != null && distanceVectors.onRouteLost(destination)) {
+			beaconTimer.reset();
+		}
+	}
+
+	// Route destroying methods
+
+	/**
+	 * Adds non-null items to the provided collection.
+	 *
+	 * @param <T>   The generic type of the items and the collection.
+	 * @param list  The collection to add items to.
+	 * @param items The items to add. Only non-null items will be added.
+	 */
+	@SafeVarargs
+	private <T> void addIfNotNull(Collection<T> list, T... items) {
+		for (T item : items) {
+			if (item != null) {
+				list.add(item);
+			}
+		}
+	}
+
+	/**
+	 * Sends a {@link RouteDestroyMessage} to a specific neighbor to invalidate a given route.
+	 *
+	 * @param neighborAddressName The address name of the neighbor to send the message to.
+	 * @param routeUuid           The UUID of the route in destruction.
+	 */
+	private void dispatchRouteDestroyToNeighbor(@NonNull String neighborAddressName, @NonNull String routeUuid) {
+		RouteDestroyMessage routeDestroyMessage = RouteDestroyMessage.newBuilder()
 				.setRouteUuid(routeUuid).build();
 		NearbyMessageBody nearbyMessageBody = NearbyMessageBody.newBuilder()
 				.setMessageTypeValue(NearbyMessageType.ROUTE_DESTROY_VALUE)
@@ -1151,6 +1717,18 @@ public class NearbyRouteManager {
 	 *                      route destruction message was received.
 	 */
 	private void dispatchRouteDestroy(@NonNull String routeUuid, @Nullable String exceptAddress) {
+		String splicedUuid = routeRepairs.forget(routeUuid);
+		if (splicedUuid != null) {
+			// A repaired route and its sub-path go together
+			dispatchRouteDestroy(splicedUuid, null);
+		}
+		forwardingTable.removeRoute(routeUuid);
+		routeAlternatives.removeRoute(routeUuid);
+		if (isProactiveRoute(routeUuid)) {
+			// Shared by the routes of all the nodes toward the destination: only this node's one goes
+			executor.execute(() -> dropProactiveRouteSync(routeUuid));
+			return;
+		}
 		executor.execute(() -> {
 			Log.d(TAG, "Dispatching RouteDestroyMessage to all neighbors for route " + routeUuid);
 			RouteEntry route = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
@@ -1172,6 +1750,45 @@ public class NearbyRouteManager {
 		});
 	}
 
+	/**
+	 * Destroys all the routes passing through a neighbor, typically because its link is suspected
+	 * dead. The other participants of the routes are notified, but not the neighbor itself.
+	 *
+	 * @param neighborAddressName The address name of the neighbor.
+	 */
+	public void invalidateRoutesThrough(@NonNull String neighborAddressName) {
+		executor.execute(() -> {
+			Node neighbor = nodeRepository.findNodeSync(neighborAddressName);
+			if (neighbor == null) {
+				return;
+			}
+			routeAlternatives.removeNextHop(neighbor.getId());
+			if (proactiveRouting) {
+				applyDistanceVectorUpdates(distanceVectors.onNeighborLost(neighborAddressName));
+			}
+			List<String> routeUuids = routeRepository.findRouteUuidsThroughNeighborSync(neighbor.getId());
+			Log.d(TAG, "Invalidating " + routeUuids.size() + " route(s) through " + neighborAddressName);
+			for (String routeUuid : routeUuids) {
+				if (!failOverBrokenRouteSync(routeUuid, neighbor.getId())) {
+					dispatchRouteDestroy(routeUuid, neighborAddressName);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Unbinds the routes through a neighbor from its endpoint, which is no longer valid.
+	 *
+	 * @param neighborAddressName The address name of the disconnected neighbor.
+	 */
+	public void onNeighborDisconnected(@NonNull String neighborAddressName) {
+		forwardingTable.unbindEndpoint(neighborAddressName);
+		fullBeaconNeighbors.remove(neighborAddressName);
+		if (proactiveRouting) {
+			executor.execute(() -> applyDistanceVectorUpdates(distanceVectors.onNeighborLost(neighborAddressName)));
+		}
+	}
+
 	/**
 	 * Handles an incoming {@link RouteDestroyMessage} received from a neighbor.
 	 * This method will propagate the route destruction to other relevant neighbors
@@ -1183,7 +1800,162 @@ public class NearbyRouteManager {
 	 */
 	protected void handleIncomingRouteDestroyMessage(
 			@NonNull RouteDestroyMessage routeDestroyMessage, @NonNull String senderAddressName) {
-		dispatchRouteDestroy(routeDestroyMessage.getRouteUuid(), senderAddressName);
+		String routeUuid = routeDestroyMessage.getRouteUuid();
+		executor.execute(() -> {
+			Long senderNodeLocalId = nodeRepository.findNodeIdSync(senderAddressName);
+			if (senderNodeLocalId != null) {
+				if (routeAlternatives.removeHop(routeUuid, senderNodeLocalId)) {
+					// Only an alternative branch is gone, the route in use is intact
+					Log.d(TAG, "Alternative route " + routeUuid + " through " + senderAddressName + " destroyed.");
+					return;
+				}
+				if (failOverBrokenRouteSync(routeUuid, senderNodeLocalId)) {
+					return;
+				}
+			}
+			dispatchRouteDestroy(routeUuid, senderAddressName);
+		});
+	}
+
+	/**
+	 * Replaces, by its best alternative, a route of this node broken at its next hop: the route
+	 * entry is pointed at the alternative branch, so that the messages go on without a new discovery.
+	 * Has no effect on the routes this node only relays or whose next hop isn't the given neighbor.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 *
+	 * @param routeUuid            The UUID of the broken route.
+	 * @param brokenNextHopLocalId The local ID of the neighbor through which the route broke.
+	 * @return whether the route has been replaced and must not be destroyed
+	 */
+	private boolean failOverBrokenRouteSync(@NonNull String routeUuid, long brokenNextHopLocalId) {
+		RouteEntry route = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
+		if (route == null || !Objects.equals(route.getNextHopLocalId(), brokenNextHopLocalId)) {
+			return false;
+		}
+		RouteEntry replacement = failOverSync(route, false);
+		if (replacement == null) {
+			return false;
+		}
+		if (!replacement.getDiscoveryUuid().equals(routeUuid)) {
+			// Another discovery took over: the broken one can go
+			dispatchRouteDestroy(routeUuid, null);
+		}
+		return true;
+	}
+
+	/**
+	 * Points a route initiated by this node at the best alternative toward its destination.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 *
+	 * @param route         The failing route.
+	 * @param keepAsBackup  Whether the failing branch is kept as an alternative, e.g. after a
+	 *                      transient send failure, rather than forgotten.
+	 * @return the route entry to use from now on, or {@code null} if there is no alternative
+	 */
+	@Nullable
+	private RouteEntry failOverSync(@NonNull RouteEntry route, boolean keepAsBackup) {
+		Long destinationNodeLocalId = route.getDestinationNodeLocalId();
+		Long brokenNextHopLocalId = route.getNextHopLocalId();
+		if (route.getPreviousHopLocalId() != null || destinationNodeLocalId == null || brokenNextHopLocalId == null) {
+			// Not initiated by this node: the initiator takes care of it
+			return null;
+		}
+		if (isProactiveRoute(route.getDiscoveryUuid())) {
+			// Repaired by the route beacons
+			return null;
+		}
+		RouteAlternatives.Alternative alternative = routeAlternatives.takeBest(destinationNodeLocalId, brokenNextHopLocalId);
+		if (alternative == null) {
+			return null;
+		}
+		return switchRouteSync(route, alternative, keepAsBackup);
+	}
+
+	/**
+	 * Switches a route initiated by this node to a late alternative of its discovery, if the
+	 * alternative is significantly cheaper. The replaced branch is kept as an alternative.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 *
+	 * @param routeUuid      The discovery UUID of the route.
+	 * @param nextHopLocalId The local ID of the next hop of the alternative.
+	 * @param linkCost       The link cost of the alternative.
+	 */
+	private void preferCheaperRouteSync(@NonNull String routeUuid, long nextHopLocalId, int linkCost) {
+		RouteEntry route = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
+		if (route == null || route.getPreviousHopLocalId() != null || route.getDestinationNodeLocalId() == null
+				|| route.getNextHopLocalId() == null || linkCost >= PREFERRED_ROUTE_COST_RATIO * routeCost(route)) {
+			return;
+		}
+		RouteAlternatives.Alternative alternative = routeAlternatives.take(routeUuid, nextHopLocalId);
+		if (alternative != null) {
+			switchRouteSync(route, alternative, true);
+		}
+	}
+
+	@NonNull
+	private RouteEntry switchRouteSync(@NonNull RouteEntry route, @NonNull RouteAlternatives.Alternative alternative,
+	                                   boolean keepAsBackup) {
+		long destinationNodeLocalId = route.getDestinationNodeLocalId();
+		if (keepAsBackup) {
+			routeAlternatives.demote(route.getDiscoveryUuid(), destinationNodeLocalId, route.getNextHopLocalId(),
+					Objects.requireNonNullElse(route.getHopCount(), 0), routeCost(route));
+		}
+		RouteEntry existing = alternative.routeUuid.equals(route.getDiscoveryUuid()) ? route
+				: routeRepository.findRouteByDiscoveryUuidSync(alternative.routeUuid);
+		RouteEntry replacement = new RouteEntry();
+		replacement.setDiscoveryUuid(alternative.routeUuid);
+		replacement.setDestinationNodeLocalId(destinationNodeLocalId);
+		replacement.setNextHopLocalId(alternative.nextHopLocalId);
+		replacement.setHopCount(alternative.hopCount);
+		replacement.setLinkCost(alternative.linkCost);
+		replacement.setLastUseTimestamp(System.currentTimeMillis());
+		if (existing != null) {
+			// Same row, its usages by other nodes are kept
+			replacement.setId(existing.getId());
+			replacement.setPreviousHopLocalId(existing.getPreviousHopLocalId());
+			routeRepository.updateRouteEntry(replacement, null);
+		} else {
+			routeRepository.insertRouteEntry(replacement, ok -> {
+				if (!ok) {
+					Log.w(TAG, "Failed to store the alternative route " + alternative.routeUuid);
+				}
+			});
+		}
+		Log.d(TAG, "Route " + route.getDiscoveryUuid() + " switched to " + alternative.routeUuid
+				+ " through node " + alternative.nextHopLocalId + " (" + alternative.hopCount + " hops, cost "
+				+ alternative.linkCost + ").");
+		return replacement;
+	}
+
+	/**
+	 * Returns the link cost of the path a {@code ROUTE_FOUND} response comes from, seen from this
+	 * node: the cost carried by the response, at least a unit per hop, plus the cost of the link
+	 * toward its sender.
+	 */
+	private int receivedRouteCost(@NonNull RouteResponseMessage routeResponse, @NonNull String senderAddressName) {
+		long pathCost = Math.max(Integer.toUnsignedLong(routeResponse.getLinkCost()),
+				(long) Math.max(0, routeResponse.getHopCount()) * LinkQualityMonitor.LINK_COST_UNIT);
+		return (int) Math.min(Integer.MAX_VALUE, pathCost + nearbyManager.getLinkCost(senderAddressName));
+	}
+
+	/**
+	 * Returns the link cost of a route, estimated from its hop count for the routes learned
+	 * before the costs were tracked.
+	 */
+	private static int routeCost(@NonNull RouteEntry route) {
+		if (route.getLinkCost() != null) {
+			return route.getLinkCost();
+		}
+		return Math.max(0, Objects.requireNonNullElse(route.getHopCount(), 0)) * LinkQualityMonitor.LINK_COST_UNIT;
+	}
+
+	/**
+	 * Tells whether a known route may answer the route requests of other nodes: a route going
+	 * through lossy or slow links isn't, so that the discovery looks for a better one.
+	 */
+	private static boolean isReusable(@NonNull RouteEntry route) {
+		int hops = Math.max(1, Objects.requireNonNullElse(route.getHopCount(), 0));
+		return routeCost(route) <= MAX_REUSED_ROUTE_COST_STRETCH * hops * LinkQualityMonitor.LINK_COST_UNIT;
 	}
 
 	// Routed messages exchange methods
@@ -1193,7 +1965,7 @@ public class NearbyRouteManager {
 	 * This method runs on the caller's thread.
 	 */
 	private void sendRoutedMessageToNextHop(
-			@NonNull String nextHopAddressName, @NonNull RoutedMessage routedMessage,
+			@Nullable String nextHopEndpointId, @NonNull String nextHopAddressName, @NonNull RoutedMessage routedMessage,
 			@NonNull RouteEntry route, @Nullable TransmissionCallback callback) {
 		try {
 			Log.d(TAG, "Sending RoutedMessage to next hop: " + nextHopAddressName);
@@ -1210,8 +1982,7 @@ public class NearbyRouteManager {
 						callback.onSuccess(payload);
 					}
 					Log.d(TAG, "RoutedMessage sent to next hop: " + nextHopAddressName);
-					route.setLastUseTimestamp(System.currentTimeMillis());
-					routeRepository.updateRouteEntry(route, null);
+					routeRepository.recordRouteUse(route, System.currentTimeMillis());
 				}
 
 				@Override
@@ -1224,7 +1995,7 @@ public class NearbyRouteManager {
 			};
 
 			// Use NearbyManager to send the raw payload bytes
-			nearbyManager.encryptAndSendInternal(null, nextHopAddressName, outerNearbyMessageBody, transmissionCallback);
+			nearbyManager.encryptAndSendInternal(nextHopEndpointId, nextHopAddressName, outerNearbyMessageBody, transmissionCallback);
 		} catch (Exception e) {
 			Log.e(TAG, "Error building or sending RoutedMessage to " + nextHopAddressName, e);
 		}
@@ -1233,16 +2004,32 @@ public class NearbyRouteManager {
 	@Nullable
 	protected RouteWithUsage getIfExistRouteAndUsageFor(@NonNull String remoteAddressName) {
 		// 1. Resolve finalDestinationAddressName to local ID
-		Node finalDestinationNode = nodeRepository.findNodeSync(remoteAddressName);
-		if (finalDestinationNode == null) {
+		Long finalDestinationNodeId = nodeRepository.findNodeIdSync(remoteAddressName);
+		if (finalDestinationNodeId == null) {
 			Log.e(TAG, "Final destination node " + remoteAddressName + " not found in local repository.");
 			return null;
 		}
 
 		// 2. Find an active route to the final destination
-		RouteWithUsage entryUsage = routeRepository.findMostRecentRouteByDestinationSync(finalDestinationNode.getId());
+		RouteWithUsage entryUsage = findUsableRouteSync(finalDestinationNodeId);
 		if (entryUsage == null) {
 			Log.e(TAG, "No active route found for destination " + remoteAddressName + ". Please initiate route discovery.");
+		}
+		return entryUsage;
+	}
+
+	/**
+	 * Finds the most recently used route to a destination, unless it has been inactive
+	 * for more than {@link #ROUTE_MAX_INACTIVITY_MILLIS}, in which case it is destroyed.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 *
+	 * @param destinationNodeLocalId The local ID of the destination node.
+	 * @return the route, or {@code null} if there is no usable one
+	 */
+	@Nullable
+	private RouteWithUsage findUsableRouteSync(long destinationNodeLocalId) {
+		RouteWithUsage entryUsage = routeRepository.findMostRecentRouteByDestinationSync(destinationNodeLocalId);
+		if (entryUsage == null) {
 			return null;
 		}
 		if (entryUsage.routeEntry.getLastUseTimestamp() == null) {
@@ -1258,6 +2045,108 @@ public class NearbyRouteManager {
 		return entryUsage;
 	}
 
+	/**
+	 * Identifies the next hop to use, on the given route, for a message originated by this node.
+	 * The route is destroyed if its next hop can't be resolved anymore.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 *
+	 * @param finalDestinationNode The node the message is intended to.
+	 * @param routeWithUsage       Wrapper of the route to use and its usages.
+	 * @return the next hop, or {@code null} if the route can't be used
+	 */
+	@Nullable
+	protected NextHop resolveNextHopSync(@NonNull Node finalDestinationNode, @NonNull RouteWithUsage routeWithUsage) {
+		return resolveNextHopSync(finalDestinationNode.getId(), finalDestinationNode.getAddressName(), routeWithUsage);
+	}
+
+	@Nullable
+	private NextHop resolveNextHopSync(
+			@NonNull Long finalDestinationNodeId, @NonNull String finalDestinationAddressName,
+			@NonNull RouteWithUsage routeWithUsage) {
+		RouteEntry activeRoute = routeWithUsage.routeEntry;
+		RouteUsage usage = routeWithUsage.routeUsage;
+		// Identify the next hop node for this route
+		Long nextHopLocalId;
+		boolean isForBacktracking;
+		String usageUuid;
+		if (routeWithUsage.isWithoutUsage() || Objects.equals(finalDestinationNodeId, activeRoute.getDestinationNodeLocalId())) {
+			/*
+			 * [`routeWithUsage.isWithoutUsage()`]
+			 * This node is just an intermediate node on this route.
+			 * So the route's destination match the final destination.
+			 * [`Objects.equals(finalDestinationNode.getId(), activeRoute.getDestinationNodeLocalId())`]
+			 * The route point to the final destination.
+			 */
+			nextHopLocalId = activeRoute.getNextHopLocalId();
+			isForBacktracking = false;
+			usageUuid = activeRoute.getDiscoveryUuid();
+		} else {
+			// We are in case of backtracking
+			if (usage == null) {
+				Log.e(TAG, "Impossible to find the RouteUsage for destination " + finalDestinationAddressName + ". The next hop is to extracted from the RouteUsage.");
+				return null;
+			}
+			nextHopLocalId = usage.getPreviousHopLocalId();
+			isForBacktracking = true;
+			usageUuid = usage.getUsageRequestUuid();
+		}
+
+		// Resolve the next hop node for this route
+		String nextHopAddressName;
+		if (nextHopLocalId == null || (nextHopAddressName = nodeRepository.findAddressNameSync(nextHopLocalId)) == null) {
+			Log.e(TAG, "Next hop node for route " + activeRoute.getDiscoveryUuid() + " not found. Route might be stale/invalid.");
+			dispatchRouteDestroy(activeRoute.getDiscoveryUuid(), null); // Invalidate the bad route
+			return null;
+		}
+		return new NextHop(nextHopAddressName, activeRoute.getDiscoveryUuid(), usageUuid, isForBacktracking);
+	}
+
+	/**
+	 * Identifies the next hop of a routed message or stream this node only relays.
+	 * The route is destroyed if it or its next hop can't be resolved anymore.
+	 * This method runs on the caller's thread and must not be called from the main thread.
+	 *
+	 * @return the address name of the next hop, or {@code null} if the route can't be used
+	 */
+	@Nullable
+	protected String resolveRelayNextHopSync(@NonNull String routeUuid, @NonNull String routeUsageUuid, boolean forBacktracking) {
+		return resolveRelayNextHopSync(routeRepository.findRouteByDiscoveryUuidSync(routeUuid), routeUuid, routeUsageUuid, forBacktracking);
+	}
+
+	@Nullable
+	private String resolveRelayNextHopSync(
+			@Nullable RouteEntry activeRoute, @NonNull String routeUuid, @NonNull String routeUsageUuid, boolean forBacktracking) {
+		if (activeRoute == null) {
+			Log.e(TAG, "Unable to locate the route for request ID: " + routeUuid);
+			// The route is probably invalidated
+			dispatchRouteDestroy(routeUuid, null);
+			return null;
+		}
+		Long nextHopLocalId;
+		if (forBacktracking) {
+			// We are in case of backtracking
+			RouteUsage usage = routeRepository.findRouteUsageByUsageUuidSync(routeUsageUuid);
+			if (usage != null && usage.getPreviousHopLocalId() != null) {
+				// Usage previous hop is the correct to fetch cases of route reuse
+				nextHopLocalId = usage.getPreviousHopLocalId();
+			} else {
+				// The node is just an intermediate node on this route.
+				nextHopLocalId = activeRoute.getPreviousHopLocalId();
+			}
+		} else {
+			nextHopLocalId = activeRoute.getNextHopLocalId();
+		}
+
+		// Resolve the next hop
+		String nextHopAddressName;
+		if (nextHopLocalId == null || (nextHopAddressName = nodeRepository.findAddressNameSync(nextHopLocalId)) == null) {
+			Log.e(TAG, "Next hop node for route " + activeRoute.getDiscoveryUuid() + " not found on intermediate node. Route might be stale/invalid.");
+			dispatchRouteDestroy(routeUuid, null); // Invalidate the bad route
+			return null;
+		}
+		return nextHopAddressName;
+	}
+
 	/**
 	 * Initiates the process of sending an application-level message (contained in
 	 * {@code internalNearbyMessageBody}) from the {@code originalSenderAddressName}
@@ -1293,54 +2182,22 @@ public class NearbyRouteManager {
 			Log.d(TAG, "Attempting to send message to " + finalDestinationAddressName + " from " + originalSenderAddressName);
 
 			// 1. Resolve finalDestinationAddressName to local ID
-			Node finalDestinationNode = nodeRepository.findNodeSync(finalDestinationAddressName);
-			if (finalDestinationNode == null) {
+			Long finalDestinationNodeId = nodeRepository.findNodeIdSync(finalDestinationAddressName);
+			if (finalDestinationNodeId == null) {
 				Log.e(TAG, "Final destination node " + finalDestinationAddressName + " not found in local repository.");
 				callback.onFailure(null, null);
 				return;
 			}
 
-			// 2. Get the active route to the final destination
+			// 2. Resolve the next hop on the active route to the final destination
 			RouteEntry activeRoute = routeWithUsage.routeEntry;
-			RouteUsage usage = routeWithUsage.routeUsage;
-			// Identify the next hop node for this route
-			Long nextHopLocalId;
-			boolean isForBacktracking;
-			String usageUuid;
-			if (routeWithUsage.isWithoutUsage() || Objects.equals(finalDestinationNode.getId(), activeRoute.getDestinationNodeLocalId())) {
-				/*
-				 * [`routeWithUsage.isWithoutUsage()`]
-				 * This node is just an intermediate node on this route.
-				 * So the route's destination match the final destination.
-				 * [`Objects.equals(finalDestinationNode.getId(), activeRoute.getDestinationNodeLocalId())`]
-				 * The route point to the final destination.
-				 */
-				nextHopLocalId = activeRoute.getNextHopLocalId();
-				isForBacktracking = false;
-				usageUuid = activeRoute.getDiscoveryUuid();
-			} else {
-				// We are in case of backtracking
-				if (usage == null) {
-					Log.e(TAG, "Impossible to find the RouteUsage for destination " + finalDestinationAddressName + ". The next hop is to extracted from the RouteUsage.");
-					callback.onFailure(null, null);
-					return;
-				}
-				nextHopLocalId = usage.getPreviousHopLocalId();
-				isForBacktracking = true;
-				usageUuid = usage.getUsageRequestUuid();
-			}
-
-			// 3. Resolve the next hop node for this route
-			Node nextHopNode;
-			if (nextHopLocalId == null || (nextHopNode = nodeRepository.findNodeSync(nextHopLocalId)) == null) {
-				Log.e(TAG, "Next hop node for route " + activeRoute.getDiscoveryUuid() + " not found. Route might be stale/invalid.");
-				dispatchRouteDestroy(activeRoute.getDiscoveryUuid(), null); // Invalidate the bad route
+			NextHop nextHop = resolveNextHopSync(finalDestinationNodeId, finalDestinationAddressName, routeWithUsage);
+			if (nextHop == null) {
 				callback.onFailure(null, null);
 				return;
 			}
-			String nextHopAddressName = nextHopNode.getAddressName();
 
-			// 4. Create the end-to-end encrypted RoutedMessageBody
+			// 3. Create the end-to-end encrypted RoutedMessageBody
 			// This part is encrypted for the final destination
 			RoutedMessageBody routedMessageBody = RoutedMessageBody.newBuilder()
 					.setInternalMessageBody(internalNearbyMessageBody)
@@ -1349,7 +2206,7 @@ public class NearbyRouteManager {
 			CiphertextMessage encryptedRoutedMessageBody;
 			try {
 				// Encrypt RoutedMessageBody with final destination's public key (E2E encryption)
-				encryptedRoutedMessageBody = NearbySignalMessenger.getInstance().encrypt(routedMessageBody.toByteArray(), finalDestinationAddressName);
+				encryptedRoutedMessageBody = services.encrypt(routedMessageBody.toByteArray(), finalDestinationAddressName);
 				Log.d(TAG, "RoutedMessageBody encrypted for " + finalDestinationAddressName);
 			} catch (Exception e) {
 				Log.e(TAG, "Failed to E2E encrypt RoutedMessageBody for " + finalDestinationAddressName + ": " + e.getMessage(), e);
@@ -1357,23 +2214,215 @@ public class NearbyRouteManager {
 				return;
 			}
 
-			// 5. Create the hop-by-hop RoutedMessage
+			// 4. Create the hop-by-hop RoutedMessage
 			// This contains routing info + the E2E encrypted payload
 			RoutedMessage routedMessage = RoutedMessage.newBuilder()
 					.setFinalDestinationNodeId(finalDestinationAddressName)
 					.setRouteUuid(activeRoute.getDiscoveryUuid())
-					.setRouteUsageUuid(usageUuid)
+					.setRouteUsageUuid(nextHop.routeUsageUuid())
 					.setEncryptedRoutedMessageBody(ByteString.copyFrom(encryptedRoutedMessageBody.serialize()))
 					.setOriginalSenderNodeId(originalSenderAddressName)
-					.setForBacktracking(isForBacktracking)
+					.setForBacktracking(nextHop.forBacktracking())
 					.build();
 
-			// 6. Send the RoutedMessage to the next hop
+			// 5. Send the RoutedMessage to the next hop
 			// This part will be encrypted hop-by-hop by NearbySignalMessenger
-			sendRoutedMessageToNextHop(nextHopAddressName, routedMessage, activeRoute, callback);
+			boolean initiatedHere = !nextHop.forBacktracking() && activeRoute.getPreviousHopLocalId() == null
+					&& activeRoute.getNextHopLocalId() != null;
+			sendRoutedMessageToNextHop(null, nextHop.addressName(), routedMessage, activeRoute,
+					initiatedHere ? withFailOver(routedMessage, activeRoute, callback, true) : callback);
 		});
 	}
 
+	/**
+	 * Wraps the callback of a message sent on a route initiated by this node: the outcome feeds
+	 * the reliability of the route and, on failure, the message is sent again once on the best
+	 * alternative route, if any.
+	 */
+	@NonNull
+	private TransmissionCallback withFailOver(
+			@NonNull RoutedMessage routedMessage, @NonNull RouteEntry route,
+			@NonNull TransmissionCallback callback, boolean mayFailOver) {
+		String routeUuid = route.getDiscoveryUuid();
+		// Null if the route lost its next hop meanwhile
+		Long nextHopLocalId = route.getNextHopLocalId();
+		return new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload payload) {
+				if (nextHopLocalId != null) {
+					routeAlternatives.recordResult(routeUuid, nextHopLocalId, true);
+				}
+				callback.onSuccess(payload);
+			}
+
+			@Override
+			public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+				if (nextHopLocalId != null) {
+					routeAlternatives.recordResult(routeUuid, nextHopLocalId, false);
+				}
+				if (!mayFailOver) {
+					callback.onFailure(payload, cause);
+					return;
+				}
+				executor.execute(() -> {
+					RouteEntry current = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
+					// Another send may have failed over already
+					RouteEntry replacement = current != null && current.getNextHopLocalId() != null
+							&& !current.getNextHopLocalId().equals(nextHopLocalId) ? current : failOverSync(route, true);
+					String nextHopAddressName = null;
+					while (replacement != null) {
+						Long replacementNextHopLocalId = replacement.getNextHopLocalId();
+						nextHopAddressName = replacementNextHopLocalId == null ? null
+								: nodeRepository.findAddressNameSync(replacementNextHopLocalId);
+						if (nextHopAddressName != null) {
+							break;
+						}
+						// No way through this alternative: the next one is tried
+						replacement = failOverSync(route, true);
+					}
+					if (replacement == null || nextHopAddressName == null) {
+						callback.onFailure(payload, cause);
+						return;
+					}
+					RoutedMessage rerouted = routedMessage.toBuilder()
+							.setRouteUuid(replacement.getDiscoveryUuid())
+							.setRouteUsageUuid(replacement.getDiscoveryUuid())
+							.build();
+					sendRoutedMessageToNextHop(null, nextHopAddressName, rerouted, replacement,
+							withFailOver(rerouted, replacement, callback, false));
+				});
+			}
+		};
+	}
+
+	// Local route repair
+
+	/**
+	 * Tells whether a route broken at its next hop is repaired by this node rather than destroyed:
+	 * only the forward direction of the routes it relays is, the proactive routes being repaired by
+	 * the route beacons.
+	 */
+	private static boolean isRepairable(@NonNull RouteEntry route, boolean forBacktracking) {
+		return !forBacktracking && route.getPreviousHopLocalId() != null && route.getDestinationNodeLocalId() != null
+				&& !isProactiveRoute(route.getDiscoveryUuid());
+	}
+
+	/**
+	 * Repairs a route this node relays, broken at its next hop: the message is held while a small
+	 * ring around this node looks for another path toward the destination, on behalf of the
+	 * original sender of the message. The route is destroyed if it can't be repaired, or if the
+	 * repair fails or lasts more than the round trip through its ring. See {@link RouteRepairs}.
+	 * A route used by several originators isn't repaired: the answers of the sub-path could only
+	 * be backtracked to one of them.
+	 * This method runs on the executor thread.
+	 *
+	 * @param route   The broken route.
+	 * @param message The message that revealed the break, forward on the route.
+	 */
+	private void repairRoute(@NonNull RouteEntry route, @NonNull RoutedMessage message) {
+		String routeUuid = route.getDiscoveryUuid();
+		if (!routeRepairs.accepts(message)) {
+			Log.w(TAG, "Route " + routeUuid + " under repair for another usage. Destroying it.");
+			dispatchRouteDestroy(routeUuid, null);
+			return;
+		}
+		if (routeRepairs.hold(routeUuid, message)) {
+			return;
+		}
+		String requestUuid = UUID.randomUUID().toString();
+		Node destination = nodeRepository.findNodeSync(route.getDestinationNodeLocalId());
+		if (destination == null || routeRepository.findRouteUsagesByRouteUuidSync(routeUuid).size() > 1
+				|| !routeRepairs.start(routeUuid, requestUuid, message)) {
+			Log.w(TAG, "Route " + routeUuid + " broken at its next hop and not repairable. Destroying it.");
+			dispatchRouteDestroy(routeUuid, null);
+			return;
+		}
+		int radius = routeRepairs.radius(Objects.requireNonNullElse(route.getHopCount(), 0));
+		// The previous hop would answer through this node
+		String previousHopAddressName = nodeRepository.findAddressNameSync(route.getPreviousHopLocalId());
+		RouteRequestEntry requestEntry = new RouteRequestEntry(requestUuid);
+		requestEntry.setDestinationNodeLocalId(destination.getId());
+		requestEntry.setPreviousHopLocalId(null); // This node initiates the repair
+		long maxTtl = System.currentTimeMillis() + DEFAULT_ROUTE_TTL_MILLIS;
+		routeRepository.insertRouteRequest(requestEntry, maxTtl, ok -> {
+			if (!ok) {
+				Log.w(TAG, "Failed to create the RouteRequestEntry of the repair " + requestUuid);
+				executor.execute(() -> failRouteRepair(requestUuid));
+				return;
+			}
+			Log.d(TAG, "Repairing route " + routeUuid + " toward " + destination.getAddressName() + " with request " + requestUuid + " (ring radius " + radius + ")");
+			requestReaper.schedule(requestUuid, maxTtl);
+			// The destination answers the original sender through the sub-path
+			RouteRequestMessage routeRequest = RouteRequestMessage.newBuilder()
+					.setUuid(requestUuid)
+					.setDestinationNodeId(destination.getAddressName())
+					.setRemainingHops(radius)
+					.setMaxTtl(maxTtl)
+					.setInitiatorNodeId(message.getOriginalSenderNodeId())
+					.build();
+			broadcastRouteRequestToNeighbors(routeRequest, previousHopAddressName, sentToNeighborsCount -> {
+				if (sentToNeighborsCount == 0) {
+					executor.execute(() -> failRouteRepair(requestUuid));
+				} else {
+					scheduler.schedule(() -> executor.execute(() -> failRouteRepair(requestUuid)),
+							expandingRing.timeoutMillis(radius), TimeUnit.MILLISECONDS);
+				}
+			});
+		});
+	}
+
+	/**
+	 * Splices the sub-path found by a repair request into the repaired route, then sends the
+	 * messages held meanwhile through it. This method runs on the executor thread.
+	 *
+	 * @param subPath The route of this node found by the repair request, of the same UUID.
+	 * @param nextHop The neighbor the sub-path starts with.
+	 */
+	private void completeRouteRepair(@NonNull RouteEntry subPath, @NonNull Node nextHop) {
+		String subPathUuid = subPath.getDiscoveryUuid();
+		RouteRepairs.Repair repair = routeRepairs.complete(subPathUuid);
+		RouteEntry route = repair == null ? null : routeRepository.findRouteByDiscoveryUuidSync(repair.routeUuid());
+		if (route == null) {
+			Log.d(TAG, "Sub-path " + subPathUuid + " found, but its route was given up meanwhile.");
+			dispatchRouteDestroy(subPathUuid, null);
+			return;
+		}
+		Log.d(TAG, "Route " + route.getDiscoveryUuid() + " repaired through " + nextHop.getAddressName() + ". Sending "
+				+ repair.messages().size() + " held RoutedMessage(s).");
+		// The route leaves this node through the sub-path from now on
+		route.setNextHopLocalId(nextHop.getId());
+		route.setHopCount(Objects.requireNonNullElse(subPath.getHopCount(), 0) + 1);
+		route.setLinkCost(subPath.getLinkCost());
+		routeRepository.updateRouteEntry(route, null);
+		forwardingTable.removeRoute(route.getDiscoveryUuid());
+		forwardingTable.put(subPathUuid, subPathUuid, false, nextHop.getAddressName());
+		for (RoutedMessage message : repair.messages()) {
+			sendRoutedMessageToNextHop(null, nextHop.getAddressName(), routeRepairs.translate(message), subPath, null);
+		}
+	}
+
+	/**
+	 * Gives up a repair whose request failed or timed out: its state is dropped, so are the
+	 * messages held, and the route is destroyed as it would have been without repair.
+	 * This method runs on the executor thread.
+	 *
+	 * @param requestUuid The UUID of the repair request.
+	 * @return whether the request was of a repair in flight
+	 */
+	private boolean failRouteRepair(@NonNull String requestUuid) {
+		RouteRepairs.Repair repair = routeRepairs.fail(requestUuid);
+		if (repair == null) {
+			return false;
+		}
+		Log.w(TAG, "Repair of route " + repair.routeUuid() + " failed, dropping " + repair.messages().size()
+				+ " held RoutedMessage(s). Destroying it.");
+		requestReaper.cancel(requestUuid);
+		routeRepository.deleteRouteRequestByRequestUuid(requestUuid);
+		routeRepository.dropBroadcastStatusesByRequestUuid(requestUuid);
+		dispatchRouteDestroy(repair.routeUuid(), null);
+		return true;
+	}
+
 	/**
 	 * Handles an incoming {@link RoutedMessage}, processing it either as the final destination
 	 * or as an intermediate node for forwarding.
@@ -1387,7 +2436,8 @@ public class NearbyRouteManager {
 	 * {@code finalDestinationNodeId} within the {@code incomingRoutedMessage} and
 	 * re-encapsulates the message for forwarding to that next hop. The end-to-end
 	 * encrypted payload remains untouched by intermediate nodes. If the payload ID
-	 * is defined if it isn't defined yet.
+	 * is defined if it isn't defined yet. If the next hop of the route is gone, the message is
+	 * held while this node repairs the route locally, see {@link #repairRoute}.
 	 * <p>
 	 * This method also updates the {@link RouteEntry} last use timestamp
 	 * for the route being utilized.
@@ -1417,7 +2467,7 @@ public class NearbyRouteManager {
 				RoutedMessageBody decryptedRoutedMessageBody;
 				try {
 					byte[] cipherData = incomingRoutedMessage.getEncryptedRoutedMessageBody().toByteArray();
-					byte[] decryptedBytes = NearbySignalMessenger.getInstance().decrypt(cipherData, incomingRoutedMessage.getOriginalSenderNodeId());
+					byte[] decryptedBytes = services.decrypt(cipherData, incomingRoutedMessage.getOriginalSenderNodeId());
 					decryptedRoutedMessageBody = RoutedMessageBody.parseFrom(decryptedBytes);
 				} catch (Exception e) {
 					Log.e(TAG, "Failed to E2E decrypt RoutedMessageBody for UUID " + routeUuid, e);
@@ -1435,49 +2485,90 @@ public class NearbyRouteManager {
 				// 2. Current node is an intermediate node, forward the message
 				Log.d(TAG, "Current node is an intermediate node for RoutedMessage to " + finalDestinationAddressName);
 
-				RouteEntry activeRoute = routeRepository.findRouteByDiscoveryUuidSync(routeUuid);
-				RouteUsage usage = routeRepository.findRouteUsageByUsageUuidSync(incomingRoutedMessage.getRouteUsageUuid());
-
-				if (activeRoute == null) {
-					Log.e(TAG, "Unable to locate the route for request ID: " + routeUuid);
-					// The route is probably invalidated
+				RoutedMessage routedMessage;
+				if (incomingRoutedMessage.getPayloadId() != 0L) {
+					routedMessage = incomingRoutedMessage; // Re-use the existing RoutedMessage bytes
+				} else {
+					routedMessage = incomingRoutedMessage.toBuilder().setPayloadId(payloadId).build();
+				}
+				if (!routeRepairs.accepts(routedMessage)) {
+					// The answers of this usage couldn't be told apart from the repaired one's
+					Log.w(TAG, "Route " + routeUuid + " repaired for another usage than " + routedMessage.getRouteUsageUuid()
+							+ ". Destroying it.");
 					dispatchRouteDestroy(routeUuid, null);
 					return;
 				}
-				Long nextHopLocalId;
-				if (incomingRoutedMessage.getForBacktracking()) {
-					// We are in case of backtracking
-					if (usage != null && usage.getPreviousHopLocalId() != null) {
-						// Usage previous hop is the correct to fetch cases of route reuse
-						nextHopLocalId = usage.getPreviousHopLocalId();
+				// At the splice of a repaired route, the message goes on through the other side
+				routedMessage = routeRepairs.translate(routedMessage);
+				String relayedRouteUuid = routedMessage.getRouteUuid();
+				String usageUuid = routedMessage.getRouteUsageUuid();
+				boolean forBacktracking = routedMessage.getForBacktracking();
+				if (!forBacktracking && routeRepairs.hold(relayedRouteUuid, routedMessage)) {
+					Log.d(TAG, "Route " + relayedRouteUuid + " under repair, RoutedMessage held.");
+					return;
+				}
+
+				RouteEntry activeRoute = routeRepository.findRouteByDiscoveryUuidSync(relayedRouteUuid);
+				boolean repairable = activeRoute != null && isRepairable(activeRoute, forBacktracking);
+				ForwardingTable.Hop hop = activeRoute == null ? null : forwardingTable.lookup(relayedRouteUuid, usageUuid, forBacktracking);
+				if (hop == null) {
+					// First message relayed on this usage, or the route is gone
+					String nextHopAddressName;
+					if (repairable) {
+						// A route this node can repair isn't destroyed at once
+						Long nextHopLocalId = activeRoute.getNextHopLocalId();
+						nextHopAddressName = nextHopLocalId == null ? null : nodeRepository.findAddressNameSync(nextHopLocalId);
+						if (nextHopAddressName == null) {
+							repairRoute(activeRoute, routedMessage);
+							return;
+						}
 					} else {
-						// The node is just an intermediate node on this route.
-						nextHopLocalId = activeRoute.getPreviousHopLocalId();
+						nextHopAddressName = resolveRelayNextHopSync(activeRoute, relayedRouteUuid, usageUuid, forBacktracking);
+						if (activeRoute == null || nextHopAddressName == null) {
+							return;
+						}
 					}
-				} else {
-					nextHopLocalId = activeRoute.getNextHopLocalId();
+					hop = forwardingTable.put(relayedRouteUuid, usageUuid, forBacktracking, nextHopAddressName);
 				}
-
-				// b. Resolve the next hop
-				Node nextHopNode;
-				if (nextHopLocalId == null || (nextHopNode = nodeRepository.findNodeSync(nextHopLocalId)) == null) {
-					Log.e(TAG, "Next hop node for route " + activeRoute.getDiscoveryUuid() + " not found on intermediate node. Route might be stale/invalid.");
-					dispatchRouteDestroy(routeUuid, null); // Invalidate the bad route
-					return;
+				String nextHopEndpointId = hop.endpointId;
+				if (nextHopEndpointId == null) {
+					nextHopEndpointId = nearbyManager.getLinkedEndpointId(hop.addressName);
+					hop.endpointId = nextHopEndpointId;
 				}
-				String nextHopAddressName = nextHopNode.getAddressName();
-				RoutedMessage routedMessage;
-				if (incomingRoutedMessage.getPayloadId() != 0L) {
-					routedMessage = incomingRoutedMessage; // Re-use the existing RoutedMessage bytes
-				} else {
-					routedMessage = incomingRoutedMessage.toBuilder().setPayloadId(payloadId).build();
+				if (repairable && nextHopEndpointId == null) {
+					// The next hop is gone
+					repairRoute(activeRoute, routedMessage);
+					return;
 				}
 
-				sendRoutedMessageToNextHop(nextHopAddressName, routedMessage, activeRoute, null);
+				RoutedMessage relayedMessage = routedMessage;
+				sendRoutedMessageToNextHop(nextHopEndpointId, hop.addressName, routedMessage, activeRoute,
+						!repairable ? null : new TransmissionCallback() {
+							@Override
+							public void onSuccess(@NonNull Payload payload) {
+							}
+
+							@Override
+							public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+								executor.execute(() -> repairRoute(activeRoute, relayedMessage));
+							}
+						});
 			}
 		});
 	}
 
+	/**
+	 * Next hop of a message sent through a route, with the routing information to attach to it.
+	 *
+	 * @param addressName     The address name of the neighbor to send the message to.
+	 * @param routeUuid       The discovery UUID of the route.
+	 * @param routeUsageUuid  The UUID of the route usage.
+	 * @param forBacktracking Whether the message travels the route backward.
+	 */
+	public record NextHop(@NonNull String addressName, @NonNull String routeUuid,
+	                      @NonNull String routeUsageUuid, boolean forBacktracking) {
+	}
+
 	interface BroadcastRequestCallback {
 		void onSuccess(@NotNull String neighborAddressName);
 
@@ -8,15 +8,19 @@ import static org.sedo.satmesh.proto.NearbyMessageType.MESSAGE_DELIVERED_ACK_VAL
 import static org.sedo.satmesh.proto.NearbyMessageType.MESSAGE_READ_ACK_VALUE;
 import static org.sedo.satmesh.proto.NearbyMessageType.PERSONAL_INFO_VALUE;
 import static org.sedo.satmesh.proto.NearbyMessageType.ROUTED_MESSAGE_VALUE;
+import static org.sedo.satmesh.proto.NearbyMessageType.ROUTE_BEACON_VALUE;
 import static org.sedo.satmesh.proto.NearbyMessageType.ROUTE_DESTROY_VALUE;
 import static org.sedo.satmesh.proto.NearbyMessageType.ROUTE_DISCOVERY_REQ_VALUE;
 import static org.sedo.satmesh.proto.NearbyMessageType.ROUTE_DISCOVERY_RESP_VALUE;
+import static org.sedo.satmesh.proto.NearbyMessageType.TRANSFER_OFFER_VALUE;
+import static org.sedo.satmesh.proto.NearbyMessageType.TRANSFER_RESUME_VALUE;
 import static org.sedo.satmesh.proto.NearbyMessageType.TYPING_INDICATOR_VALUE;
 import static org.sedo.satmesh.signal.SignalManager.getAddress;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
@@ -31,20 +35,31 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import org.sedo.satmesh.AppDatabase;
 import org.sedo.satmesh.model.Message;
 import org.sedo.satmesh.model.Node;
+import org.sedo.satmesh.nearby.codec.EnvelopeCodec;
+import org.sedo.satmesh.nearby.codec.PayloadCompressor;
+import org.sedo.satmesh.nearby.codec.PeerCapabilities;
+import org.sedo.satmesh.nearby.codec.RoutingWireCodec;
+import org.sedo.satmesh.nearby.data.BackpressureListener;
 import org.sedo.satmesh.nearby.data.DeviceConnectionListener;
+import org.sedo.satmesh.nearby.data.NeighborLivenessListener;
 import org.sedo.satmesh.nearby.data.PayloadListener;
+import org.sedo.satmesh.nearby.data.TransferListener;
 import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.nearby.transport.TrafficClass;
 import org.sedo.satmesh.proto.MessageAck;
 import org.sedo.satmesh.proto.MessageAckConfirmation;
 import org.sedo.satmesh.proto.NearbyMessage;
 import org.sedo.satmesh.proto.NearbyMessageBody;
 import org.sedo.satmesh.proto.PersonalInfo;
 import org.sedo.satmesh.proto.PreKeyBundleExchange;
+import org.sedo.satmesh.proto.RouteBeacon;
 import org.sedo.satmesh.proto.RouteDestroyMessage;
 import org.sedo.satmesh.proto.RouteRequestMessage;
 import org.sedo.satmesh.proto.RouteResponseMessage;
 import org.sedo.satmesh.proto.RoutedMessage;
 import org.sedo.satmesh.proto.TextMessage;
+import org.sedo.satmesh.proto.TransferOffer;
+import org.sedo.satmesh.proto.TransferResume;
 import org.sedo.satmesh.service.SATMeshCommunicationService;
 import org.sedo.satmesh.signal.SignalManager;
 import org.sedo.satmesh.ui.UiUtils;
@@ -62,13 +77,18 @@ import org.whispersystems.libsignal.SignalProtocolAddress;
 import org.whispersystems.libsignal.protocol.CiphertextMessage;
 import org.whispersystems.libsignal.state.PreKeyBundle;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
 
 /**
  * Manages Nearby Connections for discovering devices, establishing connections,
@@ -76,7 +96,8 @@ import java.util.function.Consumer;
  * This class handles the low-level communication aspects and integrates with {@link SignalManager}
  * for cryptographic operations and {@link AppDatabase} for persistence.
  */
-public class NearbySignalMessenger implements DeviceConnectionListener, PayloadListener {
+public class NearbySignalMessenger implements DeviceConnectionListener, PayloadListener, BackpressureListener, TransferListener,
+		NeighborLivenessListener, MeshServices {
 
 	/**
 	 * Minimum delay, in millisecond, to be elapsed before accept to resend message
@@ -107,6 +128,15 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	private final @NonNull SignalManager signalManager;
 	private final @NonNull NearbyManager nearbyManager;
 	private final @NonNull NearbyRouteManager nearbyRouteManager;
+	private final @NonNull ChunkedTransferManager transferManager;
+	// Database IDs of the messages whose content is being transferred, by transfer ID
+	private final Map<String, Long> outgoingContentMessages = new ConcurrentHashMap<>();
+	// IDs of the abandoned transfers, resumed on resend, by database ID of their message
+	private final Map<Long, String> abandonedContentTransfers = new ConcurrentHashMap<>();
+	private final PayloadCompressor payloadCompressor = new PayloadCompressor();
+	// Shared with the NearbyManager, which negotiates the batching of the frames
+	private final PeerCapabilities peerCapabilities;
+	private final RoutingWireCodec routingWireCodec = new RoutingWireCodec();
 	private final @NonNull Node hostNode; // Represents our own device
 	private final MessageRepository messageRepository;
 	private final NodeRepository nodeRepository;
@@ -123,17 +153,23 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 		this.nearbyManager = nearbyManager;
 		this.signalManager = signalManager;
 		this.hostNode = hostNode;
+		this.peerCapabilities = nearbyManager.getPeerCapabilities();
 		messageRepository = new MessageRepository(context);
 		nodeRepository = new NodeRepository(context);
 		this.executor = Executors.newSingleThreadExecutor(); // Single thread for ordered message processing
-		this.nearbyRouteManager = new NearbyRouteManager(nearbyManager, context, executor);
+		this.nearbyRouteManager = new NearbyRouteManager(nearbyManager, this, context, executor, hostNode.getAddressName(), peerCapabilities);
 		Log.d(TAG, "NearbySignalMessenger instance created with dependencies.");
 
 		applicationContext = context.getApplicationContext();
 
-		// Register this instance as a listener with NearbyManager
+		// Register this instance as a listener with NearbyManager, and as its encryption and routing
+		this.nearbyManager.bindServices(this);
 		this.nearbyManager.addDeviceConnectionListener(this);
 		this.nearbyManager.addPayloadListener(this);
+		this.nearbyManager.addBackpressureListener(this);
+		this.nearbyManager.addNeighborLivenessListener(this);
+		this.transferManager = new ChunkedTransferManager(context, nearbyManager, this, nearbyRouteManager, hostNode.getAddressName());
+		this.transferManager.addTransferListener(this);
 	}
 
 	/**
@@ -205,22 +241,29 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	@Override
 	public void onDeviceConnected(String endpointId, String deviceAddressName) {
 		Log.d(TAG, "Device connected: " + deviceAddressName + " (EndpointId: " + endpointId + ")");
+		// Before any frame on the new link: the neighbor restarts its dictionaries as well
+		routingWireCodec.reset(deviceAddressName);
 		executor.execute(() -> {
 			// Update node state in DB
 			try {
 				Node node = nodeRepository.findNodeSync(deviceAddressName);
 				if (node != null) {
-					Long oldLastSeen = node.getLastSeen();
-					node.setLastSeen(System.currentTimeMillis());
-					nodeRepository.update(node);
+					Long oldLastSeen = nodeRepository.getLastSeen(node);
+					nodeRepository.touch(deviceAddressName);
 					notifyNeighborDiscovery(node, false);
 					Log.d(TAG, "Node " + deviceAddressName + " marked as connected in DB.");
 					if (hasSession(deviceAddressName)) {
 						attemptResendFailedMessagesTo(node, null);
 						long lastProfileUpdate = UiUtils.getAppDefaultSharedPreferences(applicationContext)
 								.getLong(Constants.PREF_KEY_LAST_PROFILE_UPDATE, 0L);
-						if (oldLastSeen == null || (lastProfileUpdate > 0L && oldLastSeen < lastProfileUpdate)) {
-							sendPersonalInfo(hostNode.toPersonalInfo(false), deviceAddressName);
+						if (!peerCapabilities.isKnown(deviceAddressName)) {
+							// Negotiate the optional features, the neighbor answers with its own
+							sendPersonalInfo(hostNode.toPersonalInfo(true), deviceAddressName);
+						} else {
+							nearbyRouteManager.onNeighborJoined(deviceAddressName);
+							if (oldLastSeen == null || (lastProfileUpdate > 0L && oldLastSeen < lastProfileUpdate)) {
+								sendPersonalInfo(hostNode.toPersonalInfo(false), deviceAddressName);
+							}
 						}
 					} else {
 						handleInitialKeyExchange(deviceAddressName);
@@ -256,6 +299,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	@Override
 	public void onDeviceDisconnected(@NonNull String endpointId, @NonNull String deviceAddressName) {
 		Log.d(TAG, "Device disconnected: " + deviceAddressName + " (EndpointId: " + endpointId + ")");
+		nearbyRouteManager.onNeighborDisconnected(deviceAddressName);
+		routingWireCodec.reset(deviceAddressName);
 		DataLog.logNodeEvent(DataLog.NodeDiscoveryEvent.DISCONNECT, deviceAddressName, endpointId, null);
 	}
 
@@ -296,8 +341,99 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 
 	// Implementation of `NearbyManager.PayloadListener`
 	@Override
-	public void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload) {
-		executor.execute(() -> handleReceivedNearbyMessage(endpointId, payload));
+	public void onMessageReceived(@NonNull String endpointId, @NonNull NearbyMessage message, long payloadId) {
+		executor.execute(() -> handleReceivedNearbyMessage(endpointId, message, payloadId));
+	}
+
+	// Implementation of `BackpressureListener`
+	@Override
+	public void onBackpressureChanged(@NonNull String addressName, boolean congested) {
+		if (congested) {
+			// The resend loop checks the congestion state by itself
+			Log.d(TAG, "Link toward " + addressName + " is congested, deferring retransmissions.");
+			return;
+		}
+		executor.execute(() -> {
+			// Resume the retransmissions interrupted by the congestion
+			Node node = nodeRepository.findNodeSync(addressName);
+			if (node != null && hasSession(addressName)) {
+				attemptResendFailedMessagesTo(node, null);
+			}
+		});
+	}
+
+	// Implementation of `NeighborLivenessListener`
+	@Override
+	public void onNeighborSuspected(@NonNull String addressName) {
+		// Don't wait for the disconnection, the messages routed through it would be lost meanwhile
+		Log.w(TAG, "Neighbor " + addressName + " suspected dead, invalidating the routes through it.");
+		nearbyRouteManager.invalidateRoutesThrough(addressName);
+	}
+
+	// Implementation of `TransferListener`
+	@Override
+	public void onIncomingTransferCompleted(
+			@NonNull String senderAddressName, @NonNull TransferOffer offer, @NonNull File file, long payloadId) {
+		executor.execute(() -> {
+			Node senderNode = nodeRepository.findNodeSync(senderAddressName);
+			if (senderNode == null) {
+				Log.e(TAG, "Failed to identify, in DB, the sender node of transfer " + offer.getTransferId());
+				return;
+			}
+			// Persist the received content as a message referencing its file
+			Message message = new Message();
+			message.setPayloadId(payloadId);
+			message.setStatus(Message.MESSAGE_STATUS_PENDING);
+			message.setSenderNodeId(senderNode.getId());
+			message.setRecipientNodeId(hostNode.getId());
+			message.setType(switch (offer.getContentType()) {
+				case Message.MESSAGE_TYPE_IMAGE -> Message.MESSAGE_TYPE_IMAGE;
+				case Message.MESSAGE_TYPE_AUDIO -> Message.MESSAGE_TYPE_AUDIO;
+				default -> Message.MESSAGE_TYPE_FILE;
+			});
+			message.setContent(file.getAbsolutePath());
+			message.setTimestamp(offer.getTimestamp());
+			messageRepository.insertMessage(message, success -> {
+				if (success) {
+					notifyMessageReceived(message, senderNode);
+				}
+			});
+		});
+	}
+
+	@Override
+	public void onOutgoingTransferCompleted(@NonNull String transferId, @NonNull String recipientAddressName) {
+		Long messageDbId = outgoingContentMessages.remove(transferId);
+		if (messageDbId != null) {
+			// The recipient confirmed the reception of the whole content
+			updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_DELIVERED, null, null);
+		}
+	}
+
+	@Override
+	public void onTransferFailed(@NonNull String transferId, @Nullable Exception cause) {
+		Long messageDbId = outgoingContentMessages.remove(transferId);
+		if (messageDbId != null) {
+			// Resent like the failed text messages, from the offset the recipient acknowledged
+			abandonedContentTransfers.put(messageDbId, transferId);
+			updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_FAILED, null, null);
+		}
+	}
+
+	/**
+	 * Returns the metrics of the compression of the outgoing and incoming bodies.
+	 */
+	@NonNull
+	public PayloadCompressor.CompressionStats getCompressionStats() {
+		return payloadCompressor.getStats();
+	}
+
+	/**
+	 * Returns the manager of the chunked transfers, used to send large contents.
+	 */
+	@NonNull
+	public ChunkedTransferManager getTransferManager() {
+		return transferManager;
 	}
 
 	/**
@@ -306,6 +442,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	public void clearNearbyManagerListeners() {
 		nearbyManager.removePayloadListener(this);
 		nearbyManager.removeDeviceConnectionListener(this);
+		nearbyManager.removeBackpressureListener(this);
+		nearbyManager.removeNeighborLivenessListener(this);
 	}
 
 	/**
@@ -315,16 +453,37 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	public void shutdown() {
 		executor.shutdown();
 		clearNearbyManagerListeners();
+		transferManager.shutdown();
+		nearbyRouteManager.shutdown();
+		nodeRepository.flushPresence();
+		Log.d(TAG, "Compression: " + payloadCompressor.getStats());
 		// Clear the map on shutdown
 		NodeTransientStateRepository.getInstance().clearTransientStates().shutdown();
 		Log.d(TAG, "NearbySignalMessenger shut down.");
 	}
 
+	/**
+	 * Encodes a body for a neighbor, in the compact routing format if it advertised
+	 * {@link PeerCapabilities#COMPACT_ROUTING}. To be called in the order of the sends on the link,
+	 * the result being {@link RoutingWireCodec.Encoded#onDelivered() confirmed} once sent.
+	 *
+	 * @param plainMessageBody     The body, in the original format.
+	 * @param neighborAddressName  The address name of the neighbor the body is sent to.
+	 * @return the encoded body, the given one if not a routing frame
+	 */
+	@NonNull
+	@Override
+	public RoutingWireCodec.Encoded encodeForNeighbor(@NonNull NearbyMessageBody plainMessageBody, @NonNull String neighborAddressName) {
+		return routingWireCodec.encode(neighborAddressName, plainMessageBody,
+				peerCapabilities.supports(neighborAddressName, PeerCapabilities.COMPACT_ROUTING));
+	}
+
 	/**
 	 * Encrypts a {@link NearbyMessageBody} for a specific recipient and encapsulates it
 	 * into a {@link NearbyMessage} ready for transmission.
 	 * <p>
 	 * This method takes the raw, unencrypted content of a {@link NearbyMessageBody},
+	 * compresses it if the recipient advertised {@link PeerCapabilities#DEFLATE},
 	 * encrypts it using the Signal Protocol with the recipient's public key,
 	 * and then embeds the resulting {@link CiphertextMessage} as a byte string within a new
 	 * {@link NearbyMessage}. The {@code exchange} field of the {@link NearbyMessage} is
@@ -339,10 +498,14 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	 * @throws Exception If an error occurs during the encryption process, such as issues with
 	 *                   retrieving recipient keys or Signal Protocol session management.
 	 */
-	protected CiphertextMessage encrypt(@NonNull byte[] plainMessage, @NonNull String recipientAddressName) throws Exception {
+	@NonNull
+	@Override
+	public CiphertextMessage encrypt(@NonNull byte[] plainMessage, @NonNull String recipientAddressName) throws Exception {
 		// Encrypt message
 		SignalProtocolAddress recipientAddress = getAddress(recipientAddressName);
-		CiphertextMessage ciphertextMessage = signalManager.encryptMessage(recipientAddress, plainMessage);
+		// Compress only if the recipient can decompress
+		byte[] encoded = payloadCompressor.encode(plainMessage, peerCapabilities.supports(recipientAddressName, PeerCapabilities.DEFLATE));
+		CiphertextMessage ciphertextMessage = signalManager.encryptMessage(recipientAddress, encoded);
 		if (ciphertextMessage.getType() == CiphertextMessage.PREKEY_TYPE) {
 			Log.d(TAG, "OCCURRENCE OF CIPHER MESSAGE OF TYPE 'PREKEY_TYPE'");
 		}
@@ -357,6 +520,19 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 			@NonNull TransmissionCallback transmissionCallback,
 			@Nullable TransmissionCallback routeTransmissionCallback,
 			@Nullable Consumer<Boolean> routeDiscoveryCallback) {
+		sendNearbyMessageInternal(plainNearbyMessage, recipientAddressName, transmissionCallback,
+				routeTransmissionCallback, routeDiscoveryCallback, TrafficClass.of(plainNearbyMessage));
+	}
+
+	/**
+	 * Same as {@link #sendNearbyMessageInternal(NearbyMessageBody, String, TransmissionCallback, TransmissionCallback, Consumer)},
+	 * with an explicit scheduling class.
+	 */
+	private void sendNearbyMessageInternal(
+			@NonNull NearbyMessageBody plainNearbyMessage, @NonNull String recipientAddressName,
+			@NonNull TransmissionCallback transmissionCallback,
+			@Nullable TransmissionCallback routeTransmissionCallback,
+			@Nullable Consumer<Boolean> routeDiscoveryCallback, @NonNull TrafficClass trafficClass) {
 		final Consumer<Boolean> finalDiscoveryCallback = onSuccess -> {
 			executor.execute(() -> {
 				Node target = nodeRepository.findNodeSync(recipientAddressName);
@@ -375,7 +551,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 			}
 		};
 		nearbyManager.sendRoutableNearbyMessageInternal(plainNearbyMessage, recipientAddressName, transmissionCallback,
-				Objects.requireNonNullElse(routeTransmissionCallback, TransmissionCallback.NULL_CALLBACK), finalDiscoveryCallback);
+				Objects.requireNonNullElse(routeTransmissionCallback, TransmissionCallback.NULL_CALLBACK), finalDiscoveryCallback,
+				trafficClass);
 	}
 
 	/**
@@ -486,6 +663,16 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	public void sendEncryptedTextMessage(
 			@NonNull String recipientAddressName, @NonNull TextMessage textMessage,
 			long messageDbId, @NonNull TransmissionCallback transmissionCallback) {
+		sendEncryptedTextMessage(recipientAddressName, textMessage, messageDbId, transmissionCallback, TrafficClass.INTERACTIVE);
+	}
+
+	/**
+	 * Same as {@link #sendEncryptedTextMessage(String, TextMessage, long, TransmissionCallback)},
+	 * with an explicit scheduling class: retransmissions mustn't delay fresh messages.
+	 */
+	private void sendEncryptedTextMessage(
+			@NonNull String recipientAddressName, @NonNull TextMessage textMessage,
+			long messageDbId, @NonNull TransmissionCallback transmissionCallback, @NonNull TrafficClass trafficClass) {
 		executor.execute(() -> {
 			try {
 				// Construct NearbyMessageBody with the actual TextMessage
@@ -498,6 +685,11 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 							@Override
 							public void onSuccess(@NonNull Payload payload) {
 								Log.d(TAG, "TextMessage sent successfully to " + recipientAddressName);
+								// The delivery ACK of the neighbor samples the round trip time of the link
+								String endpointId = nearbyManager.getLinkedEndpointId(recipientAddressName);
+								if (endpointId != null) {
+									nearbyManager.getLinkQualityMonitor().expectAnswer(endpointId, payload.getId());
+								}
 								// Update message in DB with sent status and payload ID. Set status pending to message ack
 								updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_SENT, payload.getId(), null);
 								transmissionCallback.onSuccess(payload);
@@ -529,7 +721,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 								updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_FAILED, payload != null ? payload.getId() : textMessage.getPayloadId(), null);
 							}
 						},
-						initiated -> updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_FAILED, textMessage.getPayloadId(), null));
+						initiated -> updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_FAILED, textMessage.getPayloadId(), null),
+						trafficClass);
 			} catch (Exception e) {
 				Log.e(TAG, "Error encrypting or sending TextMessage to " + recipientAddressName, e);
 				updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_FAILED, textMessage.getPayloadId(), null);
@@ -538,6 +731,63 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 		});
 	}
 
+	/**
+	 * Sends the content of an image, audio or file message as a chunked transfer.
+	 * Before calling this method, the message should already be stored in the database
+	 * in the "pending" state, with the URI of the content as content. The message remains pending
+	 * until the recipient confirms the reception of the whole content.
+	 *
+	 * @param recipientAddressName The SignalProtocolAddress name of the recipient device.
+	 * @param message              The message, which type is one of {@code Message.MESSAGE_TYPE_IMAGE},
+	 *                             {@code MESSAGE_TYPE_AUDIO} or {@code MESSAGE_TYPE_FILE}.
+	 * @param fileName             The name under which the content is presented to the recipient, if any.
+	 * @see ChunkedTransferManager#startTransfer(String, org.sedo.satmesh.nearby.transfer.ContentSource, int, String, TransmissionCallback)
+	 */
+	public void sendContentMessage(@NonNull String recipientAddressName, @NonNull Message message, @Nullable String fileName) {
+		executor.execute(() -> startContentTransfer(recipientAddressName, message, fileName, TransmissionCallback.NULL_CALLBACK));
+	}
+
+	/**
+	 * Sends again the content of a message whose transfer failed. If its transfer is still known,
+	 * it's resumed from the offset the recipient acknowledged, else a new transfer is started.
+	 *
+	 * @param callback Notified of the sending of the offer, or of the abandonment of the transfer.
+	 * @see ChunkedTransferManager#resumeTransfer(String, TransmissionCallback)
+	 */
+	private void resendContentMessage(
+			@NonNull String recipientAddressName, @NonNull Message message, @NonNull TransmissionCallback callback) {
+		executor.execute(() -> {
+			Long messageDbId = message.getId();
+			String transferId = messageDbId == null ? null : abandonedContentTransfers.remove(messageDbId);
+			if (transferId != null && transferManager.resumeTransfer(transferId, callback)) {
+				outgoingContentMessages.put(transferId, messageDbId);
+				return;
+			}
+			// The transfer is unknown, as after a restart: the content is sent from the start
+			startContentTransfer(recipientAddressName, message, null, callback);
+		});
+	}
+
+	private void startContentTransfer(
+			@NonNull String recipientAddressName, @NonNull Message message, @Nullable String fileName,
+			@NonNull TransmissionCallback callback) {
+		Long messageDbId = message.getId();
+		if (messageDbId == null || outgoingContentMessages.containsValue(messageDbId)) {
+			Log.w(TAG, "Content message " + messageDbId + " isn't stored or is already being transferred.");
+			callback.onFailure(null, null);
+			return;
+		}
+		try {
+			String transferId = transferManager.startTransfer(recipientAddressName,
+					transferManager.contentOf(Uri.parse(message.getContent())), message.getType(), fileName, callback);
+			outgoingContentMessages.put(transferId, messageDbId);
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to read the content of the message " + messageDbId, e);
+			updateMessageStatus(messageDbId, Message.MESSAGE_STATUS_FAILED, null, null);
+			callback.onFailure(null, e);
+		}
+	}
+
 	/**
 	 * Sends a message acknowledgment (delivered or read) to a recipient.
 	 * If sending ack success, the message is put in the convenient state.
@@ -644,7 +894,11 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	public void sendPersonalInfo(@NonNull PersonalInfo info, @NonNull String recipientAddressName) {
 		executor.execute(() -> {
 			try {
-				NearbyMessageBody messageBody = NearbyMessageBody.newBuilder().setMessageTypeValue(PERSONAL_INFO_VALUE).setBinaryData(info.toByteString()).build();
+				// Advertise the supported features along with the personal info
+				int capabilities = nearbyRouteManager.isProactiveRoutingEnabled() ? PeerCapabilities.LOCAL
+						: PeerCapabilities.LOCAL & ~PeerCapabilities.ROUTE_BEACONS;
+				PersonalInfo advertised = info.toBuilder().setCapabilities(capabilities).build();
+				NearbyMessageBody messageBody = NearbyMessageBody.newBuilder().setMessageTypeValue(PERSONAL_INFO_VALUE).setBinaryData(advertised.toByteString()).build();
 				sendNearbyMessageInternal(messageBody, recipientAddressName, TransmissionCallback.NULL_CALLBACK, null, null);
 
 			} catch (Exception e) {
@@ -672,14 +926,17 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 		messageToResend.setStatus(Message.MESSAGE_STATUS_PENDING);
 		messageToResend.setLastSendingAttempt(System.currentTimeMillis());
 		messageRepository.updateMessage(messageToResend, onSuccess -> {
-			if (onSuccess) {
+			if (onSuccess && messageToResend.getType() != Message.MESSAGE_TYPE_TEXT) {
+				resendContentMessage(recipientAddressName, messageToResend,
+						Objects.requireNonNullElse(callback, TransmissionCallback.NULL_CALLBACK));
+			} else if (onSuccess) {
 				TextMessage text = TextMessage.newBuilder()
 						.setContent(messageToResend.getContent())
 						.setPayloadId(Objects.requireNonNullElse(messageToResend.getPayloadId(), 0L))
 						.setTimestamp(messageToResend.getTimestamp())
 						.build();
 				sendEncryptedTextMessage(recipientAddressName, text, messageToResend.getId(),
-						Objects.requireNonNullElse(callback, TransmissionCallback.NULL_CALLBACK));
+						Objects.requireNonNullElse(callback, TransmissionCallback.NULL_CALLBACK), TrafficClass.BULK);
 			} else { // if updating fails, abort the whole process
 				if (aborted != null) {
 					aborted.accept(true);
@@ -730,6 +987,11 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 					if (!toContinue.getValue()) {
 						break;
 					}
+					if (nearbyManager.isBackpressured(remoteNode.getAddressName())) {
+						// Resumed by `onBackpressureChanged` once the link is relieved
+						Log.d(TAG, "Link toward " + remoteNode.getAddressName() + " is congested, resend postponed.");
+						break;
+					}
 					Long lastAttempt = message.getLastSendingAttempt();
 					int status = message.getStatus();
 					if (lastAttempt != null) {
@@ -788,23 +1050,17 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	}
 
 	/**
-	 * Handles any incoming Nearby Payload, parsing it into a NearbyMessage
-	 * and directing it to the correct handler based on its type (key exchange or encrypted message).
+	 * Handles any incoming NearbyMessage, directing it to the correct handler
+	 * based on its type (key exchange or encrypted message).
 	 *
-	 * @param endpointId The ID of the Nearby endpoint from which the payload was received.
-	 * @param payload    The received Nearby Payload.
+	 * @param endpointId    The ID of the Nearby endpoint from which the message was received.
+	 * @param nearbyMessage The received message.
+	 * @param payloadId     The ID of the payload, or of the batched frame, that carried the message.
 	 */
-	private void handleReceivedNearbyMessage(@NonNull String endpointId, @NonNull Payload payload) {
+	private void handleReceivedNearbyMessage(@NonNull String endpointId, @NonNull NearbyMessage nearbyMessage, long payloadId) {
 		// This runs on the executor thread
 		try {
-			byte[] data = payload.asBytes();
-			if (data == null) {
-				Log.e(TAG, "Received null data from payload " + payload.getId() + " from " + endpointId);
-				return;
-			}
-
-			Log.d(TAG, "Received bytes (Payload ID: " + payload.getId() + ", Size: " + data.length + ") from " + endpointId);
-			NearbyMessage nearbyMessage = NearbyMessage.parseFrom(data);
+			Log.d(TAG, "Received message (Payload ID: " + payloadId + ") from " + endpointId);
 			String senderAddressName = nearbyManager.getAddressNameForEndpoint(endpointId); // Get Signal address name
 
 			if (senderAddressName == null) {
@@ -812,11 +1068,9 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 				return;
 			}
 
-			// Update node's last seen and connected status in DB
-			Node node = nodeRepository.findNodeSync(senderAddressName);
-			if (node != null) {
-				node.setLastSeen(System.currentTimeMillis());
-				nodeRepository.update(node);
+			// Update node's last seen, the presence cache writes it to the DB later
+			if (nodeRepository.findNodeIdSync(senderAddressName) != null) {
+				nodeRepository.touch(senderAddressName);
 			} else {
 				// Insert new node if not found
 				Node newNode = new Node();
@@ -840,10 +1094,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 					Log.e(TAG, "Received NearbyMessage with exchange=false but no body content from " + senderAddressName);
 					return;
 				}
-				handleReceivedEncryptedMessage(senderAddressName, nearbyMessage.getBody().toByteArray(), payload.getId());
+				handleReceivedEncryptedMessage(senderAddressName, nearbyMessage.getBody().toByteArray(), payloadId);
 			}
-		} catch (InvalidProtocolBufferException e) {
-			Log.e(TAG, "Failed to parse NearbyMessage from " + endpointId, e);
 		} catch (Exception e) {
 			Log.e(TAG, "Unexpected error handling received NearbyMessage from " + endpointId, e);
 		}
@@ -900,8 +1152,7 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 			// Update node status in DB
 			Node node = nodeRepository.findNodeSync(senderAddressName);
 			if (node != null) {
-				node.setLastSeen(System.currentTimeMillis());
-				nodeRepository.update(node);
+				nodeRepository.touch(senderAddressName);
 				Log.d(TAG, "Node " + senderAddressName + " updated with hasSignalSession=true.");
 			} else {
 				Log.e(TAG, "Node " + senderAddressName + " not found in DB after key exchange. This should not happen.");
@@ -912,11 +1163,19 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 	}
 
 	@Nullable
-	protected byte[] decrypt(byte[] cipherData, @NonNull String remoteAddressName) throws Exception {
+	@Override
+	public byte[] decrypt(@NonNull byte[] cipherData, @NonNull String remoteAddressName) throws Exception {
 		try {
 			CiphertextMessage receivedCipherMessage = SignalManager.toCiphertextMessage(cipherData);
 			SignalProtocolAddress senderAddress = getAddress(remoteAddressName);
-			return signalManager.decryptMessage(senderAddress, receivedCipherMessage);
+			byte[] decrypted = signalManager.decryptMessage(senderAddress, receivedCipherMessage);
+			if (PayloadCompressor.isCompressed(decrypted)) {
+				// A node sending compressed bodies decompresses them too
+				peerCapabilities.add(remoteAddressName, PeerCapabilities.DEFLATE);
+			}
+			return payloadCompressor.decode(decrypted);
+		} catch (DataFormatException e) {
+			Log.e(TAG, "Failed to decompress message body from " + remoteAddressName, e);
 		} catch (InvalidProtocolBufferException e) {
 			Log.e(TAG, "Failed to parse decrypted message body from " + remoteAddressName, e);
 		} catch (NoSessionException | InvalidMessageException e) {
@@ -948,6 +1207,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 				return;
 			}
 			NearbyMessageBody messageBody = NearbyMessageBody.parseFrom(decryptedBytes);
+			// References of the compact routing format, defined for this frame and the next ones
+			routingWireCodec.learn(senderAddressName, messageBody);
 
 			// Now, we have the decrypted content (NearbyMessageBody).
 			// We need to persist the received message if it's a TextMessage.
@@ -1025,6 +1286,11 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 				Log.d(TAG, "Received Delivered ACK for payload " + deliveredAck.getPayloadId() + " from " + senderAddressName);
 				if (isRouted) {
 					sendMessageAckConfirmation(senderAddressName, deliveredAck.getPayloadId(), MESSAGE_DELIVERED_ACK_VALUE);
+				} else {
+					String ackEndpointId = nearbyManager.getLinkedEndpointId(senderAddressName);
+					if (ackEndpointId != null) {
+						nearbyManager.getLinkQualityMonitor().onAnswer(ackEndpointId, deliveredAck.getPayloadId());
+					}
 				}
 				break;
 			case MESSAGE_READ_ACK_VALUE:
@@ -1049,6 +1315,8 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 				break;
 			case PERSONAL_INFO_VALUE:
 				PersonalInfo personalInfo = PersonalInfo.parseFrom(messageBody.getBinaryData());
+				peerCapabilities.update(senderAddressName, personalInfo.getCapabilities());
+				nearbyRouteManager.onNeighborJoined(senderAddressName);
 				// Update node's display name and potentially other info in DB
 				Node nodeToUpdate = nodeRepository.findNodeSync(senderAddressName);
 				if (nodeToUpdate != null) {
@@ -1072,17 +1340,21 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 				break;
 			case ROUTE_DISCOVERY_REQ_VALUE:
 				Log.d(TAG, "Received ROUTE_DISCOVERY_REQ from " + senderAddressName);
-				RouteRequestMessage routeRequestMessage = RouteRequestMessage.parseFrom(messageBody.getBinaryData());
+				RouteRequestMessage routeRequestMessage = routingWireCodec.decode(senderAddressName,
+						RouteRequestMessage.parseFrom(messageBody.getBinaryData()));
 				nearbyRouteManager.handleIncomingRouteRequest(senderAddressName, routeRequestMessage, hostNode.getAddressName());
 				break;
 			case ROUTE_DISCOVERY_RESP_VALUE:
 				Log.d(TAG, "Received ROUTE_DISCOVERY_RESP from " + senderAddressName);
-				RouteResponseMessage routeResponseMessage = RouteResponseMessage.parseFrom(messageBody.getBinaryData());
+				RouteResponseMessage routeResponseMessage = routingWireCodec.decode(
+						RouteResponseMessage.parseFrom(messageBody.getBinaryData()));
 				nearbyRouteManager.handleIncomingRouteResponse(senderAddressName, routeResponseMessage);
 				break;
 			case ROUTED_MESSAGE_VALUE:
 				Log.d(TAG, "Parsing routed message relayed by neighbor: " + senderAddressName);
-				RoutedMessage routedMessage = RoutedMessage.parseFrom(messageBody.getBinaryData());
+				// The E2E encrypted body is relayed as it is, don't copy it
+				RoutedMessage routedMessage = routingWireCodec.decode(senderAddressName,
+						EnvelopeCodec.parseAliased(RoutedMessage.parser(), messageBody.getBinaryData()));
 				nearbyRouteManager.handleIncomingRoutedMessage(routedMessage, hostNode.getAddressName(), payloadId);
 				break;
 			case KNOWLEDGE_VALUE:
@@ -1102,15 +1374,45 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 				break;
 			case ROUTE_DESTROY_VALUE:
 				Log.d(TAG, "Received ROUTE_DESTROY from " + senderAddressName);
-				RouteDestroyMessage destroy = RouteDestroyMessage.parseFrom(messageBody.getBinaryData());
+				RouteDestroyMessage destroy = routingWireCodec.decode(RouteDestroyMessage.parseFrom(messageBody.getBinaryData()));
 				nearbyRouteManager.handleIncomingRouteDestroyMessage(destroy, senderAddressName);
 				break;
+			case ROUTE_BEACON_VALUE:
+				Log.d(TAG, "Received ROUTE_BEACON from " + senderAddressName);
+				nearbyRouteManager.handleIncomingRouteBeacon(senderAddressName, RouteBeacon.parseFrom(messageBody.getBinaryData()));
+				break;
+			case TRANSFER_OFFER_VALUE:
+				Log.d(TAG, "Received TRANSFER_OFFER from " + senderAddressName);
+				transferManager.handleOffer(senderAddressName, TransferOffer.parseFrom(messageBody.getBinaryData()), payloadId);
+				break;
+			case TRANSFER_RESUME_VALUE:
+				Log.d(TAG, "Received TRANSFER_RESUME from " + senderAddressName);
+				transferManager.handleResume(senderAddressName, TransferResume.parseFrom(messageBody.getBinaryData()));
+				break;
 			default:
 				Log.w(TAG, "Received UNKNOWN or unhandled message type: " + messageBody.getMessageTypeValue() + " from " + senderAddressName);
 				break;
 		}
 	}
 
+	@Override
+	public void sendThroughRoute(
+			@NonNull String recipientAddressName, @NonNull NearbyMessageBody plainMessageBody,
+			@NonNull TransmissionCallback routeTransmissionCallback, @Nullable Consumer<Boolean> onDiscoveryInitiatedCallback) {
+		String localAddressName = hostNode.getAddressName();
+		nearbyRouteManager.discoverRouteIfNeeded(recipientAddressName,
+				routeWithUsage -> nearbyRouteManager.sendMessageThroughRoute(
+						recipientAddressName, localAddressName, routeWithUsage, plainMessageBody, routeTransmissionCallback),
+				onDiscoveryInitiatedCallback, localAddressName);
+	}
+
+	@Override
+	public void onRoutedMessageReceived(
+			@NonNull String originalSenderAddressName, @NonNull NearbyMessageBody messageBody, long payloadId) throws Exception {
+		parseDecryptedMessage(messageBody, originalSenderAddressName, payloadId, true);
+	}
+
+	@Override
 	public void onRouteFound(@NonNull String destinationAddressName) {
 		executor.execute(() -> {
 			Log.d(TAG, "Handling route founding to destination: " + destinationAddressName);
@@ -1124,6 +1426,7 @@ public class NearbySignalMessenger implements DeviceConnectionListener, PayloadL
 		});
 	}
 
+	@Override
 	public void onRouteNotFound(@NonNull String destinationAddressName) {
 		executor.execute(() -> {
 			Log.d(TAG, "Handling route not found to destination: " + destinationAddressName);
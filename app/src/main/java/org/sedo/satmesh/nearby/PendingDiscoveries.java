@@ -0,0 +1,219 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+
+import org.sedo.satmesh.nearby.data.RouteWithUsage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Route discoveries in flight, one per destination at most.
+ * <p>
+ * The messages sent in a row to an unreachable node, e.g. a message, its resends and the
+ * acknowledgements, all need a route toward it. The first one leads the discovery, the others
+ * wait for its outcome instead of flooding the network with their own requests: as soon as the
+ * route is found, every waiter is handed the route and its message goes on.
+ * </p>
+ * A discovery is made of successive rings, i.e. route requests of increasing radius: only the
+ * outcome of its current ring matters. A discovery whose outcome never came is given up after a
+ * timeout: the next caller leads a new one, on behalf of the waiters of the previous one, each
+ * waiter learning once whether a discovery was initiated for it. All the
+ * methods are thread-safe, the callbacks of the waiters are left to the caller, outside of the lock.
+ *
+ * @author hsedo777
+ */
+class PendingDiscoveries {
+
+	/**
+	 * Default number of waiters per discovery, beyond which the callers are turned down.
+	 */
+	static final int DEFAULT_MAX_WAITERS = 64;
+
+	private final int maxWaiters;
+	private final long timeoutMillis;
+	// Destination address name -> discovery in flight
+	private final Map<String, Discovery> discoveries = new HashMap<>();
+
+	/**
+	 * @param maxWaiters    the number of waiters per discovery, the leader included
+	 * @param timeoutMillis time after which a discovery without outcome is given up
+	 */
+	PendingDiscoveries(int maxWaiters, long timeoutMillis) {
+		if (maxWaiters < 1 || timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Invalid pending discoveries parameters");
+		}
+		this.maxWaiters = maxWaiters;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Registers a caller wanting a route toward a destination.
+	 *
+	 * @param destination The address name of the destination.
+	 * @param waiter      The callbacks of the caller.
+	 * @param now         The current time.
+	 * @return the part of the caller in the discovery
+	 */
+	@NonNull
+	synchronized Role join(@NonNull String destination, @NonNull Waiter waiter, long now) {
+		Discovery discovery = discoveries.get(destination);
+		if (discovery != null && now - discovery.startedAt > timeoutMillis) {
+			// Taken over: its waiters are still waiting
+			discovery.startedAt = now;
+			discovery.initiated = false;
+			discovery.ringUuid = null;
+			discovery.waiters.add(waiter);
+			return Role.LEAD;
+		}
+		if (discovery == null) {
+			discovery = new Discovery(now);
+			discovery.waiters.add(waiter);
+			discoveries.put(destination, discovery);
+			return Role.LEAD;
+		}
+		if (discovery.waiters.size() >= maxWaiters) {
+			return Role.REJECTED;
+		}
+		discovery.waiters.add(waiter);
+		if (discovery.initiated) {
+			// Notified by the caller
+			discovery.notified = discovery.waiters.size();
+			return Role.INITIATED;
+		}
+		return Role.WAITING;
+	}
+
+	/**
+	 * Records the outcome of the broadcast of a ring of a discovery. On failure, the discovery is
+	 * over. The waiters learn the outcome once, on the first ring: those of a discovery taken
+	 * over already learned it from the previous one.
+	 *
+	 * @param destination The address name of the destination.
+	 * @param success     Whether the request reached at least one neighbor.
+	 * @return the waiters to notify of the outcome
+	 */
+	@NonNull
+	synchronized List<Waiter> onInitiated(@NonNull String destination, boolean success) {
+		Discovery discovery = discoveries.get(destination);
+		if (discovery == null) {
+			return Collections.emptyList();
+		}
+		if (!success) {
+			discoveries.remove(destination);
+		} else if (discovery.initiated) {
+			return Collections.emptyList();
+		}
+		discovery.initiated = true;
+		List<Waiter> waiters = new ArrayList<>(discovery.waiters.subList(discovery.notified, discovery.waiters.size()));
+		discovery.notified = discovery.waiters.size();
+		return waiters;
+	}
+
+	/**
+	 * Records the route request of the current ring of the discovery toward a destination.
+	 *
+	 * @param destination The address name of the destination.
+	 * @param requestUuid The UUID of the route request of the ring.
+	 * @param radius      The radius of the ring.
+	 * @param now         The current time, the timeout of the discovery restarts with each ring.
+	 */
+	synchronized void onRingStarted(@NonNull String destination, @NonNull String requestUuid, int radius, long now) {
+		Discovery discovery = discoveries.get(destination);
+		if (discovery != null) {
+			discovery.ringUuid = requestUuid;
+			discovery.ringOpen = true;
+			discovery.radius = radius;
+			discovery.startedAt = now;
+		}
+	}
+
+	/**
+	 * Ends the ring of a route request without outcome, so that a single caller expands it.
+	 *
+	 * @param destination The address name of the destination.
+	 * @param requestUuid The UUID of the route request of the ring.
+	 * @return the radius of the ring if it was the current one, {@code -1} if another ring is
+	 * current or the ring already ended, {@code 0} if the discovery has no ring, e.g. it is over
+	 */
+	synchronized int endRing(@NonNull String destination, @NonNull String requestUuid) {
+		Discovery discovery = discoveries.get(destination);
+		if (discovery == null || discovery.ringUuid == null) {
+			return 0;
+		}
+		if (!discovery.ringOpen || !discovery.ringUuid.equals(requestUuid)) {
+			return -1;
+		}
+		discovery.ringOpen = false;
+		return discovery.radius;
+	}
+
+	/**
+	 * Ends the discovery toward a destination, e.g. once the route is found or known missing.
+	 *
+	 * @return the waiters of the discovery, no longer tracked
+	 */
+	@NonNull
+	synchronized List<Waiter> complete(@NonNull String destination) {
+		Discovery discovery = discoveries.remove(destination);
+		return discovery == null ? Collections.emptyList() : discovery.waiters;
+	}
+
+	/**
+	 * Returns whether a discovery toward the destination is in flight.
+	 */
+	synchronized boolean isPending(@NonNull String destination) {
+		return discoveries.containsKey(destination);
+	}
+
+	/**
+	 * Part of a caller in the discovery toward a destination.
+	 */
+	enum Role {
+		/**
+		 * No discovery in flight: the caller has to start one.
+		 */
+		LEAD,
+		/**
+		 * Attached to a discovery not broadcast yet, notified once it is.
+		 */
+		WAITING,
+		/**
+		 * Attached to a discovery already broadcast.
+		 */
+		INITIATED,
+		/**
+		 * Too many waiters already, the caller isn't registered.
+		 */
+		REJECTED
+	}
+
+	private static final class Discovery {
+		final List<Waiter> waiters = new ArrayList<>();
+		// The first waiters, already notified of the initiation of the discovery
+		int notified;
+		long startedAt;
+		boolean initiated;
+		// Route request of the last ring, null before the first one
+		String ringUuid;
+		boolean ringOpen;
+		int radius;
+
+		Discovery(long startedAt) {
+			this.startedAt = startedAt;
+		}
+	}
+
+	/**
+	 * A caller waiting for a route.
+	 *
+	 * @param onRouteFound Receives the route once found.
+	 * @param onInitiated  Receives whether the discovery reached at least one neighbor.
+	 */
+	record Waiter(@NonNull Consumer<RouteWithUsage> onRouteFound, @NonNull Consumer<Boolean> onInitiated) {
+	}
+}
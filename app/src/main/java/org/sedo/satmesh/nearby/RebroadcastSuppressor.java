@@ -0,0 +1,266 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Suppression of the redundant relays of the flooded route requests.
+ * <p>
+ * A relay receiving a new route request doesn't forward it at once: it waits for a random
+ * assessment delay, which also spreads the relays of the neighbors in time, and meanwhile counts
+ * the copies of the request the other neighbors send it. Once the delay elapsed, the policy decides:
+ * <ul>
+ *     <li>{@link Policy#FLOOD}: no assessment, the request is forwarded at once to every neighbor
+ *     but the sender, as before;</li>
+ *     <li>{@link Policy#COUNTER}: the request is dropped if heard from at least {@code k}
+ *     neighbors, most of the neighborhood has been reached already;</li>
+ *     <li>{@link Policy#COVERAGE}: each copy lists the neighbors its sender forwarded it to, the
+ *     request is dropped if all the neighbors of this node hold it already.</li>
+ * </ul>
+ * Whatever the policy, a request isn't forwarded back to the neighbors known to hold it. A dropped
+ * request is remembered until its {@code max_ttl}, so that its next copies are answered as
+ * duplicates. The neighbors are identified in the copies by the {@link #hash(String) hash} of their
+ * address name; a collision can only spare a neighbor a copy it would have received from another.
+ * </p>
+ * All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+class RebroadcastSuppressor {
+
+	/**
+	 * Default number of copies beyond which a request is dropped by the counter-based policy.
+	 */
+	static final int DEFAULT_COUNTER_THRESHOLD = 3;
+	/**
+	 * Default upper bound of the random assessment delay.
+	 */
+	static final long DEFAULT_MAX_ASSESSMENT_DELAY_MILLIS = 300L;
+	/**
+	 * Default number of dropped requests remembered.
+	 */
+	static final int DEFAULT_MAX_SUPPRESSED = 1024;
+	/**
+	 * Number of neighbors beyond which a copy lists none: its coverage is unknown.
+	 */
+	static final int MAX_LISTED_NEIGHBORS = 64;
+
+	private final int counterThreshold;
+	private final long maxAssessmentDelayMillis;
+	private final int maxSuppressed;
+	private final Random random;
+	// Request UUID -> assessment in progress
+	private final Map<String, Assessment> assessments = new HashMap<>();
+	// Request UUID -> max_ttl of the dropped requests, in insertion order
+	private final LinkedHashMap<String, Long> suppressed = new LinkedHashMap<>();
+	private volatile Policy policy;
+
+	/**
+	 * @param policy                   the initial policy
+	 * @param counterThreshold         the number of copies beyond which the counter-based policy drops a request
+	 * @param maxAssessmentDelayMillis the upper bound of the random assessment delay
+	 * @param maxSuppressed            the number of dropped requests remembered
+	 * @param random                   source of the assessment delays
+	 */
+	RebroadcastSuppressor(@NonNull Policy policy, int counterThreshold, long maxAssessmentDelayMillis,
+	                      int maxSuppressed, @NonNull Random random) {
+		if (counterThreshold < 2 || maxAssessmentDelayMillis <= 0 || maxSuppressed < 1) {
+			throw new IllegalArgumentException("Invalid rebroadcast suppression parameters");
+		}
+		this.policy = policy;
+		this.counterThreshold = counterThreshold;
+		this.maxAssessmentDelayMillis = maxAssessmentDelayMillis;
+		this.maxSuppressed = maxSuppressed;
+		this.random = random;
+	}
+
+	/**
+	 * Returns the identifier of a neighbor in the copies of the requests.
+	 */
+	static int hash(@NonNull String addressName) {
+		return addressName.hashCode();
+	}
+
+	@NonNull
+	Policy getPolicy() {
+		return policy;
+	}
+
+	void setPolicy(@NonNull Policy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Returns the neighbors to list in a copy of a request forwarded to the given ones: none unless
+	 * the coverage-based policy is in use.
+	 */
+	@NonNull
+	List<Integer> listedNeighbors(@NonNull Collection<String> targets) {
+		if (policy != Policy.COVERAGE || targets.size() > MAX_LISTED_NEIGHBORS) {
+			return Collections.emptyList();
+		}
+		List<Integer> hashes = new ArrayList<>(targets.size());
+		for (String target : targets) {
+			hashes.add(hash(target));
+		}
+		return hashes;
+	}
+
+	/**
+	 * Starts the assessment of a new request.
+	 *
+	 * @param requestUuid     The UUID of the request.
+	 * @param sender          The address name of the neighbor that sent the first copy.
+	 * @param listedNeighbors The neighbors listed in that copy.
+	 * @return the delay after which to {@link #conclude} the assessment
+	 */
+	synchronized long begin(@NonNull String requestUuid, @NonNull String sender, @NonNull List<Integer> listedNeighbors) {
+		Assessment assessment = new Assessment();
+		assessment.record(sender, listedNeighbors);
+		assessments.put(requestUuid, assessment);
+		return (long) (random.nextDouble() * maxAssessmentDelayMillis);
+	}
+
+	/**
+	 * Records a copy of a request received after the first one.
+	 *
+	 * @return whether the request is being assessed
+	 */
+	synchronized boolean onDuplicate(@NonNull String requestUuid, @NonNull String sender, @NonNull List<Integer> listedNeighbors) {
+		Assessment assessment = assessments.get(requestUuid);
+		if (assessment == null) {
+			return false;
+		}
+		assessment.record(sender, listedNeighbors);
+		return true;
+	}
+
+	/**
+	 * Ends the assessment of a request and decides whether to forward it.
+	 *
+	 * @param requestUuid The UUID of the request.
+	 * @param neighbors   The address names of the neighbors of this node.
+	 * @param maxTtl      The {@code max_ttl} of the request, until which a dropped request is remembered.
+	 * @param now         The current time.
+	 * @return the decision, a request without assessment is forwarded to all the neighbors
+	 */
+	@NonNull
+	synchronized Decision conclude(@NonNull String requestUuid, @NonNull Collection<String> neighbors, long maxTtl, long now) {
+		Assessment assessment = assessments.remove(requestUuid);
+		if (assessment == null) {
+			return new Decision(false, Collections.emptySet());
+		}
+		Set<String> skipped = new HashSet<>();
+		int covered = 0;
+		int uncovered = 0;
+		for (String neighbor : neighbors) {
+			if (assessment.senders.contains(neighbor)) {
+				skipped.add(neighbor);
+			} else if (policy == Policy.COVERAGE && assessment.covered.contains(hash(neighbor))) {
+				skipped.add(neighbor);
+				covered++;
+			} else {
+				uncovered++;
+			}
+		}
+		boolean drop = switch (policy) {
+			case FLOOD -> false;
+			case COUNTER -> assessment.senders.size() >= counterThreshold;
+			// A dead end isn't covered: it answers that it found no route
+			case COVERAGE -> uncovered == 0 && covered > 0;
+		};
+		if (drop) {
+			purgeSuppressed(now);
+			suppressed.put(requestUuid, maxTtl);
+			if (suppressed.size() > maxSuppressed) {
+				Iterator<String> eldest = suppressed.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return new Decision(drop, skipped);
+	}
+
+	/**
+	 * Returns whether a request was dropped by this node, i.e. its copies are duplicates.
+	 */
+	synchronized boolean isSuppressed(@NonNull String requestUuid, long now) {
+		if (suppressed.isEmpty()) {
+			return false;
+		}
+		purgeSuppressed(now);
+		return suppressed.containsKey(requestUuid);
+	}
+
+	private void purgeSuppressed(long now) {
+		// Roughly in max_ttl order: the requests share the same TTL
+		Iterator<Long> iterator = suppressed.values().iterator();
+		while (iterator.hasNext() && iterator.next() < now) {
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Relay policy of the route requests.
+	 */
+	enum Policy {
+		FLOOD("flood"),
+		COUNTER("counter"),
+		COVERAGE("coverage");
+
+		/**
+		 * The value of the policy in the preferences.
+		 */
+		final String value;
+
+		Policy(String value) {
+			this.value = value;
+		}
+
+		/**
+		 * Returns the policy of a preference value, the coverage-based one if unknown.
+		 */
+		@NonNull
+		static Policy fromValue(@Nullable String value) {
+			for (Policy policy : values()) {
+				if (policy.value.equals(value)) {
+					return policy;
+				}
+			}
+			return COVERAGE;
+		}
+	}
+
+	private static final class Assessment {
+		// Neighbors a copy came from
+		final Set<String> senders = new HashSet<>();
+		// Neighbors the senders forwarded the request to
+		final Set<Integer> covered = new HashSet<>();
+
+		void record(@NonNull String sender, @NonNull List<Integer> listedNeighbors) {
+			senders.add(sender);
+			covered.addAll(listedNeighbors);
+		}
+	}
+
+	/**
+	 * Outcome of the assessment of a request.
+	 *
+	 * @param suppressed Whether the request is dropped.
+	 * @param skipped    The neighbors known to hold the request, not to forward it to.
+	 */
+	record Decision(boolean suppressed, @NonNull Set<String> skipped) {
+	}
+}
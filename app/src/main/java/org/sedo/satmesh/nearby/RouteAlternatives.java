@@ -0,0 +1,268 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alternative routes toward the destinations of the routes this node initiated.
+ * <p>
+ * A discovery floods the network, each neighbor of the initiator leads its own branch and the
+ * destination answers every branch reaching it: besides the first {@code ROUTE_FOUND}, which
+ * establishes the route, the initiator receives one per other branch, through other neighbors.
+ * These branches share nothing but their ends and their relays hold the route as well, so they
+ * are kept here as ready to use alternatives, up to {@code maxRoutes - 1} per destination.
+ * </p>
+ * The alternatives are ranked by their ETX-style link cost, weighted by the reliability observed
+ * on their first hop: a failing route is replaced by the best one at once, instead of a new discovery.
+ * All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+class RouteAlternatives {
+
+	/**
+	 * Default number of routes kept per destination, the route in use included.
+	 */
+	static final int DEFAULT_MAX_ROUTES = 3;
+
+	private final int maxRoutes;
+	// Destination node local ID -> alternatives, best first
+	private final Map<Long, List<Alternative>> alternatives = new HashMap<>();
+	// Discovery UUID -> discovery still accepting alternatives
+	private final Map<String, Discovery> discoveries = new HashMap<>();
+	// "routeUuid/nextHopLocalId" -> outcomes of the sends
+	private final Map<String, Reliability> reliabilities = new HashMap<>();
+
+	/**
+	 * @param maxRoutes the number of routes kept per destination, the route in use included
+	 */
+	RouteAlternatives(int maxRoutes) {
+		if (maxRoutes < 1) {
+			throw new IllegalArgumentException("At least a route must be kept");
+		}
+		this.maxRoutes = maxRoutes;
+	}
+
+	@NonNull
+	private static String pathKey(@NonNull String routeUuid, long nextHopLocalId) {
+		return routeUuid + '/' + nextHopLocalId;
+	}
+
+	/**
+	 * Records the route established by a discovery of this node: its late responses are offered as
+	 * alternatives until the given time. The alternatives of the previous discoveries are dropped.
+	 *
+	 * @param routeUuid              The discovery UUID of the established route.
+	 * @param destinationNodeLocalId The local ID of the destination.
+	 * @param nextHopLocalId         The local ID of the next hop of the established route.
+	 * @param acceptUntil            Time until which the late responses are accepted.
+	 */
+	synchronized void onDiscoveryCompleted(@NonNull String routeUuid, long destinationNodeLocalId,
+	                                       long nextHopLocalId, long acceptUntil) {
+		List<Alternative> previous = alternatives.remove(destinationNodeLocalId);
+		if (previous != null) {
+			for (Alternative alternative : previous) {
+				reliabilities.remove(pathKey(alternative.routeUuid, alternative.nextHopLocalId));
+			}
+		}
+		discoveries.put(routeUuid, new Discovery(destinationNodeLocalId, nextHopLocalId, acceptUntil));
+	}
+
+	/**
+	 * Offers the route carried by a late {@code ROUTE_FOUND} response.
+	 *
+	 * @param routeUuid      The discovery UUID of the response.
+	 * @param nextHopLocalId The local ID of the neighbor the response came from.
+	 * @param hopCount       The hop count of the route, as given by the response.
+	 * @param linkCost       The link cost of the route, from this node.
+	 * @param now            The current time.
+	 * @return whether the route has been kept
+	 */
+	synchronized boolean offer(@NonNull String routeUuid, long nextHopLocalId, int hopCount, int linkCost, long now) {
+		discoveries.values().removeIf(discovery -> discovery.acceptUntil < now);
+		Discovery discovery = discoveries.get(routeUuid);
+		if (discovery == null || discovery.nextHopLocalId == nextHopLocalId) {
+			return false;
+		}
+		return add(discovery.destinationNodeLocalId, new Alternative(routeUuid, nextHopLocalId, hopCount, linkCost));
+	}
+
+	/**
+	 * Puts back among the alternatives a route replaced after a failure, so that it remains
+	 * available, ranked with its failures.
+	 */
+	synchronized void demote(@NonNull String routeUuid, long destinationNodeLocalId, long nextHopLocalId,
+	                         int hopCount, int linkCost) {
+		add(destinationNodeLocalId, new Alternative(routeUuid, nextHopLocalId, hopCount, linkCost));
+	}
+
+	private boolean add(long destinationNodeLocalId, @NonNull Alternative alternative) {
+		List<Alternative> list = alternatives.computeIfAbsent(destinationNodeLocalId, id -> new ArrayList<>());
+		for (Alternative existing : list) {
+			if (existing.nextHopLocalId == alternative.nextHopLocalId && existing.routeUuid.equals(alternative.routeUuid)) {
+				return false;
+			}
+		}
+		list.add(alternative);
+		rank(list);
+		if (list.size() > maxRoutes - 1) {
+			Alternative worst = list.remove(list.size() - 1);
+			reliabilities.remove(pathKey(worst.routeUuid, worst.nextHopLocalId));
+			return worst != alternative;
+		}
+		return true;
+	}
+
+	private void rank(@NonNull List<Alternative> list) {
+		list.sort(Comparator.comparingDouble(this::cost));
+	}
+
+	// Link cost weighted by the inverse of the first hop reliability
+	private double cost(@NonNull Alternative alternative) {
+		return Math.max(1, alternative.linkCost) / reliability(alternative.routeUuid, alternative.nextHopLocalId);
+	}
+
+	/**
+	 * Records the outcome of a send on a route.
+	 */
+	synchronized void recordResult(@NonNull String routeUuid, long nextHopLocalId, boolean success) {
+		Reliability reliability = reliabilities.computeIfAbsent(pathKey(routeUuid, nextHopLocalId), key -> new Reliability());
+		if (success) {
+			reliability.successes++;
+		} else {
+			reliability.failures++;
+		}
+		for (List<Alternative> list : alternatives.values()) {
+			rank(list);
+		}
+	}
+
+	/**
+	 * Returns the share of successful sends on a route, with Laplace smoothing: ½ for a route never used.
+	 */
+	synchronized double reliability(@NonNull String routeUuid, long nextHopLocalId) {
+		Reliability reliability = reliabilities.get(pathKey(routeUuid, nextHopLocalId));
+		if (reliability == null) {
+			return 0.5;
+		}
+		return (reliability.successes + 1.0) / (reliability.successes + reliability.failures + 2.0);
+	}
+
+	/**
+	 * Removes and returns the best alternative toward a destination.
+	 *
+	 * @param destinationNodeLocalId The local ID of the destination.
+	 * @param brokenNextHopLocalId   The local ID of a neighbor known to be unusable, whose routes are skipped.
+	 * @return the alternative, or {@code null} if there is none
+	 */
+	@Nullable
+	synchronized Alternative takeBest(long destinationNodeLocalId, long brokenNextHopLocalId) {
+		List<Alternative> list = alternatives.get(destinationNodeLocalId);
+		if (list == null) {
+			return null;
+		}
+		for (Iterator<Alternative> iterator = list.iterator(); iterator.hasNext(); ) {
+			Alternative alternative = iterator.next();
+			if (alternative.nextHopLocalId != brokenNextHopLocalId) {
+				iterator.remove();
+				return alternative;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes and returns an alternative, e.g. to prefer it to the route in use.
+	 *
+	 * @return the alternative, or {@code null} if it isn't kept
+	 */
+	@Nullable
+	synchronized Alternative take(@NonNull String routeUuid, long nextHopLocalId) {
+		for (List<Alternative> list : alternatives.values()) {
+			for (Iterator<Alternative> iterator = list.iterator(); iterator.hasNext(); ) {
+				Alternative alternative = iterator.next();
+				if (alternative.nextHopLocalId == nextHopLocalId && alternative.routeUuid.equals(routeUuid)) {
+					iterator.remove();
+					return alternative;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Forgets an alternative whose route has been destroyed through the given neighbor.
+	 *
+	 * @return whether such an alternative existed
+	 */
+	synchronized boolean removeHop(@NonNull String routeUuid, long nextHopLocalId) {
+		boolean removed = false;
+		for (List<Alternative> list : alternatives.values()) {
+			removed |= list.removeIf(alternative -> alternative.nextHopLocalId == nextHopLocalId
+					&& alternative.routeUuid.equals(routeUuid));
+		}
+		reliabilities.remove(pathKey(routeUuid, nextHopLocalId));
+		return removed;
+	}
+
+	/**
+	 * Forgets the alternatives going through a neighbor, e.g. suspected dead.
+	 */
+	synchronized void removeNextHop(long nextHopLocalId) {
+		for (List<Alternative> list : alternatives.values()) {
+			list.removeIf(alternative -> alternative.nextHopLocalId == nextHopLocalId);
+		}
+	}
+
+	/**
+	 * Forgets the alternatives and the pending discovery of a destroyed route.
+	 */
+	synchronized void removeRoute(@NonNull String routeUuid) {
+		for (List<Alternative> list : alternatives.values()) {
+			list.removeIf(alternative -> alternative.routeUuid.equals(routeUuid));
+		}
+		discoveries.remove(routeUuid);
+		reliabilities.keySet().removeIf(key -> key.startsWith(routeUuid + '/'));
+	}
+
+	/**
+	 * Returns the number of alternatives toward a destination.
+	 */
+	synchronized int count(long destinationNodeLocalId) {
+		List<Alternative> list = alternatives.get(destinationNodeLocalId);
+		return list == null ? 0 : list.size();
+	}
+
+	private record Discovery(long destinationNodeLocalId, long nextHopLocalId, long acceptUntil) {
+	}
+
+	private static final class Reliability {
+		int successes;
+		int failures;
+	}
+
+	/**
+	 * A route toward a destination, through another neighbor than the route in use.
+	 */
+	static final class Alternative {
+		@NonNull
+		final String routeUuid;
+		final long nextHopLocalId;
+		final int hopCount;
+		final int linkCost;
+
+		Alternative(@NonNull String routeUuid, long nextHopLocalId, int hopCount, int linkCost) {
+			this.routeUuid = routeUuid;
+			this.nextHopLocalId = nextHopLocalId;
+			this.hopCount = hopCount;
+			this.linkCost = linkCost;
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.proto.RoutedMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local repairs of the routes this node relays, broken at their next hop.
+ * <p>
+ * Instead of destroying the route, which makes its source flood the network again, the relay
+ * holds the messages in flight and floods a small ring around itself toward the destination of
+ * the route, on behalf of the original sender of the messages. If a sub-path is found, it is
+ * spliced into the route: the repair request UUID identifies the sub-path downstream, so that the
+ * messages crossing this node have their route UUID translated, forward from the route to the
+ * sub-path and backward from the sub-path to the route. The rest of the route is left untouched.
+ * </p>
+ * A route is repaired once, and for a single usage: the answers coming back through the sub-path
+ * all carry its UUID, so they can only be backtracked to one originator. A route reused by another
+ * originator, seen under repair or spliced, has to be destroyed instead. A repaired route breaking
+ * again, or a repair that failed, destroys the route as before. All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+class RouteRepairs {
+
+	/**
+	 * Default radius of the repair rings, in relays.
+	 */
+	static final int DEFAULT_MAX_RADIUS = 3;
+	/**
+	 * Default number of repairs in flight, beyond which the broken routes are destroyed.
+	 */
+	static final int DEFAULT_MAX_REPAIRS = 32;
+	/**
+	 * Default number of messages held per repair, beyond which they are dropped.
+	 */
+	static final int DEFAULT_MAX_BUFFERED = 16;
+
+	private final int maxRadius;
+	private final int maxRepairs;
+	private final int maxBuffered;
+	// Route UUID -> repair in flight
+	private final Map<String, Repair> repairs = new HashMap<>();
+	// Repair request UUID -> UUID of the repaired route
+	private final Map<String, String> requests = new HashMap<>();
+	// Route UUID -> splice of its sub-path, and sub-path UUID -> same splice
+	private final Map<String, Splice> splices = new HashMap<>();
+
+	/**
+	 * @param maxRadius   the radius of the repair rings
+	 * @param maxRepairs  the number of repairs in flight
+	 * @param maxBuffered the number of messages held per repair
+	 */
+	RouteRepairs(int maxRadius, int maxRepairs, int maxBuffered) {
+		if (maxRadius < 1 || maxRepairs < 1 || maxBuffered < 1) {
+			throw new IllegalArgumentException("Invalid route repair parameters");
+		}
+		this.maxRadius = maxRadius;
+		this.maxRepairs = maxRepairs;
+		this.maxBuffered = maxBuffered;
+	}
+
+	/**
+	 * Returns the radius of the repair ring of a route: its hop count from this node, so that a
+	 * detour of one more hop is found, up to the maximum radius.
+	 */
+	int radius(int hopCount) {
+		return Math.max(1, Math.min(maxRadius, hopCount));
+	}
+
+	/**
+	 * Starts the repair of a broken route, holding the message that revealed the break.
+	 *
+	 * @param routeUuid   The UUID of the broken route.
+	 * @param requestUuid The UUID of the repair request.
+	 * @param message     The message to hold, forward on the route.
+	 * @return whether the route may be repaired, else it has to be destroyed
+	 */
+	synchronized boolean start(@NonNull String routeUuid, @NonNull String requestUuid, @NonNull RoutedMessage message) {
+		if (repairs.containsKey(routeUuid) || splices.containsKey(routeUuid) || repairs.size() >= maxRepairs) {
+			return false;
+		}
+		Repair repair = new Repair(routeUuid, message.getRouteUsageUuid(), new ArrayList<>());
+		repair.messages.add(message);
+		repairs.put(routeUuid, repair);
+		requests.put(requestUuid, routeUuid);
+		return true;
+	}
+
+	/**
+	 * Holds a message sent on a route under repair, dropped if too many are held already.
+	 *
+	 * @return whether the route is under repair, i.e. the message must not be sent now
+	 */
+	synchronized boolean hold(@NonNull String routeUuid, @NonNull RoutedMessage message) {
+		Repair repair = repairs.get(routeUuid);
+		if (repair == null) {
+			return false;
+		}
+		if (repair.messages.size() < maxBuffered) {
+			repair.messages.add(message);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether a message relayed by this node may go on along its route: a forward message
+	 * of a route under repair, or spliced, must be of the usage the repair is for.
+	 *
+	 * @return {@code false} if the route has to be destroyed, its answers couldn't find their way back
+	 */
+	synchronized boolean accepts(@NonNull RoutedMessage message) {
+		if (message.getForBacktracking() || (repairs.isEmpty() && splices.isEmpty())) {
+			return true;
+		}
+		String routeUuid = message.getRouteUuid();
+		Repair repair = repairs.get(routeUuid);
+		if (repair != null) {
+			return repair.usageUuid.equals(message.getRouteUsageUuid());
+		}
+		Splice splice = splices.get(routeUuid);
+		return splice == null || !splice.routeUuid.equals(routeUuid) || splice.usageUuid.equals(message.getRouteUsageUuid());
+	}
+
+	/**
+	 * Returns whether a route request was issued by this node to repair a route.
+	 */
+	synchronized boolean isRepairRequest(@NonNull String requestUuid) {
+		return requests.containsKey(requestUuid);
+	}
+
+	/**
+	 * Ends a repair whose request found a sub-path, spliced from now on into the route.
+	 *
+	 * @param requestUuid The UUID of the repair request, identifying the sub-path.
+	 * @return the repair, with the messages held meanwhile, or {@code null} if given up already
+	 */
+	@Nullable
+	synchronized Repair complete(@NonNull String requestUuid) {
+		Repair repair = remove(requestUuid);
+		if (repair != null) {
+			Splice splice = new Splice(repair.routeUuid, repair.usageUuid, requestUuid);
+			splices.put(repair.routeUuid, splice);
+			splices.put(requestUuid, splice);
+		}
+		return repair;
+	}
+
+	/**
+	 * Ends a repair whose request failed or timed out.
+	 *
+	 * @param requestUuid The UUID of the repair request.
+	 * @return the repair, whose messages are lost, or {@code null} if over already
+	 */
+	@Nullable
+	synchronized Repair fail(@NonNull String requestUuid) {
+		return remove(requestUuid);
+	}
+
+	@Nullable
+	private Repair remove(@NonNull String requestUuid) {
+		String routeUuid = requests.remove(requestUuid);
+		return routeUuid == null ? null : repairs.remove(routeUuid);
+	}
+
+	/**
+	 * Translates the routing information of a message relayed by this node at a splice: a forward
+	 * message of the repaired usage of a route goes on through its sub-path, a backward message of a
+	 * sub-path goes on through the route, with that usage.
+	 *
+	 * @return the message to relay, the given one if not at a splice
+	 */
+	@NonNull
+	synchronized RoutedMessage translate(@NonNull RoutedMessage message) {
+		if (splices.isEmpty()) {
+			return message;
+		}
+		Splice splice = splices.get(message.getRouteUuid());
+		if (splice == null) {
+			return message;
+		}
+		if (!message.getForBacktracking() && splice.routeUuid.equals(message.getRouteUuid())
+				&& splice.usageUuid.equals(message.getRouteUsageUuid())) {
+			return message.toBuilder()
+					.setRouteUuid(splice.subPathUuid)
+					.setRouteUsageUuid(splice.subPathUuid)
+					.build();
+		}
+		// The destination answers through the sub-path with its usage, other usages belong to other routes
+		if (message.getForBacktracking() && splice.subPathUuid.equals(message.getRouteUsageUuid())) {
+			return message.toBuilder()
+					.setRouteUuid(splice.routeUuid)
+					.setRouteUsageUuid(splice.usageUuid)
+					.build();
+		}
+		return message;
+	}
+
+	/**
+	 * Forgets a destroyed route: its repair in flight if any, its splice otherwise.
+	 *
+	 * @param uuid The UUID of the route or of a sub-path.
+	 * @return the UUID of the other side of the splice, to destroy as well, or {@code null} if none
+	 */
+	@Nullable
+	synchronized String forget(@NonNull String uuid) {
+		Repair repair = repairs.remove(uuid);
+		if (repair != null) {
+			requests.values().remove(uuid);
+			return null;
+		}
+		Splice splice = splices.remove(uuid);
+		if (splice == null) {
+			return null;
+		}
+		if (splice.routeUuid.equals(uuid)) {
+			splices.remove(splice.subPathUuid);
+			return splice.subPathUuid;
+		}
+		splices.remove(splice.routeUuid);
+		return splice.routeUuid;
+	}
+
+	/**
+	 * A repair in flight.
+	 *
+	 * @param routeUuid The UUID of the broken route.
+	 * @param usageUuid The usage UUID of the messages held, restored on the answers.
+	 * @param messages  The messages held, in order.
+	 */
+	record Repair(@NonNull String routeUuid, @NonNull String usageUuid, @NonNull List<RoutedMessage> messages) {
+	}
+
+	private record Splice(@NonNull String routeUuid, @NonNull String usageUuid, @NonNull String subPathUuid) {
+	}
+}
@@ -0,0 +1,278 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.sedo.satmesh.model.rt.RouteEntry;
+import org.sedo.satmesh.model.rt.RouteRequestEntry;
+import org.sedo.satmesh.model.rt.RouteUsage;
+import org.sedo.satmesh.model.rt.RouteUsageBacktracking;
+import org.sedo.satmesh.nearby.data.RouteWithUsage;
+import org.sedo.satmesh.proto.RouteRequestMessage;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Evaluation of the route requests received from the neighbors.
+ * <p>
+ * A request goes through stages, in order: resolution of its sender, rejection of a duplicate,
+ * of an expired request or of one out of hops, answer of the destination, reuse of a known route
+ * and, at last, acceptance for relaying. The first stage concluding decides the {@link Verdict}
+ * and records in the database what the answer requires: the route at the destination, the usage
+ * of a reused route or the request to relay.
+ * </p>
+ * All the stages run in a single database transaction, on the caller thread, and only access the
+ * database: the answers and relays are sent by the caller once the transaction is committed. The
+ * copies of a request received at the same time are thus evaluated one after the other, only the
+ * first one being relayed.
+ *
+ * @author hsedo777
+ */
+class RouteRequestPipeline {
+
+	private final Store store;
+	private final List<Stage> stages = List.of(
+			this::resolveSender,
+			this::rejectDuplicate,
+			this::rejectExpired,
+			this::answerAsDestination,
+			this::reuseRoute,
+			this::acceptForRelay);
+
+	/**
+	 * @param store the database accesses of the stages
+	 */
+	RouteRequestPipeline(@NonNull Store store) {
+		this.store = store;
+	}
+
+	/**
+	 * Evaluates a route request in a single transaction. This method runs on the caller thread,
+	 * which must not be the main thread.
+	 *
+	 * @param routeRequest      The route request.
+	 * @param senderAddressName The address name of the neighbor that sent it.
+	 * @param localHostAddress  The address name of the host node.
+	 * @param now               The current time, in milliseconds.
+	 * @return the verdict, to act on once returned
+	 * @throws RuntimeException if the transaction failed, nothing being recorded then
+	 */
+	@NonNull
+	Verdict evaluate(@NonNull RouteRequestMessage routeRequest, @NonNull String senderAddressName,
+	                 @NonNull String localHostAddress, long now) {
+		Evaluation evaluation = new Evaluation(routeRequest, senderAddressName, localHostAddress, now);
+		return store.runInTransaction(() -> {
+			for (Stage stage : stages) {
+				Verdict verdict = stage.apply(evaluation);
+				if (verdict != null) {
+					return verdict;
+				}
+			}
+			// The last stage always concludes
+			throw new IllegalStateException("Route request " + routeRequest.getUuid() + " not evaluated");
+		});
+	}
+
+	/**
+	 * Returns the stages, in order.
+	 */
+	@VisibleForTesting
+	@NonNull
+	List<Stage> stages() {
+		return stages;
+	}
+
+	@Nullable
+	private Verdict resolveSender(@NonNull Evaluation evaluation) {
+		evaluation.senderLocalId = store.findOrCreateNodeIdSync(evaluation.senderAddressName);
+		return null;
+	}
+
+	@Nullable
+	private Verdict rejectDuplicate(@NonNull Evaluation evaluation) {
+		if (store.hasRouteRequestSync(evaluation.routeRequest.getUuid())) {
+			return evaluation.conclude(Outcome.DUPLICATE, null);
+		}
+		return null;
+	}
+
+	@Nullable
+	private Verdict rejectExpired(@NonNull Evaluation evaluation) {
+		RouteRequestMessage routeRequest = evaluation.routeRequest;
+		if (routeRequest.getMaxTtl() < evaluation.now) {
+			return evaluation.conclude(Outcome.TTL_EXPIRED, null);
+		}
+		if (routeRequest.getRemainingHops() <= 0 && !evaluation.isHostTheDestination()) {
+			return evaluation.conclude(Outcome.MAX_HOPS_REACHED, null);
+		}
+		return null;
+	}
+
+	@Nullable
+	private Verdict answerAsDestination(@NonNull Evaluation evaluation) {
+		if (!evaluation.isHostTheDestination()) {
+			return null;
+		}
+		String requestUuid = evaluation.routeRequest.getUuid();
+		long initiatorLocalId = store.findOrCreateNodeIdSync(evaluation.routeRequest.getInitiatorNodeId());
+		RouteEntry routeEntry = new RouteEntry();
+		routeEntry.setDiscoveryUuid(requestUuid);
+		routeEntry.setDestinationNodeLocalId(null); // The host is the destination
+		routeEntry.setHopCount(0);
+		routeEntry.setNextHopLocalId(null);
+		routeEntry.setPreviousHopLocalId(evaluation.senderLocalId);
+		routeEntry.setLastUseTimestamp(evaluation.now);
+		store.insertRouteEntrySync(routeEntry);
+		RouteUsage usage = new RouteUsage(requestUuid);
+		usage.setRouteEntryDiscoveryUuid(requestUuid);
+		usage.setPreviousHopLocalId(evaluation.senderLocalId);
+		store.insertRouteUsageSync(usage);
+		store.insertRouteUsageBacktrackingSync(new RouteUsageBacktracking(requestUuid, initiatorLocalId));
+		return evaluation.conclude(Outcome.DESTINATION, routeEntry);
+	}
+
+	@Nullable
+	private Verdict reuseRoute(@NonNull Evaluation evaluation) {
+		RouteRequestMessage routeRequest = evaluation.routeRequest;
+		RouteWithUsage routeWithUsage = store.findReusableRouteSync(routeRequest.getDestinationNodeId(), routeRequest.getRemainingHops());
+		if (routeWithUsage == null) {
+			return null;
+		}
+		long initiatorLocalId = store.findOrCreateNodeIdSync(routeRequest.getInitiatorNodeId());
+		RouteUsage usage = new RouteUsage(routeRequest.getUuid());
+		usage.setPreviousHopLocalId(evaluation.senderLocalId); // This is very important for backtracking
+		usage.setRouteEntryDiscoveryUuid(routeWithUsage.routeEntry.getDiscoveryUuid());
+		store.insertRouteUsageSync(usage);
+		store.insertRouteUsageBacktrackingSync(new RouteUsageBacktracking(routeRequest.getUuid(), initiatorLocalId));
+		return evaluation.conclude(Outcome.ROUTE_REUSED, routeWithUsage.routeEntry);
+	}
+
+	@NonNull
+	private Verdict acceptForRelay(@NonNull Evaluation evaluation) {
+		RouteRequestMessage routeRequest = evaluation.routeRequest;
+		RouteRequestEntry requestEntry = new RouteRequestEntry(routeRequest.getUuid());
+		requestEntry.setDestinationNodeLocalId(store.findOrCreateNodeIdSync(routeRequest.getDestinationNodeId()));
+		requestEntry.setPreviousHopLocalId(evaluation.senderLocalId); // The node that sent us this request
+		store.insertRouteRequestSync(requestEntry, routeRequest.getMaxTtl());
+		return evaluation.conclude(Outcome.RELAY, null);
+	}
+
+	/**
+	 * Outcome of the evaluation of a route request.
+	 */
+	enum Outcome {
+		/**
+		 * The request is in progress on this node: answer {@code REQUEST_ALREADY_IN_PROGRESS}.
+		 */
+		DUPLICATE,
+		/**
+		 * The request expired: answer {@code TTL_EXPIRED}.
+		 */
+		TTL_EXPIRED,
+		/**
+		 * The request has no hop left: answer {@code MAX_HOPS_REACHED}.
+		 */
+		MAX_HOPS_REACHED,
+		/**
+		 * This node is the destination, the route is recorded: answer {@code ROUTE_FOUND}.
+		 */
+		DESTINATION,
+		/**
+		 * A known route is reused, its usage is recorded: answer {@code ROUTE_FOUND}.
+		 */
+		ROUTE_REUSED,
+		/**
+		 * The request is recorded: relay it.
+		 */
+		RELAY
+	}
+
+	/**
+	 * Database accesses of the stages, all run on the thread of the transaction.
+	 */
+	interface Store {
+
+		/**
+		 * Runs a body in a database transaction, rolled back if it throws.
+		 */
+		<T> T runInTransaction(@NonNull Callable<T> body);
+
+		/**
+		 * Returns the local ID of a node, created if unknown.
+		 */
+		long findOrCreateNodeIdSync(@NonNull String addressName);
+
+		/**
+		 * Returns whether a route request is in progress on this node.
+		 */
+		boolean hasRouteRequestSync(@NonNull String requestUuid);
+
+		/**
+		 * Returns a known route to a destination able to answer a request with the given
+		 * remaining hops, or {@code null} if there is none.
+		 */
+		@Nullable
+		RouteWithUsage findReusableRouteSync(@NonNull String destinationAddressName, int remainingHops);
+
+		void insertRouteRequestSync(@NonNull RouteRequestEntry requestEntry, long maxTtl);
+
+		void insertRouteEntrySync(@NonNull RouteEntry routeEntry);
+
+		void insertRouteUsageSync(@NonNull RouteUsage routeUsage);
+
+		void insertRouteUsageBacktrackingSync(@NonNull RouteUsageBacktracking backtracking);
+	}
+
+	/**
+	 * A stage of the evaluation.
+	 */
+	@FunctionalInterface
+	interface Stage {
+
+		/**
+		 * @return the verdict if the stage concludes, {@code null} to go on with the next stage
+		 */
+		@Nullable
+		Verdict apply(@NonNull Evaluation evaluation);
+	}
+
+	/**
+	 * State of the evaluation of a route request, passed from stage to stage.
+	 */
+	static final class Evaluation {
+		final RouteRequestMessage routeRequest;
+		final String senderAddressName;
+		final String localHostAddress;
+		final long now;
+		long senderLocalId;
+
+		Evaluation(@NonNull RouteRequestMessage routeRequest, @NonNull String senderAddressName,
+		           @NonNull String localHostAddress, long now) {
+			this.routeRequest = routeRequest;
+			this.senderAddressName = senderAddressName;
+			this.localHostAddress = localHostAddress;
+			this.now = now;
+		}
+
+		boolean isHostTheDestination() {
+			return localHostAddress.equals(routeRequest.getDestinationNodeId());
+		}
+
+		@NonNull
+		Verdict conclude(@NonNull Outcome outcome, @Nullable RouteEntry route) {
+			return new Verdict(outcome, senderLocalId, route);
+		}
+	}
+
+	/**
+	 * Verdict on a route request.
+	 *
+	 * @param outcome       What to do with the request.
+	 * @param senderLocalId The local ID of the neighbor that sent it.
+	 * @param route         The route recorded at the destination, or the route reused.
+	 */
+	record Verdict(@NonNull Outcome outcome, long senderLocalId, @Nullable RouteEntry route) {
+	}
+}
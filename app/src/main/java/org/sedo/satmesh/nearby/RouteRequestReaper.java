@@ -0,0 +1,202 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the pending route requests against their TTL, so that the requests a neighbor never
+ * answers are eventually completed instead of staying in the database forever.
+ * <p>
+ * The deadlines are held in a hashed timing wheel: scheduling and cancelling are constant time,
+ * and each tick only visits the slots the time went through. A deadline further than a turn of
+ * the wheel stays in its slot for the additional turns. The requests whose deadline passed are
+ * handed over, in one batch per tick, to the expiry consumer.
+ * </p>
+ * All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+public class RouteRequestReaper {
+
+	/**
+	 * Duration of a slot of the wheel.
+	 */
+	public static final long DEFAULT_TICK_MILLIS = 1_000L;
+	/**
+	 * Number of slots of the wheel: a turn lasts longer than the TTL of the route requests.
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+	/**
+	 * Delay granted after the {@code max_ttl} of a request to the responses already on their way.
+	 */
+	public static final long DEFAULT_GRACE_MILLIS = 30_000L;
+
+	private final ScheduledExecutorService scheduler;
+	private final Clock clock;
+	private final Consumer<List<String>> onExpired;
+	private final long tickMillis;
+	private final long graceMillis;
+	// Slot -> request UUID -> deadline
+	private final List<Map<String, Long>> wheel;
+	// Request UUID -> slot
+	private final Map<String, Integer> slots = new HashMap<>();
+	private final long createdAt;
+	// Index of the last tick processed, counted from the creation
+	private long lastTick;
+	private long scheduled;
+	private long reaped;
+	@Nullable
+	private ScheduledFuture<?> ticker;
+
+	/**
+	 * @param scheduler   executor running the ticks
+	 * @param clock       source of the time, compared with the {@code max_ttl} of the requests
+	 * @param onExpired   receives the UUIDs of the requests whose deadline passed, on the scheduler thread
+	 * @param tickMillis  duration of a slot
+	 * @param wheelSize   number of slots
+	 * @param graceMillis delay added to the {@code max_ttl} of the requests
+	 */
+	public RouteRequestReaper(@NonNull ScheduledExecutorService scheduler, @NonNull Clock clock,
+	                          @NonNull Consumer<List<String>> onExpired, long tickMillis, int wheelSize, long graceMillis) {
+		if (tickMillis <= 0 || wheelSize <= 0 || graceMillis < 0) {
+			throw new IllegalArgumentException("Invalid reaper parameters");
+		}
+		this.scheduler = scheduler;
+		this.clock = clock;
+		this.onExpired = onExpired;
+		this.tickMillis = tickMillis;
+		this.graceMillis = graceMillis;
+		this.wheel = new ArrayList<>(wheelSize);
+		for (int i = 0; i < wheelSize; i++) {
+			wheel.add(new LinkedHashMap<>());
+		}
+		this.createdAt = clock.nowMillis();
+	}
+
+	/**
+	 * Starts the periodic ticks. Has no effect if already started.
+	 */
+	public synchronized void start() {
+		if (ticker == null) {
+			ticker = scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the periodic ticks. The pending requests are kept.
+	 */
+	public synchronized void stop() {
+		if (ticker != null) {
+			ticker.cancel(false);
+			ticker = null;
+		}
+	}
+
+	/**
+	 * Tracks a pending route request, replacing its previous deadline if any.
+	 *
+	 * @param requestUuid The UUID of the route request.
+	 * @param maxTtl      The {@code max_ttl} of the request; it expires a grace delay later.
+	 */
+	public synchronized void schedule(@NonNull String requestUuid, long maxTtl) {
+		cancel(requestUuid);
+		long deadline = maxTtl + graceMillis;
+		// Never in a slot already processed: a past deadline fires on the next tick
+		long tick = Math.max(lastTick + 1, Math.floorDiv(deadline - createdAt, tickMillis) + 1);
+		int slot = (int) (tick % wheel.size());
+		wheel.get(slot).put(requestUuid, deadline);
+		slots.put(requestUuid, slot);
+		scheduled++;
+	}
+
+	/**
+	 * Stops tracking a route request, e.g. once completed.
+	 */
+	public synchronized void cancel(@NonNull String requestUuid) {
+		Integer slot = slots.remove(requestUuid);
+		if (slot != null) {
+			wheel.get(slot).remove(requestUuid);
+		}
+	}
+
+	private void tick() {
+		List<String> expired = advance(clock.nowMillis());
+		if (!expired.isEmpty()) {
+			onExpired.accept(expired);
+		}
+	}
+
+	/**
+	 * Processes the slots the time went through since the last call.
+	 *
+	 * @param now the current time
+	 * @return the UUIDs of the requests whose deadline passed, no longer tracked
+	 */
+	@NonNull
+	synchronized List<String> advance(long now) {
+		long currentTick = Math.floorDiv(now - createdAt, tickMillis);
+		List<String> expired = new ArrayList<>();
+		// Beyond a turn, every slot is visited once
+		long from = Math.max(lastTick + 1, currentTick - wheel.size() + 1);
+		for (long tick = from; tick <= currentTick; tick++) {
+			Iterator<Map.Entry<String, Long>> entries = wheel.get((int) (tick % wheel.size())).entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<String, Long> entry = entries.next();
+				if (entry.getValue() <= now) {
+					entries.remove();
+					slots.remove(entry.getKey());
+					expired.add(entry.getKey());
+				}
+			}
+		}
+		lastTick = Math.max(lastTick, currentTick);
+		reaped += expired.size();
+		return expired;
+	}
+
+	/**
+	 * Returns the metrics of the reaper.
+	 */
+	@NonNull
+	public synchronized ReaperStats getStats() {
+		return new ReaperStats(slots.size(), scheduled, reaped, clock.nowMillis() - createdAt);
+	}
+
+	/**
+	 * Reaper metrics.
+	 *
+	 * @param pending       number of route requests currently tracked
+	 * @param scheduled     number of route requests tracked since the creation of the reaper
+	 * @param reaped        number of route requests expired since the creation of the reaper
+	 * @param elapsedMillis time elapsed since the creation of the reaper
+	 */
+	public record ReaperStats(int pending, long scheduled, long reaped, long elapsedMillis) {
+
+		/**
+		 * Number of route requests expired per minute, on average.
+		 */
+		public double reapedPerMinute() {
+			return elapsedMillis <= 0 ? 0.0 : reaped * 60_000.0 / elapsedMillis;
+		}
+
+		/**
+		 * Share of the tracked route requests that expired instead of being completed.
+		 */
+		public double reapRatio() {
+			return scheduled == 0 ? 0.0 : (double) reaped / scheduled;
+		}
+	}
+}
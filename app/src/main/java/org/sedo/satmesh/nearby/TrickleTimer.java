@@ -0,0 +1,135 @@
+package org.sedo.satmesh.nearby;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Adaptive timer of the route beacons, after the Trickle algorithm (RFC 6206).
+ * <p>
+ * The timer fires at a random time of the second half of its interval, which doubles after each
+ * firing, from the minimum interval up to the maximum one. A change of the topology resets it to
+ * the minimum interval: the beacons follow each other quickly while the network changes, then
+ * space out. Unlike Trickle, the timer goes dormant once at the maximum interval with nothing left
+ * to send, so that a stable network exchanges no beacon at all until the next change.
+ * </p>
+ * All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+class TrickleTimer {
+
+	/**
+	 * Default minimum interval between two beacons.
+	 */
+	static final long DEFAULT_MIN_INTERVAL_MILLIS = 2_000L;
+	/**
+	 * Default maximum interval between two beacons.
+	 */
+	static final long DEFAULT_MAX_INTERVAL_MILLIS = 120_000L;
+
+	private final ScheduledExecutorService scheduler;
+	private final BooleanSupplier onFire;
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private final Random random;
+	// Current interval, 0 when dormant
+	private long interval;
+	@Nullable
+	private ScheduledFuture<?> pending;
+
+	/**
+	 * @param scheduler         executor running the firings
+	 * @param onFire            sends the beacons, returns whether there was something to send
+	 * @param minIntervalMillis the interval right after a reset
+	 * @param maxIntervalMillis the interval the doubling stops at
+	 * @param random            source of the firing times
+	 */
+	TrickleTimer(@NonNull ScheduledExecutorService scheduler, @NonNull BooleanSupplier onFire,
+	             long minIntervalMillis, long maxIntervalMillis, @NonNull Random random) {
+		if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+			throw new IllegalArgumentException("Invalid trickle intervals");
+		}
+		this.scheduler = scheduler;
+		this.onFire = onFire;
+		this.minIntervalMillis = minIntervalMillis;
+		this.maxIntervalMillis = maxIntervalMillis;
+		this.random = random;
+	}
+
+	/**
+	 * Resets the timer to the minimum interval, waking it up if dormant. Has no effect if already
+	 * at the minimum interval and about to fire, so that a burst of changes makes a single beacon.
+	 */
+	synchronized void reset() {
+		if (interval == minIntervalMillis && pending != null) {
+			return;
+		}
+		interval = minIntervalMillis;
+		schedule();
+	}
+
+	private void schedule() {
+		if (pending != null) {
+			pending.cancel(false);
+		}
+		long half = interval / 2;
+		long delay = half + (long) (random.nextDouble() * (interval - half));
+		pending = scheduler.schedule(this::fire, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs a firing: sends the beacons, then goes on with a doubled interval or goes dormant.
+	 */
+	void fire() {
+		synchronized (this) {
+			if (interval == 0) {
+				return;
+			}
+			pending = null;
+		}
+		boolean sent = onFire.getAsBoolean();
+		synchronized (this) {
+			if (interval == 0 || pending != null) {
+				// Stopped or reset meanwhile
+				return;
+			}
+			if (!sent && interval >= maxIntervalMillis) {
+				interval = 0;
+				return;
+			}
+			interval = Math.min(maxIntervalMillis, interval * 2);
+			schedule();
+		}
+	}
+
+	/**
+	 * Stops the timer, until the next reset.
+	 */
+	synchronized void stop() {
+		interval = 0;
+		if (pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Returns whether the timer is stopped, waiting for a reset.
+	 */
+	synchronized boolean isDormant() {
+		return interval == 0;
+	}
+
+	/**
+	 * Returns the current interval, 0 when dormant.
+	 */
+	synchronized long getInterval() {
+		return interval;
+	}
+}
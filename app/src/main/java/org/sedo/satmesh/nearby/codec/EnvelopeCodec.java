@@ -0,0 +1,136 @@
+package org.sedo.satmesh.nearby.codec;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.WireFormat;
+
+import org.sedo.satmesh.proto.BatchedFrame;
+import org.sedo.satmesh.proto.NearbyMessage;
+import org.sedo.satmesh.proto.NearbyMessageBatch;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Allocation-lean encoding and decoding of the {@link NearbyMessage} envelopes.
+ * <p>
+ * On the sending side, the envelopes are written field by field, with {@link CodedOutputStream},
+ * straight into an array of their exact size, which becomes the payload: the ciphertext or the
+ * frames are copied once, instead of being copied into a {@link ByteString}, then into the
+ * message, then out of it. The bytes produced are the ones the generated builders would produce.
+ * </p>
+ * On the receiving side, the messages nested in a {@code bytes} field are parsed with aliasing:
+ * their own {@code bytes} fields are views of the enclosing message rather than copies.
+ * The protobuf runtime we are tied to can't wrap a byte array without copying it, so the
+ * outermost message of a payload is still parsed with a copy of its {@code bytes} fields.
+ *
+ * @author hsedo777
+ */
+public final class EnvelopeCodec {
+
+	private static final int LENGTH_DELIMITED = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+	private EnvelopeCodec() {
+	}
+
+	/**
+	 * Encodes the envelope of an encrypted body, as
+	 * {@code NearbyMessage.newBuilder().setBody(ByteString.copyFrom(ciphertext)).build().toByteArray()} does.
+	 *
+	 * @param ciphertext the serialized Signal message
+	 * @return the serialized envelope
+	 */
+	@NonNull
+	public static byte[] encodeBody(@NonNull byte[] ciphertext) {
+		byte[] out = new byte[CodedOutputStream.computeByteArraySize(NearbyMessage.BODY_FIELD_NUMBER, ciphertext)];
+		CodedOutputStream output = CodedOutputStream.newInstance(out);
+		try {
+			output.writeByteArray(NearbyMessage.BODY_FIELD_NUMBER, ciphertext);
+			output.checkNoSpaceLeft();
+		} catch (IOException e) {
+			// Can't happen: the array has the exact size
+			throw new IllegalStateException("Envelope size miscomputed", e);
+		}
+		return out;
+	}
+
+	/**
+	 * Encodes a batch of payloads, each already holding a serialized {@link NearbyMessage}, as a
+	 * single {@link NearbyMessage} whose {@link NearbyMessageBatch} lists them in order.
+	 *
+	 * @param frames the coalesced payloads, of type {@link Payload.Type#BYTES}
+	 * @return the serialized envelope
+	 */
+	@NonNull
+	public static byte[] encodeBatch(@NonNull List<Payload> frames) {
+		int[] frameSizes = new int[frames.size()];
+		int batchSize = 0;
+		for (int i = 0; i < frameSizes.length; i++) {
+			Payload frame = frames.get(i);
+			frameSizes[i] = frameSize(frame.getId(), frame.asBytes());
+			batchSize += CodedOutputStream.computeTagSize(NearbyMessageBatch.FRAMES_FIELD_NUMBER)
+					+ CodedOutputStream.computeUInt32SizeNoTag(frameSizes[i]) + frameSizes[i];
+		}
+		byte[] out = new byte[CodedOutputStream.computeTagSize(NearbyMessage.BATCH_FIELD_NUMBER)
+				+ CodedOutputStream.computeUInt32SizeNoTag(batchSize) + batchSize];
+		CodedOutputStream output = CodedOutputStream.newInstance(out);
+		try {
+			output.writeTag(NearbyMessage.BATCH_FIELD_NUMBER, LENGTH_DELIMITED);
+			output.writeUInt32NoTag(batchSize);
+			for (int i = 0; i < frameSizes.length; i++) {
+				Payload frame = frames.get(i);
+				output.writeTag(NearbyMessageBatch.FRAMES_FIELD_NUMBER, LENGTH_DELIMITED);
+				output.writeUInt32NoTag(frameSizes[i]);
+				// Fields holding their default value aren't written, as proto3 does
+				if (frame.getId() != 0L) {
+					output.writeInt64(BatchedFrame.FRAME_ID_FIELD_NUMBER, frame.getId());
+				}
+				byte[] data = frame.asBytes();
+				if (data != null && data.length > 0) {
+					output.writeByteArray(BatchedFrame.NEARBY_MESSAGE_FIELD_NUMBER, data);
+				}
+			}
+			output.checkNoSpaceLeft();
+		} catch (IOException e) {
+			throw new IllegalStateException("Envelope size miscomputed", e);
+		}
+		return out;
+	}
+
+	private static int frameSize(long frameId, byte[] data) {
+		int size = 0;
+		if (frameId != 0L) {
+			size += CodedOutputStream.computeInt64Size(BatchedFrame.FRAME_ID_FIELD_NUMBER, frameId);
+		}
+		if (data != null && data.length > 0) {
+			size += CodedOutputStream.computeByteArraySize(BatchedFrame.NEARBY_MESSAGE_FIELD_NUMBER, data);
+		}
+		return size;
+	}
+
+	/**
+	 * Parses a message held by a {@code bytes} field of another message, such as a batched frame
+	 * or a relayed {@code RoutedMessage}: the {@code bytes} fields of the result are views of
+	 * {@code data} rather than copies.
+	 *
+	 * @param parser the parser of the message type, e.g. {@code NearbyMessage.parser()}
+	 * @param data   the serialized message
+	 */
+	@NonNull
+	public static <T extends MessageLite> T parseAliased(@NonNull Parser<T> parser, @NonNull ByteString data)
+			throws InvalidProtocolBufferException {
+		// The input of a ByteString is over an immutable buffer, which the aliasing requires
+		CodedInputStream input = data.newCodedInput();
+		input.enableAliasing(true);
+		T message = parser.parseFrom(input);
+		input.checkLastTagWas(0);
+		return message;
+	}
+}
@@ -0,0 +1,241 @@
+package org.sedo.satmesh.nearby.codec;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of the serialized bodies, applied before their Signal encryption.
+ * <p>
+ * A compressed body starts with a zero byte, which can't start a serialized protobuf
+ * message (no field has the number 0), followed by the ID of the preset dictionary and by the
+ * zlib stream. Any other content is an uncompressed body, so {@link #decode(byte[])} accepts
+ * both. Bodies are only compressed toward nodes that advertised {@link PeerCapabilities#DEFLATE},
+ * when they are large enough and actually shrink.
+ * </p>
+ * The preset dictionary holds the byte sequences our messages repeat, such as the address
+ * name prefix, the UUID alphabet and the message type tags, so that even short bodies compress.
+ *
+ * @author hsedo777
+ */
+public class PayloadCompressor {
+
+	/**
+	 * Bodies smaller than this are sent as they are: the zlib overhead would eat the gain.
+	 */
+	public static final int DEFAULT_MIN_SIZE = 96;
+	/**
+	 * Upper bound of a decompressed body, against decompression bombs.
+	 */
+	public static final int MAX_DECOMPRESSED_SIZE = 4 * 1024 * 1024;
+	private static final byte MARKER = 0;
+	private static final byte DICTIONARY_ID = 1;
+	private static final int HEADER_SIZE = 2;
+	private static final byte[] DICTIONARY = buildDictionary();
+	// Scratch buffers larger than this aren't kept for reuse
+	private static final int MAX_POOLED_SIZE = 64 * 1024;
+	// (De)compressors are costly to create, each thread reuses its own
+	private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(Deflater::new);
+	private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+	// Output of the (de)compression before it's copied at its exact size, reused by each thread
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[4096]);
+
+	private final int minSize;
+	private final LongAdder compressed = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder incompressible = new LongAdder();
+	private final LongAdder originalBytes = new LongAdder();
+	private final LongAdder compressedBytes = new LongAdder();
+	private final LongAdder compressNanos = new LongAdder();
+	private final LongAdder decompressed = new LongAdder();
+	private final LongAdder decompressNanos = new LongAdder();
+
+	public PayloadCompressor() {
+		this(DEFAULT_MIN_SIZE);
+	}
+
+	/**
+	 * @param minSize size under which the bodies aren't compressed
+	 */
+	public PayloadCompressor(int minSize) {
+		this.minSize = minSize;
+	}
+
+	@NonNull
+	private static byte[] buildDictionary() {
+		ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+		// The most frequent sequences go last, where they are the closest to the data
+		byte[] alphabet = "0123456789abcdef-0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+		dictionary.write(alphabet, 0, alphabet.length);
+		for (int type = 1; type <= 14; type++) {
+			// Tag and value of `NearbyMessageBody.message_type_value`
+			dictionary.write(0x20);
+			dictionary.write(type);
+		}
+		byte[] prefix = "satmesh-".getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < 4; i++) {
+			dictionary.write(prefix, 0, prefix.length);
+		}
+		return dictionary.toByteArray();
+	}
+
+	/**
+	 * Returns a scratch buffer of at least {@code size} bytes, pooled if it isn't too large.
+	 */
+	@NonNull
+	private static byte[] scratch(int size) {
+		byte[] buffer = SCRATCH.get();
+		if (buffer.length >= size) {
+			return buffer;
+		}
+		buffer = new byte[size];
+		if (size <= MAX_POOLED_SIZE) {
+			SCRATCH.set(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns {@code true} if the data is a body compressed by {@link #encode(byte[], boolean)}.
+	 */
+	public static boolean isCompressed(@NonNull byte[] data) {
+		return data.length >= HEADER_SIZE && data[0] == MARKER;
+	}
+
+	/**
+	 * Compresses a serialized body if the recipient accepts it and if it's worth it.
+	 *
+	 * @param plain       the serialized body
+	 * @param peerAccepts whether the recipient advertised {@link PeerCapabilities#DEFLATE}
+	 * @return the compressed body, or {@code plain} itself
+	 */
+	@NonNull
+	public byte[] encode(@NonNull byte[] plain, boolean peerAccepts) {
+		if (!peerAccepts || plain.length < minSize) {
+			skipped.increment();
+			return plain;
+		}
+		long start = System.nanoTime();
+		Deflater deflater = DEFLATERS.get();
+		deflater.reset();
+		deflater.setDictionary(DICTIONARY);
+		deflater.setInput(plain);
+		deflater.finish();
+		// Output not smaller than the input is useless, don't produce more
+		byte[] out = scratch(plain.length);
+		out[0] = MARKER;
+		out[1] = DICTIONARY_ID;
+		int length = HEADER_SIZE;
+		while (!deflater.finished() && length < plain.length) {
+			length += deflater.deflate(out, length, plain.length - length);
+		}
+		boolean shrunk = deflater.finished() && length < plain.length;
+		compressNanos.add(System.nanoTime() - start);
+		if (!shrunk) {
+			incompressible.increment();
+			return plain;
+		}
+		compressed.increment();
+		originalBytes.add(plain.length);
+		compressedBytes.add(length);
+		return Arrays.copyOf(out, length);
+	}
+
+	/**
+	 * Restores a body, compressed or not.
+	 *
+	 * @throws DataFormatException if the compressed data is corrupted or uses an unknown dictionary
+	 */
+	@NonNull
+	public byte[] decode(@NonNull byte[] data) throws DataFormatException {
+		if (!isCompressed(data)) {
+			return data;
+		}
+		if (data[1] != DICTIONARY_ID) {
+			throw new DataFormatException("Unknown compression dictionary " + data[1]);
+		}
+		long start = System.nanoTime();
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+		byte[] out = scratch(Math.max(256, data.length * 4));
+		int length = 0;
+		while (!inflater.finished()) {
+			if (length == out.length) {
+				if (length > MAX_DECOMPRESSED_SIZE) {
+					throw new DataFormatException("Decompressed body exceeds " + MAX_DECOMPRESSED_SIZE + " bytes");
+				}
+				byte[] grown = scratch(Math.min(2 * length, MAX_DECOMPRESSED_SIZE + 1));
+				System.arraycopy(out, 0, grown, 0, length);
+				out = grown;
+			}
+			int inflated = inflater.inflate(out, length, out.length - length);
+			if (inflated == 0) {
+				if (inflater.needsDictionary()) {
+					try {
+						inflater.setDictionary(DICTIONARY);
+					} catch (IllegalArgumentException e) {
+						throw new DataFormatException("Compression dictionary mismatch");
+					}
+					continue;
+				}
+				if (inflater.needsInput()) {
+					throw new DataFormatException("Truncated compressed body");
+				}
+			}
+			length += inflated;
+		}
+		if (length > MAX_DECOMPRESSED_SIZE) {
+			throw new DataFormatException("Decompressed body exceeds " + MAX_DECOMPRESSED_SIZE + " bytes");
+		}
+		decompressed.increment();
+		decompressNanos.add(System.nanoTime() - start);
+		return Arrays.copyOf(out, length);
+	}
+
+	/**
+	 * Returns the compression metrics accumulated since the creation of this compressor.
+	 */
+	@NonNull
+	public CompressionStats getStats() {
+		return new CompressionStats(compressed.sum(), skipped.sum(), incompressible.sum(), originalBytes.sum(),
+				compressedBytes.sum(), compressNanos.sum(), decompressed.sum(), decompressNanos.sum());
+	}
+
+	/**
+	 * Compression metrics.
+	 *
+	 * @param compressed      number of bodies sent compressed
+	 * @param skipped         number of bodies not compressed because too small or because the recipient doesn't support it
+	 * @param incompressible  number of bodies compressed for nothing, sent as they are
+	 * @param originalBytes   total size of the compressed bodies before compression
+	 * @param compressedBytes total size of the compressed bodies after compression
+	 * @param compressNanos   CPU time spent compressing, including the incompressible bodies
+	 * @param decompressed    number of compressed bodies received
+	 * @param decompressNanos CPU time spent decompressing
+	 */
+	public record CompressionStats(long compressed, long skipped, long incompressible, long originalBytes,
+	                               long compressedBytes, long compressNanos, long decompressed, long decompressNanos) {
+
+		/**
+		 * Size of the compressed bodies relative to their original size; 1 if none was compressed.
+		 */
+		public double ratio() {
+			return originalBytes == 0 ? 1.0 : (double) compressedBytes / originalBytes;
+		}
+
+		/**
+		 * Average compression time of a body, in microseconds.
+		 */
+		public double averageCompressMicros() {
+			long attempts = compressed + incompressible;
+			return attempts == 0 ? 0.0 : compressNanos / 1000.0 / attempts;
+		}
+	}
+}
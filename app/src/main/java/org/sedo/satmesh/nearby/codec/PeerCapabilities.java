@@ -0,0 +1,80 @@
+package org.sedo.satmesh.nearby.codec;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional protocol features supported by the remote nodes, as advertised in their
+ * {@code PersonalInfo}. A feature is used toward a node only once the node advertised it,
+ * so nodes unaware of it keep interoperating.
+ *
+ * @author hsedo777
+ */
+public class PeerCapabilities {
+
+	/**
+	 * The node decodes bodies compressed by {@link PayloadCompressor}.
+	 */
+	public static final int DEFLATE = 1;
+	/**
+	 * The node takes part in the proactive routing, exchanging route beacons with its neighbors.
+	 */
+	public static final int ROUTE_BEACONS = 2;
+	/**
+	 * The node decodes the routing frames in the compact format of {@link RoutingWireCodec}.
+	 */
+	public static final int COMPACT_ROUTING = 4;
+	/**
+	 * The node unpacks the batches of frames coalesced by the
+	 * {@link org.sedo.satmesh.nearby.transport.OutboundCoalescer OutboundCoalescer}.
+	 */
+	public static final int BATCHING = 8;
+	/**
+	 * Features supported by this node.
+	 */
+	public static final int LOCAL = DEFLATE | ROUTE_BEACONS | COMPACT_ROUTING | BATCHING;
+
+	private final Map<String, Integer> capabilities = new ConcurrentHashMap<>();
+	// Nodes whose PersonalInfo advertised their features
+	private final Set<String> advertisedBy = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Records the features advertised by a node, replacing the previous ones.
+	 * This completes the negotiation with the node.
+	 */
+	public void update(@NonNull String addressName, int advertised) {
+		capabilities.put(addressName, advertised);
+		advertisedBy.add(addressName);
+	}
+
+	/**
+	 * Records a feature the node proved to support, e.g. by using it.
+	 * Its other features remain unknown until it advertises them.
+	 */
+	public void add(@NonNull String addressName, int capability) {
+		capabilities.merge(addressName, capability, (current, added) -> current | added);
+	}
+
+	/**
+	 * Returns {@code true} if the node advertised the given feature.
+	 */
+	public boolean supports(@NonNull String addressName, int capability) {
+		Integer advertised = capabilities.get(addressName);
+		return advertised != null && (advertised & capability) == capability;
+	}
+
+	/**
+	 * Returns {@code true} if the node advertised its features, even if none is supported.
+	 */
+	public boolean isKnown(@NonNull String addressName) {
+		return advertisedBy.contains(addressName);
+	}
+
+	public void clear() {
+		capabilities.clear();
+		advertisedBy.clear();
+	}
+}
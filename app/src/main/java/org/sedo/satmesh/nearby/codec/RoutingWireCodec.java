@@ -0,0 +1,452 @@
+package org.sedo.satmesh.nearby.codec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.sedo.satmesh.proto.NearbyMessageBody;
+import org.sedo.satmesh.proto.NearbyMessageType;
+import org.sedo.satmesh.proto.NodeRef;
+import org.sedo.satmesh.proto.RouteDestroyMessage;
+import org.sedo.satmesh.proto.RouteRequestMessage;
+import org.sedo.satmesh.proto.RouteResponseMessage;
+import org.sedo.satmesh.proto.RoutedMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact wire format of the routing frames exchanged between neighbors: route requests and
+ * responses, routed messages and route destructions.
+ * <p>
+ * Every hop of a route carries the UUIDs of the route and the address names of its ends, as 36
+ * and 44 character strings. Toward a neighbor advertising {@link PeerCapabilities#COMPACT_ROUTING},
+ * the UUIDs are sent as their 16 bytes and the address names as small references to a dictionary
+ * of the link: a reference is defined in the body of the frames using it, see
+ * {@link NearbyMessageBody#getNodeRefsList()}, until one of them is delivered; the next frames
+ * only carry the reference. Toward the other neighbors, the frames are left in the original format.
+ * </p>
+ * The routing itself only sees the original format: the frames are compacted just before their
+ * encryption for the next hop and restored right after their decryption. The dictionaries of a
+ * link are reset when it connects or disconnects, both ends doing so. All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+public class RoutingWireCodec {
+
+	/**
+	 * Default number of references per link and direction, beyond which the address names are
+	 * sent as they are.
+	 */
+	public static final int DEFAULT_MAX_REFS = 1024;
+	private static final String ADDRESS_NAME_PREFIX = "satmesh-";
+	private static final int UUID_LENGTH = 36;
+	private static final int[] NO_REFS = new int[0];
+
+	private final int maxRefs;
+	// Address name of the neighbor -> dictionaries of the link
+	private final Map<String, Link> links = new ConcurrentHashMap<>();
+
+	public RoutingWireCodec() {
+		this(DEFAULT_MAX_REFS);
+	}
+
+	/**
+	 * @param maxRefs the number of references per link and direction
+	 */
+	public RoutingWireCodec(int maxRefs) {
+		if (maxRefs < 1) {
+			throw new IllegalArgumentException("Invalid number of references");
+		}
+		this.maxRefs = maxRefs;
+	}
+
+	/**
+	 * Returns the 16 bytes of a UUID in its canonical form, or {@code null} if the string isn't
+	 * one: it is then sent as it is.
+	 */
+	@Nullable
+	static ByteString toRaw(@NonNull String uuid) {
+		if (uuid.length() != UUID_LENGTH || uuid.charAt(8) != '-' || uuid.charAt(13) != '-'
+				|| uuid.charAt(18) != '-' || uuid.charAt(23) != '-') {
+			return null;
+		}
+		UUID parsed;
+		try {
+			parsed = UUID.fromString(uuid);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		// Upper case digits wouldn't be restored
+		if (!parsed.toString().equals(uuid)) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		buffer.putLong(parsed.getMostSignificantBits()).putLong(parsed.getLeastSignificantBits());
+		return ByteString.copyFrom(buffer.array());
+	}
+
+	@NonNull
+	static String fromRaw(@NonNull ByteString raw) throws InvalidProtocolBufferException {
+		if (raw.size() != 16) {
+			throw new InvalidProtocolBufferException("Invalid raw UUID of " + raw.size() + " bytes");
+		}
+		ByteBuffer buffer = raw.asReadOnlyByteBuffer();
+		return new UUID(buffer.getLong(), buffer.getLong()).toString();
+	}
+
+	@NonNull
+	private Link link(@NonNull String neighborAddressName) {
+		return links.computeIfAbsent(neighborAddressName, name -> new Link());
+	}
+
+	/**
+	 * Forgets the dictionaries of the link with a neighbor, e.g. when it connects or disconnects.
+	 */
+	public void reset(@NonNull String neighborAddressName) {
+		links.remove(neighborAddressName);
+	}
+
+	public void clear() {
+		links.clear();
+	}
+
+	/**
+	 * Encodes a frame for a neighbor.
+	 *
+	 * @param neighborAddressName The address name of the neighbor.
+	 * @param body                The frame, in the original format.
+	 * @param compact             Whether the neighbor advertised {@link PeerCapabilities#COMPACT_ROUTING}.
+	 * @return the frame to send, the given one if it isn't a routing frame or the neighbor doesn't
+	 * decode the compact format
+	 */
+	@NonNull
+	public Encoded encode(@NonNull String neighborAddressName, @NonNull NearbyMessageBody body, boolean compact) {
+		if (!compact) {
+			return new Encoded(body, null, NO_REFS);
+		}
+		Link link = link(neighborAddressName);
+		Writer writer = new Writer(link);
+		ByteString data;
+		try {
+			switch (body.getMessageTypeValue()) {
+				case NearbyMessageType.ROUTE_DISCOVERY_REQ_VALUE ->
+						data = compact(RouteRequestMessage.parseFrom(body.getBinaryData()), writer).toByteString();
+				case NearbyMessageType.ROUTE_DISCOVERY_RESP_VALUE ->
+						data = compact(RouteResponseMessage.parseFrom(body.getBinaryData())).toByteString();
+				// The E2E encrypted body is copied once, into the compact frame
+				case NearbyMessageType.ROUTED_MESSAGE_VALUE ->
+						data = compact(EnvelopeCodec.parseAliased(RoutedMessage.parser(), body.getBinaryData()), writer).toByteString();
+				case NearbyMessageType.ROUTE_DESTROY_VALUE ->
+						data = compact(RouteDestroyMessage.parseFrom(body.getBinaryData())).toByteString();
+				default -> {
+					return new Encoded(body, null, NO_REFS);
+				}
+			}
+		} catch (InvalidProtocolBufferException e) {
+			// Not ours to fix: sent as it is
+			return new Encoded(body, null, NO_REFS);
+		}
+		NearbyMessageBody.Builder builder = body.toBuilder().setBinaryData(data);
+		if (!writer.definitions.isEmpty()) {
+			builder.addAllNodeRefs(writer.definitions);
+		}
+		int[] defined = new int[writer.definitions.size()];
+		for (int i = 0; i < defined.length; i++) {
+			defined[i] = writer.definitions.get(i).getRef();
+		}
+		return new Encoded(builder.build(), link, defined);
+	}
+
+	@NonNull
+	private static RouteRequestMessage compact(@NonNull RouteRequestMessage request, @NonNull Writer writer) {
+		RouteRequestMessage.Builder builder = request.toBuilder();
+		ByteString uuid = toRaw(request.getUuid());
+		if (uuid != null) {
+			builder.clearUuid().setUuidRaw(uuid);
+		}
+		int ref = writer.ref(request.getDestinationNodeId());
+		if (ref != 0) {
+			builder.clearDestinationNodeId().setDestinationNodeRef(ref);
+		}
+		ref = writer.ref(request.getInitiatorNodeId());
+		if (ref != 0) {
+			builder.clearInitiatorNodeId().setInitiatorNodeRef(ref);
+		}
+		return builder.build();
+	}
+
+	@NonNull
+	private static RouteResponseMessage compact(@NonNull RouteResponseMessage response) {
+		ByteString uuid = toRaw(response.getRequestUuid());
+		return uuid == null ? response : response.toBuilder().clearRequestUuid().setRequestUuidRaw(uuid).build();
+	}
+
+	@NonNull
+	private static RoutedMessage compact(@NonNull RoutedMessage message, @NonNull Writer writer) {
+		RoutedMessage.Builder builder = message.toBuilder();
+		ByteString route = toRaw(message.getRouteUuid());
+		// An empty usage UUID couldn't be told from the route UUID
+		if (route != null && !message.getRouteUsageUuid().isEmpty()) {
+			builder.clearRouteUuid().setRouteUuidRaw(route);
+			if (message.getRouteUsageUuid().equals(message.getRouteUuid())) {
+				builder.clearRouteUsageUuid();
+			} else {
+				ByteString usage = toRaw(message.getRouteUsageUuid());
+				if (usage != null) {
+					builder.clearRouteUsageUuid().setRouteUsageUuidRaw(usage);
+				}
+			}
+		}
+		int ref = writer.ref(message.getFinalDestinationNodeId());
+		if (ref != 0) {
+			builder.clearFinalDestinationNodeId().setFinalDestinationNodeRef(ref);
+		}
+		ref = writer.ref(message.getOriginalSenderNodeId());
+		if (ref != 0) {
+			builder.clearOriginalSenderNodeId().setOriginalSenderNodeRef(ref);
+		}
+		return builder.build();
+	}
+
+	@NonNull
+	private static RouteDestroyMessage compact(@NonNull RouteDestroyMessage destroy) {
+		ByteString uuid = toRaw(destroy.getRouteUuid());
+		return uuid == null ? destroy : destroy.toBuilder().clearRouteUuid().setRouteUuidRaw(uuid).build();
+	}
+
+	/**
+	 * Records the definitions of the references carried by a frame received from a neighbor. To be
+	 * called on every frame, in the order of reception, before decoding its content.
+	 */
+	public void learn(@NonNull String neighborAddressName, @NonNull NearbyMessageBody body)
+			throws InvalidProtocolBufferException {
+		if (body.getNodeRefsCount() == 0) {
+			return;
+		}
+		Link link = link(neighborAddressName);
+		synchronized (link) {
+			for (NodeRef definition : body.getNodeRefsList()) {
+				if (definition.getRef() == 0 || definition.getRef() > maxRefs) {
+					throw new InvalidProtocolBufferException("Invalid node reference " + definition.getRef());
+				}
+				String addressName = definition.getAddressUuid().isEmpty() ? definition.getAddressName()
+						: ADDRESS_NAME_PREFIX + fromRaw(definition.getAddressUuid());
+				link.names.put(definition.getRef(), addressName);
+			}
+		}
+	}
+
+	/**
+	 * Restores a route request received from a neighbor in the original format.
+	 *
+	 * @throws InvalidProtocolBufferException if it uses a reference never defined on the link
+	 */
+	@NonNull
+	public RouteRequestMessage decode(@NonNull String neighborAddressName, @NonNull RouteRequestMessage request)
+			throws InvalidProtocolBufferException {
+		if (request.getUuidRaw().isEmpty() && request.getDestinationNodeRef() == 0 && request.getInitiatorNodeRef() == 0) {
+			return request;
+		}
+		RouteRequestMessage.Builder builder = request.toBuilder();
+		if (!request.getUuidRaw().isEmpty()) {
+			builder.setUuid(fromRaw(request.getUuidRaw())).clearUuidRaw();
+		}
+		if (request.getDestinationNodeRef() != 0) {
+			builder.setDestinationNodeId(name(neighborAddressName, request.getDestinationNodeRef())).clearDestinationNodeRef();
+		}
+		if (request.getInitiatorNodeRef() != 0) {
+			builder.setInitiatorNodeId(name(neighborAddressName, request.getInitiatorNodeRef())).clearInitiatorNodeRef();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Restores a route response received from a neighbor in the original format.
+	 */
+	@NonNull
+	public RouteResponseMessage decode(@NonNull RouteResponseMessage response) throws InvalidProtocolBufferException {
+		if (response.getRequestUuidRaw().isEmpty()) {
+			return response;
+		}
+		return response.toBuilder().setRequestUuid(fromRaw(response.getRequestUuidRaw())).clearRequestUuidRaw().build();
+	}
+
+	/**
+	 * Restores a routed message received from a neighbor in the original format. Its E2E
+	 * encrypted body isn't copied.
+	 *
+	 * @throws InvalidProtocolBufferException if it uses a reference never defined on the link
+	 */
+	@NonNull
+	public RoutedMessage decode(@NonNull String neighborAddressName, @NonNull RoutedMessage message)
+			throws InvalidProtocolBufferException {
+		if (message.getRouteUuidRaw().isEmpty() && message.getRouteUsageUuidRaw().isEmpty()
+				&& message.getFinalDestinationNodeRef() == 0 && message.getOriginalSenderNodeRef() == 0) {
+			return message;
+		}
+		RoutedMessage.Builder builder = message.toBuilder();
+		if (!message.getRouteUuidRaw().isEmpty()) {
+			String route = fromRaw(message.getRouteUuidRaw());
+			builder.setRouteUuid(route).clearRouteUuidRaw();
+			if (!message.getRouteUsageUuidRaw().isEmpty()) {
+				builder.setRouteUsageUuid(fromRaw(message.getRouteUsageUuidRaw())).clearRouteUsageUuidRaw();
+			} else if (message.getRouteUsageUuid().isEmpty()) {
+				builder.setRouteUsageUuid(route);
+			}
+		}
+		if (message.getFinalDestinationNodeRef() != 0) {
+			builder.setFinalDestinationNodeId(name(neighborAddressName, message.getFinalDestinationNodeRef()))
+					.clearFinalDestinationNodeRef();
+		}
+		if (message.getOriginalSenderNodeRef() != 0) {
+			builder.setOriginalSenderNodeId(name(neighborAddressName, message.getOriginalSenderNodeRef()))
+					.clearOriginalSenderNodeRef();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Restores a route destruction received from a neighbor in the original format.
+	 */
+	@NonNull
+	public RouteDestroyMessage decode(@NonNull RouteDestroyMessage destroy) throws InvalidProtocolBufferException {
+		if (destroy.getRouteUuidRaw().isEmpty()) {
+			return destroy;
+		}
+		return destroy.toBuilder().setRouteUuid(fromRaw(destroy.getRouteUuidRaw())).clearRouteUuidRaw().build();
+	}
+
+	@NonNull
+	private String name(@NonNull String neighborAddressName, int ref) throws InvalidProtocolBufferException {
+		Link link = links.get(neighborAddressName);
+		String name = null;
+		if (link != null) {
+			synchronized (link) {
+				name = link.names.get(ref);
+			}
+		}
+		if (name == null) {
+			throw new InvalidProtocolBufferException("Node reference " + ref + " undefined on the link with " + neighborAddressName);
+		}
+		return name;
+	}
+
+	/**
+	 * Dictionaries of the link with a neighbor.
+	 */
+	private static final class Link {
+		// Outbound: address name -> reference, and the references whose definition was delivered
+		final Map<String, Integer> refs = new HashMap<>();
+		final Set<Integer> delivered = new HashSet<>();
+		// Inbound: reference -> address name
+		final Map<Integer, String> names = new HashMap<>();
+	}
+
+	/**
+	 * References of the address names of a frame being encoded, with the definitions to attach.
+	 */
+	private final class Writer {
+		final Link link;
+		final List<NodeRef> definitions = new ArrayList<>(2);
+
+		Writer(@NonNull Link link) {
+			this.link = link;
+		}
+
+		/**
+		 * Returns the reference of an address name, or 0 if it is to be sent as it is.
+		 */
+		int ref(@NonNull String addressName) {
+			if (addressName.isEmpty()) {
+				return 0;
+			}
+			int ref;
+			boolean delivered;
+			synchronized (link) {
+				Integer known = link.refs.get(addressName);
+				if (known == null) {
+					if (link.refs.size() >= maxRefs) {
+						return 0;
+					}
+					known = link.refs.size() + 1;
+					link.refs.put(addressName, known);
+				}
+				ref = known;
+				delivered = link.delivered.contains(ref);
+			}
+			if (!delivered) {
+				for (NodeRef definition : definitions) {
+					if (definition.getRef() == ref) {
+						return ref;
+					}
+				}
+				NodeRef.Builder definition = NodeRef.newBuilder().setRef(ref);
+				ByteString uuid = addressName.startsWith(ADDRESS_NAME_PREFIX)
+						? toRaw(addressName.substring(ADDRESS_NAME_PREFIX.length())) : null;
+				if (uuid != null) {
+					definition.setAddressUuid(uuid);
+				} else {
+					definition.setAddressName(addressName);
+				}
+				definitions.add(definition.build());
+			}
+			return ref;
+		}
+	}
+
+	/**
+	 * A frame encoded for a neighbor.
+	 */
+	public static final class Encoded {
+		private final NearbyMessageBody body;
+		@Nullable
+		private final Link link;
+		private final int[] defined;
+
+		private Encoded(@NonNull NearbyMessageBody body, @Nullable Link link, @NonNull int[] defined) {
+			this.body = body;
+			this.link = link;
+			this.defined = defined;
+		}
+
+		/**
+		 * Returns the frame to send.
+		 */
+		@NonNull
+		public NearbyMessageBody body() {
+			return body;
+		}
+
+		/**
+		 * Returns whether the frame defines references, to {@link #onDelivered() confirm} once delivered.
+		 */
+		public boolean definesRefs() {
+			return defined.length > 0;
+		}
+
+		/**
+		 * Records the delivery of the frame: the references it defines are no longer defined again.
+		 * Has no effect if the link was reset meanwhile.
+		 */
+		public void onDelivered() {
+			if (link == null || defined.length == 0) {
+				return;
+			}
+			synchronized (link) {
+				for (int ref : defined) {
+					link.delivered.add(ref);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.sedo.satmesh.nearby.data;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Listener for the congestion state of the links toward the neighbors.
+ * A congested neighbor has its outgoing queue almost full: the senders should
+ * defer the traffic that can wait, such as retransmissions, until it is relieved.
+ */
+public interface BackpressureListener {
+	/**
+	 * Called when the link toward a neighbor becomes congested or is relieved.
+	 *
+	 * @param addressName The Signal Protocol address name of the neighbor.
+	 * @param congested   {@code true} if the link is congested, {@code false} if it has been relieved.
+	 */
+	void onBackpressureChanged(@NonNull String addressName, boolean congested);
+}
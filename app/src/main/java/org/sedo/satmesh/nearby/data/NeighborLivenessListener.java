@@ -0,0 +1,25 @@
+package org.sedo.satmesh.nearby.data;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Listener for the liveness of the connected neighbors, as estimated by the keepalive probes.
+ * A suspected neighbor is still connected for the transport, but its link is most probably dead:
+ * the routes through it should be abandoned without waiting for the disconnection.
+ */
+public interface NeighborLivenessListener {
+	/**
+	 * Called when a neighbor stopped beating for an abnormally long time.
+	 *
+	 * @param addressName The Signal Protocol address name of the neighbor.
+	 */
+	void onNeighborSuspected(@NonNull String addressName);
+
+	/**
+	 * Called when a suspected neighbor beats again.
+	 *
+	 * @param addressName The Signal Protocol address name of the neighbor.
+	 */
+	default void onNeighborRecovered(@NonNull String addressName) {
+	}
+}
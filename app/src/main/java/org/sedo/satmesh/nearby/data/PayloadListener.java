@@ -5,18 +5,22 @@ import androidx.annotation.NonNull;
 import com.google.android.gms.nearby.connection.Payload;
 import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
 
+import org.sedo.satmesh.proto.NearbyMessage;
+
 /**
  * Listener for Payload receiving events.
  * Essential for processing incoming messages.
  */
 public interface PayloadListener {
 	/**
-	 * Called when a payload is received.
+	 * Called when a message is received. The messages the sender coalesced in a
+	 * single payload are delivered one by one, each with its own frame ID.
 	 *
-	 * @param endpointId The ID of the endpoint from which the payload was received.
-	 * @param payload    The received Payload object.
+	 * @param endpointId The ID of the endpoint from which the message was received.
+	 * @param message    The received message, never a batch.
+	 * @param payloadId  The ID of the payload that carried the message, or its frame ID if it was batched.
 	 */
-	void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload);
+	void onMessageReceived(@NonNull String endpointId, @NonNull NearbyMessage message, long payloadId);
 
 	/**
 	 * Called for updates on payload transfer (progress, completion).
@@ -27,4 +31,15 @@ public interface PayloadListener {
 	 */
 	default void onPayloadTransferUpdate(@NonNull String ignoredEndpointId, @NonNull PayloadTransferUpdate ignoredUpdate) {
 	}
+
+	/**
+	 * Called when a STREAM payload starts arriving. The stream is read as its bytes arrive,
+	 * so a listener consuming it must do so off the calling thread.
+	 * Default implementation does nothing.
+	 *
+	 * @param ignoredEndpointId The ID of the endpoint sending the stream.
+	 * @param ignoredPayload    The STREAM payload.
+	 */
+	default void onStreamReceived(@NonNull String ignoredEndpointId, @NonNull Payload ignoredPayload) {
+	}
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import org.sedo.satmesh.AppDatabase;
 import org.sedo.satmesh.model.rt.BroadcastStatusEntry;
@@ -18,7 +19,11 @@ import org.sedo.satmesh.model.rt.RouteUsageBacktracking;
 import org.sedo.satmesh.model.rt.RouteUsageBacktrackingDao;
 import org.sedo.satmesh.model.rt.RouteUsageDao;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
@@ -26,19 +31,39 @@ import java.util.function.Consumer;
  * Repository for managing route-related data, including route entries, route usage,
  * route requests, broadcast statuses, and route usage backtracking.
  * It interacts with the underlying DAOs to perform database operations.
+ * <p>
+ * The route entries, usages and backtracking entries are mirrored by a {@link RouteTableCache},
+ * warmed from the database on creation and then written through: once warmed, the route lookups
+ * of the routed messages don't touch the database. The writes made in a
+ * {@link #runInTransactionSync(Callable) transaction} reach the cache once it is committed.
+ * </p>
  *
  * @author hsedo777
  */
 public class RouteRepository {
 
+	/**
+	 * Minimum delay, in milliseconds, between two writes of the last use timestamp of a route.
+	 * The routes expire after hours of inactivity, a fresher persisted timestamp is useless.
+	 */
+	public static final long ROUTE_USE_WRITE_INTERVAL_MILLIS = 60_000L;
 	private static final String TAG = "RouteRepository";
 
 	private final Executor executor;
+	private final AppDatabase database;
 	private final RouteEntryDao routeEntryDao;
 	private final RouteUsageDao routeUsageDao;
 	private final RouteRequestEntryDao routeRequestEntryDao;
 	private final BroadcastStatusEntryDao broadcastStatusEntryDao;
 	private final RouteUsageBacktrackingDao backtrackingDao;
+	private final RouteTableCache routeTableCache = new RouteTableCache();
+	private final RouteRequestSeenSet routeRequestSeenSet = new RouteRequestSeenSet();
+	// Route UUID -> last use timestamp last written
+	private final Map<String, Long> writtenRouteUses = new ConcurrentHashMap<>();
+	// Cache updates of the transaction in progress on the thread, applied once committed
+	private final ThreadLocal<List<Runnable>> pendingCacheUpdates = new ThreadLocal<>();
+	// Undo of the in-memory writes of the transaction in progress on the thread, run if it rolls back
+	private final ThreadLocal<List<Runnable>> pendingRollbacks = new ThreadLocal<>();
 
 	/**
 	 * Constructs a new RouteRepository.
@@ -46,13 +71,76 @@ public class RouteRepository {
 	 * @param context The application context.
 	 */
 	public RouteRepository(@NonNull Context context) {
-		AppDatabase appDatabase = AppDatabase.getDB(context);
+		this(AppDatabase.getDB(context));
+	}
+
+	/**
+	 * Constructs a RouteRepository over its own database, e.g. for each node of a mesh
+	 * simulated in a single process.
+	 *
+	 * @param appDatabase The database holding the routing tables.
+	 */
+	@VisibleForTesting
+	public RouteRepository(@NonNull AppDatabase appDatabase) {
+		this.database = appDatabase;
 		this.routeEntryDao = appDatabase.routeEntryDao();
 		this.routeUsageDao = appDatabase.routeUsageDao();
 		this.routeRequestEntryDao = appDatabase.routeRequestEntryDao();
 		this.broadcastStatusEntryDao = appDatabase.broadcastStatusEntryDao();
 		this.backtrackingDao = appDatabase.routeUsageBacktrackingDao();
 		executor = appDatabase.getQueryExecutor();
+		executor.execute(this::warmRouteTableCache);
+	}
+
+	private void warmRouteTableCache() {
+		try {
+			routeTableCache.load(routeEntryDao.getAll(), routeUsageDao.getAll(), backtrackingDao.getAll());
+			Log.d(TAG, "Route table cache loaded.");
+		} catch (Exception e) {
+			// The lookups keep reading the database
+			Log.e(TAG, "Failed to load the route table cache: ", e);
+		}
+	}
+
+	/**
+	 * Runs a body in a database transaction, rolled back if it throws. The route table cache sees
+	 * the writes of the body once the transaction is committed; the route requests it records are
+	 * forgotten by the seen-set if it rolls back.
+	 * This method runs on the caller thread.
+	 *
+	 * @param body The body, calling the synchronous methods of this repository.
+	 * @return The result of the body.
+	 */
+	public <T> T runInTransactionSync(@NonNull Callable<T> body) {
+		List<Runnable> cacheUpdates = new ArrayList<>();
+		List<Runnable> rollbacks = new ArrayList<>();
+		pendingCacheUpdates.set(cacheUpdates);
+		pendingRollbacks.set(rollbacks);
+		T result;
+		try {
+			result = database.runInTransaction(body);
+		} catch (RuntimeException e) {
+			for (Runnable rollback : rollbacks) {
+				rollback.run();
+			}
+			throw e;
+		} finally {
+			pendingCacheUpdates.remove();
+			pendingRollbacks.remove();
+		}
+		for (Runnable cacheUpdate : cacheUpdates) {
+			cacheUpdate.run();
+		}
+		return result;
+	}
+
+	private void updateCache(@NonNull Runnable cacheUpdate) {
+		List<Runnable> cacheUpdates = pendingCacheUpdates.get();
+		if (cacheUpdates == null) {
+			cacheUpdate.run();
+		} else {
+			cacheUpdates.add(cacheUpdate);
+		}
 	}
 
 	/**
@@ -155,12 +243,13 @@ public class RouteRepository {
 	 * Insert a RouteRequestEntry into the database.
 	 *
 	 * @param routeRequestEntry The RouteRequestEntry to be inserted.
+	 * @param maxTtl            The {@code max_ttl} of the route request, until which its duplicates are remembered.
 	 * @param callback          The callback to be executed upon completion.
 	 */
-	public void insertRouteRequest(@NonNull RouteRequestEntry routeRequestEntry, @NonNull Consumer<Boolean> callback) {
+	public void insertRouteRequest(@NonNull RouteRequestEntry routeRequestEntry, long maxTtl, @NonNull Consumer<Boolean> callback) {
 		executor.execute(() -> {
 			try {
-				routeRequestEntryDao.insert(routeRequestEntry);
+				insertRouteRequestSync(routeRequestEntry, maxTtl);
 				callback.accept(true);
 			} catch (Exception e) {
 				Log.e(TAG, "Error inserting RouteRequestEntry: ", e);
@@ -169,6 +258,24 @@ public class RouteRepository {
 		});
 	}
 
+	/**
+	 * Insert a RouteRequestEntry into the database. This method runs on the caller thread.
+	 *
+	 * @param routeRequestEntry The RouteRequestEntry to be inserted.
+	 * @param maxTtl            The {@code max_ttl} of the route request, until which its duplicates are remembered.
+	 */
+	public void insertRouteRequestSync(@NonNull RouteRequestEntry routeRequestEntry, long maxTtl) {
+		routeRequestEntryDao.insert(routeRequestEntry);
+		// At once, even in a transaction: the copies evaluated right after the commit are duplicates
+		String requestUuid = routeRequestEntry.getRequestUuid();
+		routeRequestSeenSet.add(requestUuid, maxTtl);
+		List<Runnable> rollbacks = pendingRollbacks.get();
+		if (rollbacks != null) {
+			// Else the copies would be rejected until the max_ttl, without entry in the database
+			rollbacks.add(() -> routeRequestSeenSet.remove(requestUuid));
+		}
+	}
+
 	/**
 	 * Finds the most recent route to a destination, along with its usage, synchronously.
 	 *
@@ -176,6 +283,9 @@ public class RouteRepository {
 	 * @return The most recent RouteEntry.RouteWithUsage, or null if not found.
 	 */
 	public RouteWithUsage findMostRecentRouteByDestinationSync(long destinationNodeLocalId) {
+		if (routeTableCache.isLoaded()) {
+			return routeTableCache.findMostRecentRoute(destinationNodeLocalId);
+		}
 		return routeEntryDao.findMostRecentRouteByDestination(destinationNodeLocalId);
 	}
 
@@ -185,6 +295,7 @@ public class RouteRepository {
 	 * @param requestUuid The UUID of the RouteRequestEntry to be deleted.
 	 */
 	public void deleteRouteRequestByRequestUuid(@NonNull String requestUuid) {
+		routeRequestSeenSet.remove(requestUuid);
 		executor.execute(() -> routeRequestEntryDao.deleteByRequestUuid(requestUuid));
 	}
 
@@ -196,6 +307,7 @@ public class RouteRepository {
 	 * @param deletedCountCallback Called with the {@code onSuccess} method to give access to the number of deleted row.
 	 */
 	public void deleteRouteRequestByRequestUuid(@NonNull String requestUuid, @NonNull ResultHandler<Integer> deletedCountCallback) {
+		routeRequestSeenSet.remove(requestUuid);
 		executor.execute(() -> deletedCountCallback.onTerminated(routeRequestEntryDao.deleteByRequestUuid(requestUuid)));
 	}
 
@@ -208,7 +320,7 @@ public class RouteRepository {
 	public void insertRouteEntry(@NonNull RouteEntry routeEntry, @NonNull Consumer<Boolean> callback) {
 		executor.execute(() -> {
 			try {
-				routeEntry.setId(routeEntryDao.insert(routeEntry));
+				insertRouteEntrySync(routeEntry);
 				callback.accept(true);
 			} catch (Exception e) {
 				Log.e(TAG, "Error inserting RouteEntry: ", e);
@@ -217,6 +329,20 @@ public class RouteRepository {
 		});
 	}
 
+	/**
+	 * Insert a RouteEntry into the database. This method runs on the caller thread.
+	 *
+	 * @param routeEntry The RouteEntry to be inserted.
+	 */
+	public void insertRouteEntrySync(@NonNull RouteEntry routeEntry) {
+		routeEntry.setId(routeEntryDao.insert(routeEntry));
+		updateCache(() -> {
+			// The insertion replaces the route and its usages, if any
+			routeTableCache.removeRoute(routeEntry.getDiscoveryUuid());
+			routeTableCache.putRoute(routeEntry);
+		});
+	}
+
 	/**
 	 * Update a RouteEntry in the database. This method is executed on a background thread.
 	 *
@@ -227,6 +353,7 @@ public class RouteRepository {
 		executor.execute(() -> {
 			try {
 				routeEntryDao.update(routeEntry);
+				routeTableCache.refreshRoute(routeEntry);
 				if (callback != null) {
 					callback.accept(true);
 				}
@@ -239,6 +366,24 @@ public class RouteRepository {
 		});
 	}
 
+	/**
+	 * Records a use of a route. The route table sees it at once, while the database is only
+	 * written once per {@link #ROUTE_USE_WRITE_INTERVAL_MILLIS}, on a background thread.
+	 *
+	 * @param routeEntry The RouteEntry used.
+	 * @param timestamp  The time of the use, in milliseconds.
+	 */
+	public void recordRouteUse(@NonNull RouteEntry routeEntry, long timestamp) {
+		routeEntry.setLastUseTimestamp(timestamp);
+		Long written = writtenRouteUses.get(routeEntry.getDiscoveryUuid());
+		if (written == null || timestamp - written >= ROUTE_USE_WRITE_INTERVAL_MILLIS) {
+			writtenRouteUses.put(routeEntry.getDiscoveryUuid(), timestamp);
+			updateRouteEntry(routeEntry, null);
+		} else {
+			routeTableCache.refreshRoute(routeEntry);
+		}
+	}
+
 	/**
 	 * Finds a RouteEntry by its discovery UUID synchronously.
 	 *
@@ -246,9 +391,22 @@ public class RouteRepository {
 	 * @return The found RouteEntry, or null if not found.
 	 */
 	public RouteEntry findRouteByDiscoveryUuidSync(@NonNull String discoveryUuid) {
+		if (routeTableCache.isLoaded()) {
+			return routeTableCache.getRoute(discoveryUuid);
+		}
 		return routeEntryDao.findByDiscoveryUuid(discoveryUuid);
 	}
 
+	/**
+	 * Finds the UUIDs of the routes passing through a neighbor synchronously.
+	 *
+	 * @param neighborNodeLocalId The local ID of the neighbor node.
+	 * @return The discovery UUIDs of the routes whose next or previous hop is the neighbor.
+	 */
+	public List<String> findRouteUuidsThroughNeighborSync(long neighborNodeLocalId) {
+		return routeEntryDao.findRouteUuidsThroughNeighbor(neighborNodeLocalId);
+	}
+
 	/**
 	 * Finds a RouteUsage by its usage request UUID synchronously.
 	 *
@@ -256,6 +414,9 @@ public class RouteRepository {
 	 * @return The found RouteUsage, or null if not found.
 	 */
 	public RouteUsage findRouteUsageByUsageUuidSync(@NonNull String usageRequestUuid) {
+		if (routeTableCache.isLoaded()) {
+			return routeTableCache.getUsage(usageRequestUuid);
+		}
 		return routeUsageDao.findByUsageRequestUuid(usageRequestUuid);
 	}
 
@@ -268,7 +429,7 @@ public class RouteRepository {
 	public void insertRouteUsage(@NonNull RouteUsage routeUsage, @NonNull Consumer<Boolean> callback) {
 		executor.execute(() -> {
 			try {
-				routeUsageDao.insert(routeUsage);
+				insertRouteUsageSync(routeUsage);
 				callback.accept(true);
 			} catch (Exception e) {
 				Log.e(TAG, "Error inserting RouteUsage: ", e);
@@ -277,6 +438,16 @@ public class RouteRepository {
 		});
 	}
 
+	/**
+	 * Insert a RouteUsage into the database. This method runs on the caller thread.
+	 *
+	 * @param routeUsage The RouteUsage to be inserted.
+	 */
+	public void insertRouteUsageSync(@NonNull RouteUsage routeUsage) {
+		routeUsageDao.insert(routeUsage);
+		updateCache(() -> routeTableCache.putUsage(routeUsage));
+	}
+
 	/**
 	 * Finds all RouteUsage entries associated with a specific route UUID synchronously.
 	 *
@@ -284,6 +455,9 @@ public class RouteRepository {
 	 * @return A list of RouteUsage entries.
 	 */
 	public List<RouteUsage> findRouteUsagesByRouteUuidSync(String routeUuid) {
+		if (routeTableCache.isLoaded()) {
+			return routeTableCache.getUsagesOf(routeUuid);
+		}
 		return routeUsageDao.findByRouteUuid(routeUuid);
 	}
 
@@ -296,7 +470,7 @@ public class RouteRepository {
 	public void insertRouteUsageBacktracking(@NonNull RouteUsageBacktracking routeUsageBacktracking, @NonNull Consumer<Boolean> callback) {
 		executor.execute(() -> {
 			try {
-				backtrackingDao.insert(routeUsageBacktracking);
+				insertRouteUsageBacktrackingSync(routeUsageBacktracking);
 				callback.accept(true);
 			} catch (Exception e) {
 				Log.e(TAG, "Error inserting RouteUsageBacktracking: ", e);
@@ -305,6 +479,55 @@ public class RouteRepository {
 		});
 	}
 
+	/**
+	 * Insert a RouteUsageBacktracking into the database. This method runs on the caller thread.
+	 *
+	 * @param routeUsageBacktracking The RouteUsageBacktracking to be inserted.
+	 */
+	public void insertRouteUsageBacktrackingSync(@NonNull RouteUsageBacktracking routeUsageBacktracking) {
+		backtrackingDao.insert(routeUsageBacktracking);
+		updateCache(() -> routeTableCache.putBacktracking(routeUsageBacktracking));
+	}
+
+	/**
+	 * Deletes, in a single transaction, the RouteRequestEntries of several route requests along
+	 * with their BroadcastStatusEntries. This method runs on the caller thread.
+	 *
+	 * @param requestUuids The UUIDs of the route requests.
+	 * @return The number of RouteRequestEntries deleted.
+	 */
+	public int purgeRouteRequestsSync(@NonNull List<String> requestUuids) {
+		for (String requestUuid : requestUuids) {
+			routeRequestSeenSet.remove(requestUuid);
+		}
+		return database.runInTransaction(() -> {
+			broadcastStatusEntryDao.deleteAllByRequestUuids(requestUuids);
+			return routeRequestEntryDao.deleteByRequestUuids(requestUuids);
+		});
+	}
+
+	/**
+	 * Gets all the RouteRequestEntries, i.e. the route requests still pending.
+	 * This method runs on the caller thread.
+	 */
+	@NonNull
+	public List<RouteRequestEntry> getRouteRequestsSync() {
+		return routeRequestEntryDao.getAll();
+	}
+
+	/**
+	 * Tells, without accessing the database, whether a route request is in progress on this node.
+	 *
+	 * @param requestUuid The UUID of the route request.
+	 * @return {@code true} if it is, {@code false} if it isn't, {@code null} if unknown: the
+	 * database must then be asked with {@link #findRouteRequestByUuidSync(String)}.
+	 * @see RouteRequestSeenSet
+	 */
+	@Nullable
+	public Boolean isRouteRequestInProgress(@NonNull String requestUuid) {
+		return routeRequestSeenSet.isInProgress(requestUuid);
+	}
+
 	/**
 	 * Gets RouteRequestEntry by route UUID.
 	 *
@@ -344,6 +567,9 @@ public class RouteRepository {
 	 * @param routeEntry The RouteEntry to be deleted.
 	 */
 	public void dropRouteAndItsUsages(@NonNull RouteEntry routeEntry) {
+		// Unusable right away, even before the deletion
+		routeTableCache.removeRoute(routeEntry.getDiscoveryUuid());
+		writtenRouteUses.remove(routeEntry.getDiscoveryUuid());
 		executor.execute(() -> {
 			backtrackingDao.deleteByRouteUuid(routeEntry.getDiscoveryUuid());
 			routeUsageDao.deleteUsagesForRouteEntry(routeEntry.getDiscoveryUuid());
@@ -358,6 +584,7 @@ public class RouteRepository {
 	 * @param routeUuid The route UUID of usages to be deleted.
 	 */
 	public void dropRouteUsages(@NonNull String routeUuid) {
+		routeTableCache.removeUsagesOf(routeUuid);
 		executor.execute(() -> {
 			backtrackingDao.deleteByRouteUuid(routeUuid);
 			routeUsageDao.deleteUsagesForRouteEntry(routeUuid);
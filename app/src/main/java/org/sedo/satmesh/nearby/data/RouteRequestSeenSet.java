@@ -0,0 +1,256 @@
+package org.sedo.satmesh.nearby.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * In-memory set of the route requests in progress on this node, i.e. of the UUIDs having a
+ * {@link org.sedo.satmesh.model.rt.RouteRequestEntry RouteRequestEntry}, answering before the
+ * database is hit whether an incoming copy of a flooded request is a duplicate.
+ * <p>
+ * It combines a rotating Bloom filter with a bounded LRU of exact UUIDs:
+ * <ul>
+ *     <li>a UUID of the exact set is a duplicate, until the {@code max_ttl} of its request;</li>
+ *     <li>a UUID unknown to the Bloom filter is not a duplicate;</li>
+ *     <li>otherwise (evicted from the exact set, forgotten, or a false positive of the filter)
+ *     the answer is unknown and the database must be asked.</li>
+ * </ul>
+ * The filter is made of two generations swapped every rotation period, so a UUID remains in it
+ * at least one period. Its negatives are trusted only when no request of this node can outlive
+ * its UUID in the filter: not during the first period after the creation, the entries written by
+ * a previous run being unknown, nor until the {@code max_ttl} of a request that lasts longer than
+ * a period. The false positives thus never reject a request, they only cost a database lookup;
+ * their rate is bounded by {@link #falsePositiveRate()}.
+ * </p>
+ * All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+public class RouteRequestSeenSet {
+
+	/**
+	 * Default number of requests a filter generation is sized for.
+	 */
+	public static final int DEFAULT_EXPECTED_REQUESTS = 1024;
+	/**
+	 * Default false positive rate of a filter generation holding the expected number of requests.
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+	/**
+	 * Default rotation period of the filter, in milliseconds: the TTL given to the route requests.
+	 */
+	public static final long DEFAULT_ROTATION_MILLIS = 5L * 60 * 1000;
+	/**
+	 * Default capacity of the exact set.
+	 */
+	public static final int DEFAULT_EXACT_CAPACITY = 256;
+
+	private final Clock clock;
+	private final long rotationMillis;
+	private final int bitCount;
+	private final int hashCount;
+	private final int exactCapacity;
+	private long[] current;
+	private long[] previous;
+	private int currentCount;
+	private int previousCount;
+	private long generationStart;
+	// Negatives are not trusted before this time
+	private long untrustedUntil;
+	// Request UUID -> max_ttl, in access order
+	private final LinkedHashMap<String, Long> exact;
+
+	/**
+	 * @param clock             the source of the time, compared with the {@code max_ttl} of the requests
+	 * @param expectedRequests  the number of requests a filter generation is sized for
+	 * @param falsePositiveRate the false positive rate of a generation holding {@code expectedRequests}
+	 * @param rotationMillis    the rotation period of the filter
+	 * @param exactCapacity     the maximum number of UUIDs of the exact set
+	 */
+	public RouteRequestSeenSet(@NonNull Clock clock, int expectedRequests, double falsePositiveRate,
+	                           long rotationMillis, int exactCapacity) {
+		if (expectedRequests <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1
+				|| rotationMillis <= 0 || exactCapacity <= 0) {
+			throw new IllegalArgumentException("Invalid seen-set sizing");
+		}
+		this.clock = clock;
+		this.rotationMillis = rotationMillis;
+		this.exactCapacity = exactCapacity;
+		// Optimal sizing: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2) hashes
+		double bits = -expectedRequests * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		this.bitCount = (int) Math.ceil(bits / Long.SIZE) * Long.SIZE;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedRequests * Math.log(2)));
+		this.current = new long[bitCount / Long.SIZE];
+		this.previous = new long[bitCount / Long.SIZE];
+		this.exact = new LinkedHashMap<>(16, 0.75f, true);
+		this.generationStart = clock.nowMillis();
+		this.untrustedUntil = generationStart + rotationMillis;
+	}
+
+	/**
+	 * Creates a seen-set with the default sizing, on the system clock.
+	 */
+	public RouteRequestSeenSet() {
+		this(Clock.SYSTEM, DEFAULT_EXPECTED_REQUESTS, DEFAULT_FALSE_POSITIVE_RATE,
+				DEFAULT_ROTATION_MILLIS, DEFAULT_EXACT_CAPACITY);
+	}
+
+	/**
+	 * Returns the false positive rate of a Bloom filter.
+	 *
+	 * @param bitCount  the number of bits of the filter
+	 * @param hashCount the number of hash functions
+	 * @param elements  the number of elements added to the filter
+	 * @return {@code (1 - e^(-k n / m))^k}
+	 */
+	static double falsePositiveRate(int bitCount, int hashCount, int elements) {
+		return Math.pow(1 - Math.exp(-(double) hashCount * elements / bitCount), hashCount);
+	}
+
+	// 64-bit FNV-1a followed by the MurmurHash3 finalizer, its halves seed the double hashing
+	private static long hash(@NonNull String uuid) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < uuid.length(); i++) {
+			h ^= uuid.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static boolean contains(@NonNull long[] bits, int bitCount, int hashCount, long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			int bit = Math.floorMod(h1 + i * h2, bitCount);
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rotateIfNeeded(long now) {
+		long elapsed = now - generationStart;
+		if (elapsed < rotationMillis) {
+			return;
+		}
+		long[] recycled = previous;
+		Arrays.fill(recycled, 0L);
+		if (elapsed < 2 * rotationMillis) {
+			previous = current;
+			previousCount = currentCount;
+		} else {
+			// Idle for more than a generation: both are outdated
+			Arrays.fill(current, 0L);
+			previousCount = 0;
+		}
+		current = recycled;
+		currentCount = 0;
+		generationStart = now;
+	}
+
+	/**
+	 * Records a request in progress on this node.
+	 *
+	 * @param requestUuid The UUID of the route request.
+	 * @param maxTtl      The {@code max_ttl} of the request: the time until which it may be relayed.
+	 */
+	public synchronized void add(@NonNull String requestUuid, long maxTtl) {
+		long now = clock.nowMillis();
+		rotateIfNeeded(now);
+		long hash = hash(requestUuid);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			int bit = Math.floorMod(h1 + i * h2, bitCount);
+			current[bit >>> 6] |= 1L << bit;
+		}
+		currentCount++;
+		if (maxTtl - now > rotationMillis) {
+			// May outlive its rotation out of the filter
+			untrustedUntil = Math.max(untrustedUntil, maxTtl);
+		}
+		exact.put(requestUuid, maxTtl);
+		if (exact.size() > exactCapacity) {
+			evictExpired(now);
+			Iterator<String> eldest = exact.keySet().iterator();
+			while (exact.size() > exactCapacity) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+	}
+
+	private void evictExpired(long now) {
+		exact.values().removeIf(maxTtl -> maxTtl < now);
+	}
+
+	/**
+	 * Forgets a request that is no longer in progress. It may remain in the filter, where it only
+	 * causes a database lookup.
+	 */
+	public synchronized void remove(@NonNull String requestUuid) {
+		exact.remove(requestUuid);
+	}
+
+	/**
+	 * Tells whether a request is in progress on this node.
+	 *
+	 * @param requestUuid The UUID of the route request.
+	 * @return {@code true} if it is, {@code false} if it isn't, {@code null} if the database must
+	 * be asked.
+	 */
+	@Nullable
+	public synchronized Boolean isInProgress(@NonNull String requestUuid) {
+		long now = clock.nowMillis();
+		rotateIfNeeded(now);
+		Long maxTtl = exact.get(requestUuid);
+		if (maxTtl != null) {
+			if (maxTtl >= now) {
+				return true;
+			}
+			exact.remove(requestUuid);
+		}
+		long hash = hash(requestUuid);
+		if (now >= untrustedUntil && !contains(current, bitCount, hashCount, hash)
+				&& !contains(previous, bitCount, hashCount, hash)) {
+			return false;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the probability that an unknown UUID hits the filter and falls back to the
+	 * database, given the number of requests currently held by both generations.
+	 */
+	public synchronized double falsePositiveRate() {
+		double currentRate = falsePositiveRate(bitCount, hashCount, currentCount);
+		double previousRate = falsePositiveRate(bitCount, hashCount, previousCount);
+		return 1 - (1 - currentRate) * (1 - previousRate);
+	}
+
+	/**
+	 * Returns the number of bits of a filter generation.
+	 */
+	int bitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * Returns the number of hash functions of the filter.
+	 */
+	int hashCount() {
+		return hashCount;
+	}
+}
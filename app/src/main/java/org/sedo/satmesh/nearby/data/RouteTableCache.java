@@ -0,0 +1,273 @@
+package org.sedo.satmesh.nearby.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+
+import org.sedo.satmesh.model.rt.RouteEntry;
+import org.sedo.satmesh.model.rt.RouteUsage;
+import org.sedo.satmesh.model.rt.RouteUsageBacktracking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory copy of the routing table: the route entries, their usages and the backtracking
+ * destinations of the usages, indexed by destination node local ID.
+ * <p>
+ * It is fed write-through by {@link RouteRepository} after each successful write, and emptied of
+ * the destroyed routes before they are deleted. Until {@link #load} has warmed it from the
+ * database, it must not be queried: {@link #isLoaded()} tells when it becomes authoritative.
+ * The instances it returns are the cached ones; they must only be modified through the
+ * repository, which writes them through.
+ * </p>
+ * All the methods are thread-safe.
+ *
+ * @author hsedo777
+ */
+public class RouteTableCache {
+
+	private final Map<String, RouteEntry> routes = new HashMap<>();
+	private final Map<String, RouteUsage> usages = new HashMap<>();
+	private final Map<String, RouteUsageBacktracking> backtrackings = new HashMap<>();
+	// Usage UUIDs of each route
+	private final Map<String, Set<String>> usagesByRoute = new HashMap<>();
+	// Route UUIDs by route destination
+	private final LongSparseArray<Set<String>> routesByDestination = new LongSparseArray<>();
+	// Usage UUIDs by backtracking destination, i.e. by initiator of the usage
+	private final LongSparseArray<Set<String>> usagesByDestination = new LongSparseArray<>();
+	// Routes destroyed, and routes whose usages were dropped, while loading: the snapshot may still hold them
+	private final Set<String> routesDestroyedWhileLoading = new HashSet<>();
+	private final Set<String> usagesDestroyedWhileLoading = new HashSet<>();
+	private boolean loaded;
+
+	private static void index(@NonNull LongSparseArray<Set<String>> index, @Nullable Long key, @NonNull String value) {
+		if (key == null) {
+			return;
+		}
+		Set<String> values = index.get(key);
+		if (values == null) {
+			values = new HashSet<>();
+			index.put(key, values);
+		}
+		values.add(value);
+	}
+
+	private static void unindex(@NonNull LongSparseArray<Set<String>> index, @Nullable Long key, @NonNull String value) {
+		if (key == null) {
+			return;
+		}
+		Set<String> values = index.get(key);
+		if (values != null && values.remove(value) && values.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Warms the cache with a snapshot of the database. The entries written through since the
+	 * snapshot was taken are kept, the routes destroyed since then are ignored.
+	 */
+	public synchronized void load(@NonNull List<RouteEntry> routeEntries, @NonNull List<RouteUsage> routeUsages,
+	                              @NonNull List<RouteUsageBacktracking> routeBacktrackings) {
+		for (RouteEntry route : routeEntries) {
+			if (route.getDiscoveryUuid() != null && !routes.containsKey(route.getDiscoveryUuid())
+					&& !routesDestroyedWhileLoading.contains(route.getDiscoveryUuid())) {
+				putRoute(route);
+			}
+		}
+		for (RouteUsage usage : routeUsages) {
+			if (!usages.containsKey(usage.getUsageRequestUuid())
+					&& !usagesDestroyedWhileLoading.contains(usage.getRouteEntryDiscoveryUuid())) {
+				putUsage(usage);
+			}
+		}
+		for (RouteUsageBacktracking backtracking : routeBacktrackings) {
+			RouteUsage usage = usages.get(backtracking.usageUuid());
+			if (usage != null && !backtrackings.containsKey(backtracking.usageUuid())) {
+				putBacktracking(backtracking);
+			}
+		}
+		routesDestroyedWhileLoading.clear();
+		usagesDestroyedWhileLoading.clear();
+		loaded = true;
+	}
+
+	/**
+	 * Returns whether the cache has been warmed and mirrors the database.
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Adds or refreshes a route entry.
+	 */
+	public synchronized void putRoute(@NonNull RouteEntry route) {
+		String uuid = route.getDiscoveryUuid();
+		RouteEntry previous = routes.put(uuid, route);
+		if (previous != null) {
+			unindex(routesByDestination, previous.getDestinationNodeLocalId(), uuid);
+		}
+		index(routesByDestination, route.getDestinationNodeLocalId(), uuid);
+	}
+
+	/**
+	 * Refreshes a route entry after an update, unless the route has been destroyed meanwhile.
+	 */
+	public synchronized void refreshRoute(@NonNull RouteEntry route) {
+		String uuid = route.getDiscoveryUuid();
+		if (routes.containsKey(uuid) || (!loaded && !routesDestroyedWhileLoading.contains(uuid))) {
+			putRoute(route);
+		}
+	}
+
+	/**
+	 * Adds or replaces a usage of a route.
+	 */
+	public synchronized void putUsage(@NonNull RouteUsage usage) {
+		RouteUsage previous = usages.put(usage.getUsageRequestUuid(), usage);
+		if (previous != null && previous.getRouteEntryDiscoveryUuid() != null) {
+			Set<String> routeUsages = usagesByRoute.get(previous.getRouteEntryDiscoveryUuid());
+			if (routeUsages != null) {
+				routeUsages.remove(usage.getUsageRequestUuid());
+			}
+		}
+		if (usage.getRouteEntryDiscoveryUuid() != null) {
+			usagesByRoute.computeIfAbsent(usage.getRouteEntryDiscoveryUuid(), k -> new HashSet<>())
+					.add(usage.getUsageRequestUuid());
+		}
+	}
+
+	/**
+	 * Adds or replaces the backtracking destination of a usage.
+	 */
+	public synchronized void putBacktracking(@NonNull RouteUsageBacktracking backtracking) {
+		RouteUsageBacktracking previous = backtrackings.put(backtracking.usageUuid(), backtracking);
+		if (previous != null) {
+			unindex(usagesByDestination, previous.destinationNodeLocalId(), previous.usageUuid());
+		}
+		index(usagesByDestination, backtracking.destinationNodeLocalId(), backtracking.usageUuid());
+	}
+
+	/**
+	 * Removes a route along with its usages and their backtracking destinations.
+	 *
+	 * @param routeUuid The discovery UUID of the route.
+	 */
+	public synchronized void removeRoute(@NonNull String routeUuid) {
+		if (!loaded) {
+			routesDestroyedWhileLoading.add(routeUuid);
+		}
+		removeUsagesOf(routeUuid);
+		RouteEntry route = routes.remove(routeUuid);
+		if (route != null) {
+			unindex(routesByDestination, route.getDestinationNodeLocalId(), routeUuid);
+		}
+	}
+
+	/**
+	 * Removes the usages of a route and their backtracking destinations, the route is kept.
+	 *
+	 * @param routeUuid The discovery UUID of the route.
+	 */
+	public synchronized void removeUsagesOf(@NonNull String routeUuid) {
+		if (!loaded) {
+			usagesDestroyedWhileLoading.add(routeUuid);
+		}
+		Set<String> routeUsages = usagesByRoute.remove(routeUuid);
+		if (routeUsages == null) {
+			return;
+		}
+		for (String usageUuid : routeUsages) {
+			usages.remove(usageUuid);
+			RouteUsageBacktracking backtracking = backtrackings.remove(usageUuid);
+			if (backtracking != null) {
+				unindex(usagesByDestination, backtracking.destinationNodeLocalId(), usageUuid);
+			}
+		}
+	}
+
+	/**
+	 * Returns the route entry with the given discovery UUID, or {@code null} if unknown.
+	 */
+	@Nullable
+	public synchronized RouteEntry getRoute(@NonNull String routeUuid) {
+		return routes.get(routeUuid);
+	}
+
+	/**
+	 * Returns the usage with the given UUID, or {@code null} if unknown.
+	 */
+	@Nullable
+	public synchronized RouteUsage getUsage(@NonNull String usageUuid) {
+		return usages.get(usageUuid);
+	}
+
+	/**
+	 * Returns the usages of a route.
+	 */
+	@NonNull
+	public synchronized List<RouteUsage> getUsagesOf(@NonNull String routeUuid) {
+		Set<String> routeUsages = usagesByRoute.get(routeUuid);
+		List<RouteUsage> result = new ArrayList<>();
+		if (routeUsages != null) {
+			for (String usageUuid : routeUsages) {
+				result.add(usages.get(usageUuid));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the most recently used route leading to a destination: either a route whose
+	 * destination it is, or a route one of whose usages was requested by it and can be
+	 * backtracked. Same as {@code RouteEntryDao#findMostRecentRouteByDestination}.
+	 *
+	 * @param destinationNodeLocalId The local ID of the destination node.
+	 * @return The route with one of its usages, or {@code null} if there is none.
+	 */
+	@Nullable
+	public synchronized RouteWithUsage findMostRecentRoute(long destinationNodeLocalId) {
+		RouteEntry best = null;
+		RouteUsage bestUsage = null;
+		Set<String> routeUuids = routesByDestination.get(destinationNodeLocalId);
+		if (routeUuids != null) {
+			for (String routeUuid : routeUuids) {
+				RouteEntry route = routes.get(routeUuid);
+				if (isMoreRecent(route, best)) {
+					best = route;
+					Set<String> routeUsages = usagesByRoute.get(routeUuid);
+					bestUsage = routeUsages == null || routeUsages.isEmpty() ? null
+							: usages.get(routeUsages.iterator().next());
+				}
+			}
+		}
+		Set<String> usageUuids = usagesByDestination.get(destinationNodeLocalId);
+		if (usageUuids != null) {
+			for (String usageUuid : usageUuids) {
+				RouteUsage usage = usages.get(usageUuid);
+				RouteEntry route = usage == null ? null : routes.get(usage.getRouteEntryDiscoveryUuid());
+				if (isMoreRecent(route, best)) {
+					best = route;
+					bestUsage = usage;
+				}
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		return new RouteWithUsage(best, bestUsage,
+				bestUsage == null ? null : backtrackings.get(bestUsage.getUsageRequestUuid()));
+	}
+
+	private static boolean isMoreRecent(@Nullable RouteEntry route, @Nullable RouteEntry best) {
+		if (route == null || route.getLastUseTimestamp() == null) {
+			return false;
+		}
+		return best == null || route.getLastUseTimestamp() > best.getLastUseTimestamp();
+	}
+}
@@ -0,0 +1,57 @@
+package org.sedo.satmesh.nearby.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.proto.TransferOffer;
+
+import java.io.File;
+
+/**
+ * Listener of the chunked transfers, incoming and outgoing.
+ * All methods have an empty default implementation.
+ *
+ * @author hsedo777
+ */
+public interface TransferListener {
+
+	/**
+	 * Called as the bytes of a transfer progress.
+	 *
+	 * @param transferId       The ID of the transfer.
+	 * @param transferredBytes The number of bytes of the content transferred so far, approximate for outgoing transfers.
+	 * @param totalBytes       The size of the content.
+	 */
+	default void onTransferProgress(@NonNull String transferId, long transferredBytes, long totalBytes) {
+	}
+
+	/**
+	 * Called when the whole content of an incoming transfer is written.
+	 *
+	 * @param senderAddressName The address name of the sender.
+	 * @param offer             The offer that announced the transfer.
+	 * @param file              The file holding the content.
+	 * @param payloadId         The ID of the payload that carried the offer.
+	 */
+	default void onIncomingTransferCompleted(
+			@NonNull String senderAddressName, @NonNull TransferOffer offer, @NonNull File file, long payloadId) {
+	}
+
+	/**
+	 * Called when the recipient of an outgoing transfer confirmed the reception of the whole content.
+	 *
+	 * @param transferId           The ID of the transfer.
+	 * @param recipientAddressName The address name of the recipient.
+	 */
+	default void onOutgoingTransferCompleted(@NonNull String transferId, @NonNull String recipientAddressName) {
+	}
+
+	/**
+	 * Called when an outgoing transfer is abandoned after its last attempt.
+	 *
+	 * @param transferId The ID of the transfer.
+	 * @param cause      The cause of the last failure, if known.
+	 */
+	default void onTransferFailed(@NonNull String transferId, @Nullable Exception cause) {
+	}
+}
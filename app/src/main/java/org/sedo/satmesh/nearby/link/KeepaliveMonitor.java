@@ -0,0 +1,263 @@
+package org.sedo.satmesh.nearby.link;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fast detection of the dead links, well before the transport reports the disconnection.
+ * <p>
+ * Every payload received from an endpoint is a heartbeat of its link, so a busy link needs no
+ * probe: a keepalive probe is only sent toward an endpoint nothing was sent to during the last
+ * interval. The heartbeats feed a {@link PhiAccrualFailureDetector}, checked on each tick; an
+ * endpoint whose suspicion level crosses the threshold is reported as suspected, then as recovered
+ * if it beats again. Probes also echo the last probe received, which samples the round trip time
+ * of idle links for the {@link LinkQualityMonitor}.
+ * </p>
+ * An endpoint is only monitored once it sent a probe: a single probe announces the support on
+ * connection, so that nodes unaware of the probes are never suspected for staying silent.
+ *
+ * @author hsedo777
+ */
+public class KeepaliveMonitor {
+
+	/**
+	 * Idle delay after which a probe is sent toward an endpoint.
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 2_000L;
+	/**
+	 * Period of the probes sending and of the suspicion checks.
+	 */
+	public static final long DEFAULT_TICK_MILLIS = 500L;
+
+	private final Map<String, EndpointState> endpoints = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final Clock clock;
+	private final LinkQualityMonitor linkQualityMonitor;
+	private final ProbeSender sender;
+	private final PhiAccrualFailureDetector detector;
+	private final long intervalMillis;
+	private final long tickMillis;
+	@Nullable
+	private volatile LivenessListener livenessListener;
+	@Nullable
+	private ScheduledFuture<?> ticker;
+
+	/**
+	 * @param scheduler          executor running the ticks
+	 * @param clock              source of the time
+	 * @param linkQualityMonitor receives the round trip times measured by the probes
+	 * @param sender             hands the probes over to the transport
+	 * @param intervalMillis     idle delay after which a probe is sent
+	 * @param tickMillis         period of the probes sending and of the suspicion checks
+	 */
+	public KeepaliveMonitor(@NonNull ScheduledExecutorService scheduler, @NonNull Clock clock,
+	                        @NonNull LinkQualityMonitor linkQualityMonitor, @NonNull ProbeSender sender,
+	                        long intervalMillis, long tickMillis) {
+		if (intervalMillis <= 0 || tickMillis <= 0) {
+			throw new IllegalArgumentException("Invalid keepalive parameters");
+		}
+		this.scheduler = scheduler;
+		this.clock = clock;
+		this.linkQualityMonitor = linkQualityMonitor;
+		this.sender = sender;
+		this.intervalMillis = intervalMillis;
+		this.tickMillis = tickMillis;
+		/*
+		 * A busy peer stops beating with its traffic up to an interval plus a tick before
+		 * its first probe: that gap mustn't be taken for a failure.
+		 */
+		this.detector = new PhiAccrualFailureDetector(clock, PhiAccrualFailureDetector.DEFAULT_THRESHOLD,
+				PhiAccrualFailureDetector.DEFAULT_MAX_SAMPLES, PhiAccrualFailureDetector.DEFAULT_MIN_STD_DEVIATION_MILLIS,
+				intervalMillis + tickMillis, intervalMillis);
+	}
+
+	public void setLivenessListener(@Nullable LivenessListener livenessListener) {
+		this.livenessListener = livenessListener;
+	}
+
+	/**
+	 * Starts the periodic probes and checks. Has no effect if already started.
+	 */
+	public synchronized void start() {
+		if (ticker == null) {
+			ticker = scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the periodic probes and checks, and forgets all the endpoints.
+	 */
+	public synchronized void stop() {
+		if (ticker != null) {
+			ticker.cancel(false);
+			ticker = null;
+		}
+		endpoints.clear();
+		for (String endpointId : detector.getMonitoredKeys()) {
+			detector.remove(endpointId);
+		}
+	}
+
+	/**
+	 * Starts tracking a newly connected endpoint, announcing the probes support to it.
+	 */
+	public void track(@NonNull String endpointId) {
+		EndpointState state = new EndpointState();
+		endpoints.put(endpointId, state);
+		detector.remove(endpointId);
+		sendProbe(endpointId, state, clock.nowMillis());
+	}
+
+	/**
+	 * Stops tracking an endpoint, e.g. once disconnected.
+	 */
+	public void forget(@NonNull String endpointId) {
+		endpoints.remove(endpointId);
+		detector.remove(endpointId);
+	}
+
+	/**
+	 * Records that something was sent to the endpoint: the peer will take it as a heartbeat.
+	 */
+	public void onSent(@NonNull String endpointId) {
+		EndpointState state = endpoints.get(endpointId);
+		if (state != null) {
+			state.lastSent = clock.nowMillis();
+		}
+	}
+
+	/**
+	 * Records that something was received from the endpoint, probe or not.
+	 */
+	public void onReceived(@NonNull String endpointId) {
+		EndpointState state = endpoints.get(endpointId);
+		if (state != null && state.peerProbes) {
+			heartbeat(endpointId, state);
+		}
+	}
+
+	/**
+	 * Records a probe received from the endpoint.
+	 *
+	 * @param probe the probe, whose echo, if any, gives a round trip time sample
+	 */
+	public void onProbeReceived(@NonNull String endpointId, @NonNull Probe probe) {
+		EndpointState state = endpoints.get(endpointId);
+		if (state == null) {
+			return;
+		}
+		long now = clock.nowMillis();
+		state.peerProbes = true;
+		synchronized (state) {
+			state.peerTimestamp = probe.timestamp();
+			state.peerTimestampReceivedAt = now;
+		}
+		if (probe.echoTimestamp() > 0) {
+			linkQualityMonitor.onRttSample(endpointId, now - probe.echoTimestamp() - probe.echoDelayMillis());
+		}
+		heartbeat(endpointId, state);
+	}
+
+	/**
+	 * Returns {@code true} if the endpoint is suspected to be dead.
+	 */
+	public boolean isSuspected(@NonNull String endpointId) {
+		EndpointState state = endpoints.get(endpointId);
+		return state != null && state.suspected;
+	}
+
+	/**
+	 * Returns the current suspicion level of the endpoint, 0 if it isn't monitored.
+	 */
+	public double getPhi(@NonNull String endpointId) {
+		return detector.phi(endpointId);
+	}
+
+	private void heartbeat(@NonNull String endpointId, @NonNull EndpointState state) {
+		detector.heartbeat(endpointId);
+		if (state.suspected) {
+			state.suspected = false;
+			LivenessListener listener = livenessListener;
+			if (listener != null) {
+				listener.onRecovered(endpointId);
+			}
+		}
+	}
+
+	private void sendProbe(@NonNull String endpointId, @NonNull EndpointState state, long now) {
+		Probe probe;
+		synchronized (state) {
+			probe = state.peerTimestamp > 0
+					? new Probe(now, state.peerTimestamp, now - state.peerTimestampReceivedAt)
+					: new Probe(now, 0L, 0L);
+			// Each probe of the peer is echoed once
+			state.peerTimestamp = 0L;
+		}
+		state.lastSent = now;
+		sender.sendProbe(endpointId, probe);
+	}
+
+	/**
+	 * Sends the probes due and checks the suspicion levels.
+	 */
+	void tick() {
+		long now = clock.nowMillis();
+		endpoints.forEach((endpointId, state) -> {
+			if (!state.peerProbes) {
+				return;
+			}
+			if (now - state.lastSent >= intervalMillis) {
+				sendProbe(endpointId, state, now);
+			}
+			if (!state.suspected && !detector.isAvailable(endpointId)) {
+				state.suspected = true;
+				LivenessListener listener = livenessListener;
+				if (listener != null) {
+					listener.onSuspected(endpointId, detector.phi(endpointId));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Hands a probe over to the transport.
+	 */
+	public interface ProbeSender {
+		void sendProbe(@NonNull String endpointId, @NonNull Probe probe);
+	}
+
+	/**
+	 * Notified when an endpoint is suspected to be dead, or beats again.
+	 */
+	public interface LivenessListener {
+		void onSuspected(@NonNull String endpointId, double phi);
+
+		void onRecovered(@NonNull String endpointId);
+	}
+
+	/**
+	 * Content of a keepalive probe.
+	 *
+	 * @param timestamp       send time, on the clock of the sender
+	 * @param echoTimestamp   timestamp of the last probe received from the peer, 0 if none
+	 * @param echoDelayMillis delay between the reception of the echoed probe and this sending
+	 */
+	public record Probe(long timestamp, long echoTimestamp, long echoDelayMillis) {
+	}
+
+	private static final class EndpointState {
+		volatile long lastSent;
+		volatile boolean peerProbes;
+		volatile boolean suspected;
+		long peerTimestamp;
+		long peerTimestampReceivedAt;
+	}
+}
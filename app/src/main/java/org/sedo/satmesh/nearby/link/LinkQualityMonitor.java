@@ -0,0 +1,297 @@
+package org.sedo.satmesh.nearby.link;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Estimates the quality of the link toward each connected endpoint: smoothed round trip time,
+ * observed throughput, bandwidth and failure ratio.
+ * <p>
+ * The round trip time is sampled between the sending of a message expecting an answer and the
+ * reception of the answer, then smoothed as TCP does (RFC 6298). The throughput counts the bytes
+ * reported by the payload transfer updates, both directions, over a rolling window. The failure
+ * ratio is the share of failed or canceled transfers over a longer rolling window. The bandwidth
+ * is the smoothed rate of the large payloads, measured from their first progress update to their
+ * completion: unlike the throughput, it doesn't drop when the link is idle.
+ * All the state is updated without locks, so that the transport callbacks never wait.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public class LinkQualityMonitor {
+
+	/**
+	 * Window of the throughput estimation.
+	 */
+	public static final long THROUGHPUT_WINDOW_MILLIS = 10_000L;
+	/**
+	 * Window of the failure ratio estimation.
+	 */
+	public static final long FAILURE_WINDOW_MILLIS = 60_000L;
+	/**
+	 * Lower bound of the retransmission timeouts derived from the round trip time.
+	 */
+	public static final long MIN_RETRANSMISSION_TIMEOUT_MILLIS = 1_000L;
+	/**
+	 * Cost of a lossless link with enough bandwidth: the link costs are expressed in hundredths
+	 * of expected transmissions.
+	 */
+	public static final int LINK_COST_UNIT = 100;
+	/**
+	 * Bandwidth above which a link isn't penalized, between the Bluetooth and Wi-Fi mediums.
+	 */
+	public static final long REFERENCE_BANDWIDTH_BYTES_PER_SECOND = 256L * 1024;
+	// Smaller payloads end before the rate can be measured
+	private static final long MIN_BANDWIDTH_SAMPLE_BYTES = 32L * 1024;
+	// Bounds of the link cost factors
+	private static final double MIN_DELIVERY_RATIO = 0.1;
+	private static final double MAX_BANDWIDTH_PENALTY = 4.0;
+	// Beyond this delay, the answer is considered lost
+	private static final long PENDING_EXPIRY_MILLIS = 60_000L;
+	private static final int MAX_PENDING = 128;
+	private static final int WINDOW_BUCKETS = 10;
+
+	private final Map<String, LinkState> links = new ConcurrentHashMap<>();
+	private final Clock clock;
+
+	public LinkQualityMonitor(@NonNull Clock clock) {
+		this.clock = clock;
+	}
+
+	@NonNull
+	private LinkState stateOf(@NonNull String endpointId) {
+		return links.computeIfAbsent(endpointId, id -> new LinkState(clock));
+	}
+
+	/**
+	 * Records the sending of a message whose answer will carry the given token,
+	 * usually the payload ID of the message.
+	 */
+	public void expectAnswer(@NonNull String endpointId, long token) {
+		LinkState state = stateOf(endpointId);
+		long now = clock.nowMillis();
+		if (state.pending.size() >= MAX_PENDING) {
+			state.pending.values().removeIf(sentAt -> now - sentAt > PENDING_EXPIRY_MILLIS);
+			if (state.pending.size() >= MAX_PENDING) {
+				return;
+			}
+		}
+		state.pending.putIfAbsent(token, now);
+	}
+
+	/**
+	 * Records the answer to a message registered with {@link #expectAnswer(String, long)},
+	 * sampling the round trip time. Unknown tokens are ignored.
+	 */
+	public void onAnswer(@NonNull String endpointId, long token) {
+		LinkState state = links.get(endpointId);
+		Long sentAt = state == null ? null : state.pending.remove(token);
+		if (sentAt != null) {
+			onRttSample(endpointId, clock.nowMillis() - sentAt);
+		}
+	}
+
+	/**
+	 * Adds a round trip time measured by other means.
+	 */
+	public void onRttSample(@NonNull String endpointId, long rttMillis) {
+		if (rttMillis < 0) {
+			return;
+		}
+		stateOf(endpointId).rtt.updateAndGet(estimate -> estimate.next(rttMillis));
+	}
+
+	/**
+	 * Accounts a payload transfer update, incoming or outgoing.
+	 */
+	public void onTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update) {
+		LinkState state = stateOf(endpointId);
+		int status = update.getStatus();
+		long transferred = update.getBytesTransferred();
+		Long previous = status == PayloadTransferUpdate.Status.IN_PROGRESS
+				? state.transferred.put(update.getPayloadId(), transferred)
+				: state.transferred.remove(update.getPayloadId());
+		state.bytes.add(transferred - (previous == null ? 0L : previous));
+		if (status == PayloadTransferUpdate.Status.IN_PROGRESS) {
+			state.starts.putIfAbsent(update.getPayloadId(), new TransferStart(clock.nowMillis(), transferred));
+			return;
+		}
+		TransferStart start = state.starts.remove(update.getPayloadId());
+		if (status == PayloadTransferUpdate.Status.SUCCESS) {
+			state.successes.add(1L);
+			long elapsed = start == null ? 0L : clock.nowMillis() - start.atMillis();
+			if (elapsed > 0 && transferred - start.bytes() >= MIN_BANDWIDTH_SAMPLE_BYTES) {
+				long sample = (transferred - start.bytes()) * 1000L / elapsed;
+				state.bandwidth.updateAndGet(bandwidth -> bandwidth < 0 ? sample : (7 * bandwidth + sample) / 8);
+			}
+		} else {
+			state.failures.add(1L);
+		}
+	}
+
+	/**
+	 * Accounts a payload the transport refused to send.
+	 */
+	public void onSendFailed(@NonNull String endpointId) {
+		stateOf(endpointId).failures.add(1L);
+	}
+
+	/**
+	 * Forgets an endpoint, e.g. once disconnected: its next connection starts a new estimation.
+	 */
+	public void forget(@NonNull String endpointId) {
+		links.remove(endpointId);
+	}
+
+	/**
+	 * Returns the quality of the link toward the endpoint, or {@code null} if nothing is known about it.
+	 */
+	@Nullable
+	public LinkQuality getQuality(@NonNull String endpointId) {
+		LinkState state = links.get(endpointId);
+		return state == null ? null : state.snapshot();
+	}
+
+	/**
+	 * Returns the quality of the links toward all the known endpoints.
+	 */
+	@NonNull
+	public Map<String, LinkQuality> getQualities() {
+		Map<String, LinkQuality> qualities = new HashMap<>();
+		links.forEach((endpointId, state) -> qualities.put(endpointId, state.snapshot()));
+		return Collections.unmodifiableMap(qualities);
+	}
+
+	/**
+	 * Returns the delay after which a message toward the endpoint may be considered lost:
+	 * {@code SRTT + 4 * RTTVAR}, bounded below, or the given default while no round trip was measured.
+	 */
+	public long getRetransmissionTimeoutMillis(@NonNull String endpointId, long defaultMillis) {
+		LinkQuality quality = getQuality(endpointId);
+		if (quality == null || !quality.hasRtt()) {
+			return defaultMillis;
+		}
+		return Math.max(MIN_RETRANSMISSION_TIMEOUT_MILLIS, quality.smoothedRttMillis() + 4 * quality.rttVariationMillis());
+	}
+
+	/**
+	 * Returns the cost of a link, ETX-style: the expected number of transmissions of a payload,
+	 * inflated on links slower than {@link #REFERENCE_BANDWIDTH_BYTES_PER_SECOND}, in
+	 * {@link #LINK_COST_UNIT}s. A link nothing is known about costs a unit.
+	 */
+	public static int linkCost(@Nullable LinkQuality quality) {
+		if (quality == null) {
+			return LINK_COST_UNIT;
+		}
+		return (int) Math.round(LINK_COST_UNIT * quality.expectedTransmissions() * quality.bandwidthPenalty());
+	}
+
+	/**
+	 * Quality of a link at a given time.
+	 *
+	 * @param smoothedRttMillis       smoothed round trip time, or {@code -1} if none was measured
+	 * @param rttVariationMillis      smoothed variation of the round trip time
+	 * @param rttSamples              number of round trips measured
+	 * @param bytesPerSecond          bytes transferred per second, both directions, over the last {@link #THROUGHPUT_WINDOW_MILLIS}
+	 * @param failureRatio            share of the transfers that failed over the last {@link #FAILURE_WINDOW_MILLIS}, 0 if none ended
+	 * @param transfers               number of transfers ended over the last {@link #FAILURE_WINDOW_MILLIS}
+	 * @param bandwidthBytesPerSecond smoothed rate of the large payloads, or {@code -1} if none was measured
+	 */
+	public record LinkQuality(long smoothedRttMillis, long rttVariationMillis, long rttSamples,
+	                          double bytesPerSecond, double failureRatio, long transfers,
+	                          long bandwidthBytesPerSecond) {
+
+		public boolean hasRtt() {
+			return rttSamples > 0;
+		}
+
+		public boolean hasBandwidth() {
+			return bandwidthBytesPerSecond > 0;
+		}
+
+		/**
+		 * Expected number of transmissions of a payload: the inverse of the delivery ratio. The
+		 * transport acknowledges the payloads, so a transfer outcome covers both directions.
+		 */
+		public double expectedTransmissions() {
+			return 1.0 / Math.max(MIN_DELIVERY_RATIO, 1.0 - failureRatio);
+		}
+
+		/**
+		 * Factor applied to the cost of a link slower than {@link #REFERENCE_BANDWIDTH_BYTES_PER_SECOND},
+		 * 1 while its bandwidth is unknown.
+		 */
+		public double bandwidthPenalty() {
+			if (!hasBandwidth()) {
+				return 1.0;
+			}
+			double penalty = (double) REFERENCE_BANDWIDTH_BYTES_PER_SECOND / bandwidthBytesPerSecond;
+			return Math.max(1.0, Math.min(MAX_BANDWIDTH_PENALTY, penalty));
+		}
+	}
+
+	/**
+	 * First progress update of a payload.
+	 */
+	private record TransferStart(long atMillis, long bytes) {
+	}
+
+	/**
+	 * Round trip time estimation, as of RFC 6298.
+	 */
+	private record RttEstimate(long smoothed, long variation, long samples) {
+		private static final RttEstimate NONE = new RttEstimate(-1L, 0L, 0L);
+
+		@NonNull
+		RttEstimate next(long sample) {
+			if (samples == 0) {
+				return new RttEstimate(sample, sample / 2, 1L);
+			}
+			// RTTVAR = 3/4 RTTVAR + 1/4 |SRTT - R|, then SRTT = 7/8 SRTT + 1/8 R
+			long newVariation = (3 * variation + Math.abs(smoothed - sample)) / 4;
+			long newSmoothed = (7 * smoothed + sample) / 8;
+			return new RttEstimate(newSmoothed, newVariation, samples + 1);
+		}
+	}
+
+	private static final class LinkState {
+		final AtomicReference<RttEstimate> rtt = new AtomicReference<>(RttEstimate.NONE);
+		final RollingCounter bytes;
+		final RollingCounter successes;
+		final RollingCounter failures;
+		// Send time of the messages awaiting an answer, by token
+		final Map<Long, Long> pending = new ConcurrentHashMap<>();
+		// Bytes already accounted for the payloads in progress
+		final Map<Long, Long> transferred = new ConcurrentHashMap<>();
+		// First progress update of the payloads in progress
+		final Map<Long, TransferStart> starts = new ConcurrentHashMap<>();
+		final AtomicLong bandwidth = new AtomicLong(-1L);
+
+		LinkState(@NonNull Clock clock) {
+			bytes = new RollingCounter(WINDOW_BUCKETS, THROUGHPUT_WINDOW_MILLIS / WINDOW_BUCKETS, clock);
+			successes = new RollingCounter(WINDOW_BUCKETS, FAILURE_WINDOW_MILLIS / WINDOW_BUCKETS, clock);
+			failures = new RollingCounter(WINDOW_BUCKETS, FAILURE_WINDOW_MILLIS / WINDOW_BUCKETS, clock);
+		}
+
+		@NonNull
+		LinkQuality snapshot() {
+			RttEstimate estimate = rtt.get();
+			long failed = failures.sum();
+			long ended = failed + successes.sum();
+			return new LinkQuality(estimate.smoothed(), estimate.variation(), estimate.samples(),
+					bytes.sum() * 1000.0 / bytes.getWindowMillis(),
+					ended == 0 ? 0.0 : (double) failed / ended, ended, bandwidth.get());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package org.sedo.satmesh.nearby.link;
+
+import androidx.annotation.NonNull;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adaptive failure detector of the phi accrual kind (Hayashibara et al.).
+ * <p>
+ * Instead of a fixed timeout, the detector learns the distribution of the delays between the
+ * heartbeats of each monitored key, then expresses the silence since the last heartbeat as a
+ * suspicion level phi: {@code phi = -log10(P(a heartbeat arrives later than now))}. A phi of 1
+ * means a 10% chance of mistake when suspecting the key, a phi of 8 a 10<sup>-8</sup> chance.
+ * So a link that usually answers every 100 ms is suspected much sooner than a link beating every
+ * few seconds, while the same threshold applies to both.
+ * </p>
+ * The acceptable pause is added to the learned mean delay: it absorbs the known gaps, such as
+ * the switch from a busy link, beating with its traffic, to an idle link, beating with probes.
+ *
+ * @author hsedo777
+ */
+public class PhiAccrualFailureDetector {
+
+	/**
+	 * Suspicion level above which a key is considered failed.
+	 */
+	public static final double DEFAULT_THRESHOLD = 8.0;
+	/**
+	 * Number of inter-arrival delays kept per key.
+	 */
+	public static final int DEFAULT_MAX_SAMPLES = 100;
+	/**
+	 * Lower bound of the standard deviation, so that a very regular link isn't suspected
+	 * on its first hiccup.
+	 */
+	public static final long DEFAULT_MIN_STD_DEVIATION_MILLIS = 500L;
+
+	private final Map<String, History> histories = new ConcurrentHashMap<>();
+	private final Clock clock;
+	private final double threshold;
+	private final int maxSamples;
+	private final double minStdDeviation;
+	private final long acceptablePauseMillis;
+	private final long firstIntervalMillis;
+
+	/**
+	 * @param clock                 source of the time
+	 * @param threshold             suspicion level above which a key is considered failed
+	 * @param maxSamples            number of inter-arrival delays kept per key
+	 * @param minStdDeviationMillis lower bound of the standard deviation of the delays
+	 * @param acceptablePauseMillis silence tolerated on top of the mean delay
+	 * @param firstIntervalMillis   expected delay between heartbeats, seeding the estimation of a new key
+	 */
+	public PhiAccrualFailureDetector(@NonNull Clock clock, double threshold, int maxSamples,
+	                                 long minStdDeviationMillis, long acceptablePauseMillis, long firstIntervalMillis) {
+		if (threshold <= 0 || maxSamples <= 0 || minStdDeviationMillis <= 0
+				|| acceptablePauseMillis < 0 || firstIntervalMillis <= 0) {
+			throw new IllegalArgumentException("Invalid failure detector parameters");
+		}
+		this.clock = clock;
+		this.threshold = threshold;
+		this.maxSamples = maxSamples;
+		this.minStdDeviation = minStdDeviationMillis;
+		this.acceptablePauseMillis = acceptablePauseMillis;
+		this.firstIntervalMillis = firstIntervalMillis;
+	}
+
+	/**
+	 * Returns the probability, for a normal distribution, that a value is greater than
+	 * {@code x} standard deviations above the mean. Uses the logistic approximation of the
+	 * cumulative distribution function, accurate within 0.02%.
+	 */
+	static double upperTail(double x) {
+		double e = Math.exp(-x * (1.5976 + 0.070566 * x * x));
+		return x > 0 ? e / (1.0 + e) : 1.0 - 1.0 / (1.0 + e);
+	}
+
+	/**
+	 * Records a heartbeat of the key, starting its monitoring if needed.
+	 */
+	public void heartbeat(@NonNull String key) {
+		long now = clock.nowMillis();
+		histories.computeIfAbsent(key, k -> new History(maxSamples, firstIntervalMillis, now)).add(now);
+	}
+
+	/**
+	 * Returns the current suspicion level of the key, 0 if it isn't monitored.
+	 */
+	public double phi(@NonNull String key) {
+		History history = histories.get(key);
+		if (history == null) {
+			return 0.0;
+		}
+		return history.phi(clock.nowMillis(), minStdDeviation, acceptablePauseMillis);
+	}
+
+	/**
+	 * Returns {@code true} unless the suspicion level of the key exceeds the threshold.
+	 * Keys never heard of are available.
+	 */
+	public boolean isAvailable(@NonNull String key) {
+		return phi(key) < threshold;
+	}
+
+	/**
+	 * Returns {@code true} if the key received at least one heartbeat and wasn't removed since.
+	 */
+	public boolean isMonitored(@NonNull String key) {
+		return histories.containsKey(key);
+	}
+
+	/**
+	 * Returns the monitored keys.
+	 */
+	@NonNull
+	public Set<String> getMonitoredKeys() {
+		return histories.keySet();
+	}
+
+	/**
+	 * Stops monitoring the key: its next heartbeat starts a new estimation.
+	 */
+	public void remove(@NonNull String key) {
+		histories.remove(key);
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Inter-arrival delays of a key, in a ring buffer with running sums.
+	 */
+	private static final class History {
+		private final long[] intervals;
+		private int count;
+		private int next;
+		private double sum;
+		private double squaresSum;
+		private long lastArrival;
+
+		History(int capacity, long firstInterval, long now) {
+			intervals = new long[capacity];
+			// Seed with a spread guess, replaced as the real delays are learned
+			append(firstInterval - firstInterval / 4);
+			append(firstInterval + firstInterval / 4);
+			lastArrival = now;
+		}
+
+		private void append(long interval) {
+			if (count == intervals.length) {
+				long evicted = intervals[next];
+				sum -= evicted;
+				squaresSum -= (double) evicted * evicted;
+			} else {
+				count++;
+			}
+			intervals[next] = interval;
+			next = (next + 1) % intervals.length;
+			sum += interval;
+			squaresSum += (double) interval * interval;
+		}
+
+		synchronized void add(long now) {
+			long interval = now - lastArrival;
+			if (interval > 0) {
+				append(interval);
+			}
+			lastArrival = Math.max(lastArrival, now);
+		}
+
+		synchronized double phi(long now, double minStdDeviation, long acceptablePause) {
+			double mean = sum / count;
+			double variance = Math.max(0.0, squaresSum / count - mean * mean);
+			double stdDeviation = Math.max(minStdDeviation, Math.sqrt(variance));
+			double y = (now - lastArrival - mean - acceptablePause) / stdDeviation;
+			double tail = upperTail(y);
+			// Past ~1e-300 the tail underflows: the key is dead beyond doubt
+			return tail <= Double.MIN_NORMAL ? Double.MAX_VALUE : -Math.log10(tail);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.sedo.satmesh.nearby.link;
+
+import androidx.annotation.NonNull;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free sum of the values added during the last {@code buckets * bucketMillis} milliseconds.
+ * <p>
+ * Each bucket packs, in a single long updated by compare-and-set, the index of the time slice
+ * it counts for and the count itself; a bucket found holding an older slice is restarted.
+ * So neither additions nor reads ever block, and no addition is lost at a slice rollover.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public final class RollingCounter {
+
+	private static final int COUNT_BITS = 40;
+	private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+	private static final long SLICE_MASK = (1L << (Long.SIZE - COUNT_BITS)) - 1;
+
+	private final AtomicLongArray buckets;
+	private final long bucketMillis;
+	private final Clock clock;
+
+	/**
+	 * @param buckets      number of time slices in the window
+	 * @param bucketMillis duration of a time slice
+	 * @param clock        source of the time
+	 */
+	public RollingCounter(int buckets, long bucketMillis, @NonNull Clock clock) {
+		if (buckets <= 0 || bucketMillis <= 0) {
+			throw new IllegalArgumentException("Invalid rolling window");
+		}
+		this.buckets = new AtomicLongArray(buckets);
+		this.bucketMillis = bucketMillis;
+		this.clock = clock;
+	}
+
+	private static long sliceOf(long packed) {
+		return packed >>> COUNT_BITS;
+	}
+
+	private static long countOf(long packed) {
+		return packed & COUNT_MASK;
+	}
+
+	/**
+	 * Adds a non-negative value to the current time slice.
+	 */
+	public void add(long value) {
+		if (value <= 0) {
+			return;
+		}
+		long slice = (clock.nowMillis() / bucketMillis) & SLICE_MASK;
+		int index = (int) (slice % buckets.length());
+		long current;
+		long updated;
+		do {
+			current = buckets.get(index);
+			long count = sliceOf(current) == slice ? countOf(current) : 0L;
+			updated = slice << COUNT_BITS | Math.min(COUNT_MASK, count + value);
+		} while (!buckets.compareAndSet(index, current, updated));
+	}
+
+	/**
+	 * Returns the sum of the values added during the window.
+	 */
+	public long sum() {
+		long slice = (clock.nowMillis() / bucketMillis) & SLICE_MASK;
+		long sum = 0L;
+		for (int i = 0; i < buckets.length(); i++) {
+			long packed = buckets.get(i);
+			long age = (slice - sliceOf(packed)) & SLICE_MASK;
+			if (age < buckets.length()) {
+				sum += countOf(packed);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Duration of the window, in milliseconds.
+	 */
+	public long getWindowMillis() {
+		return bucketMillis * buckets.length();
+	}
+}
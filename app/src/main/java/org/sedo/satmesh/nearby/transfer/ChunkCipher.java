@@ -0,0 +1,78 @@
+package org.sedo.satmesh.nearby.transfer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM encryption of the chunks of a transfer.
+ * <p>
+ * The key is random per transfer and travels in the Signal encrypted offer, so the chunks
+ * are end-to-end protected without a Signal ratchet step per chunk. The nonce is derived
+ * from the offset of the chunk: a chunk sent again after a resume has the same content at
+ * the same offset, hence the same ciphertext. The transfer ID is authenticated with each chunk.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public class ChunkCipher {
+
+	public static final int KEY_SIZE_BYTES = 32;
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int TAG_SIZE_BITS = 128;
+	private static final int NONCE_SIZE_BYTES = 12;
+
+	private final SecretKeySpec key;
+	private final byte[] associatedData;
+
+	public ChunkCipher(@NonNull byte[] key, @NonNull String transferId) {
+		if (key.length != KEY_SIZE_BYTES) {
+			throw new IllegalArgumentException("Invalid chunk key size: " + key.length);
+		}
+		this.key = new SecretKeySpec(key, "AES");
+		this.associatedData = transferId.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates the key of a new transfer.
+	 */
+	@NonNull
+	public static byte[] newKey() {
+		byte[] key = new byte[KEY_SIZE_BYTES];
+		new SecureRandom().nextBytes(key);
+		return key;
+	}
+
+	@NonNull
+	private static GCMParameterSpec nonceOf(long offset) {
+		byte[] nonce = ByteBuffer.allocate(NONCE_SIZE_BYTES).putInt(0).putLong(offset).array();
+		return new GCMParameterSpec(TAG_SIZE_BITS, nonce);
+	}
+
+	@NonNull
+	public byte[] encrypt(long offset, @NonNull byte[] data, int length) throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.ENCRYPT_MODE, key, nonceOf(offset));
+		cipher.updateAAD(associatedData);
+		return cipher.doFinal(data, 0, length);
+	}
+
+	/**
+	 * @throws GeneralSecurityException if the chunk was altered, moved to another offset or
+	 *                                  belongs to another transfer
+	 */
+	@NonNull
+	public byte[] decrypt(long offset, @NonNull byte[] encrypted) throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.DECRYPT_MODE, key, nonceOf(offset));
+		cipher.updateAAD(associatedData);
+		return cipher.doFinal(encrypted);
+	}
+}
@@ -0,0 +1,102 @@
+package org.sedo.satmesh.nearby.transfer;
+
+import androidx.annotation.NonNull;
+
+import org.sedo.satmesh.proto.TransferChunk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+
+/**
+ * Writes the decrypted chunks of an incoming transfer into a partial file.
+ * <p>
+ * Chunks are expected in offset order. The partial file survives interruptions: a new
+ * reassembler on the same file resumes after the last complete chunk, which is the offset
+ * to send back to the sender.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public class ChunkReassembler implements Closeable {
+
+	private final RandomAccessFile file;
+	private final long totalSize;
+	private final ChunkCipher cipher;
+	private long nextOffset;
+	private boolean complete;
+
+	public ChunkReassembler(@NonNull File target, long totalSize, int chunkSize, @NonNull ChunkCipher cipher) throws IOException {
+		if (totalSize < 0 || chunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid transfer size or chunk size");
+		}
+		this.file = new RandomAccessFile(target, "rw");
+		this.totalSize = totalSize;
+		this.cipher = cipher;
+		this.nextOffset = resumeOffset(file.length(), totalSize, chunkSize);
+		file.setLength(nextOffset);
+	}
+
+	/**
+	 * Returns the offset from which a transfer into the given partial file resumes.
+	 */
+	public static long resumeOffset(@NonNull File target, long totalSize, int chunkSize) {
+		return resumeOffset(target.length(), totalSize, chunkSize);
+	}
+
+	private static long resumeOffset(long length, long totalSize, int chunkSize) {
+		// A chunk partially written before an interruption is written again
+		return length > totalSize ? 0L : length - length % chunkSize;
+	}
+
+	/**
+	 * Offset of the next expected chunk.
+	 */
+	public synchronized long getNextOffset() {
+		return nextOffset;
+	}
+
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Decrypts and writes a chunk. Chunks preceding the expected offset, sent again after a
+	 * resume, are ignored.
+	 *
+	 * @return {@code true} once the whole content is written
+	 * @throws IOException              if chunks are missing before this one, or if the content
+	 *                                  doesn't match the announced size
+	 * @throws GeneralSecurityException if the chunk doesn't authenticate
+	 */
+	public synchronized boolean accept(@NonNull TransferChunk chunk) throws IOException, GeneralSecurityException {
+		if (complete || chunk.getOffset() < nextOffset) {
+			return complete;
+		}
+		if (chunk.getOffset() > nextOffset) {
+			throw new IOException("Missing chunks: expected offset " + nextOffset + ", received " + chunk.getOffset());
+		}
+		byte[] data = cipher.decrypt(chunk.getOffset(), chunk.getEncryptedData().toByteArray());
+		if (nextOffset + data.length > totalSize) {
+			throw new IOException("Chunk beyond the announced size " + totalSize);
+		}
+		file.seek(nextOffset);
+		file.write(data);
+		nextOffset += data.length;
+		if (chunk.getLast()) {
+			if (nextOffset != totalSize) {
+				throw new IOException("Last chunk at " + nextOffset + " while " + totalSize + " bytes were announced");
+			}
+			file.getFD().sync();
+			complete = true;
+		}
+		return complete;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,122 @@
+package org.sedo.satmesh.nearby.transfer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.protobuf.ByteString;
+
+import org.sedo.satmesh.proto.ChunkStreamHeader;
+import org.sedo.satmesh.proto.TransferChunk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.function.LongConsumer;
+
+/**
+ * Layout of the STREAM payloads carrying a transfer: a delimited {@link ChunkStreamHeader}
+ * followed by delimited {@link TransferChunk} frames, the last one being flagged.
+ *
+ * @author hsedo777
+ */
+public final class ChunkStreams {
+
+	/**
+	 * Default size of the plain chunks.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+	private ChunkStreams() {
+	}
+
+	/**
+	 * Writes the header then the chunks of the content, from {@code startOffset} to the end.
+	 * Only one chunk is held in memory at a time.
+	 *
+	 * @param progress if not null, receives the offset reached after each chunk
+	 */
+	public static void writeTransfer(
+			@NonNull OutputStream out, @NonNull ChunkStreamHeader header, @NonNull ContentSource source,
+			long startOffset, int chunkSize, @NonNull ChunkCipher cipher, @Nullable LongConsumer progress)
+			throws IOException, GeneralSecurityException {
+		long size = source.size();
+		if (startOffset < 0 || startOffset > size || startOffset % chunkSize != 0 && startOffset != size) {
+			throw new IOException("Invalid resume offset " + startOffset + " for a content of " + size + " bytes");
+		}
+		header.writeDelimitedTo(out);
+		try (InputStream in = source.open(startOffset)) {
+			byte[] buffer = new byte[chunkSize];
+			long offset = startOffset;
+			do {
+				int length = readFully(in, buffer, (int) Math.min(chunkSize, size - offset));
+				TransferChunk.newBuilder()
+						.setOffset(offset)
+						.setEncryptedData(ByteString.copyFrom(cipher.encrypt(offset, buffer, length)))
+						.setLast(offset + length >= size)
+						.build()
+						.writeDelimitedTo(out);
+				offset += length;
+				if (progress != null) {
+					progress.accept(offset);
+				}
+			} while (offset < size);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads the header of a stream.
+	 *
+	 * @throws EOFException if the stream is empty
+	 */
+	@NonNull
+	public static ChunkStreamHeader readHeader(@NonNull InputStream in) throws IOException {
+		ChunkStreamHeader header = ChunkStreamHeader.parseDelimitedFrom(in);
+		if (header == null) {
+			throw new EOFException("Empty chunk stream");
+		}
+		return header;
+	}
+
+	/**
+	 * Reads the next chunk, or returns {@code null} at the end of the stream.
+	 */
+	@Nullable
+	public static TransferChunk readChunk(@NonNull InputStream in) throws IOException {
+		return TransferChunk.parseDelimitedFrom(in);
+	}
+
+	/**
+	 * Forwards a stream whose header was already read: writes the header, then copies the
+	 * frames as they arrive through the given buffer. Memory use is bounded by the buffer,
+	 * whatever the size of the transfer or of its chunks.
+	 *
+	 * @return the number of bytes copied after the header
+	 */
+	public static long relay(@NonNull InputStream in, @NonNull OutputStream out, @NonNull ChunkStreamHeader header,
+	                         @NonNull byte[] buffer) throws IOException {
+		header.writeDelimitedTo(out);
+		long copied = 0L;
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+			copied += read;
+		}
+		out.flush();
+		return copied;
+	}
+
+	private static int readFully(@NonNull InputStream in, @NonNull byte[] buffer, int length) throws IOException {
+		int total = 0;
+		while (total < length) {
+			int read = in.read(buffer, total, length - total);
+			if (read < 0) {
+				throw new EOFException("Content ended after " + total + " of " + length + " bytes");
+			}
+			total += read;
+		}
+		return total;
+	}
+}
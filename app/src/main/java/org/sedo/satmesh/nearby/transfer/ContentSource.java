@@ -0,0 +1,64 @@
+package org.sedo.satmesh.nearby.transfer;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content of an outgoing transfer, readable from any offset so that a transfer can resume.
+ *
+ * @author hsedo777
+ */
+public interface ContentSource {
+
+	/**
+	 * Wraps an in-memory content.
+	 */
+	@NonNull
+	static ContentSource of(@NonNull byte[] content) {
+		return new ContentSource() {
+			@Override
+			public long size() {
+				return content.length;
+			}
+
+			@NonNull
+			@Override
+			public InputStream open(long offset) {
+				return new ByteArrayInputStream(content, (int) offset, (int) (content.length - offset));
+			}
+		};
+	}
+
+	/**
+	 * Skips exactly {@code count} bytes of the stream.
+	 *
+	 * @throws IOException if the stream ends before
+	 */
+	static void skipFully(@NonNull InputStream in, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new IOException("Content shorter than the requested offset " + count);
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+
+	/**
+	 * Size of the content in bytes.
+	 */
+	long size() throws IOException;
+
+	/**
+	 * Opens the content, positioned at the given offset.
+	 */
+	@NonNull
+	InputStream open(long offset) throws IOException;
+}
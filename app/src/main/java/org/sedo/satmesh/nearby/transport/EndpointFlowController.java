@@ -0,0 +1,380 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credit-based flow control of the outgoing payloads, per endpoint.
+ * <p>
+ * At most {@code window} payloads may be in flight toward an endpoint: a credit is taken
+ * when the payload is handed over to the transport and given back when the transport
+ * reports the end of its transfer ({@link PayloadTransferUpdate.Status#SUCCESS},
+ * {@code FAILURE} or {@code CANCELED}), or when no report arrives before the in-flight timeout.
+ * Payloads exceeding the window wait in a bounded queue; once the queue is full, new
+ * payloads are rejected with a {@link BackpressureException}.
+ * </p>
+ * The {@link TransmissionCallback} of a payload is notified with the outcome of the transfer,
+ * not with the mere acceptance of the payload by the transport. The endpoint is reported as
+ * congested when its queue reaches the high watermark, and relieved once it is drained
+ * below the low watermark.
+ *
+ * @author hsedo777
+ */
+public class EndpointFlowController {
+
+	public static final int DEFAULT_WINDOW = 4;
+	public static final int DEFAULT_MAX_QUEUED = 64;
+	public static final long DEFAULT_IN_FLIGHT_TIMEOUT_MILLIS = 30_000L;
+
+	private final Map<String, EndpointFlow> flows = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final PayloadDispatcher dispatcher;
+	private final int window;
+	private final int maxQueued;
+	private final int highWatermark;
+	private final int lowWatermark;
+	private final long inFlightTimeoutMillis;
+	@Nullable
+	private volatile CongestionListener congestionListener;
+
+	/**
+	 * @param scheduler             executor running the in-flight timeouts
+	 * @param dispatcher            hands the payloads over to the transport
+	 * @param window                maximum number of payloads in flight per endpoint
+	 * @param maxQueued             maximum number of payloads waiting for a credit per endpoint
+	 * @param inFlightTimeoutMillis delay after which a payload without transfer report is considered failed
+	 */
+	public EndpointFlowController(@NonNull ScheduledExecutorService scheduler, @NonNull PayloadDispatcher dispatcher,
+	                              int window, int maxQueued, long inFlightTimeoutMillis) {
+		if (window <= 0 || maxQueued < 0 || inFlightTimeoutMillis <= 0) {
+			throw new IllegalArgumentException("Invalid flow control parameters");
+		}
+		this.scheduler = scheduler;
+		this.dispatcher = dispatcher;
+		this.window = window;
+		this.maxQueued = maxQueued;
+		this.highWatermark = Math.max(1, maxQueued * 3 / 4);
+		this.lowWatermark = maxQueued / 4;
+		this.inFlightTimeoutMillis = inFlightTimeoutMillis;
+	}
+
+	public void setCongestionListener(@Nullable CongestionListener congestionListener) {
+		this.congestionListener = congestionListener;
+	}
+
+	/**
+	 * Sends the payload as soon as a credit is available for the endpoint.
+	 *
+	 * @param endpointId the destination endpoint
+	 * @param payload    the payload to send
+	 * @param callback   notified with the outcome of the transfer
+	 */
+	public void submit(@NonNull String endpointId, @NonNull Payload payload, @NonNull TransmissionCallback callback) {
+		EndpointFlow flow = flows.computeIfAbsent(endpointId, ignored -> new EndpointFlow());
+		Outgoing outgoing = new Outgoing(payload, callback);
+		boolean dispatch = false;
+		boolean rejected = false;
+		Boolean congestion;
+		synchronized (flow) {
+			if (flow.inFlight.size() < window && flow.queue.isEmpty()) {
+				flow.inFlight.put(payload.getId(), outgoing);
+				dispatch = true;
+			} else if (flow.queue.size() < maxQueued) {
+				flow.queue.addLast(outgoing);
+			} else {
+				rejected = true;
+				flow.rejected++;
+			}
+			congestion = flow.updateCongestionLocked();
+		}
+		notifyCongestion(endpointId, congestion);
+		if (rejected) {
+			callback.onFailure(payload, new BackpressureException(endpointId));
+		} else if (dispatch) {
+			dispatch(endpointId, outgoing);
+		}
+	}
+
+	/**
+	 * Feeds the controller with a transfer update reported by the transport. Updates of
+	 * incoming payloads or of payloads unknown to the controller are ignored.
+	 */
+	public void onPayloadTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update) {
+		int status = update.getStatus();
+		if (status == PayloadTransferUpdate.Status.IN_PROGRESS) {
+			return;
+		}
+		Outgoing outgoing = release(endpointId, update.getPayloadId());
+		if (outgoing == null) {
+			return;
+		}
+		if (status == PayloadTransferUpdate.Status.SUCCESS) {
+			outgoing.callback.onSuccess(outgoing.payload);
+		} else {
+			outgoing.callback.onFailure(outgoing.payload, new IOException("Transfer of payload " +
+					update.getPayloadId() + " to " + endpointId + " ended with status " + status));
+		}
+		drain(endpointId);
+	}
+
+	/**
+	 * Forgets the endpoint, typically on disconnection: in-flight and queued payloads are
+	 * reported as failed.
+	 */
+	public void discard(@NonNull String endpointId) {
+		EndpointFlow flow = flows.remove(endpointId);
+		if (flow == null) {
+			return;
+		}
+		List<Outgoing> dropped = new ArrayList<>();
+		boolean wasCongested;
+		synchronized (flow) {
+			for (Outgoing outgoing : flow.inFlight.values()) {
+				outgoing.cancelTimeout();
+				dropped.add(outgoing);
+			}
+			dropped.addAll(flow.queue);
+			flow.inFlight.clear();
+			flow.queue.clear();
+			wasCongested = flow.congested;
+			flow.congested = false;
+		}
+		if (wasCongested) {
+			notifyCongestion(endpointId, false);
+		}
+		IOException cause = new IOException("Endpoint " + endpointId + " discarded");
+		for (Outgoing outgoing : dropped) {
+			outgoing.callback.onFailure(outgoing.payload, cause);
+		}
+	}
+
+	/**
+	 * Discards all the endpoints.
+	 */
+	public void discardAll() {
+		for (String endpointId : new ArrayList<>(flows.keySet())) {
+			discard(endpointId);
+		}
+	}
+
+	/**
+	 * Returns the number of payloads in flight toward the endpoint.
+	 */
+	public int getInFlightCount(@NonNull String endpointId) {
+		EndpointFlow flow = flows.get(endpointId);
+		if (flow == null) {
+			return 0;
+		}
+		synchronized (flow) {
+			return flow.inFlight.size();
+		}
+	}
+
+	/**
+	 * Returns the number of payloads waiting for a credit toward the endpoint.
+	 */
+	public int getQueueDepth(@NonNull String endpointId) {
+		EndpointFlow flow = flows.get(endpointId);
+		if (flow == null) {
+			return 0;
+		}
+		synchronized (flow) {
+			return flow.queue.size();
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the endpoint is congested: senders should hold off non urgent traffic.
+	 */
+	public boolean isCongested(@NonNull String endpointId) {
+		EndpointFlow flow = flows.get(endpointId);
+		if (flow == null) {
+			return false;
+		}
+		synchronized (flow) {
+			return flow.congested;
+		}
+	}
+
+	/**
+	 * Returns the statistics of every known endpoint.
+	 */
+	@NonNull
+	public Map<String, FlowStats> getStats() {
+		Map<String, FlowStats> stats = new HashMap<>();
+		for (Map.Entry<String, EndpointFlow> entry : flows.entrySet()) {
+			EndpointFlow flow = entry.getValue();
+			synchronized (flow) {
+				stats.put(entry.getKey(), new FlowStats(flow.inFlight.size(), flow.queue.size(), flow.congested, flow.rejected));
+			}
+		}
+		return Collections.unmodifiableMap(stats);
+	}
+
+	private void dispatch(@NonNull String endpointId, @NonNull Outgoing outgoing) {
+		long payloadId = outgoing.payload.getId();
+		outgoing.timeout = scheduler.schedule(() -> {
+			Outgoing expired = release(endpointId, payloadId);
+			if (expired != null) {
+				expired.callback.onFailure(expired.payload, new IOException("No transfer report for payload " + payloadId));
+				drain(endpointId);
+			}
+		}, inFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+		dispatcher.dispatch(endpointId, outgoing.payload, new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+				// Accepted by the transport, the transfer update will give back the credit
+			}
+
+			@Override
+			public void onFailure(@NonNull Exception e) {
+				Outgoing rejected = release(endpointId, payloadId);
+				if (rejected != null) {
+					rejected.callback.onFailure(rejected.payload, e);
+					drain(endpointId);
+				}
+			}
+		});
+	}
+
+	@Nullable
+	private Outgoing release(@NonNull String endpointId, long payloadId) {
+		EndpointFlow flow = flows.get(endpointId);
+		if (flow == null) {
+			return null;
+		}
+		Outgoing outgoing;
+		synchronized (flow) {
+			outgoing = flow.inFlight.remove(payloadId);
+		}
+		if (outgoing != null) {
+			outgoing.cancelTimeout();
+		}
+		return outgoing;
+	}
+
+	/*
+	 * Moves queued payloads to the in-flight set while credits are available.
+	 */
+	private void drain(@NonNull String endpointId) {
+		EndpointFlow flow = flows.get(endpointId);
+		if (flow == null) {
+			return;
+		}
+		List<Outgoing> ready = new ArrayList<>();
+		Boolean congestion;
+		synchronized (flow) {
+			while (flow.inFlight.size() < window && !flow.queue.isEmpty()) {
+				Outgoing next = flow.queue.pollFirst();
+				flow.inFlight.put(next.payload.getId(), next);
+				ready.add(next);
+			}
+			congestion = flow.updateCongestionLocked();
+		}
+		notifyCongestion(endpointId, congestion);
+		for (Outgoing outgoing : ready) {
+			dispatch(endpointId, outgoing);
+		}
+	}
+
+	private void notifyCongestion(@NonNull String endpointId, @Nullable Boolean congested) {
+		CongestionListener listener = congestionListener;
+		if (congested != null && listener != null) {
+			listener.onCongestionChanged(endpointId, congested);
+		}
+	}
+
+	/**
+	 * Hands a payload over to the transport.
+	 */
+	public interface PayloadDispatcher {
+		void dispatch(@NonNull String endpointId, @NonNull Payload payload, @NonNull MeshTransport.OperationCallback callback);
+	}
+
+	/**
+	 * Notified when an endpoint enters or leaves the congested state.
+	 */
+	public interface CongestionListener {
+		void onCongestionChanged(@NonNull String endpointId, boolean congested);
+	}
+
+	/**
+	 * Snapshot of the flow control state of an endpoint.
+	 *
+	 * @param inFlight   payloads handed over to the transport and not yet completed
+	 * @param queued     payloads waiting for a credit
+	 * @param congested  whether the endpoint is currently congested
+	 * @param rejected   number of payloads rejected since the endpoint is known
+	 */
+	public record FlowStats(int inFlight, int queued, boolean congested, long rejected) {
+	}
+
+	/**
+	 * Raised when a payload is rejected because the queue of its endpoint is full.
+	 */
+	public static class BackpressureException extends IOException {
+		public BackpressureException(@NonNull String endpointId) {
+			super("Outgoing queue of endpoint " + endpointId + " is full");
+		}
+	}
+
+	private static final class Outgoing {
+		private final Payload payload;
+		private final TransmissionCallback callback;
+		private volatile ScheduledFuture<?> timeout;
+
+		private Outgoing(@NonNull Payload payload, @NonNull TransmissionCallback callback) {
+			this.payload = payload;
+			this.callback = callback;
+		}
+
+		private void cancelTimeout() {
+			ScheduledFuture<?> future = timeout;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	private final class EndpointFlow {
+		private final Map<Long, Outgoing> inFlight = new LinkedHashMap<>();
+		private final Deque<Outgoing> queue = new ArrayDeque<>();
+		private boolean congested;
+		private long rejected;
+
+		/*
+		 * Returns the new congestion state if it changed, null otherwise.
+		 */
+		@Nullable
+		private Boolean updateCongestionLocked() {
+			if (!congested && queue.size() >= highWatermark) {
+				congested = true;
+				return true;
+			}
+			if (congested && queue.size() <= lowWatermark) {
+				congested = false;
+				return false;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Executor striping the outgoing work by key, typically the address name of the recipient.
+ * <p>
+ * Each key is bound to one of a fixed number of lanes. A lane is a {@link PriorityTaskScheduler}:
+ * its tasks run one at a time, by traffic class, and in submission order within a class.
+ * So the work of a key is serialized, which the Signal ratchet of the session requires,
+ * while keys bound to distinct lanes proceed concurrently on the shared pool.
+ * </p>
+ * The pool should have as many threads as lanes: each lane runs at most one drain loop at a time.
+ *
+ * @author hsedo777
+ */
+public class KeyedLaneExecutor {
+
+	/**
+	 * Default number of lanes: enough for a relay with a handful of neighbors, bounded by the cores.
+	 */
+	public static final int DEFAULT_LANE_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private final ExecutorService pool;
+	private final PriorityTaskScheduler[] lanes;
+
+	/**
+	 * @param pool          threads running the lanes, shut down with this executor
+	 * @param laneCount     number of lanes
+	 * @param clock         time source of the lane schedulers
+	 * @param maxWaitMillis longest wait of a task in a lane before it bypasses the class weights
+	 */
+	public KeyedLaneExecutor(@NonNull ExecutorService pool, int laneCount, @NonNull Clock clock, long maxWaitMillis) {
+		if (laneCount <= 0) {
+			throw new IllegalArgumentException("Invalid lane count");
+		}
+		this.pool = pool;
+		this.lanes = new PriorityTaskScheduler[laneCount];
+		for (int i = 0; i < laneCount; i++) {
+			lanes[i] = new PriorityTaskScheduler(pool, clock, maxWaitMillis);
+		}
+	}
+
+	/**
+	 * Sets the listener notified of the failures of the tasks of all lanes.
+	 */
+	public void setFailureListener(@Nullable PriorityTaskScheduler.FailureListener failureListener) {
+		for (PriorityTaskScheduler lane : lanes) {
+			lane.setFailureListener(failureListener);
+		}
+	}
+
+	/**
+	 * Submits a task on the lane of the key.
+	 */
+	public void execute(@NonNull String key, @NonNull TrafficClass trafficClass, @NonNull Runnable task) {
+		lanes[laneOf(key)].execute(trafficClass, task);
+	}
+
+	/**
+	 * Returns the index of the lane the key is bound to.
+	 */
+	public int laneOf(@NonNull String key) {
+		int hash = key.hashCode();
+		// Spread the high bits, address names often differ only by their last characters
+		return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Returns the number of tasks of the class waiting in all lanes.
+	 */
+	public int getPendingCount(@NonNull TrafficClass trafficClass) {
+		int count = 0;
+		for (PriorityTaskScheduler lane : lanes) {
+			count += lane.getPendingCount(trafficClass);
+		}
+		return count;
+	}
+
+	/**
+	 * Drops the pending tasks and stops the pool.
+	 */
+	public void shutdown() {
+		for (PriorityTaskScheduler lane : lanes) {
+			lane.shutdown();
+		}
+		pool.shutdownNow();
+	}
+}
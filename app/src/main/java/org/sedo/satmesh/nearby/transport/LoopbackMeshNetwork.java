@@ -0,0 +1,572 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.nearby.connection.ConnectionsStatusCodes;
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory mesh of virtual nodes, each one exposed as a {@link MeshTransport}.
+ * <p>
+ * Nodes are wired by undirected links following a configurable topology (line, grid,
+ * random geometric graph or manual {@link #link(int, int, LinkProfile)} calls). Each link
+ * applies a {@link LinkProfile}: propagation latency, loss rate and bandwidth. Bandwidth is
+ * modeled per direction, payloads queue behind each other on a busy link.
+ * </p>
+ * <p>
+ * The handshake mirrors Nearby Connections: both sides receive
+ * {@link MeshTransport.Listener#onConnectionInitiated(String, String)} and the connection is
+ * established once both accepted it. A lost payload is reported to its sender through a
+ * {@link PayloadTransferUpdate.Status#FAILURE} transfer update, as Nearby does for a broken transfer.
+ * All the events are dispatched asynchronously on the network dispatcher.
+ * </p>
+ *
+ * @author hsedo777
+ */
+public class LoopbackMeshNetwork {
+
+	private final Object lock = new Object();
+	private final ScheduledExecutorService dispatcher;
+	private final Random random;
+	private final List<VirtualNode> nodes;
+	private final Map<Long, Link> links = new HashMap<>();
+	private final Map<Long, Handshake> handshakes = new HashMap<>();
+	private final AtomicLong sentPayloads = new AtomicLong();
+	private final AtomicLong deliveredPayloads = new AtomicLong();
+	private final AtomicLong droppedPayloads = new AtomicLong();
+	private final AtomicLong deliveredBytes = new AtomicLong();
+
+	/**
+	 * Creates a network of unlinked nodes.
+	 *
+	 * @param size the number of nodes
+	 * @param seed seed of the random generator used for losses
+	 */
+	public LoopbackMeshNetwork(int size, long seed) {
+		this(size, seed, Executors.newSingleThreadScheduledExecutor());
+	}
+
+	/**
+	 * Creates a network of unlinked nodes, dispatching events on the given executor.
+	 *
+	 * @param size       the number of nodes
+	 * @param seed       seed of the random generator used for losses
+	 * @param dispatcher the executor on which all the transport events are delivered
+	 */
+	public LoopbackMeshNetwork(int size, long seed, @NonNull ScheduledExecutorService dispatcher) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The network must contain at least one node.");
+		}
+		this.dispatcher = dispatcher;
+		this.random = new Random(seed);
+		List<VirtualNode> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(new VirtualNode(i));
+		}
+		this.nodes = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Builds a chain {@code 0 - 1 - ... - (size-1)}.
+	 */
+	public static LoopbackMeshNetwork line(int size, @NonNull LinkProfile profile, long seed) {
+		LoopbackMeshNetwork network = new LoopbackMeshNetwork(size, seed);
+		for (int i = 0; i + 1 < size; i++) {
+			network.link(i, i + 1, profile);
+		}
+		return network;
+	}
+
+	/**
+	 * Builds a {@code rows x columns} grid, node {@code r * columns + c} being linked to its
+	 * horizontal and vertical neighbors.
+	 */
+	public static LoopbackMeshNetwork grid(int rows, int columns, @NonNull LinkProfile profile, long seed) {
+		LoopbackMeshNetwork network = new LoopbackMeshNetwork(rows * columns, seed);
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				int index = r * columns + c;
+				if (c + 1 < columns) {
+					network.link(index, index + 1, profile);
+				}
+				if (r + 1 < rows) {
+					network.link(index, index + columns, profile);
+				}
+			}
+		}
+		return network;
+	}
+
+	/**
+	 * Builds a random geometric graph: nodes are placed uniformly in the unit square and
+	 * two nodes are linked if their distance is at most {@code radius}. The resulting graph
+	 * isn't guaranteed to be connected.
+	 */
+	public static LoopbackMeshNetwork randomGeometric(int size, double radius, @NonNull LinkProfile profile, long seed) {
+		LoopbackMeshNetwork network = new LoopbackMeshNetwork(size, seed);
+		Random placement = new Random(seed);
+		double[] xs = new double[size];
+		double[] ys = new double[size];
+		for (int i = 0; i < size; i++) {
+			xs[i] = placement.nextDouble();
+			ys[i] = placement.nextDouble();
+		}
+		double squaredRadius = radius * radius;
+		for (int i = 0; i < size; i++) {
+			for (int j = i + 1; j < size; j++) {
+				double dx = xs[i] - xs[j];
+				double dy = ys[i] - ys[j];
+				if (dx * dx + dy * dy <= squaredRadius) {
+					network.link(i, j, profile);
+				}
+			}
+		}
+		return network;
+	}
+
+	private static long linkKey(int a, int b) {
+		int low = Math.min(a, b);
+		int high = Math.max(a, b);
+		return ((long) low << 32) | high;
+	}
+
+	private static PayloadTransferUpdate transferUpdate(long payloadId, int status, long size) {
+		return new PayloadTransferUpdate.Builder()
+				.setPayloadId(payloadId)
+				.setStatus(status)
+				.setTotalBytes(size)
+				.setBytesTransferred(status == PayloadTransferUpdate.Status.SUCCESS ? size : 0)
+				.build();
+	}
+
+	private static ApiException apiException(int statusCode) {
+		return new ApiException(new Status(statusCode));
+	}
+
+	/**
+	 * Links two nodes, or replaces the profile of an existing link.
+	 */
+	public void link(int a, int b, @NonNull LinkProfile profile) {
+		if (a == b) {
+			throw new IllegalArgumentException("A node can't be linked to itself.");
+		}
+		VirtualNode first = node(a);
+		VirtualNode second = node(b);
+		synchronized (lock) {
+			Link previous = links.put(linkKey(a, b), new Link(profile));
+			if (previous == null) {
+				announceIfVisible(first, second);
+				announceIfVisible(second, first);
+			}
+		}
+	}
+
+	/**
+	 * Breaks the link between two nodes, as if they moved out of range: an established
+	 * connection is reported as disconnected on both sides and pending handshakes fail.
+	 */
+	public void unlink(int a, int b) {
+		VirtualNode first = node(a);
+		VirtualNode second = node(b);
+		synchronized (lock) {
+			if (links.remove(linkKey(a, b)) == null) {
+				return;
+			}
+			if (first.connected.remove(b) | second.connected.remove(a)) {
+				post(first, l -> l.onDisconnected(second.endpointId));
+				post(second, l -> l.onDisconnected(first.endpointId));
+			}
+			if (handshakes.remove(linkKey(a, b)) != null) {
+				Status status = new Status(ConnectionsStatusCodes.STATUS_ENDPOINT_IO_ERROR);
+				post(first, l -> l.onConnectionResult(second.endpointId, status));
+				post(second, l -> l.onConnectionResult(first.endpointId, status));
+			}
+			if (first.discovering && second.advertisedName != null) {
+				post(first, l -> l.onEndpointLost(second.endpointId));
+			}
+			if (second.discovering && first.advertisedName != null) {
+				post(second, l -> l.onEndpointLost(first.endpointId));
+			}
+		}
+	}
+
+	public boolean areLinked(int a, int b) {
+		synchronized (lock) {
+			return links.containsKey(linkKey(a, b));
+		}
+	}
+
+	/**
+	 * Returns the indices of the nodes linked to the given one, in ascending order.
+	 */
+	@NonNull
+	public List<Integer> neighborsOf(int index) {
+		node(index);
+		List<Integer> neighbors = new ArrayList<>();
+		synchronized (lock) {
+			for (int i = 0; i < nodes.size(); i++) {
+				if (i != index && links.containsKey(linkKey(index, i))) {
+					neighbors.add(i);
+				}
+			}
+		}
+		return neighbors;
+	}
+
+	public int linkCount() {
+		synchronized (lock) {
+			return links.size();
+		}
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the transport of the node at the given index.
+	 */
+	@NonNull
+	public MeshTransport transport(int index) {
+		return node(index);
+	}
+
+	/**
+	 * Returns the endpoint ID under which the node at the given index is seen by its neighbors.
+	 */
+	@NonNull
+	public String endpointIdOf(int index) {
+		return node(index).endpointId;
+	}
+
+	/**
+	 * Number of payloads accepted for transmission.
+	 */
+	public long getSentPayloads() {
+		return sentPayloads.get();
+	}
+
+	/**
+	 * Number of payloads delivered to their receiver.
+	 */
+	public long getDeliveredPayloads() {
+		return deliveredPayloads.get();
+	}
+
+	/**
+	 * Number of payloads lost, either by the link loss rate or because the connection broke in flight.
+	 */
+	public long getDroppedPayloads() {
+		return droppedPayloads.get();
+	}
+
+	public long getDeliveredBytes() {
+		return deliveredBytes.get();
+	}
+
+	/**
+	 * Stops the dispatcher. Pending events are discarded.
+	 */
+	public void shutdown() {
+		dispatcher.shutdownNow();
+	}
+
+	@NonNull
+	private VirtualNode node(int index) {
+		if (index < 0 || index >= nodes.size()) {
+			throw new IndexOutOfBoundsException("No node at index " + index);
+		}
+		return nodes.get(index);
+	}
+
+	@Nullable
+	private VirtualNode resolve(@NonNull String endpointId) {
+		for (VirtualNode node : nodes) {
+			if (node.endpointId.equals(endpointId)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Must be called while holding the lock.
+	 */
+	private void announceIfVisible(@NonNull VirtualNode discoverer, @NonNull VirtualNode advertiser) {
+		String name = advertiser.advertisedName;
+		if (discoverer.discovering && name != null) {
+			post(discoverer, l -> l.onEndpointFound(advertiser.endpointId, name));
+		}
+	}
+
+	private void post(@NonNull VirtualNode target, @NonNull Consumer<MeshTransport.Listener> event) {
+		dispatcher.execute(() -> {
+			MeshTransport.Listener listener = target.listener;
+			if (listener != null) {
+				event.accept(listener);
+			}
+		});
+	}
+
+	private void deliver(@NonNull VirtualNode sender, @NonNull VirtualNode receiver, @NonNull Payload payload, long size, boolean lost) {
+		boolean connected;
+		synchronized (lock) {
+			connected = sender.connected.contains(receiver.index) && receiver.connected.contains(sender.index);
+		}
+		MeshTransport.Listener senderListener = sender.listener;
+		if (!connected || lost) {
+			droppedPayloads.incrementAndGet();
+			if (senderListener != null) {
+				senderListener.onPayloadTransferUpdate(receiver.endpointId,
+						transferUpdate(payload.getId(), PayloadTransferUpdate.Status.FAILURE, size));
+			}
+			return;
+		}
+		deliveredPayloads.incrementAndGet();
+		deliveredBytes.addAndGet(size);
+		MeshTransport.Listener receiverListener = receiver.listener;
+		if (receiverListener != null) {
+			receiverListener.onPayloadReceived(sender.endpointId, payload);
+			receiverListener.onPayloadTransferUpdate(sender.endpointId,
+					transferUpdate(payload.getId(), PayloadTransferUpdate.Status.SUCCESS, size));
+		}
+		if (senderListener != null) {
+			senderListener.onPayloadTransferUpdate(receiver.endpointId,
+					transferUpdate(payload.getId(), PayloadTransferUpdate.Status.SUCCESS, size));
+		}
+	}
+
+	/**
+	 * Characteristics of a link.
+	 *
+	 * @param latencyMillis  one way propagation delay, in milliseconds
+	 * @param lossRate       probability, in [0, 1], that a payload is lost
+	 * @param bytesPerSecond link bandwidth in each direction; zero or negative means unlimited
+	 */
+	public record LinkProfile(long latencyMillis, double lossRate, long bytesPerSecond) {
+		/**
+		 * Instantaneous, lossless and unlimited link.
+		 */
+		public static final LinkProfile IDEAL = new LinkProfile(0L, 0d, 0L);
+
+		public LinkProfile {
+			if (latencyMillis < 0) {
+				throw new IllegalArgumentException("Negative latency: " + latencyMillis);
+			}
+			if (lossRate < 0d || lossRate > 1d) {
+				throw new IllegalArgumentException("Loss rate out of [0, 1]: " + lossRate);
+			}
+		}
+
+		long transmissionNanos(long size) {
+			return bytesPerSecond <= 0 ? 0L : size * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+		}
+	}
+
+	private static final class Link {
+		private final LinkProfile profile;
+		// Time, from System#nanoTime, at which the link will be free in each direction
+		private long busyUntilAscending;
+		private long busyUntilDescending;
+
+		private Link(@NonNull LinkProfile profile) {
+			this.profile = profile;
+		}
+	}
+
+	private static final class Handshake {
+		private boolean lowAccepted;
+		private boolean highAccepted;
+	}
+
+	private final class VirtualNode implements MeshTransport {
+		private final int index;
+		private final String endpointId;
+		// Guarded by the network lock
+		private final Set<Integer> connected = new HashSet<>();
+		private volatile Listener listener;
+		private volatile String advertisedName;
+		private volatile boolean discovering;
+
+		private VirtualNode(int index) {
+			this.index = index;
+			this.endpointId = String.format(Locale.US, "LB%04d", index);
+		}
+
+		@Override
+		public void setListener(@NonNull Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void startAdvertising(@NonNull String localName, @NonNull OperationCallback callback) {
+			synchronized (lock) {
+				advertisedName = localName;
+				for (VirtualNode other : nodes) {
+					if (other != this && links.containsKey(linkKey(index, other.index))) {
+						announceIfVisible(other, this);
+					}
+				}
+			}
+			dispatcher.execute(callback::onSuccess);
+		}
+
+		@Override
+		public void stopAdvertising() {
+			synchronized (lock) {
+				if (advertisedName == null) {
+					return;
+				}
+				advertisedName = null;
+				for (VirtualNode other : nodes) {
+					if (other != this && other.discovering && links.containsKey(linkKey(index, other.index))) {
+						post(other, l -> l.onEndpointLost(endpointId));
+					}
+				}
+			}
+		}
+
+		@Override
+		public void startDiscovery(@NonNull OperationCallback callback) {
+			synchronized (lock) {
+				discovering = true;
+				for (VirtualNode other : nodes) {
+					if (other != this && links.containsKey(linkKey(index, other.index))) {
+						announceIfVisible(this, other);
+					}
+				}
+			}
+			dispatcher.execute(callback::onSuccess);
+		}
+
+		@Override
+		public void stopDiscovery() {
+			discovering = false;
+		}
+
+		@Override
+		public void requestConnection(@NonNull String localName, @NonNull String endpointId) {
+			VirtualNode peer = resolve(endpointId);
+			synchronized (lock) {
+				String peerName = peer == null ? null : peer.advertisedName;
+				if (peer == null || peerName == null || !links.containsKey(linkKey(index, peer.index))) {
+					Status status = new Status(ConnectionsStatusCodes.STATUS_ENDPOINT_UNKNOWN);
+					post(this, l -> l.onConnectionResult(endpointId, status));
+					return;
+				}
+				long key = linkKey(index, peer.index);
+				if (connected.contains(peer.index) || handshakes.containsKey(key)) {
+					return;
+				}
+				handshakes.put(key, new Handshake());
+				post(this, l -> l.onConnectionInitiated(peer.endpointId, peerName));
+				post(peer, l -> l.onConnectionInitiated(this.endpointId, localName));
+			}
+		}
+
+		@Override
+		public void acceptConnection(@NonNull String endpointId) {
+			VirtualNode peer = resolve(endpointId);
+			if (peer == null) {
+				return;
+			}
+			synchronized (lock) {
+				long key = linkKey(index, peer.index);
+				Handshake handshake = handshakes.get(key);
+				if (handshake == null) {
+					return;
+				}
+				if (index < peer.index) {
+					handshake.lowAccepted = true;
+				} else {
+					handshake.highAccepted = true;
+				}
+				if (handshake.lowAccepted && handshake.highAccepted) {
+					handshakes.remove(key);
+					connected.add(peer.index);
+					peer.connected.add(index);
+					post(this, l -> l.onConnectionResult(peer.endpointId, Status.RESULT_SUCCESS));
+					post(peer, l -> l.onConnectionResult(this.endpointId, Status.RESULT_SUCCESS));
+				}
+			}
+		}
+
+		@Override
+		public void rejectConnection(@NonNull String endpointId) {
+			VirtualNode peer = resolve(endpointId);
+			if (peer == null) {
+				return;
+			}
+			synchronized (lock) {
+				if (handshakes.remove(linkKey(index, peer.index)) != null) {
+					Status status = new Status(ConnectionsStatusCodes.STATUS_CONNECTION_REJECTED);
+					post(this, l -> l.onConnectionResult(peer.endpointId, status));
+					post(peer, l -> l.onConnectionResult(this.endpointId, status));
+				}
+			}
+		}
+
+		@Override
+		public void disconnectFromEndpoint(@NonNull String endpointId) {
+			VirtualNode peer = resolve(endpointId);
+			if (peer == null) {
+				return;
+			}
+			synchronized (lock) {
+				// As with Nearby, only the remote side is notified
+				if (connected.remove(peer.index) | peer.connected.remove(index)) {
+					post(peer, l -> l.onDisconnected(this.endpointId));
+				}
+			}
+		}
+
+		@Override
+		public void sendPayload(@NonNull String endpointId, @NonNull Payload payload, @NonNull OperationCallback callback) {
+			VirtualNode peer = resolve(endpointId);
+			long size = payload.getType() == Payload.Type.BYTES && payload.asBytes() != null ? payload.asBytes().length : 0L;
+			long delayNanos;
+			boolean lost;
+			synchronized (lock) {
+				Link link = peer == null ? null : links.get(linkKey(index, peer.index));
+				if (link == null || !connected.contains(peer.index)) {
+					ApiException exception = apiException(ConnectionsStatusCodes.STATUS_ENDPOINT_UNKNOWN);
+					dispatcher.execute(() -> callback.onFailure(exception));
+					return;
+				}
+				long now = System.nanoTime();
+				boolean ascending = index < peer.index;
+				long start = Math.max(now, ascending ? link.busyUntilAscending : link.busyUntilDescending);
+				long end = start + link.profile.transmissionNanos(size);
+				if (ascending) {
+					link.busyUntilAscending = end;
+				} else {
+					link.busyUntilDescending = end;
+				}
+				delayNanos = end - now + TimeUnit.MILLISECONDS.toNanos(link.profile.latencyMillis);
+				lost = link.profile.lossRate > 0d && random.nextDouble() < link.profile.lossRate;
+			}
+			sentPayloads.incrementAndGet();
+			dispatcher.execute(callback::onSuccess);
+			dispatcher.schedule(() -> deliver(this, peer, payload, size, lost), delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+/**
+ * Abstraction of the link layer used by {@link org.sedo.satmesh.nearby.NearbyManager}.
+ * <p>
+ * It exposes the subset of the Nearby Connections API the application relies on:
+ * advertising, discovery, connection handshake, payload transmission and the
+ * associated lifecycle/payload callbacks. The production implementation is
+ * {@link NearbyConnectionsTransport}; {@link LoopbackMeshNetwork} provides an
+ * in-memory implementation used to run many virtual nodes inside one JVM.
+ * </p>
+ * All the callbacks of the {@link Listener} may be invoked from any thread.
+ *
+ * @author hsedo777
+ */
+public interface MeshTransport {
+
+	/**
+	 * Sets the listener receiving every connection, discovery and payload event
+	 * of this transport. Must be called before any other method.
+	 *
+	 * @param listener the listener to notify
+	 */
+	void setListener(@NonNull Listener listener);
+
+	/**
+	 * Starts advertising the local node under the given name.
+	 *
+	 * @param localName the name advertised to remote nodes
+	 * @param callback  notified with the outcome of the operation
+	 */
+	void startAdvertising(@NonNull String localName, @NonNull OperationCallback callback);
+
+	/**
+	 * Stops advertising.
+	 */
+	void stopAdvertising();
+
+	/**
+	 * Starts discovering advertising nodes.
+	 *
+	 * @param callback notified with the outcome of the operation
+	 */
+	void startDiscovery(@NonNull OperationCallback callback);
+
+	/**
+	 * Stops discovery.
+	 */
+	void stopDiscovery();
+
+	/**
+	 * Requests a connection to a discovered endpoint.
+	 *
+	 * @param localName  the name of the local node, presented to the remote node
+	 * @param endpointId the ID of the remote endpoint
+	 */
+	void requestConnection(@NonNull String localName, @NonNull String endpointId);
+
+	/**
+	 * Accepts a connection previously announced through {@link Listener#onConnectionInitiated(String, String)}.
+	 *
+	 * @param endpointId the ID of the remote endpoint
+	 */
+	void acceptConnection(@NonNull String endpointId);
+
+	/**
+	 * Rejects a connection previously announced through {@link Listener#onConnectionInitiated(String, String)}.
+	 *
+	 * @param endpointId the ID of the remote endpoint
+	 */
+	void rejectConnection(@NonNull String endpointId);
+
+	/**
+	 * Disconnects from a connected endpoint.
+	 *
+	 * @param endpointId the ID of the remote endpoint
+	 */
+	void disconnectFromEndpoint(@NonNull String endpointId);
+
+	/**
+	 * Hands a payload over to the transport. The success of the callback only means
+	 * the payload has been accepted by the transport; the delivery outcome is reported
+	 * through {@link Listener#onPayloadTransferUpdate(String, PayloadTransferUpdate)}.
+	 *
+	 * @param endpointId the ID of the remote endpoint
+	 * @param payload    the payload to send
+	 * @param callback   notified when the payload is accepted or rejected
+	 */
+	void sendPayload(@NonNull String endpointId, @NonNull Payload payload, @NonNull OperationCallback callback);
+
+	/**
+	 * Callback of an asynchronous transport operation.
+	 */
+	interface OperationCallback {
+		void onSuccess();
+
+		void onFailure(@NonNull Exception e);
+	}
+
+	/**
+	 * Receives the events of a {@link MeshTransport}. Methods mirror the Nearby
+	 * {@code ConnectionLifecycleCallback}, {@code EndpointDiscoveryCallback} and
+	 * {@code PayloadCallback}.
+	 */
+	interface Listener {
+		/**
+		 * A connection handshake started with a remote endpoint, whatever the side that requested it.
+		 */
+		void onConnectionInitiated(@NonNull String endpointId, @NonNull String endpointName);
+
+		/**
+		 * The handshake with the remote endpoint completed, with success or not.
+		 */
+		void onConnectionResult(@NonNull String endpointId, @NonNull Status status);
+
+		void onDisconnected(@NonNull String endpointId);
+
+		void onEndpointFound(@NonNull String endpointId, @NonNull String endpointName);
+
+		void onEndpointLost(@NonNull String endpointId);
+
+		void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload);
+
+		/**
+		 * Progress of a payload transfer, for both incoming and outgoing payloads.
+		 */
+		void onPayloadTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update);
+	}
+}
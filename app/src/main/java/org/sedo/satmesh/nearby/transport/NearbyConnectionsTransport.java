@@ -0,0 +1,138 @@
+package org.sedo.satmesh.nearby.transport;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.Nearby;
+import com.google.android.gms.nearby.connection.AdvertisingOptions;
+import com.google.android.gms.nearby.connection.ConnectionInfo;
+import com.google.android.gms.nearby.connection.ConnectionLifecycleCallback;
+import com.google.android.gms.nearby.connection.ConnectionResolution;
+import com.google.android.gms.nearby.connection.ConnectionsClient;
+import com.google.android.gms.nearby.connection.DiscoveredEndpointInfo;
+import com.google.android.gms.nearby.connection.DiscoveryOptions;
+import com.google.android.gms.nearby.connection.EndpointDiscoveryCallback;
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadCallback;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+import com.google.android.gms.nearby.connection.Strategy;
+
+/**
+ * {@link MeshTransport} backed by the Google Play Services Nearby Connections API.
+ *
+ * @author hsedo777
+ */
+public class NearbyConnectionsTransport implements MeshTransport {
+
+	private static final String SERVICE_ID = "org.sedo.satmesh.SECURE_MESSENGER"; // Unique service ID for the app
+	private static final Strategy STRATEGY = Strategy.P2P_CLUSTER;
+
+	private final ConnectionsClient connectionsClient;
+	private volatile Listener listener;
+
+	private final PayloadCallback payloadCallback = new PayloadCallback() {
+		@Override
+		public void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload) {
+			listener.onPayloadReceived(endpointId, payload);
+		}
+
+		@Override
+		public void onPayloadTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update) {
+			listener.onPayloadTransferUpdate(endpointId, update);
+		}
+	};
+
+	private final ConnectionLifecycleCallback connectionLifecycleCallback = new ConnectionLifecycleCallback() {
+		@Override
+		public void onConnectionInitiated(@NonNull String endpointId, @NonNull ConnectionInfo connectionInfo) {
+			listener.onConnectionInitiated(endpointId, connectionInfo.getEndpointName());
+		}
+
+		@Override
+		public void onConnectionResult(@NonNull String endpointId, @NonNull ConnectionResolution result) {
+			listener.onConnectionResult(endpointId, result.getStatus());
+		}
+
+		@Override
+		public void onDisconnected(@NonNull String endpointId) {
+			listener.onDisconnected(endpointId);
+		}
+	};
+
+	private final EndpointDiscoveryCallback endpointDiscoveryCallback = new EndpointDiscoveryCallback() {
+		@Override
+		public void onEndpointFound(@NonNull String endpointId, @NonNull DiscoveredEndpointInfo info) {
+			listener.onEndpointFound(endpointId, info.getEndpointName());
+		}
+
+		@Override
+		public void onEndpointLost(@NonNull String endpointId) {
+			listener.onEndpointLost(endpointId);
+		}
+	};
+
+	public NearbyConnectionsTransport(@NonNull Context context) {
+		this.connectionsClient = Nearby.getConnectionsClient(context);
+	}
+
+	@Override
+	public void setListener(@NonNull Listener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void startAdvertising(@NonNull String localName, @NonNull OperationCallback callback) {
+		AdvertisingOptions advertisingOptions = new AdvertisingOptions.Builder()
+				.setStrategy(STRATEGY).build();
+		connectionsClient.startAdvertising(localName, SERVICE_ID, connectionLifecycleCallback, advertisingOptions)
+				.addOnSuccessListener(unused -> callback.onSuccess())
+				.addOnFailureListener(callback::onFailure);
+	}
+
+	@Override
+	public void stopAdvertising() {
+		connectionsClient.stopAdvertising();
+	}
+
+	@Override
+	public void startDiscovery(@NonNull OperationCallback callback) {
+		DiscoveryOptions discoveryOptions = new DiscoveryOptions.Builder()
+				.setStrategy(STRATEGY).build();
+		connectionsClient.startDiscovery(SERVICE_ID, endpointDiscoveryCallback, discoveryOptions)
+				.addOnSuccessListener(unused -> callback.onSuccess())
+				.addOnFailureListener(callback::onFailure);
+	}
+
+	@Override
+	public void stopDiscovery() {
+		connectionsClient.stopDiscovery();
+	}
+
+	@Override
+	public void requestConnection(@NonNull String localName, @NonNull String endpointId) {
+		connectionsClient.requestConnection(localName, endpointId, connectionLifecycleCallback);
+	}
+
+	@Override
+	public void acceptConnection(@NonNull String endpointId) {
+		connectionsClient.acceptConnection(endpointId, payloadCallback);
+	}
+
+	@Override
+	public void rejectConnection(@NonNull String endpointId) {
+		connectionsClient.rejectConnection(endpointId);
+	}
+
+	@Override
+	public void disconnectFromEndpoint(@NonNull String endpointId) {
+		connectionsClient.disconnectFromEndpoint(endpointId);
+	}
+
+	@Override
+	public void sendPayload(@NonNull String endpointId, @NonNull Payload payload, @NonNull OperationCallback callback) {
+		connectionsClient.sendPayload(endpointId, payload)
+				.addOnSuccessListener(unused -> callback.onSuccess())
+				.addOnFailureListener(callback::onFailure);
+	}
+}
@@ -0,0 +1,243 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.nearby.connection.Payload;
+
+import org.sedo.satmesh.nearby.codec.EnvelopeCodec;
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.proto.BatchedFrame;
+import org.sedo.satmesh.proto.NearbyMessage;
+import org.sedo.satmesh.proto.NearbyMessageBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Per-endpoint outbound aggregator.
+ * <p>
+ * Small serialized {@link NearbyMessage} frames sent to the same endpoint are held for
+ * at most {@code windowMillis} or until their cumulated size reaches the byte budget,
+ * then emitted as a single payload wrapping a {@link NearbyMessageBatch}. A frame that
+ * is alone when the queue is flushed is sent as-is, without the batch envelope.
+ * </p>
+ * Each frame gets its own {@link Payload} at enqueue time: its ID is carried in the batch
+ * as {@link BatchedFrame#getFrameId()}, so that both sides see the same identifier for the
+ * frame, and that payload is the one reported to the frame's {@link TransmissionCallback}.
+ * The frames of an endpoint are always sent in their enqueue order. Frames toward an endpoint
+ * whose node doesn't unpack the batches, unknown or older, are sent one by one as they come.
+ *
+ * @author hsedo777
+ */
+public class OutboundCoalescer {
+
+	/**
+	 * Default delay during which a frame may wait for others.
+	 */
+	public static final long DEFAULT_WINDOW_MILLIS = 8L;
+	/**
+	 * Default maximum size of a batch, far below the Nearby BYTES payload limit.
+	 */
+	public static final int DEFAULT_BUDGET_BYTES = 32 * 1024;
+	// Upper bound of the protobuf framing added for each frame in a batch (tags, lengths and frame ID)
+	private static final int FRAME_OVERHEAD_BYTES = 24;
+
+	private final Map<String, EndpointQueue> queues = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final PayloadSender sender;
+	private final Predicate<String> acceptsBatches;
+	private final long windowMillis;
+	private final int budgetBytes;
+
+	/**
+	 * @param scheduler      the executor running the delayed flushes
+	 * @param sender         the function emitting a payload on the link
+	 * @param acceptsBatches tells whether the node of an endpoint unpacks the batches
+	 * @param windowMillis   maximum time a frame may wait; {@code 0} disables the coalescing
+	 * @param budgetBytes    size of queued frames beyond which the queue is flushed immediately
+	 */
+	public OutboundCoalescer(@NonNull ScheduledExecutorService scheduler, @NonNull PayloadSender sender,
+	                         @NonNull Predicate<String> acceptsBatches, long windowMillis, int budgetBytes) {
+		if (windowMillis < 0 || budgetBytes <= 0) {
+			throw new IllegalArgumentException("Invalid coalescing window or budget");
+		}
+		this.scheduler = scheduler;
+		this.sender = sender;
+		this.acceptsBatches = acceptsBatches;
+		this.windowMillis = windowMillis;
+		this.budgetBytes = budgetBytes;
+	}
+
+	private static void fail(@NonNull List<PendingFrame> frames, @Nullable Exception cause) {
+		for (PendingFrame frame : frames) {
+			frame.callback.onFailure(frame.payload, cause);
+		}
+	}
+
+	/**
+	 * Queues a serialized {@link NearbyMessage} for the given endpoint.
+	 *
+	 * @param endpointId the destination endpoint
+	 * @param frame      the serialized message; it mustn't be a batch
+	 * @param callback   notified with the payload of this frame once its carrier is sent or failed
+	 */
+	public void enqueue(@NonNull String endpointId, @NonNull byte[] frame, @Nullable TransmissionCallback callback) {
+		PendingFrame pending = new PendingFrame(Payload.fromBytes(frame),
+				callback == null ? TransmissionCallback.NULL_CALLBACK : callback);
+		if (windowMillis == 0L) {
+			sender.send(endpointId, pending.payload, pending.callback);
+			return;
+		}
+		EndpointQueue queue;
+		if (!acceptsBatches.test(endpointId)) {
+			queue = queues.get(endpointId);
+			if (queue == null) {
+				sender.send(endpointId, pending.payload, pending.callback);
+				return;
+			}
+			synchronized (queue) {
+				// After the frames queued while the node was known to accept batches
+				flushLocked(endpointId, queue);
+				sender.send(endpointId, pending.payload, pending.callback);
+			}
+			return;
+		}
+		queue = queues.computeIfAbsent(endpointId, ignored -> new EndpointQueue());
+		synchronized (queue) {
+			int frameCost = frame.length + FRAME_OVERHEAD_BYTES;
+			if (!queue.frames.isEmpty() && queue.bytes + frameCost > budgetBytes) {
+				// The new frame doesn't fit with the queued ones
+				flushLocked(endpointId, queue);
+			}
+			queue.frames.add(pending);
+			queue.bytes += frameCost;
+			if (queue.bytes >= budgetBytes) {
+				flushLocked(endpointId, queue);
+			} else if (queue.flushTask == null) {
+				queue.flushTask = scheduler.schedule(() -> flush(endpointId), windowMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Sends immediately every frame queued for the endpoint.
+	 */
+	public void flush(@NonNull String endpointId) {
+		EndpointQueue queue = queues.get(endpointId);
+		if (queue == null) {
+			return;
+		}
+		synchronized (queue) {
+			flushLocked(endpointId, queue);
+		}
+	}
+
+	/**
+	 * Drops the frames queued for the endpoint, typically on disconnection,
+	 * and reports them as failed.
+	 */
+	public void discard(@NonNull String endpointId) {
+		EndpointQueue queue = queues.remove(endpointId);
+		if (queue == null) {
+			return;
+		}
+		List<PendingFrame> dropped;
+		synchronized (queue) {
+			dropped = queue.drainLocked();
+		}
+		fail(dropped, null);
+	}
+
+	/**
+	 * Discards the queues of all endpoints.
+	 */
+	public void discardAll() {
+		for (String endpointId : new ArrayList<>(queues.keySet())) {
+			discard(endpointId);
+		}
+	}
+
+	/**
+	 * Returns the number of frames waiting for the given endpoint.
+	 */
+	public int getQueuedFrameCount(@NonNull String endpointId) {
+		EndpointQueue queue = queues.get(endpointId);
+		if (queue == null) {
+			return 0;
+		}
+		synchronized (queue) {
+			return queue.frames.size();
+		}
+	}
+
+	/*
+	 * Sending while holding the queue lock keeps the per-endpoint order of the frames.
+	 * The sender only hands the payload over to the transport, it doesn't block.
+	 */
+	private void flushLocked(@NonNull String endpointId, @NonNull EndpointQueue queue) {
+		List<PendingFrame> frames = queue.drainLocked();
+		if (frames.isEmpty()) {
+			return;
+		}
+		if (frames.size() == 1 || !acceptsBatches.test(endpointId)) {
+			for (PendingFrame single : frames) {
+				sender.send(endpointId, single.payload, single.callback);
+			}
+			return;
+		}
+		List<Payload> payloads = new ArrayList<>(frames.size());
+		for (PendingFrame frame : frames) {
+			payloads.add(frame.payload);
+		}
+		// Frames are copied once, straight into the batch payload
+		byte[] data = EnvelopeCodec.encodeBatch(payloads);
+		sender.send(endpointId, Payload.fromBytes(data), new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload payload) {
+				for (PendingFrame frame : frames) {
+					frame.callback.onSuccess(frame.payload);
+				}
+			}
+
+			@Override
+			public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+				fail(frames, cause);
+			}
+		});
+	}
+
+	/**
+	 * Function emitting a payload on the link.
+	 */
+	public interface PayloadSender {
+		void send(@NonNull String endpointId, @NonNull Payload payload, @NonNull TransmissionCallback callback);
+	}
+
+	private record PendingFrame(@NonNull Payload payload, @NonNull TransmissionCallback callback) {
+	}
+
+	private static final class EndpointQueue {
+		private final List<PendingFrame> frames = new ArrayList<>();
+		private int bytes;
+		private ScheduledFuture<?> flushTask;
+
+		@NonNull
+		private List<PendingFrame> drainLocked() {
+			if (flushTask != null) {
+				flushTask.cancel(false);
+				flushTask = null;
+			}
+			List<PendingFrame> drained = new ArrayList<>(frames);
+			frames.clear();
+			bytes = 0;
+			return drained;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Multi-level scheduler of the outgoing work, one FIFO queue per {@link TrafficClass}.
+ * <p>
+ * Tasks run one at a time on the given worker, in weighted round-robin: during a round,
+ * each class may run as many tasks as its weight, higher classes first. The round is
+ * renewed once every class having pending tasks has used its share, so lower classes
+ * always get a part of the worker. Moreover, a task waiting for more than
+ * {@code maxWaitMillis} is run before any other, oldest first.
+ * </p>
+ * Tasks of the same class run in their submission order. The scheduler doesn't log: the tasks
+ * ignored are counted and the failures of the tasks are reported to the {@link FailureListener}.
+ *
+ * @author hsedo777
+ */
+public class PriorityTaskScheduler {
+
+	/**
+	 * Default longest wait of a task before it bypasses the weighted order.
+	 */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 2_000L;
+	private static final TrafficClass[] CLASSES = TrafficClass.values();
+
+	private final Map<TrafficClass, Deque<PendingTask>> queues = new EnumMap<>(TrafficClass.class);
+	private final int[] credits = new int[CLASSES.length];
+	private final Executor worker;
+	private final Clock clock;
+	private final long maxWaitMillis;
+	private final Object lock = new Object();
+	// True while a drain loop is submitted to the worker
+	private boolean draining;
+	private boolean shutdown;
+	private long droppedCount;
+	@Nullable
+	private volatile FailureListener failureListener;
+
+	/**
+	 * @param worker        executor on which the tasks run; a scheduler submits at most one drain loop
+	 *                      at a time, so a pool may be shared by several schedulers
+	 * @param clock         time source used to measure the waits
+	 * @param maxWaitMillis longest wait of a task before it is run regardless of its class
+	 */
+	public PriorityTaskScheduler(@NonNull Executor worker, @NonNull Clock clock, long maxWaitMillis) {
+		if (maxWaitMillis <= 0) {
+			throw new IllegalArgumentException("Invalid maximum wait");
+		}
+		this.worker = worker;
+		this.clock = clock;
+		this.maxWaitMillis = maxWaitMillis;
+		for (TrafficClass trafficClass : CLASSES) {
+			queues.put(trafficClass, new ArrayDeque<>());
+		}
+		refillCredits();
+	}
+
+	public void setFailureListener(@Nullable FailureListener failureListener) {
+		this.failureListener = failureListener;
+	}
+
+	/**
+	 * Submits a task in the given class. Tasks submitted after {@link #shutdown()} are ignored
+	 * and counted as dropped.
+	 */
+	public void execute(@NonNull TrafficClass trafficClass, @NonNull Runnable task) {
+		synchronized (lock) {
+			if (shutdown) {
+				droppedCount++;
+				return;
+			}
+			queues.get(trafficClass).addLast(new PendingTask(task, clock.nowMillis()));
+			if (draining) {
+				return;
+			}
+			draining = true;
+		}
+		try {
+			worker.execute(this::drain);
+		} catch (RejectedExecutionException e) {
+			// The tasks stay queued, the next submission submits a drain loop again
+			synchronized (lock) {
+				draining = false;
+			}
+		}
+	}
+
+	/**
+	 * Drops every pending task and refuses the next ones.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			for (Deque<PendingTask> queue : queues.values()) {
+				droppedCount += queue.size();
+				queue.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tasks of the class waiting to run.
+	 */
+	public int getPendingCount(@NonNull TrafficClass trafficClass) {
+		synchronized (lock) {
+			return queues.get(trafficClass).size();
+		}
+	}
+
+	/**
+	 * Returns the number of tasks dropped by {@link #shutdown()} or submitted after it.
+	 */
+	public long getDroppedCount() {
+		synchronized (lock) {
+			return droppedCount;
+		}
+	}
+
+	/**
+	 * Removes the task to run next, or returns {@code null} if there isn't any.
+	 * Exposed for tests driving the scheduler without worker.
+	 */
+	@Nullable
+	Runnable poll() {
+		synchronized (lock) {
+			PendingTask next = pollLocked();
+			return next == null ? null : next.task;
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			PendingTask next;
+			synchronized (lock) {
+				next = pollLocked();
+				if (next == null) {
+					draining = false;
+					return;
+				}
+			}
+			try {
+				next.task.run();
+			} catch (RuntimeException e) {
+				FailureListener listener = failureListener;
+				if (listener != null) {
+					listener.onTaskFailed(e);
+				}
+			}
+		}
+	}
+
+	@Nullable
+	private PendingTask pollLocked() {
+		// Starvation bound first
+		long now = clock.nowMillis();
+		Deque<PendingTask> overdue = null;
+		for (TrafficClass trafficClass : CLASSES) {
+			PendingTask head = queues.get(trafficClass).peekFirst();
+			if (head != null && now - head.enqueuedAt >= maxWaitMillis
+					&& (overdue == null || head.enqueuedAt < overdue.getFirst().enqueuedAt)) {
+				overdue = queues.get(trafficClass);
+			}
+		}
+		if (overdue != null) {
+			return overdue.pollFirst();
+		}
+		for (int round = 0; round < 2; round++) {
+			for (TrafficClass trafficClass : CLASSES) {
+				Deque<PendingTask> queue = queues.get(trafficClass);
+				if (!queue.isEmpty() && credits[trafficClass.ordinal()] > 0) {
+					credits[trafficClass.ordinal()]--;
+					return queue.pollFirst();
+				}
+			}
+			// Every class with pending tasks has used its share: new round
+			refillCredits();
+		}
+		return null;
+	}
+
+	private void refillCredits() {
+		for (TrafficClass trafficClass : CLASSES) {
+			credits[trafficClass.ordinal()] = trafficClass.getWeight();
+		}
+	}
+
+	/**
+	 * Notified, on the worker, of the failure of a task. The next tasks run anyway.
+	 */
+	public interface FailureListener {
+		void onTaskFailed(@NonNull RuntimeException cause);
+	}
+
+	private record PendingTask(@NonNull Runnable task, long enqueuedAt) {
+	}
+}
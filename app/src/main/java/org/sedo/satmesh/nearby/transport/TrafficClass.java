@@ -0,0 +1,57 @@
+package org.sedo.satmesh.nearby.transport;
+
+import androidx.annotation.NonNull;
+
+import org.sedo.satmesh.proto.NearbyMessageBody;
+import org.sedo.satmesh.proto.NearbyMessageType;
+
+/**
+ * Scheduling classes of the outgoing messages, in decreasing priority order.
+ * The weight is the number of tasks of the class a {@link PriorityTaskScheduler}
+ * may run during one round while the other classes have pending tasks.
+ *
+ * @author hsedo777
+ */
+public enum TrafficClass {
+	/**
+	 * Route discovery, route teardown, acknowledgements and transfer resumes: small messages others wait for.
+	 */
+	CONTROL(8),
+	/**
+	 * Messages the user is waiting for: texts, typing indicators, personal info, transfer offers.
+	 */
+	INTERACTIVE(4),
+	/**
+	 * Retransmissions and anything else that tolerates delay.
+	 */
+	BULK(1);
+
+	private final int weight;
+
+	TrafficClass(int weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the class of a message from its type. A retransmission, known only by its
+	 * sender, must be explicitly scheduled as {@link #BULK}.
+	 */
+	@NonNull
+	public static TrafficClass of(@NonNull NearbyMessageBody body) {
+		NearbyMessageType type = NearbyMessageType.forNumber(body.getMessageTypeValue());
+		if (type == null) {
+			return BULK;
+		}
+		return switch (type) {
+			case ROUTE_DISCOVERY_REQ, ROUTE_DISCOVERY_RESP, ROUTE_DESTROY, MESSAGE_DELIVERED_ACK,
+			     MESSAGE_READ_ACK, CLAIM_READ_ACK, ACK_CONFIRMATION, TRANSFER_RESUME -> CONTROL;
+			case ENCRYPTED_MESSAGE, TYPING_INDICATOR, PERSONAL_INFO, KNOWLEDGE, ROUTED_MESSAGE,
+			     TRANSFER_OFFER -> INTERACTIVE;
+			default -> BULK;
+		};
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+}
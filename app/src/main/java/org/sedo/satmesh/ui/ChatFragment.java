@@ -3,6 +3,8 @@ package org.sedo.satmesh.ui;
 import static org.sedo.satmesh.utils.Constants.TAG_CHAT_FRAGMENT;
 
 import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -14,6 +16,8 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.activity.OnBackPressedCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
@@ -57,6 +61,8 @@ public class ChatFragment extends Fragment {
 	private ActionMode currentActionMode;
 	private FragmentChatBinding binding;
 	private Node hostNode;
+	private final ActivityResultLauncher<String[]> pickContentLauncher =
+			registerForActivityResult(new ActivityResultContracts.OpenDocument(), this::onContentPicked);
 	// Implementation of ActionMode.Callback
 	private final ActionMode.Callback actionModeCallback = new ActionMode.Callback() {
 		@Override
@@ -339,6 +345,9 @@ public class ChatFragment extends Fragment {
 						.setIcon(android.R.drawable.ic_dialog_alert)
 						.show();
 				return true;
+			} else if (itemId == R.id.action_send_file) {
+				pickContentLauncher.launch(new String[]{"*/*"});
+				return true;
 			} else if (itemId == R.id.action_export_chat) {
 				String result = viewModel.exportChatMessages();
 				if (result != null) {
@@ -376,6 +385,20 @@ public class ChatFragment extends Fragment {
 		});
 	}
 
+	private void onContentPicked(@Nullable Uri uri) {
+		Log.d(TAG, "Content picked to send: " + uri);
+		if (uri == null) {
+			return;
+		}
+		try {
+			// The content is read again on each attempt of the transfer, even after a restart
+			requireContext().getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+		} catch (SecurityException e) {
+			Log.w(TAG, "Unable to keep the read permission on " + uri, e);
+		}
+		viewModel.sendContent(uri);
+	}
+
 	private void setupChatRecyclerView() {
 		adapter = new ChatAdapter(hostNode.getId());
 		LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
@@ -43,6 +43,10 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
 	 * Default font size index, used if no font size is set.
 	 */
 	public static final int DEFAULT_FONT_SIZE_INDEX = 1;
+	/**
+	 * Default route request relaying index, used if no relay policy is set.
+	 */
+	public static final int DEFAULT_ROUTE_REQUEST_RELAYING_INDEX = 2;
 
 	// Argument key for passing the local node address name to the fragment.
 	private static final String ARG_HOST_ADDRESS_NAME = "host_node_address_name";
@@ -124,6 +128,7 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
 		setupFontSizePreference();
 		setupUsernamePreference();
 		setupNodeIdPreference();
+		setupRouteRequestRelayingPreference();
 		loadHostNodeAndRefreshUI();
 	}
 
@@ -157,6 +162,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
 			// Re-set the summary to reflect the change, as the system might not do it automatically
 			// for list preferences if the entries and values are different.
 			setupFontSizePreference();
+		} else if (key.equals(getString(R.string.pref_key_route_request_relaying))) {
+			setupRouteRequestRelayingPreference();
 		}
 	}
 
@@ -203,6 +210,14 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
 		setupRegularPreference(R.string.pref_key_font_size, R.array.pref_font_size_values, R.array.pref_font_size_entries, DEFAULT_FONT_SIZE_INDEX);
 	}
 
+	/**
+	 * Sets up the route request relaying preference.
+	 */
+	private void setupRouteRequestRelayingPreference() {
+		setupRegularPreference(R.string.pref_key_route_request_relaying, R.array.pref_route_request_relaying_values,
+				R.array.pref_route_request_relaying_entries, DEFAULT_ROUTE_REQUEST_RELAYING_INDEX);
+	}
+
 	/**
 	 * Sets up the username preference.
 	 */
@@ -4,25 +4,128 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LongSparseArray;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 
 import org.sedo.satmesh.AppDatabase;
 import org.sedo.satmesh.model.Node;
 import org.sedo.satmesh.model.NodeDao;
+import org.sedo.satmesh.utils.Clock;
+import org.sedo.satmesh.utils.ObjectHolder;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class NodeRepository {
 
+	// Shared by all the repositories, so that every reader sees the same presence
+	private static volatile PresenceCache presenceCache;
+	/*
+	 * The address name and the local ID of a node never change: they are remembered, until the
+	 * node is deleted, to resolve one from the other without reading the database.
+	 */
+	private static final Map<String, Long> nodeIds = new ConcurrentHashMap<>();
+	private static final LongSparseArray<String> addressNames = new LongSparseArray<>();
 	private final NodeDao dao;
 	private final Executor executor;
 
 	public NodeRepository(@NonNull Context context) {
-		AppDatabase db = AppDatabase.getDB(context);
+		this(AppDatabase.getDB(context));
+	}
+
+	/**
+	 * Creates a repository over a given database. The local IDs being remembered across the
+	 * repositories, the databases of the nodes of a mesh simulated in a single process must give
+	 * each address name the same ID.
+	 */
+	@VisibleForTesting
+	public NodeRepository(@NonNull AppDatabase db) {
 		dao = db.nodeDao();
 		executor = db.getQueryExecutor();
+		if (presenceCache == null) {
+			synchronized (NodeRepository.class) {
+				if (presenceCache == null) {
+					PresenceCache cache = new PresenceCache(Executors.newSingleThreadScheduledExecutor(),
+							Clock.SYSTEM, dao::updateLastSeen, PresenceCache.DEFAULT_FLUSH_INTERVAL_MS);
+					cache.start();
+					presenceCache = cache;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wraps a source of the database so that its nodes carry the freshest last seen timestamps,
+	 * and are re-emitted when the presence of the nodes changes.
+	 */
+	private static <T> LiveData<T> withPresence(@NonNull LiveData<T> source, @NonNull Function<T, T> overlay) {
+		MediatorLiveData<T> result = new MediatorLiveData<>();
+		ObjectHolder<T> latest = new ObjectHolder<>();
+		result.addSource(source, value -> {
+			latest.post(value);
+			result.setValue(overlay.apply(value));
+		});
+		result.addSource(presenceCache.getLiveLastSeen(), presence -> {
+			T value = latest.getValue();
+			if (value != null) {
+				result.setValue(overlay.apply(value));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Records that the node has just been seen. The timestamp is written to the database later,
+	 * along with the other ones.
+	 *
+	 * @param addressName The address name of the node.
+	 */
+	public void touch(@NonNull String addressName) {
+		presenceCache.touch(addressName);
+	}
+
+	/**
+	 * Returns the freshest last seen timestamp of the node, including the ones not written yet.
+	 *
+	 * @param node The node, as read from the database.
+	 */
+	@Nullable
+	public Long getLastSeen(@NonNull Node node) {
+		return presenceCache.getLastSeen(node);
+	}
+
+	/**
+	 * Writes the pending last seen timestamps to the database, asynchronously.
+	 */
+	public void flushPresence() {
+		presenceCache.flush();
+	}
+
+	private static void remember(@Nullable Node node) {
+		if (node != null && node.getId() != null && node.getId() > 0L && node.getAddressName() != null) {
+			nodeIds.put(node.getAddressName(), node.getId());
+			synchronized (addressNames) {
+				addressNames.put(node.getId(), node.getAddressName());
+			}
+		}
+	}
+
+	private static void forget(@NonNull Node node) {
+		if (node.getAddressName() != null) {
+			nodeIds.remove(node.getAddressName());
+		}
+		if (node.getId() != null) {
+			synchronized (addressNames) {
+				addressNames.remove(node.getId());
+			}
+		}
 	}
 
 	/**
@@ -33,6 +136,7 @@ public class NodeRepository {
 		executor.execute(() -> {
 			try {
 				node.setId(dao.insert(node));
+				remember(node);
 				if (callback != null) {
 					callback.accept(true);
 				}
@@ -80,7 +184,7 @@ public class NodeRepository {
 	 * @return A LiveData object containing the node.
 	 */
 	public LiveData<Node> findLiveNode(long nodeId) {
-		return dao.getNodeById(nodeId);
+		return withPresence(dao.getNodeById(nodeId), presenceCache::overlay);
 	}
 
 	/**
@@ -90,7 +194,7 @@ public class NodeRepository {
 	 * @return A LiveData object containing a list of matching Node objects.
 	 */
 	public LiveData<List<Node>> getNodesByAddressName(List<String> addresses) {
-		return dao.getNodesByAddressName(addresses);
+		return withPresence(dao.getNodesByAddressName(addresses), presenceCache::overlay);
 	}
 
 	/**
@@ -100,7 +204,9 @@ public class NodeRepository {
 	 * @return The node, or null if not found.
 	 */
 	public Node findNodeSync(long nodeId) {
-		return dao.getNodeByIdSync(nodeId);
+		Node node = dao.getNodeByIdSync(nodeId);
+		remember(node);
+		return node;
 	}
 
 	/**
@@ -110,7 +216,46 @@ public class NodeRepository {
 	 * @return The node, or null if not found.
 	 */
 	public Node findNodeSync(String addressName) {
-		return dao.getNodeByAddressNameSync(addressName);
+		Node node = dao.getNodeByAddressNameSync(addressName);
+		remember(node);
+		return node;
+	}
+
+	/**
+	 * Finds the local ID of a node by its address name, synchronously.
+	 * The database is only read the first time.
+	 *
+	 * @param addressName The address name of the node.
+	 * @return The local ID of the node, or null if not found.
+	 */
+	@Nullable
+	public Long findNodeIdSync(@NonNull String addressName) {
+		Long nodeId = nodeIds.get(addressName);
+		if (nodeId == null) {
+			Node node = findNodeSync(addressName);
+			nodeId = node == null ? null : node.getId();
+		}
+		return nodeId;
+	}
+
+	/**
+	 * Finds the address name of a node by its local ID, synchronously.
+	 * The database is only read the first time.
+	 *
+	 * @param nodeId The local ID of the node.
+	 * @return The address name of the node, or null if not found.
+	 */
+	@Nullable
+	public String findAddressNameSync(long nodeId) {
+		String addressName;
+		synchronized (addressNames) {
+			addressName = addressNames.get(nodeId);
+		}
+		if (addressName == null) {
+			Node node = findNodeSync(nodeId);
+			addressName = node == null ? null : node.getAddressName();
+		}
+		return addressName;
 	}
 
 	/**
@@ -122,24 +267,47 @@ public class NodeRepository {
 	 */
 	public void findOrCreateNodeAsync(@NonNull String addressName, @NonNull NodeCallback callback) {
 		executor.execute(() -> {
-			Node node = findNodeSync(addressName);
-
-			if (node != null) {
-				callback.onNodeReady(node);
-			} else {
-				Node newNode = new Node();
-				newNode.setAddressName(addressName);
-				insert(newNode, success -> {
-					if (success) {
-						callback.onNodeReady(newNode);
-					} else {
-						callback.onError("Failed to insert new node: " + addressName);
-					}
-				});
+			Node node;
+			try {
+				node = findOrCreateNodeSync(addressName);
+			} catch (Exception e) {
+				callback.onError("Failed to insert new node: " + addressName);
+				return;
 			}
+			callback.onNodeReady(node);
 		});
 	}
 
+	/**
+	 * Finds a node by its address name, creating it if not found.
+	 * This method runs on the caller thread, possibly in a transaction.
+	 *
+	 * @param addressName The address name of the node to find or create.
+	 * @return The node, with its ID.
+	 * @throws IllegalStateException if the node can't be created
+	 */
+	@NonNull
+	public Node findOrCreateNodeSync(@NonNull String addressName) {
+		Node node = findNodeSync(addressName);
+		if (node != null) {
+			return node;
+		}
+		node = new Node();
+		node.setAddressName(addressName);
+		long id = dao.insert(node);
+		if (id <= 0L) {
+			// Inserted by another thread meanwhile
+			node = findNodeSync(addressName);
+			if (node == null) {
+				throw new IllegalStateException("Failed to insert new node: " + addressName);
+			}
+			return node;
+		}
+		node.setId(id);
+		remember(node);
+		return node;
+	}
+
 	/**
 	 * Retrieves a LiveData list of all known Node objects from the database,
 	 * excluding the specified host node. The list is ordered by display name.
@@ -148,7 +316,7 @@ public class NodeRepository {
 	 * @return A LiveData object containing a list of known Node objects.
 	 */
 	public LiveData<List<Node>> getKnownNodesExcludingHost(long hostNodeId) {
-		return dao.getKnownNodesExcludingHost(hostNodeId);
+		return withPresence(dao.getKnownNodesExcludingHost(hostNodeId), presenceCache::overlay);
 	}
 
 	/**
@@ -158,6 +326,9 @@ public class NodeRepository {
 	 * @param nodes The list of Node objects to be deleted.
 	 */
 	public void deleteNodes(List<Node> nodes) {
+		for (Node node : nodes) {
+			forget(node);
+		}
 		executor.execute(() -> dao.delete(nodes));
 	}
 
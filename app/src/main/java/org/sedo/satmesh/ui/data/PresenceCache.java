@@ -0,0 +1,237 @@
+package org.sedo.satmesh.ui.data;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import org.sedo.satmesh.model.Node;
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind cache of the {@link Node#getLastSeen() last seen} timestamps.
+ * <p>
+ * Every payload received from a neighbor refreshes its presence. Instead of rewriting the node
+ * row each time, the timestamps are kept in memory and the ones changed since the last flush are
+ * written periodically, in a single transaction, and on demand (e.g. on shutdown).
+ * Readers get the freshest value through {@link #getLastSeen(Node)}, {@link #overlay(Node)} and
+ * {@link #getLiveLastSeen()}, whatever the state of the database.
+ * </p>
+ * A failed flush keeps its timestamps pending for the next one.
+ *
+ * @author hsedo777
+ */
+public class PresenceCache {
+
+	/**
+	 * Default delay, in milliseconds, between two flushes to the database.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL_MS = 30_000L;
+	/**
+	 * Delay, in milliseconds, during which the changes are gathered before being published to
+	 * the observers of {@link #getLiveLastSeen()}.
+	 */
+	static final long PUBLISH_DELAY_MS = 1_000L;
+	private static final String TAG = "PresenceCache";
+
+	private final ScheduledExecutorService scheduler;
+	private final Clock clock;
+	private final Writer writer;
+	private final long flushIntervalMillis;
+	// Freshest known timestamp of each node, flushed or not
+	private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+	// Timestamps not yet written to the database
+	private final Map<String, Long> pending = new ConcurrentHashMap<>();
+	private final MutableLiveData<Map<String, Long>> liveLastSeen = new MutableLiveData<>(Collections.emptyMap());
+	private final AtomicBoolean publishScheduled = new AtomicBoolean(false);
+
+	/**
+	 * @param scheduler           the executor running the flushes, it should be single-threaded
+	 * @param clock               the source of the timestamps
+	 * @param writer              writes a batch of timestamps to the database
+	 * @param flushIntervalMillis delay between two periodic flushes
+	 */
+	public PresenceCache(@NonNull ScheduledExecutorService scheduler, @NonNull Clock clock,
+	                     @NonNull Writer writer, long flushIntervalMillis) {
+		this.scheduler = scheduler;
+		this.clock = clock;
+		this.writer = writer;
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Schedules the periodic flushes.
+	 */
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::flushNow, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Records that the node has just been seen.
+	 *
+	 * @param addressName The Signal Protocol address name of the node.
+	 */
+	public void touch(@NonNull String addressName) {
+		touch(addressName, clock.nowMillis());
+	}
+
+	/**
+	 * Records that the node has been seen at the given time. Older timestamps are ignored.
+	 *
+	 * @param addressName The Signal Protocol address name of the node.
+	 * @param timestamp   The time the node has been seen, in milliseconds.
+	 */
+	public void touch(@NonNull String addressName, long timestamp) {
+		Long previous = lastSeen.get(addressName);
+		if (previous != null && previous >= timestamp) {
+			return;
+		}
+		lastSeen.merge(addressName, timestamp, Math::max);
+		pending.merge(addressName, timestamp, Math::max);
+		schedulePublish();
+	}
+
+	/**
+	 * Returns the freshest last seen timestamp of the node, from the cache or from its row.
+	 *
+	 * @param node The node, as read from the database.
+	 * @return The last seen timestamp, or null if the node has never been seen.
+	 */
+	@Nullable
+	public Long getLastSeen(@NonNull Node node) {
+		Long cached = node.getAddressName() == null ? null : lastSeen.get(node.getAddressName());
+		Long stored = node.getLastSeen();
+		if (cached == null) {
+			return stored;
+		}
+		return stored == null ? cached : Math.max(cached, stored);
+	}
+
+	/**
+	 * Returns the node with its freshest last seen timestamp. The node itself is left untouched,
+	 * a copy is returned if the cache holds a fresher timestamp.
+	 *
+	 * @param node The node, as read from the database.
+	 */
+	@Nullable
+	public Node overlay(@Nullable Node node) {
+		if (node == null) {
+			return null;
+		}
+		Long fresh = getLastSeen(node);
+		if (fresh == null || fresh.equals(node.getLastSeen())) {
+			return node;
+		}
+		Node copy = new Node(node);
+		copy.setLastSeen(fresh);
+		return copy;
+	}
+
+	/**
+	 * Applies {@link #overlay(Node)} to each node of the list.
+	 */
+	@Nullable
+	public List<Node> overlay(@Nullable List<Node> nodes) {
+		if (nodes == null) {
+			return null;
+		}
+		List<Node> result = new ArrayList<>(nodes.size());
+		for (Node node : nodes) {
+			result.add(overlay(node));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the last seen timestamps known by the cache, keyed by address name.
+	 * The changes are published at most once per {@link #PUBLISH_DELAY_MS}.
+	 */
+	@NonNull
+	public LiveData<Map<String, Long>> getLiveLastSeen() {
+		return liveLastSeen;
+	}
+
+	private void schedulePublish() {
+		if (publishScheduled.compareAndSet(false, true)) {
+			try {
+				scheduler.schedule(() -> {
+					publishScheduled.set(false);
+					liveLastSeen.postValue(Collections.unmodifiableMap(new HashMap<>(lastSeen)));
+				}, PUBLISH_DELAY_MS, TimeUnit.MILLISECONDS);
+			} catch (Exception e) {
+				// The scheduler is shut down: nobody observes anymore
+				publishScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Requests the pending timestamps to be written as soon as possible.
+	 */
+	public void flush() {
+		try {
+			scheduler.execute(this::flushNow);
+		} catch (Exception e) {
+			Log.w(TAG, "Flush requested after shutdown, flushing on the calling thread.");
+			flushNow();
+		}
+	}
+
+	/**
+	 * Writes the pending timestamps in one batch, on the calling thread.
+	 *
+	 * @return the number of timestamps written
+	 */
+	int flushNow() {
+		Map<String, Long> batch = new HashMap<>();
+		for (Map.Entry<String, Long> entry : pending.entrySet()) {
+			// Only removed if not refreshed in the meantime, else the next flush writes it
+			if (pending.remove(entry.getKey(), entry.getValue())) {
+				batch.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		try {
+			writer.writeLastSeen(batch);
+			Log.d(TAG, "Flushed the last seen timestamp of " + batch.size() + " node(s).");
+			return batch.size();
+		} catch (Exception e) {
+			Log.e(TAG, "Failed to flush the last seen timestamps, will retry.", e);
+			for (Map.Entry<String, Long> entry : batch.entrySet()) {
+				pending.merge(entry.getKey(), entry.getValue(), Math::max);
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns whether some timestamps are waiting to be written.
+	 */
+	public boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Writes a batch of last seen timestamps to the database.
+	 */
+	public interface Writer {
+		/**
+		 * @param lastSeen the timestamps to write, keyed by node address name
+		 */
+		void writeLastSeen(@NonNull Map<String, Long> lastSeen);
+	}
+}
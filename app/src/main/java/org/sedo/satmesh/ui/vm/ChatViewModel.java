@@ -1,7 +1,10 @@
 package org.sedo.satmesh.ui.vm;
 
 import android.app.Application;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Environment;
+import android.provider.OpenableColumns;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -355,6 +358,77 @@ public class ChatViewModel extends AndroidViewModel {
 		});
 	}
 
+	/**
+	 * Sends the content behind the given URI as an image, audio or file message, according to
+	 * its MIME type. The content is transferred by chunks, it must remain readable until the
+	 * recipient received it.
+	 *
+	 * @param contentUri The URI of the content, readable by the application.
+	 */
+	public void sendContent(@NonNull Uri contentUri) {
+		Node currentHostNode = hostNodeLiveData.getValue();
+		Node currentRemoteNode = remoteNodeLiveData.getValue();
+
+		if (currentHostNode == null || currentRemoteNode == null) {
+			uiMessage.postValue(getApplication().getString(R.string.error_no_conversation_selected));
+			return;
+		}
+
+		executor.execute(() -> {
+			String mimeType = getApplication().getContentResolver().getType(contentUri);
+			Message message = new Message();
+			message.setContent(contentUri.toString());
+			message.setTimestamp(System.currentTimeMillis());
+			message.setSenderNodeId(currentHostNode.getId());
+			message.setRecipientNodeId(currentRemoteNode.getId());
+			if (mimeType != null && mimeType.startsWith("image/")) {
+				message.setType(Message.MESSAGE_TYPE_IMAGE);
+			} else if (mimeType != null && mimeType.startsWith("audio/")) {
+				message.setType(Message.MESSAGE_TYPE_AUDIO);
+			} else {
+				message.setType(Message.MESSAGE_TYPE_FILE);
+			}
+
+			// Like the text messages, the content is sent once the session is established
+			boolean isSessionSecure = nearbySignalMessenger.hasSession(currentRemoteNode.getAddressName());
+			if (!isSessionSecure) {
+				nearbySignalMessenger.handleInitialKeyExchange(currentRemoteNode.getAddressName());
+			}
+			message.setStatus(isSessionSecure ? Message.MESSAGE_STATUS_PENDING : Message.MESSAGE_STATUS_PENDING_KEY_EXCHANGE);
+			if (isSessionSecure) {
+				message.setLastSendingAttempt(System.currentTimeMillis());
+			}
+			String fileName = queryDisplayName(contentUri);
+
+			messageRepository.insertMessage(message, success -> {
+				if (success) {
+					if (isSessionSecure) {
+						nearbySignalMessenger.sendContentMessage(currentRemoteNode.getAddressName(), message, fileName);
+					}
+				} else {
+					Log.w(TAG, "Failed to insert content message.");
+					uiMessage.postValue(getApplication().getString(R.string.error_message_persistence_failed));
+				}
+			});
+		});
+	}
+
+	/**
+	 * Returns the name under which the content is presented to the user, if known.
+	 */
+	@Nullable
+	private String queryDisplayName(@NonNull Uri contentUri) {
+		try (Cursor cursor = getApplication().getContentResolver().query(
+				contentUri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+			if (cursor != null && cursor.moveToFirst()) {
+				return cursor.getString(0);
+			}
+		} catch (RuntimeException e) {
+			Log.w(TAG, "Unable to read the name of the content " + contentUri, e);
+		}
+		return contentUri.getLastPathSegment();
+	}
+
 	/**
 	 * Marks, if possible, the specified message as read. To be marked as read,
 	 * here is the set of conditions required :
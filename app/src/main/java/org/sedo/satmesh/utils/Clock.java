@@ -0,0 +1,18 @@
+package org.sedo.satmesh.utils;
+
+/**
+ * Source of the current time, in milliseconds.
+ * Components relying on elapsed time take a clock so that tests can drive the time.
+ */
+public interface Clock {
+
+	/**
+	 * The wall clock of the system.
+	 */
+	Clock SYSTEM = System::currentTimeMillis;
+
+	/**
+	 * Returns the current time in milliseconds.
+	 */
+	long nowMillis();
+}
@@ -0,0 +1,47 @@
+package org.sedo.satmesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.os.Build;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+@RunWith(RobolectricTestRunner.class)
+@org.robolectric.annotation.Config(sdk = {Build.VERSION_CODES.UPSIDE_DOWN_CAKE})
+public class AppDatabaseMigrationTest {
+
+	private static final String TEST_DB = "migration-test";
+
+	@Rule
+	public final MigrationTestHelper helper = new MigrationTestHelper(
+			InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+	@Test
+	public void migrate6To7KeepsTheRoutesWithoutCost() throws IOException {
+		try (SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 6)) {
+			database.execSQL("INSERT INTO `route_entry` (`discovery_uuid`, `destination_node_local_id`, `next_hop_local_id`, "
+					+ "`previous_hop_local_id`, `hop_count`, `last_use_timestamp`) VALUES ('route-1', 2, 3, NULL, 4, 1000)");
+		}
+
+		try (SupportSQLiteDatabase database = helper.runMigrationsAndValidate(TEST_DB, 7, true, AppDatabase.MIGRATION_6_7);
+		     Cursor cursor = database.query("SELECT `discovery_uuid`, `hop_count`, `last_use_timestamp`, `link_cost` FROM `route_entry`")) {
+			assertEquals("The route is kept", 1, cursor.getCount());
+			assertTrue(cursor.moveToFirst());
+			assertEquals("route-1", cursor.getString(0));
+			assertEquals(4, cursor.getInt(1));
+			assertEquals(1000L, cursor.getLong(2));
+			assertTrue("The cost of an old route is unknown", cursor.isNull(3));
+		}
+	}
+}
@@ -20,6 +20,7 @@ public class RouteEntryTest {
 		assertNull("NextHopLocalId should be null", entry.getNextHopLocalId());
 		assertNull("PreviousHopLocalId should be null", entry.getPreviousHopLocalId());
 		assertNull("HopCount should be null", entry.getHopCount());
+		assertNull("LinkCost should be null", entry.getLinkCost());
 		assertNull("LastUseTimestamp should be null", entry.getLastUseTimestamp());
 	}
 
@@ -71,6 +72,14 @@ public class RouteEntryTest {
 		assertEquals("Getter for HopCount should return the set value", testHopCount, entry.getHopCount());
 	}
 
+	@Test
+	public void setAndGetLinkCost() {
+		RouteEntry entry = new RouteEntry();
+		Integer testLinkCost = 350;
+		entry.setLinkCost(testLinkCost);
+		assertEquals("Getter for LinkCost should return the set value", testLinkCost, entry.getLinkCost());
+	}
+
 	@Test
 	public void setAndGetLastUseTimestamp() {
 		RouteEntry entry = new RouteEntry();
@@ -161,6 +170,11 @@ public class RouteEntryTest {
 		temp.setHopCount(hopCount + 1);
 		assertNotEquals("Entries with different hopCount should not be equal.", entry1, temp);
 
+		// Test inequality with different linkCost
+		temp = createFullRouteEntry();
+		temp.setLinkCost(250);
+		assertNotEquals("Entries with different linkCost should not be equal.", entry1, temp);
+
 		// Test inequality with different lastUseTimestamp
 		temp = createFullRouteEntry();
 		temp.setLastUseTimestamp(lastUse + 1L);
@@ -240,6 +254,7 @@ public class RouteEntryTest {
 		entry.setNextHopLocalId(2L);
 		entry.setPreviousHopLocalId(3L);
 		entry.setHopCount(5);
+		entry.setLinkCost(650);
 		entry.setLastUseTimestamp(System.currentTimeMillis());
 
 		String str = entry.toString();
@@ -250,6 +265,7 @@ public class RouteEntryTest {
 		assertTrue("toString should contain nextHopLocalId", str.contains("nextHopLocalId=2"));
 		assertTrue("toString should contain previousHopLocalId", str.contains("previousHopLocalId=3"));
 		assertTrue("toString should contain hopCount", str.contains("hopCount=5"));
+		assertTrue("toString should contain linkCost", str.contains("linkCost=650"));
 		assertTrue("toString should contain lastUseTimestamp", str.contains("lastUseTimestamp=" + entry.getLastUseTimestamp()));
 	}
 }
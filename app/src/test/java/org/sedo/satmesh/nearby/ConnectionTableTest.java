@@ -0,0 +1,109 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_CONNECTED;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_DISCONNECTED;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_FOUND;
+import static org.sedo.satmesh.nearby.ConnectionTable.STATUS_INITIATED_FROM_HOST;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionTableTest {
+
+	private final ConnectionTable table = new ConnectionTable();
+
+	@Test
+	public void bothIndicesFollowTheUpdates() {
+		table.put("EP1", "alice", STATUS_FOUND);
+		assertEquals("Address index", "EP1", table.getEndpointId("alice"));
+		assertEquals("Endpoint index", "alice", table.getAddressName("EP1"));
+
+		table.put("EP1", "alice", STATUS_DISCONNECTED);
+		assertNull("Disconnected endpoint shouldn't be reachable by address", table.getEndpointId("alice"));
+		assertNotNull("Disconnected endpoint keeps its state", table.get("EP1"));
+
+		table.put("EP2", "bob", STATUS_CONNECTED);
+		table.put("EP3", "bob", STATUS_INITIATED_FROM_HOST);
+		table.remove("EP2");
+		assertEquals("Removing the old endpoint mustn't unbind the address from the new one", "EP3", table.getEndpointId("bob"));
+	}
+
+	@Test
+	public void staleEpochIsRejected() {
+		ConnectionTable.Entry found = table.put("EP1", "alice", STATUS_FOUND);
+		ConnectionTable.Entry connected = table.putIfEpoch("EP1", found.epoch(), "alice", STATUS_CONNECTED);
+		assertNotNull("Update on the current epoch should apply", connected);
+		assertTrue("Epoch should increase", connected.epoch() > found.epoch());
+
+		assertNull("Update decided on an old epoch should be rejected",
+				table.putIfEpoch("EP1", found.epoch(), "alice", STATUS_DISCONNECTED));
+		assertTrue("Removal decided on an old epoch should be rejected", !table.removeIfEpoch("EP1", found.epoch()));
+		assertEquals("State should be unchanged", STATUS_CONNECTED, table.get("EP1").status());
+	}
+
+	@Test
+	public void connectedSnapshotIsRebuiltOnlyOnTransitions() {
+		table.put("EP1", "alice", STATUS_CONNECTED);
+		table.put("EP2", "bob", STATUS_FOUND);
+		List<String> snapshot = table.getConnectedAddressNames();
+		assertEquals("Only connected endpoints are listed", List.of("alice"), snapshot);
+
+		table.put("EP2", "bob", STATUS_INITIATED_FROM_HOST);
+		table.put("EP1", "alice", STATUS_CONNECTED);
+		assertSame("Non-connected transitions shouldn't rebuild the snapshot", snapshot, table.getConnectedAddressNames());
+
+		table.put("EP2", "bob", STATUS_CONNECTED);
+		assertEquals("Connection should update the snapshot", Set.of("alice", "bob"), new HashSet<>(table.getConnectedAddressNames()));
+		table.remove("EP1");
+		assertEquals("Removal should update the snapshot", List.of("bob"), table.getConnectedAddressNames());
+		assertEquals("Endpoint snapshot", List.of("EP2"), table.getConnectedEndpointIds());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotIsImmutable() {
+		table.put("EP1", "alice", STATUS_CONNECTED);
+		table.getConnectedAddressNames().clear();
+	}
+
+	@Test
+	public void concurrentTransitionsKeepIndicesConsistent() throws InterruptedException {
+		int endpoints = 64;
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < endpoints; i++) {
+			String endpointId = "EP" + i;
+			String addressName = "node-" + i;
+			pool.execute(() -> {
+				for (int round = 0; round < 100; round++) {
+					table.put(endpointId, addressName, STATUS_CONNECTED);
+					table.put(endpointId, addressName, STATUS_DISCONNECTED);
+				}
+				// Odd endpoints end up connected
+				if (endpointId.hashCode() % 2 != 0) {
+					table.put(endpointId, addressName, STATUS_CONNECTED);
+				}
+			});
+		}
+		pool.shutdown();
+		assertTrue("Updates should complete", pool.awaitTermination(30, TimeUnit.SECONDS));
+
+		int expected = 0;
+		for (int i = 0; i < endpoints; i++) {
+			String endpointId = "EP" + i;
+			boolean connected = endpointId.hashCode() % 2 != 0;
+			expected += connected ? 1 : 0;
+			assertEquals("Address index of " + endpointId, connected ? endpointId : null, table.getEndpointId("node-" + i));
+		}
+		assertEquals("Snapshot should list exactly the connected endpoints", expected, table.getConnectedEndpointIds().size());
+	}
+}
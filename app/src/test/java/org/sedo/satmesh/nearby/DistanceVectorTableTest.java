@@ -0,0 +1,121 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class DistanceVectorTableTest {
+
+	private static final int UNIT = 100;
+	private long now = 1_000_000L;
+	private final DistanceVectorTable table = new DistanceVectorTable("self", () -> now, 4, 60_000L);
+
+	private static DistanceVectorTable.Advertisement advertise(String destination, int sequenceNumber, int hopCount) {
+		return new DistanceVectorTable.Advertisement(destination, sequenceNumber, hopCount, hopCount * UNIT, null);
+	}
+
+	@Test
+	public void learnsRoutesAndKeepsTheCheapest() {
+		List<DistanceVectorTable.Update> updates = table.onAdvertisements("a", UNIT,
+				List.of(advertise("a", 10, 0), advertise("d", 20, 1)), true);
+		assertEquals(2, updates.size());
+		assertEquals(new DistanceVectorTable.Update("d", "a", 2, 2 * UNIT), updates.get(1));
+
+		// Same sequence number, longer path: ignored
+		assertTrue(table.onAdvertisements("b", UNIT, List.of(advertise("d", 20, 3)), false).isEmpty());
+		assertEquals("a", table.nextHop("d"));
+		// Same sequence number, cheaper path
+		table.onAdvertisements("b", UNIT / 2, List.of(advertise("d", 20, 1)), false);
+		assertEquals("b", table.nextHop("d"));
+		// Newer sequence number wins, even if more expensive
+		table.onAdvertisements("a", UNIT, List.of(advertise("d", 22, 2)), false);
+		assertEquals("a", table.nextHop("d"));
+		// Beyond the hop limit
+		assertTrue(table.onAdvertisements("a", UNIT, List.of(advertise("far", 2, 4)), false).isEmpty());
+		assertNull(table.nextHop("far"));
+	}
+
+	@Test
+	public void brokenRoutesPropagateWithANewerSequenceNumber() {
+		table.onAdvertisements("a", UNIT, List.of(advertise("a", 10, 0), advertise("d", 20, 1)), false);
+		table.drainChanges();
+
+		List<DistanceVectorTable.Update> updates = table.onNeighborLost("a");
+		assertEquals(2, updates.size());
+		assertNull("The route broke", updates.get(0).nextHop());
+		assertNull(table.nextHop("d"));
+		int brokenSequenceNumber = 0;
+		for (DistanceVectorTable.Advertisement advertisement : table.drainChanges()) {
+			if (advertisement.destination().equals("d")) {
+				brokenSequenceNumber = advertisement.sequenceNumber();
+			}
+		}
+		assertEquals("Odd, newer than the route", 21, brokenSequenceNumber);
+
+		// A stale advertisement can't restore the route: no count to infinity
+		assertTrue(table.onAdvertisements("b", UNIT, List.of(advertise("d", 20, 2)), false).isEmpty());
+		assertNull(table.nextHop("d"));
+		table.onAdvertisements("b", UNIT, List.of(advertise("d", 22, 2)), false);
+		assertEquals("b", table.nextHop("d"));
+
+		// A broken advertisement only breaks the routes through its sender
+		assertTrue(table.onAdvertisements("c", UNIT, List.of(advertise("d", 23, 1)), false).isEmpty());
+		assertEquals("b", table.nextHop("d"));
+		assertEquals(1, table.onAdvertisements("b", UNIT, List.of(advertise("d", 23, 1)), false).size());
+		assertNull(table.nextHop("d"));
+	}
+
+	@Test
+	public void fullBeaconsDropTheRoutesNoLongerAdvertised() {
+		table.onAdvertisements("a", UNIT, List.of(advertise("a", 10, 0), advertise("d", 20, 1)), true);
+		List<DistanceVectorTable.Update> updates = table.onAdvertisements("a", UNIT, List.of(advertise("a", 12, 0)), true);
+		assertEquals(List.of(new DistanceVectorTable.Update("d", null, 2, 2 * UNIT)), updates);
+		assertEquals("a", table.nextHop("a"));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void beaconsAreIncremental() {
+		List<DistanceVectorTable.Advertisement> initial = table.drainChanges();
+		assertEquals("Only the host is advertised at first", 1, initial.size());
+		assertEquals(0, initial.get(0).sequenceNumber() % 2);
+		assertFalse(table.hasChanges());
+
+		table.onAdvertisements("a", UNIT, List.of(advertise("a", 10, 0), advertise("d", 20, 1)), false);
+		table.drainChanges();
+		// Nothing new: nothing to send, the network is stable
+		table.onAdvertisements("a", UNIT, List.of(advertise("a", 10, 0), advertise("d", 20, 1)), false);
+		assertFalse(table.hasChanges());
+
+		table.onAdvertisements("a", UNIT, List.of(advertise("d", 22, 1)), false);
+		List<DistanceVectorTable.Advertisement> changes = table.drainChanges();
+		assertEquals(1, changes.size());
+		assertEquals("a", changes.get(0).nextHop());
+		assertEquals("The full beacon lists the host and its routes", 3, table.snapshot().size());
+	}
+
+	@Test
+	public void ownStaleSequenceNumbersAreOvertaken() {
+		int own = table.drainChanges().get(0).sequenceNumber();
+		table.onAdvertisements("a", UNIT, List.of(advertise("self", own + 100, 1)), false);
+		int next = table.drainChanges().get(0).sequenceNumber();
+		assertTrue("Newer than the advertised one", DistanceVectorTable.isNewer(next, own + 100));
+		assertEquals(0, next % 2);
+		assertNull("No route toward the host itself", table.nextHop("self"));
+	}
+
+	@Test
+	public void forgetsBrokenRoutesAfterTheirRetention() {
+		table.onAdvertisements("a", UNIT, List.of(advertise("d", 20, 1)), false);
+		table.onNeighborLost("a");
+		assertEquals(2, table.snapshot().size());
+		now += 60_001L;
+		assertEquals(1, table.snapshot().size());
+		assertTrue("Wraps around", DistanceVectorTable.isNewer(Integer.MIN_VALUE, Integer.MAX_VALUE));
+	}
+}
@@ -0,0 +1,32 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ExpandingRingTest {
+
+	private final ExpandingRing ring = new ExpandingRing(2, 10, 1_000L, 2);
+
+	@Test
+	public void ringsDoubleUpToTheMaximumRadius() {
+		assertEquals(2, ring.firstRadius("d"));
+		assertEquals(4, ring.nextRadius(2));
+		assertEquals(8, ring.nextRadius(4));
+		assertEquals("Capped", 10, ring.nextRadius(8));
+		assertEquals("Last ring", 0, ring.nextRadius(10));
+		assertEquals(2, ring.nextRadius(1));
+		assertEquals("Round trip up to the destination", 6_000L, ring.timeoutMillis(2));
+	}
+
+	@Test
+	public void startsAtTheLearnedHopCount() {
+		ring.learn("d", 5);
+		assertEquals(5, ring.firstRadius("d"));
+		ring.learn("neighbor", 0);
+		assertEquals("A ring crosses a relay at least", 1, ring.firstRadius("neighbor"));
+		ring.learn("far", 42);
+		assertEquals(10, ring.firstRadius("far"));
+		assertEquals("Least recently used forgotten", 2, ring.firstRadius("d"));
+	}
+}
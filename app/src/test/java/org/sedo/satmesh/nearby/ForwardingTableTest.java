@@ -0,0 +1,44 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ForwardingTableTest {
+
+	private final ForwardingTable table = new ForwardingTable();
+
+	@Test
+	public void hopsAreKeyedByUsageAndDirection() {
+		ForwardingTable.Hop forward = table.put("route", "route", false, "bob");
+		table.put("route", "route", true, "alice");
+		table.put("route", "reuse", true, "carol");
+
+		assertSame(forward, table.lookup("route", "route", false));
+		assertEquals("alice", table.lookup("route", "route", true).addressName);
+		assertEquals("Each usage has its own backward hop", "carol", table.lookup("route", "reuse", true).addressName);
+		assertNull("Unknown usage", table.lookup("route", "reuse", false));
+		assertNull("Unknown route", table.lookup("other", "route", false));
+
+		table.removeRoute("route");
+		assertNull("All the usages go with the route", table.lookup("route", "reuse", true));
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void endpointsAreUnboundOnDisconnection() {
+		ForwardingTable.Hop toBob = table.put("route-1", "route-1", false, "bob");
+		ForwardingTable.Hop toAlice = table.put("route-2", "route-2", false, "alice");
+		toBob.endpointId = "EP1";
+		toAlice.endpointId = "EP2";
+
+		table.unbindEndpoint("bob");
+		ForwardingTable.Hop hop = table.lookup("route-1", "route-1", false);
+		assertNotNull("The hop survives the disconnection", hop);
+		assertNull("Its endpoint doesn't", hop.endpointId);
+		assertEquals("Other neighbors keep theirs", "EP2", toAlice.endpointId);
+	}
+}
@@ -0,0 +1,498 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Room;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.nearby.connection.Payload;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.sedo.satmesh.AppDatabase;
+import org.sedo.satmesh.model.Node;
+import org.sedo.satmesh.nearby.codec.EnvelopeCodec;
+import org.sedo.satmesh.nearby.codec.PeerCapabilities;
+import org.sedo.satmesh.nearby.codec.RoutingWireCodec;
+import org.sedo.satmesh.nearby.data.DeviceConnectionListener;
+import org.sedo.satmesh.nearby.data.PayloadListener;
+import org.sedo.satmesh.nearby.data.RouteRepository;
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.nearby.transport.LoopbackMeshNetwork;
+import org.sedo.satmesh.proto.NearbyMessage;
+import org.sedo.satmesh.proto.NearbyMessageBody;
+import org.sedo.satmesh.proto.NearbyMessageType;
+import org.sedo.satmesh.proto.RouteDestroyMessage;
+import org.sedo.satmesh.proto.RouteRequestMessage;
+import org.sedo.satmesh.proto.RouteResponseMessage;
+import org.sedo.satmesh.proto.RoutedMessage;
+import org.sedo.satmesh.proto.TextMessage;
+import org.sedo.satmesh.ui.data.NodeRepository;
+import org.sedo.satmesh.ui.data.NodeTransientStateRepository;
+import org.whispersystems.libsignal.protocol.CiphertextMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs route discovery and routed traffic over meshes of 50+ nodes on top of a
+ * {@link LoopbackMeshNetwork}. Each node runs its own {@link NearbyManager} and
+ * {@link NearbyRouteManager}, the latter keeping its routing tables in its own in-memory database.
+ * <p>
+ * The nodes stand for the {@link NearbySignalMessenger}: they hand the routing frames to their
+ * route manager, and their encryption is the identity.
+ * </p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@org.robolectric.annotation.Config(sdk = {Build.VERSION_CODES.UPSIDE_DOWN_CAKE})
+public class MultiNodeMeshTest {
+
+	private static final long TIMEOUT_SECONDS = 90L;
+	// Radius of the last ring of the discoveries, the longest route the route manager keeps
+	private static final int MAX_RADIUS = NearbyRouteManager.DEFAULT_ROUTE_HOPS;
+	// Messages sent on each flow, the first one waiting for the discovery of the route
+	private static final int MESSAGES = 200;
+	// Messages handed to the first hop and not yet acknowledged, below the queue bound of the flow control
+	private static final int SOURCE_WINDOW = 32;
+	private static final LoopbackMeshNetwork.LinkProfile LINK = new LoopbackMeshNetwork.LinkProfile(2L, 0d, 0L);
+
+	private static void await(CountDownLatch latch, String message) throws InterruptedException {
+		assertTrue(message + ", " + latch.getCount() + " missing", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	private static NearbyMessageBody text(int index) {
+		TextMessage message = TextMessage.newBuilder()
+				.setContent("message-" + index).setTimestamp(System.currentTimeMillis()).setPayloadId(index).build();
+		return NearbyMessageBody.newBuilder()
+				.setMessageTypeValue(NearbyMessageType.ENCRYPTED_MESSAGE_VALUE)
+				.setBinaryData(message.toByteString()).build();
+	}
+
+	/**
+	 * Returns the length of the shortest path between two nodes of the network.
+	 */
+	private static int distance(LoopbackMeshNetwork network, int from, int to) {
+		int[] hops = new int[network.size()];
+		Arrays.fill(hops, -1);
+		hops[from] = 0;
+		Queue<Integer> queue = new ArrayDeque<>();
+		queue.add(from);
+		while (!queue.isEmpty()) {
+			int node = queue.remove();
+			for (int neighbor : network.neighborsOf(node)) {
+				if (hops[neighbor] < 0) {
+					hops[neighbor] = hops[node] + 1;
+					queue.add(neighbor);
+				}
+			}
+		}
+		return hops[to];
+	}
+
+	/**
+	 * Returns the longest a discovery may take toward a destination this far: the timeouts of the
+	 * rings too small to reach it, then the timeout of the ring reaching it.
+	 */
+	private static long discoveryBoundMillis(int distance) {
+		ExpandingRing ring = new ExpandingRing(ExpandingRing.DEFAULT_INITIAL_RADIUS, MAX_RADIUS,
+				ExpandingRing.DEFAULT_HOP_TIMEOUT_MILLIS, ExpandingRing.DEFAULT_MAX_LEARNED);
+		long bound = 0L;
+		int radius = ExpandingRing.DEFAULT_INITIAL_RADIUS;
+		while (radius < distance && radius < MAX_RADIUS) {
+			bound += ring.timeoutMillis(radius);
+			radius = ring.nextRadius(radius);
+		}
+		return bound + ring.timeoutMillis(radius);
+	}
+
+	/**
+	 * Sends {@link #MESSAGES} messages on each flow, all the flows at once: the first message
+	 * discovers the route, the others go through it. Checks the discovery latency and the delivery
+	 * ratio measured on each flow.
+	 *
+	 * @param pairs the source and the destination of each flow, as indexes of nodes
+	 */
+	private static void discoverAndStream(LoopbackMeshNetwork network, int[][] pairs) throws InterruptedException {
+		List<MeshNode> nodes = start(network);
+		try {
+			List<Flow> flows = new ArrayList<>(pairs.length);
+			for (int[] pair : pairs) {
+				flows.add(new Flow(nodes.get(pair[0]), nodes.get(pair[1]), distance(network, pair[0], pair[1])));
+			}
+
+			for (Flow flow : flows) {
+				flow.discoveryStart = System.nanoTime();
+				flow.send(0, TransmissionCallback.NULL_CALLBACK);
+			}
+			for (Flow flow : flows) {
+				await(flow.routeFound, "The route " + flow + " should be discovered");
+				long latencyMillis = TimeUnit.NANOSECONDS.toMillis(flow.discoveryEnd - flow.discoveryStart);
+				long boundMillis = discoveryBoundMillis(flow.distance);
+				assertTrue("Route " + flow + " discovered in " + latencyMillis
+						+ " ms, beyond its expanding ring schedule of " + boundMillis + " ms", latencyMillis <= boundMillis);
+			}
+			for (Flow flow : flows) {
+				await(flow.firstDelivery, "The message waiting for the route " + flow + " should be delivered");
+			}
+
+			long requestsBefore = routeRequests(nodes);
+			long payloadsBefore = network.getDeliveredPayloads();
+			long streamStart = System.nanoTime();
+			for (int i = 1; i < MESSAGES; i++) {
+				for (Flow flow : flows) {
+					assertTrue("The first hop of " + flow + " should acknowledge the messages",
+							flow.window.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+					flow.send(i, flow.firstHop);
+				}
+			}
+			for (Flow flow : flows) {
+				await(flow.deliveries, "All the messages of " + flow + " should be delivered");
+			}
+			long streamMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - streamStart));
+
+			long expectedRelays = 0L;
+			for (Flow flow : flows) {
+				assertEquals("No message of " + flow + " is lost on the first hop", 0, flow.failures.get());
+				double deliveryRatio = flow.delivered.get() / (double) flow.sent.get();
+				assertEquals("Delivery ratio of " + flow + ", " + flow.delivered.get() + " of " + flow.sent.get()
+						+ " messages", 1d, deliveryRatio, 0d);
+				expectedRelays += (long) (MESSAGES - 1) * flow.distance;
+			}
+			long relayed = network.getDeliveredPayloads() - payloadsBefore;
+			assertTrue("Each message crosses every link of its route, " + relayed + " payloads in " + streamMillis
+					+ " ms (" + (flows.size() * (MESSAGES - 1) * 1000L / streamMillis) + " messages/s)",
+					relayed >= expectedRelays);
+			assertEquals("No route request is sent once the routes are discovered", requestsBefore, routeRequests(nodes));
+		} finally {
+			stop(nodes, network);
+		}
+	}
+
+	private static long routeRequests(List<MeshNode> nodes) {
+		long requests = 0L;
+		for (MeshNode node : nodes) {
+			requests += node.routeRequests.get();
+		}
+		return requests;
+	}
+
+	/**
+	 * Creates a node over each transport of the network and connects all the linked nodes.
+	 */
+	private static List<MeshNode> start(LoopbackMeshNetwork network) throws InterruptedException {
+		Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		List<String> addressNames = new ArrayList<>(network.size());
+		for (int i = 0; i < network.size(); i++) {
+			addressNames.add(String.format(Locale.ROOT, "node-%03d", i));
+		}
+		int links = network.linkCount();
+		CountDownLatch connected = new CountDownLatch(2 * links);
+		List<MeshNode> nodes = new ArrayList<>(network.size());
+		for (int i = 0; i < network.size(); i++) {
+			nodes.add(new MeshNode(context, network, i, addressNames, connected));
+		}
+		nodes.forEach(node -> node.manager.startAdvertising());
+		nodes.forEach(node -> node.manager.startDiscovery());
+		await(connected, "All the " + links + " links should be connected on both sides");
+		for (int i = 0; i < nodes.size(); i++) {
+			assertEquals("Connected neighbors of node " + i, network.neighborsOf(i).size(),
+					nodes.get(i).manager.getConnectedEndpointsAddressNames().size());
+		}
+		return nodes;
+	}
+
+	private static void stop(List<MeshNode> nodes, LoopbackMeshNetwork network) throws InterruptedException {
+		nodes.forEach(node -> node.manager.stopNearby());
+		network.shutdown();
+		// Each node waits for its pending tasks and delayed state removals: they are awaited together
+		List<Thread> shutdowns = new ArrayList<>(nodes.size());
+		for (MeshNode node : nodes) {
+			Thread shutdown = new Thread(node::close);
+			shutdown.start();
+			shutdowns.add(shutdown);
+		}
+		for (Thread shutdown : shutdowns) {
+			shutdown.join();
+		}
+	}
+
+	@Test
+	public void concurrentFlowsOverLineOf50Nodes() throws InterruptedException {
+		// Routes as long as the route manager keeps, end to end along the line
+		discoverAndStream(LoopbackMeshNetwork.line(50, LINK, 1L),
+				new int[][]{{0, 10}, {10, 20}, {20, 30}, {30, 40}, {49, 39}});
+	}
+
+	@Test
+	public void flowsAcrossGridOf64Nodes() throws InterruptedException {
+		// From a corner of the 8x8 grid toward nodes 2, 5, 8 and 10 hops away
+		discoverAndStream(LoopbackMeshNetwork.grid(8, 8, LINK, 1L),
+				new int[][]{{0, 9}, {0, 19}, {0, 36}, {0, 59}});
+	}
+
+	/**
+	 * Identity encryption: the ciphertext is the plain message.
+	 */
+	private record PlainCiphertext(byte[] data) implements CiphertextMessage {
+
+		@Override
+		public byte[] serialize() {
+			return data;
+		}
+
+		@Override
+		public int getType() {
+			return WHISPER_TYPE;
+		}
+	}
+
+	/**
+	 * The messages a node sends to another one, and what the run measures of them.
+	 */
+	private static final class Flow {
+
+		final MeshNode source;
+		final MeshNode destination;
+		final int distance;
+		final CountDownLatch routeFound = new CountDownLatch(1);
+		final CountDownLatch firstDelivery = new CountDownLatch(1);
+		final CountDownLatch deliveries = new CountDownLatch(MESSAGES);
+		final AtomicInteger sent = new AtomicInteger();
+		final AtomicInteger delivered = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final Semaphore window = new Semaphore(SOURCE_WINDOW);
+		final TransmissionCallback firstHop = new TransmissionCallback() {
+			@Override
+			public void onSuccess(@NonNull Payload payload) {
+				window.release();
+			}
+
+			@Override
+			public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+				failures.incrementAndGet();
+				window.release();
+			}
+		};
+		volatile long discoveryStart;
+		volatile long discoveryEnd;
+
+		Flow(MeshNode source, MeshNode destination, int distance) {
+			this.source = source;
+			this.destination = destination;
+			this.distance = distance;
+			source.outgoingFlows.put(destination.addressName, this);
+			destination.incomingFlows.put(source.addressName, this);
+		}
+
+		void send(int index, TransmissionCallback firstHopCallback) {
+			sent.incrementAndGet();
+			source.manager.sendRoutableNearbyMessageInternal(text(index), destination.addressName,
+					TransmissionCallback.NULL_CALLBACK, firstHopCallback, null);
+		}
+
+		synchronized void onRouteFound() {
+			if (routeFound.getCount() > 0) {
+				discoveryEnd = System.nanoTime();
+				routeFound.countDown();
+			}
+		}
+
+		void onDelivered() {
+			delivered.incrementAndGet();
+			firstDelivery.countDown();
+			deliveries.countDown();
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			return source.addressName + " -> " + destination.addressName + " (" + distance + " hops)";
+		}
+	}
+
+	/**
+	 * A node of the mesh: its {@link NearbyManager}, its {@link NearbyRouteManager} and the
+	 * services they're bound to.
+	 */
+	private static final class MeshNode implements MeshServices, DeviceConnectionListener, PayloadListener {
+
+		final String addressName;
+		final NodeTransientStateRepository transientStates = new NodeTransientStateRepository();
+		final NearbyManager manager;
+		final NearbyRouteManager routeManager;
+		final AtomicLong routeRequests = new AtomicLong();
+		// Flows by destination, and by source
+		final Map<String, Flow> outgoingFlows = new ConcurrentHashMap<>();
+		final Map<String, Flow> incomingFlows = new ConcurrentHashMap<>();
+		private final AppDatabase database;
+		private final ExecutorService executor = Executors.newSingleThreadExecutor();
+		private final CountDownLatch connected;
+		private final RoutingWireCodec codec = new RoutingWireCodec();
+
+		/**
+		 * @param addressNames the address names of all the nodes, stored in this order in each
+		 *                     database so that a node has the same local ID in all of them
+		 */
+		MeshNode(Context context, LoopbackMeshNetwork network, int index, List<String> addressNames, CountDownLatch connected) {
+			this.addressName = addressNames.get(index);
+			this.connected = connected;
+			this.database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).allowMainThreadQueries().build();
+			for (String name : addressNames) {
+				Node node = new Node();
+				node.setAddressName(name);
+				database.nodeDao().insert(node);
+			}
+			this.manager = new NearbyManager(network.transport(index), addressName, transientStates);
+			this.routeManager = new NearbyRouteManager(manager, this, context, executor, addressName,
+					new PeerCapabilities(), new NodeRepository(database), new RouteRepository(database));
+			manager.bindServices(this);
+			manager.addDeviceConnectionListener(this);
+			manager.addPayloadListener(this);
+		}
+
+		void close() {
+			routeManager.shutdown();
+			executor.shutdown();
+			try {
+				executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			database.close();
+			transientStates.shutdown();
+		}
+
+		@NonNull
+		@Override
+		public RoutingWireCodec.Encoded encodeForNeighbor(@NonNull NearbyMessageBody plainMessageBody, @NonNull String neighborAddressName) {
+			return codec.encode(neighborAddressName, plainMessageBody, false);
+		}
+
+		@NonNull
+		@Override
+		public CiphertextMessage encrypt(@NonNull byte[] plainMessage, @NonNull String recipientAddressName) {
+			return new PlainCiphertext(plainMessage);
+		}
+
+		@Nullable
+		@Override
+		public byte[] decrypt(@NonNull byte[] cipherData, @NonNull String senderAddressName) {
+			return cipherData;
+		}
+
+		@Override
+		public void sendThroughRoute(
+				@NonNull String recipientAddressName, @NonNull NearbyMessageBody plainMessageBody,
+				@NonNull TransmissionCallback routeTransmissionCallback, @Nullable Consumer<Boolean> onDiscoveryInitiatedCallback) {
+			routeManager.discoverRouteIfNeeded(recipientAddressName,
+					routeWithUsage -> routeManager.sendMessageThroughRoute(
+							recipientAddressName, addressName, routeWithUsage, plainMessageBody, routeTransmissionCallback),
+					onDiscoveryInitiatedCallback, addressName);
+		}
+
+		@Override
+		public void onRouteFound(@NonNull String destinationAddressName) {
+			Flow flow = outgoingFlows.get(destinationAddressName);
+			if (flow != null) {
+				flow.onRouteFound();
+			}
+		}
+
+		@Override
+		public void onRouteNotFound(@NonNull String destinationAddressName) {
+		}
+
+		@Override
+		public void onRoutedMessageReceived(
+				@NonNull String originalSenderAddressName, @NonNull NearbyMessageBody messageBody, long payloadId) {
+			Flow flow = incomingFlows.get(originalSenderAddressName);
+			if (flow != null) {
+				flow.onDelivered();
+			}
+		}
+
+		@Override
+		public void onMessageReceived(@NonNull String endpointId, @NonNull NearbyMessage message, long payloadId) {
+			String from = manager.getAddressNameForEndpoint(endpointId);
+			if (from == null || message.getPayloadContentCase() != NearbyMessage.PayloadContentCase.BODY) {
+				return;
+			}
+			try {
+				NearbyMessageBody body = NearbyMessageBody.parseFrom(decrypt(message.getBody().toByteArray(), from));
+				switch (body.getMessageTypeValue()) {
+					case NearbyMessageType.ROUTE_DISCOVERY_REQ_VALUE -> {
+						routeRequests.incrementAndGet();
+						routeManager.handleIncomingRouteRequest(from,
+								codec.decode(from, RouteRequestMessage.parseFrom(body.getBinaryData())), addressName);
+					}
+					case NearbyMessageType.ROUTE_DISCOVERY_RESP_VALUE -> routeManager.handleIncomingRouteResponse(from,
+							codec.decode(RouteResponseMessage.parseFrom(body.getBinaryData())));
+					case NearbyMessageType.ROUTED_MESSAGE_VALUE -> routeManager.handleIncomingRoutedMessage(
+							codec.decode(from, EnvelopeCodec.parseAliased(RoutedMessage.parser(), body.getBinaryData())),
+							addressName, payloadId);
+					case NearbyMessageType.ROUTE_DESTROY_VALUE -> routeManager.handleIncomingRouteDestroyMessage(
+							codec.decode(RouteDestroyMessage.parseFrom(body.getBinaryData())), from);
+					default -> {
+					}
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException("Frame from " + from + " not handled", e);
+			}
+		}
+
+		@Override
+		public void onConnectionInitiated(String endpointId, String deviceAddressName) {
+			manager.acceptConnection(endpointId);
+		}
+
+		@Override
+		public void onDeviceConnected(String endpointId, String deviceAddressName) {
+			codec.reset(deviceAddressName);
+			connected.countDown();
+		}
+
+		@Override
+		public void onConnectionFailed(@NonNull String endpointId, String deviceAddressName, Status status) {
+		}
+
+		@Override
+		public void onDeviceDisconnected(@NonNull String endpointId, @NonNull String deviceAddressName) {
+			codec.reset(deviceAddressName);
+			routeManager.onNeighborDisconnected(deviceAddressName);
+		}
+
+		@Override
+		public void onEndpointFound(@NonNull String endpointId, @NonNull String deviceAddressName) {
+			// A single side requests the connection
+			if (addressName.compareTo(deviceAddressName) < 0) {
+				manager.requestConnection(endpointId, deviceAddressName);
+			}
+		}
+
+		@Override
+		public void onEndpointLost(@NonNull String endpointId, @NonNull String deviceAddressName) {
+		}
+	}
+}
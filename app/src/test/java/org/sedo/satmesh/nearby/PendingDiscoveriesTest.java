@@ -0,0 +1,101 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sedo.satmesh.model.rt.RouteEntry;
+import org.sedo.satmesh.nearby.data.RouteWithUsage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PendingDiscoveriesTest {
+
+	private static final long TIMEOUT = 1_000L;
+	private final PendingDiscoveries discoveries = new PendingDiscoveries(3, TIMEOUT);
+	private final List<String> events = new ArrayList<>();
+
+	private PendingDiscoveries.Waiter waiter(String name) {
+		return new PendingDiscoveries.Waiter(route -> events.add(name + " found"),
+				initiated -> events.add(name + (initiated ? " initiated" : " failed")));
+	}
+
+	@Test
+	public void coalescesTheDiscoveriesOfADestination() {
+		assertEquals(PendingDiscoveries.Role.LEAD, discoveries.join("d", waiter("a"), 0));
+		assertEquals(PendingDiscoveries.Role.WAITING, discoveries.join("d", waiter("b"), 10));
+		assertEquals("Another destination", PendingDiscoveries.Role.LEAD, discoveries.join("e", waiter("x"), 10));
+
+		for (PendingDiscoveries.Waiter waiter : discoveries.onInitiated("d", true)) {
+			waiter.onInitiated().accept(true);
+		}
+		assertEquals(List.of("a initiated", "b initiated"), events);
+		assertEquals(PendingDiscoveries.Role.INITIATED, discoveries.join("d", waiter("c"), 20));
+		assertEquals("Full", PendingDiscoveries.Role.REJECTED, discoveries.join("d", waiter("z"), 20));
+
+		events.clear();
+		RouteWithUsage route = new RouteWithUsage(new RouteEntry(), null, null);
+		for (PendingDiscoveries.Waiter waiter : discoveries.complete("d")) {
+			waiter.onRouteFound().accept(route);
+		}
+		assertEquals(List.of("a found", "b found", "c found"), events);
+		assertFalse(discoveries.isPending("d"));
+		assertTrue(discoveries.isPending("e"));
+	}
+
+	@Test
+	public void failedOrStaleDiscoveriesAreReplaced() {
+		discoveries.join("d", waiter("a"), 0);
+		assertEquals(1, discoveries.onInitiated("d", false).size());
+		assertFalse("Over once it reached no neighbor", discoveries.isPending("d"));
+
+		assertEquals(PendingDiscoveries.Role.LEAD, discoveries.join("d", waiter("b"), 100));
+		discoveries.onInitiated("d", true);
+		assertEquals(PendingDiscoveries.Role.INITIATED, discoveries.join("d", waiter("c"), 100 + TIMEOUT));
+		assertEquals("Timed out: led again", PendingDiscoveries.Role.LEAD, discoveries.join("d", waiter("e"), 101 + TIMEOUT));
+		assertEquals("The previous waiters are kept", 3, discoveries.complete("d").size());
+		assertTrue(discoveries.complete("d").isEmpty());
+	}
+
+	@Test
+	public void takeoverNotifiesOnlyTheNewWaiters() {
+		discoveries.join("d", waiter("a"), 0);
+		discoveries.onInitiated("d", true).forEach(waiter -> waiter.onInitiated().accept(true));
+		assertEquals(PendingDiscoveries.Role.INITIATED, discoveries.join("d", waiter("b"), 10));
+
+		assertEquals("Timed out: led again", PendingDiscoveries.Role.LEAD, discoveries.join("d", waiter("c"), 11 + TIMEOUT));
+		events.clear();
+		for (PendingDiscoveries.Waiter waiter : discoveries.onInitiated("d", true)) {
+			waiter.onInitiated().accept(true);
+		}
+		assertEquals("The previous waiters were notified by the first discovery", List.of("c initiated"), events);
+		assertTrue("Notified once", discoveries.onInitiated("d", true).isEmpty());
+
+		assertEquals("Timed out again", PendingDiscoveries.Role.LEAD, discoveries.join("d", waiter("e"), 12 + 2 * TIMEOUT));
+		events.clear();
+		for (PendingDiscoveries.Waiter waiter : discoveries.onInitiated("d", false)) {
+			waiter.onInitiated().accept(false);
+		}
+		assertEquals("A failure is only reported to the waiters not notified yet", List.of("e failed"), events);
+		assertFalse(discoveries.isPending("d"));
+	}
+
+	@Test
+	public void onlyTheCurrentRingIsExpanded() {
+		discoveries.join("d", waiter("a"), 0);
+		assertEquals("No ring yet", 0, discoveries.endRing("d", "r1"));
+		discoveries.onRingStarted("d", "r1", 2, 0);
+		assertEquals(1, discoveries.onInitiated("d", true).size());
+		assertEquals(2, discoveries.endRing("d", "r1"));
+		assertEquals("Expanded once", -1, discoveries.endRing("d", "r1"));
+
+		discoveries.onRingStarted("d", "r2", 4, 10);
+		assertTrue("Initiated on the first ring only", discoveries.onInitiated("d", true).isEmpty());
+		assertEquals("Former ring", -1, discoveries.endRing("d", "r1"));
+		assertEquals(4, discoveries.endRing("d", "r2"));
+		discoveries.complete("d");
+		assertEquals("Over", 0, discoveries.endRing("d", "r2"));
+	}
+}
@@ -0,0 +1,167 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+public class RebroadcastSuppressorTest {
+
+	private static final long TTL = 10_000L;
+
+	private static RebroadcastSuppressor suppressor(RebroadcastSuppressor.Policy policy) {
+		return new RebroadcastSuppressor(policy, 3, 300L, 2, new Random(1));
+	}
+
+	/**
+	 * Floods a request from node 0 over a random geometric graph: the nodes are spread on a unit
+	 * square and linked below the given range. Each send takes 20 to 60 ms.
+	 *
+	 * @return the number of request sends and the number of nodes reached
+	 */
+	private static int[] simulate(RebroadcastSuppressor.Policy policy, int nodes, double range, long seed) {
+		Random random = new Random(seed);
+		double[][] positions = new double[nodes][2];
+		for (double[] position : positions) {
+			position[0] = random.nextDouble();
+			position[1] = random.nextDouble();
+		}
+		List<List<String>> neighbors = new ArrayList<>();
+		RebroadcastSuppressor[] suppressors = new RebroadcastSuppressor[nodes];
+		for (int i = 0; i < nodes; i++) {
+			List<String> list = new ArrayList<>();
+			for (int j = 0; j < nodes; j++) {
+				if (i != j && Math.hypot(positions[i][0] - positions[j][0], positions[i][1] - positions[j][1]) < range) {
+					list.add("n" + j);
+				}
+			}
+			neighbors.add(list);
+			suppressors[i] = new RebroadcastSuppressor(policy, RebroadcastSuppressor.DEFAULT_COUNTER_THRESHOLD,
+					RebroadcastSuppressor.DEFAULT_MAX_ASSESSMENT_DELAY_MILLIS, 16, new Random(seed + i));
+		}
+		// {time, kind (0: receive, 1: conclude), node, sender, index of the listed neighbors}
+		PriorityQueue<long[]> events = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+		List<List<Integer>> lists = new ArrayList<>();
+		boolean[] reached = new boolean[nodes];
+		reached[0] = true;
+		int sends = 0;
+		for (String neighbor : neighbors.get(0)) {
+			lists.add(suppressors[0].listedNeighbors(neighbors.get(0)));
+			events.add(new long[]{20 + random.nextInt(40), 0, Integer.parseInt(neighbor.substring(1)), 0, lists.size() - 1});
+			sends++;
+		}
+		while (!events.isEmpty()) {
+			long[] event = events.poll();
+			int node = (int) event[2];
+			String sender = "n" + event[3];
+			Set<String> skipped = Collections.emptySet();
+			if (event[1] == 0) {
+				List<Integer> listed = lists.get((int) event[4]);
+				if (reached[node]) {
+					suppressors[node].onDuplicate("r", sender, listed);
+					continue;
+				}
+				reached[node] = true;
+				if (policy != RebroadcastSuppressor.Policy.FLOOD) {
+					long delay = suppressors[node].begin("r", sender, listed);
+					events.add(new long[]{event[0] + delay, 1, node, event[3], -1});
+					continue;
+				}
+			} else {
+				RebroadcastSuppressor.Decision decision = suppressors[node].conclude("r", neighbors.get(node), TTL, event[0]);
+				if (decision.suppressed()) {
+					continue;
+				}
+				skipped = decision.skipped();
+			}
+			List<String> targets = new ArrayList<>();
+			for (String neighbor : neighbors.get(node)) {
+				if (!neighbor.equals(sender) && !skipped.contains(neighbor)) {
+					targets.add(neighbor);
+				}
+			}
+			lists.add(suppressors[node].listedNeighbors(targets));
+			for (String target : targets) {
+				events.add(new long[]{event[0] + 20 + random.nextInt(40), 0, Integer.parseInt(target.substring(1)), node, lists.size() - 1});
+				sends++;
+			}
+		}
+		int reachedCount = 0;
+		for (boolean r : reached) {
+			reachedCount += r ? 1 : 0;
+		}
+		return new int[]{sends, reachedCount};
+	}
+
+	@Test
+	public void counterPolicyDropsRequestsHeardFromSeveralNeighbors() {
+		RebroadcastSuppressor suppressor = suppressor(RebroadcastSuppressor.Policy.COUNTER);
+		long delay = suppressor.begin("r", "a", List.of());
+		assertTrue("Jittered", delay >= 0 && delay < 300L);
+		assertTrue(suppressor.onDuplicate("r", "b", List.of()));
+		RebroadcastSuppressor.Decision decision = suppressor.conclude("r", List.of("a", "b", "c"), TTL, 0);
+		assertFalse("Heard twice only", decision.suppressed());
+		assertEquals("Not sent back to the neighbors holding it", Set.of("a", "b"), decision.skipped());
+
+		suppressor.begin("s", "a", List.of());
+		suppressor.onDuplicate("s", "b", List.of());
+		suppressor.onDuplicate("s", "c", List.of());
+		assertTrue(suppressor.conclude("s", List.of("a", "b", "c", "d"), TTL, 0).suppressed());
+		assertTrue("Its next copies are duplicates", suppressor.isSuppressed("s", TTL));
+		assertFalse("Until its max_ttl", suppressor.isSuppressed("s", TTL + 1));
+		assertFalse("Not assessed", suppressor.onDuplicate("s", "e", List.of()));
+	}
+
+	@Test
+	public void coveragePolicyDropsRequestsHeldByAllTheNeighbors() {
+		RebroadcastSuppressor suppressor = suppressor(RebroadcastSuppressor.Policy.COVERAGE);
+		assertEquals(List.of(RebroadcastSuppressor.hash("b")), suppressor.listedNeighbors(List.of("b")));
+		suppressor.begin("r", "a", List.of(RebroadcastSuppressor.hash("b")));
+		RebroadcastSuppressor.Decision decision = suppressor.conclude("r", List.of("a", "b", "c"), TTL, 0);
+		assertFalse(decision.suppressed());
+		assertEquals(Set.of("a", "b"), decision.skipped());
+
+		suppressor.begin("s", "a", List.of(RebroadcastSuppressor.hash("b")));
+		suppressor.onDuplicate("s", "c", List.of(RebroadcastSuppressor.hash("d")));
+		assertTrue(suppressor.conclude("s", List.of("a", "b", "c", "d"), TTL, 0).suppressed());
+
+		suppressor.begin("t", "a", List.of());
+		assertFalse("A dead end answers it found no route", suppressor.conclude("t", List.of("a"), TTL, 0).suppressed());
+		assertTrue("Bounded", suppressor.isSuppressed("s", 0));
+		suppressor.begin("u", "a", List.of(RebroadcastSuppressor.hash("b")));
+		suppressor.conclude("u", List.of("a", "b"), TTL, 0);
+		suppressor.begin("v", "a", List.of(RebroadcastSuppressor.hash("b")));
+		suppressor.conclude("v", List.of("a", "b"), TTL, 0);
+		assertFalse("The eldest is forgotten", suppressor.isSuppressed("s", 0));
+	}
+
+	@Test
+	public void suppressionCutsTheRedundantSendsOfADenseFlood() {
+		int[] flood = new int[2];
+		int[] counter = new int[2];
+		int[] coverage = new int[2];
+		for (long seed = 0; seed < 10; seed++) {
+			int[] result = simulate(RebroadcastSuppressor.Policy.FLOOD, 60, 0.3, seed);
+			flood[0] += result[0];
+			flood[1] += result[1];
+			result = simulate(RebroadcastSuppressor.Policy.COUNTER, 60, 0.3, seed);
+			counter[0] += result[0];
+			counter[1] += result[1];
+			result = simulate(RebroadcastSuppressor.Policy.COVERAGE, 60, 0.3, seed);
+			coverage[0] += result[0];
+			coverage[1] += result[1];
+		}
+		assertTrue("Counter-based: " + counter[0] + " sends against " + flood[0], counter[0] < flood[0] * 0.7);
+		assertTrue("Coverage-based: " + coverage[0] + " sends against " + flood[0], coverage[0] < flood[0] / 2);
+		assertTrue("Reach of the counter-based policy: " + counter[1] + " against " + flood[1], counter[1] >= flood[1] * 0.95);
+		assertEquals("The coverage-based policy reaches every node", flood[1], coverage[1]);
+	}
+}
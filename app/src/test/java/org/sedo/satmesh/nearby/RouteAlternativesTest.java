@@ -0,0 +1,95 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sedo.satmesh.nearby.link.LinkQualityMonitor;
+
+public class RouteAlternativesTest {
+
+	private static final long DESTINATION = 7L;
+	private static final long PRIMARY_HOP = 1L;
+	private static final int UNIT = LinkQualityMonitor.LINK_COST_UNIT;
+	private final RouteAlternatives alternatives = new RouteAlternatives(3);
+
+	@Test
+	public void keepsTheLateResponsesOfTheDiscovery() {
+		assertFalse("Unknown discovery", alternatives.offer("route", 2L, 3, 3 * UNIT, 0L));
+		alternatives.onDiscoveryCompleted("route", DESTINATION, PRIMARY_HOP, 1_000L);
+		assertFalse("The route in use", alternatives.offer("route", PRIMARY_HOP, 2, 2 * UNIT, 0L));
+		assertTrue(alternatives.offer("route", 2L, 4, 4 * UNIT, 0L));
+		assertFalse("Already known", alternatives.offer("route", 2L, 4, 4 * UNIT, 0L));
+		assertTrue(alternatives.offer("route", 3L, 3, 3 * UNIT, 0L));
+		assertFalse("k routes at most, the longest is left out", alternatives.offer("route", 4L, 6, 6 * UNIT, 0L));
+		assertEquals(2, alternatives.count(DESTINATION));
+		assertFalse("Too late", alternatives.offer("route", 5L, 1, 1 * UNIT, 2_000L));
+
+		RouteAlternatives.Alternative best = alternatives.takeBest(DESTINATION, PRIMARY_HOP);
+		assertNotNull(best);
+		assertEquals("The shortest first", 3L, best.nextHopLocalId);
+	}
+
+	@Test
+	public void ranksByObservedReliability() {
+		alternatives.onDiscoveryCompleted("route", DESTINATION, PRIMARY_HOP, 1_000L);
+		alternatives.offer("route", 2L, 2, 2 * UNIT, 0L);
+		alternatives.offer("route", 3L, 3, 3 * UNIT, 0L);
+		for (int i = 0; i < 4; i++) {
+			alternatives.recordResult("route", 2L, false);
+			alternatives.recordResult("route", 3L, true);
+		}
+		assertTrue(alternatives.reliability("route", 3L) > alternatives.reliability("route", 2L));
+		RouteAlternatives.Alternative best = alternatives.takeBest(DESTINATION, PRIMARY_HOP);
+		assertNotNull(best);
+		assertEquals("A longer but reliable route wins", 3L, best.nextHopLocalId);
+
+		// The failed route goes back among the alternatives
+		alternatives.demote("route", DESTINATION, PRIMARY_HOP, 1, UNIT);
+		RouteAlternatives.Alternative demoted = alternatives.takeBest(DESTINATION, 2L);
+		assertNotNull(demoted);
+		assertEquals(PRIMARY_HOP, demoted.nextHopLocalId);
+		assertNull("Only the broken neighbor is left", alternatives.takeBest(DESTINATION, 2L));
+	}
+
+	@Test
+	public void ranksByLinkCost() {
+		alternatives.onDiscoveryCompleted("route", DESTINATION, PRIMARY_HOP, 1_000L);
+		// Two hops, one of them lossy, against three good hops
+		alternatives.offer("route", 2L, 2, 6 * UNIT, 0L);
+		alternatives.offer("route", 3L, 3, 3 * UNIT, 0L);
+		RouteAlternatives.Alternative taken = alternatives.take("route", 2L);
+		assertNotNull(taken);
+		assertEquals(6 * UNIT, taken.linkCost);
+		assertNull("Already taken", alternatives.take("route", 2L));
+
+		alternatives.offer("route", 2L, 2, 6 * UNIT, 0L);
+		RouteAlternatives.Alternative best = alternatives.takeBest(DESTINATION, PRIMARY_HOP);
+		assertNotNull(best);
+		assertEquals("The cheapest route wins over the shortest", 3L, best.nextHopLocalId);
+	}
+
+	@Test
+	public void destroyedBranchesAreForgotten() {
+		alternatives.onDiscoveryCompleted("route", DESTINATION, PRIMARY_HOP, 1_000L);
+		alternatives.offer("route", 2L, 2, 2 * UNIT, 0L);
+		alternatives.offer("route", 3L, 3, 3 * UNIT, 0L);
+		assertTrue(alternatives.removeHop("route", 2L));
+		assertFalse(alternatives.removeHop("route", 2L));
+		alternatives.removeNextHop(3L);
+		assertEquals(0, alternatives.count(DESTINATION));
+
+		alternatives.offer("route", 4L, 2, 2 * UNIT, 0L);
+		alternatives.removeRoute("route");
+		assertEquals(0, alternatives.count(DESTINATION));
+		assertFalse("No more alternatives accepted", alternatives.offer("route", 5L, 2, 2 * UNIT, 0L));
+
+		alternatives.onDiscoveryCompleted("other", DESTINATION, PRIMARY_HOP, 1_000L);
+		alternatives.offer("other", 2L, 2, 2 * UNIT, 0L);
+		alternatives.onDiscoveryCompleted("newer", DESTINATION, PRIMARY_HOP, 1_000L);
+		assertEquals("A new discovery starts afresh", 0, alternatives.count(DESTINATION));
+	}
+}
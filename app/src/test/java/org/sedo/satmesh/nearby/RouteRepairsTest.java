@@ -0,0 +1,97 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sedo.satmesh.proto.RoutedMessage;
+
+public class RouteRepairsTest {
+
+	private final RouteRepairs repairs = new RouteRepairs(3, 2, 2);
+
+	private static RoutedMessage message(String routeUuid, String usageUuid, boolean forBacktracking, long payloadId) {
+		return RoutedMessage.newBuilder()
+				.setRouteUuid(routeUuid)
+				.setRouteUsageUuid(usageUuid)
+				.setForBacktracking(forBacktracking)
+				.setPayloadId(payloadId)
+				.build();
+	}
+
+	@Test
+	public void splicesTheSubPathFoundIntoTheRoute() {
+		assertEquals("One more hop allowed", 2, repairs.radius(2));
+		assertEquals("Small ring", 3, repairs.radius(9));
+		assertTrue(repairs.start("route", "repair", message("route", "usage", false, 1)));
+		assertTrue(repairs.isRepairRequest("repair"));
+		assertTrue("Held", repairs.hold("route", message("route", "usage", false, 2)));
+		assertTrue("Dropped, but not sent", repairs.hold("route", message("route", "usage", false, 3)));
+		assertFalse("Another route", repairs.hold("other", message("other", "other", false, 4)));
+
+		RouteRepairs.Repair repair = repairs.complete("repair");
+		assertEquals("route", repair.routeUuid());
+		assertEquals("Held in order, up to the limit", 2, repair.messages().size());
+		assertEquals(2, repair.messages().get(1).getPayloadId());
+		assertFalse(repairs.isRepairRequest("repair"));
+
+		RoutedMessage forward = repairs.translate(message("route", "usage", false, 5));
+		assertEquals("Forward through the sub-path", "repair", forward.getRouteUuid());
+		assertEquals("repair", forward.getRouteUsageUuid());
+		RoutedMessage backward = repairs.translate(message("repair", "repair", true, 6));
+		assertEquals("Backward through the route", "route", backward.getRouteUuid());
+		assertEquals("usage", backward.getRouteUsageUuid());
+		assertTrue(backward.getForBacktracking());
+		RoutedMessage reused = message("repair", "reuse", true, 7);
+		assertSame("The usages of other routes are left untouched", reused, repairs.translate(reused));
+		assertFalse("Repaired once", repairs.start("route", "again", message("route", "usage", false, 8)));
+
+		assertEquals("The sub-path goes with the route", "repair", repairs.forget("route"));
+		assertNull(repairs.forget("repair"));
+		RoutedMessage after = message("route", "usage", false, 9);
+		assertSame(after, repairs.translate(after));
+	}
+
+	@Test
+	public void aRouteIsRepairedForASingleUsage() {
+		assertTrue(repairs.accepts(message("route", "b", false, 1)));
+		assertTrue(repairs.start("route", "repair", message("route", "a", false, 1)));
+		assertTrue(repairs.accepts(message("route", "a", false, 2)));
+		assertFalse("Another originator reuses the route under repair", repairs.accepts(message("route", "b", false, 3)));
+		assertTrue("Answers go back as usual", repairs.accepts(message("route", "b", true, 4)));
+
+		repairs.complete("repair");
+		assertTrue(repairs.accepts(message("route", "a", false, 5)));
+		assertFalse("Its answers would be backtracked to the repaired usage",
+				repairs.accepts(message("route", "b", false, 6)));
+		assertTrue("The sub-path itself", repairs.accepts(message("repair", "repair", false, 7)));
+		RoutedMessage other = message("route", "b", false, 8);
+		assertSame("Only the repaired usage is spliced", other, repairs.translate(other));
+		RoutedMessage backward = repairs.translate(message("repair", "repair", true, 9));
+		assertEquals("route", backward.getRouteUuid());
+		assertEquals("Back to the originator of the repaired usage", "a", backward.getRouteUsageUuid());
+
+		repairs.forget("route");
+		assertTrue("Destroyed with its splice", repairs.accepts(message("route", "b", false, 10)));
+	}
+
+	@Test
+	public void failedRepairsAreOverAndBounded() {
+		assertTrue(repairs.start("a", "ra", message("a", "a", false, 1)));
+		assertTrue(repairs.start("b", "rb", message("b", "b", false, 2)));
+		assertFalse("Too many repairs in flight", repairs.start("c", "rc", message("c", "c", false, 3)));
+		assertFalse("Already under repair", repairs.start("a", "ra2", message("a", "a", false, 4)));
+
+		assertEquals("a", repairs.fail("ra").routeUuid());
+		assertNull("Over", repairs.fail("ra"));
+		assertNull("Given up", repairs.complete("ra"));
+		assertFalse(repairs.hold("a", message("a", "a", false, 5)));
+
+		assertNull("No splice", repairs.forget("b"));
+		assertFalse("Route destroyed meanwhile", repairs.isRepairRequest("rb"));
+		assertNull(repairs.complete("rb"));
+	}
+}
@@ -0,0 +1,304 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+import org.sedo.satmesh.model.rt.RouteEntry;
+import org.sedo.satmesh.model.rt.RouteRequestEntry;
+import org.sedo.satmesh.model.rt.RouteUsage;
+import org.sedo.satmesh.model.rt.RouteUsageBacktracking;
+import org.sedo.satmesh.nearby.data.RouteWithUsage;
+import org.sedo.satmesh.proto.RouteRequestMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class RouteRequestPipelineTest {
+
+	private static final String HOST = "host";
+	private static final long NOW = 1_000L;
+	// Costs of a statement of the encrypted database, and of the commit of its transaction
+	private static final long STATEMENT_NANOS = 10_000L;
+	private static final long COMMIT_NANOS = 100_000L;
+
+	private static RouteRequestMessage request(String uuid, String destination, int remainingHops, long maxTtl) {
+		return RouteRequestMessage.newBuilder()
+				.setUuid(uuid)
+				.setDestinationNodeId(destination)
+				.setInitiatorNodeId("initiator")
+				.setRemainingHops(remainingHops)
+				.setMaxTtl(maxTtl)
+				.build();
+	}
+
+	@Test
+	public void firstConcludingStageDecides() {
+		MemoryStore store = new MemoryStore(0L, 0L);
+		RouteRequestPipeline pipeline = new RouteRequestPipeline(store);
+		RouteEntry known = store.addRoute("known-route", "far", 3);
+
+		RouteRequestPipeline.Verdict verdict = pipeline.evaluate(request("r1", "unknown", 5, NOW + 1), "a", HOST, NOW);
+		assertEquals(RouteRequestPipeline.Outcome.RELAY, verdict.outcome());
+		assertEquals("The sender is created", (long) store.nodes.get("a"), verdict.senderLocalId());
+		RouteRequestEntry requestEntry = store.requests.get("r1");
+		assertEquals(store.nodes.get("unknown"), requestEntry.getDestinationNodeLocalId());
+		assertEquals(store.nodes.get("a"), requestEntry.getPreviousHopLocalId());
+		assertEquals("Another copy", RouteRequestPipeline.Outcome.DUPLICATE,
+				pipeline.evaluate(request("r1", "unknown", 5, NOW + 1), "b", HOST, NOW).outcome());
+
+		assertEquals(RouteRequestPipeline.Outcome.TTL_EXPIRED, pipeline.evaluate(request("r2", "unknown", 5, NOW - 1), "a", HOST, NOW).outcome());
+		assertEquals(RouteRequestPipeline.Outcome.MAX_HOPS_REACHED, pipeline.evaluate(request("r3", "unknown", 0, NOW + 1), "a", HOST, NOW).outcome());
+		assertEquals("Nothing recorded for the rejected requests", 1, store.requests.size());
+
+		verdict = pipeline.evaluate(request("r4", HOST, 0, NOW + 1), "a", HOST, NOW);
+		assertEquals("The destination accepts the last hop", RouteRequestPipeline.Outcome.DESTINATION, verdict.outcome());
+		assertNotNull(verdict.route());
+		assertEquals(store.nodes.get("a"), store.routes.get("r4").getPreviousHopLocalId());
+		assertEquals("r4", store.usages.get("r4").getRouteEntryDiscoveryUuid());
+		assertEquals(store.nodes.get("initiator"), store.backtrackings.get("r4").destinationNodeLocalId());
+
+		assertEquals("Too far for the request", RouteRequestPipeline.Outcome.RELAY,
+				pipeline.evaluate(request("r5", "far", 2, NOW + 1), "a", HOST, NOW).outcome());
+		verdict = pipeline.evaluate(request("r6", "far", 3, NOW + 1), "a", HOST, NOW);
+		assertEquals(RouteRequestPipeline.Outcome.ROUTE_REUSED, verdict.outcome());
+		assertEquals(known, verdict.route());
+		assertEquals("known-route", store.usages.get("r6").getRouteEntryDiscoveryUuid());
+		assertNull("Not relayed", store.requests.get("r6"));
+		assertEquals("One transaction per request", 7, store.transactions.get());
+	}
+
+	/**
+	 * Evaluates a flood of route request copies, as the previous chain did: each stage on its own
+	 * executor task, each database access in its own implicit transaction.
+	 */
+	private static CompletableFuture<RouteRequestPipeline.Verdict> evaluateStageByStage(
+			RouteRequestPipeline pipeline, ExecutorService executor, RouteRequestMessage request, String sender) {
+		RouteRequestPipeline.Evaluation evaluation = new RouteRequestPipeline.Evaluation(request, sender, HOST, NOW);
+		CompletableFuture<RouteRequestPipeline.Verdict> verdict = CompletableFuture.completedFuture(null);
+		for (RouteRequestPipeline.Stage stage : pipeline.stages()) {
+			verdict = verdict.thenApplyAsync(concluded -> concluded != null ? concluded : stage.apply(evaluation), executor);
+		}
+		return verdict;
+	}
+
+	/**
+	 * @return the latencies of the copies, in microseconds, sorted, followed by the number of relays
+	 */
+	private static long[] flood(boolean staged, int requests, int copies) throws Exception {
+		MemoryStore store = new MemoryStore(STATEMENT_NANOS, COMMIT_NANOS);
+		RouteRequestPipeline pipeline = new RouteRequestPipeline(store);
+		for (int i = 0; i < 8; i++) {
+			store.addRoute("route-" + i, "destination-" + i, 2);
+		}
+		Random random = new Random(7);
+		List<RouteRequestMessage> flood = new ArrayList<>();
+		List<String> senders = new ArrayList<>();
+		for (int i = 0; i < requests; i++) {
+			RouteRequestMessage request = request("request-" + i, "destination-" + random.nextInt(64), 5, NOW + 10_000L);
+			for (int j = 0; j < copies; j++) {
+				flood.add(request);
+				senders.add("neighbor-" + j);
+			}
+		}
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < flood.size(); i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order, random);
+
+		// As many threads as Room's query executor
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		long[] latencies = new long[flood.size() + 1];
+		AtomicInteger relays = new AtomicInteger();
+		List<CompletableFuture<?>> done = new ArrayList<>();
+		try {
+			for (int index : order) {
+				long start = System.nanoTime();
+				CompletableFuture<RouteRequestPipeline.Verdict> verdict = staged
+						? evaluateStageByStage(pipeline, executor, flood.get(index), senders.get(index))
+						: CompletableFuture.supplyAsync(() -> pipeline.evaluate(flood.get(index), senders.get(index), HOST, NOW), executor);
+				done.add(verdict.thenAccept(concluded -> {
+					latencies[index] = (System.nanoTime() - start) / 1_000L;
+					if (concluded.outcome() == RouteRequestPipeline.Outcome.RELAY) {
+						relays.incrementAndGet();
+					}
+				}));
+			}
+			CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+		}
+		Arrays.sort(latencies, 0, flood.size());
+		latencies[flood.size()] = relays.get();
+		return latencies;
+	}
+
+	private static long percentile(long[] sorted, int count, double p) {
+		return sorted[(int) Math.min(count - 1, Math.round(p * (count - 1)))];
+	}
+
+	@Test
+	public void singleTransactionCutsTheLatencyOfAFlood() throws Exception {
+		int requests = 200;
+		int copies = 4;
+		int count = requests * copies;
+		flood(false, 20, copies); // Warm-up
+		long[] staged = flood(true, requests, copies);
+		long[] pipelined = flood(false, requests, copies);
+		String report = String.format("Route request latency under a flood of %d copies: stage by stage p50=%dus p99=%dus"
+						+ " (%d relays), single transaction p50=%dus p99=%dus (%d relays)",
+				count, percentile(staged, count, 0.5), percentile(staged, count, 0.99), staged[count],
+				percentile(pipelined, count, 0.5), percentile(pipelined, count, 0.99), pipelined[count]);
+
+		assertEquals("Each request relayed once: " + report, requests - reused(requests), pipelined[count]);
+		assertTrue("Median latency: " + report, percentile(pipelined, count, 0.5) < percentile(staged, count, 0.5));
+		assertTrue("Tail latency: " + report, percentile(pipelined, count, 0.99) < percentile(staged, count, 0.99));
+	}
+
+	/**
+	 * Returns the number of requests of a flood answered with a known route.
+	 */
+	private static int reused(int requests) {
+		Random random = new Random(7);
+		int reused = 0;
+		for (int i = 0; i < requests; i++) {
+			if (random.nextInt(64) < 8) {
+				reused++;
+			}
+		}
+		return reused;
+	}
+
+	/**
+	 * Database in memory, under the lock of its single writer: held for a whole transaction, or for
+	 * a statement run outside of any, which is committed at once.
+	 */
+	private static final class MemoryStore implements RouteRequestPipeline.Store {
+		final Map<String, Long> nodes = new ConcurrentHashMap<>();
+		final Map<String, RouteRequestEntry> requests = new HashMap<>();
+		final Map<String, RouteEntry> routes = new HashMap<>();
+		final Map<String, RouteUsage> usages = new HashMap<>();
+		final Map<String, RouteUsageBacktracking> backtrackings = new HashMap<>();
+		final Map<Long, RouteEntry> routesByDestination = new ConcurrentHashMap<>();
+		final AtomicInteger transactions = new AtomicInteger();
+		private final ReentrantLock writer = new ReentrantLock();
+		private final long statementNanos;
+		private final long commitNanos;
+
+		MemoryStore(long statementNanos, long commitNanos) {
+			this.statementNanos = statementNanos;
+			this.commitNanos = commitNanos;
+		}
+
+		private static void spin(long nanos) {
+			long end = System.nanoTime() + nanos;
+			while (System.nanoTime() < end) {
+				Thread.onSpinWait();
+			}
+		}
+
+		RouteEntry addRoute(String routeUuid, String destination, int hopCount) {
+			RouteEntry route = new RouteEntry();
+			route.setDiscoveryUuid(routeUuid);
+			route.setDestinationNodeLocalId(findOrCreateNodeIdSync(destination));
+			route.setHopCount(hopCount);
+			routes.put(routeUuid, route);
+			routesByDestination.put(route.getDestinationNodeLocalId(), route);
+			return route;
+		}
+
+		private <T> T statement(@NonNull Callable<T> body) {
+			boolean implicitTransaction = !writer.isHeldByCurrentThread();
+			writer.lock();
+			try {
+				spin(statementNanos);
+				T result = body.call();
+				if (implicitTransaction) {
+					spin(commitNanos);
+				}
+				return result;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			} finally {
+				writer.unlock();
+			}
+		}
+
+		@Override
+		public <T> T runInTransaction(@NonNull Callable<T> body) {
+			transactions.incrementAndGet();
+			writer.lock();
+			try {
+				T result = body.call();
+				spin(commitNanos);
+				return result;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			} finally {
+				writer.unlock();
+			}
+		}
+
+		@Override
+		public long findOrCreateNodeIdSync(@NonNull String addressName) {
+			return statement(() -> nodes.computeIfAbsent(addressName, name -> (long) nodes.size() + 1));
+		}
+
+		@Override
+		public boolean hasRouteRequestSync(@NonNull String requestUuid) {
+			return statement(() -> requests.containsKey(requestUuid));
+		}
+
+		@Nullable
+		@Override
+		public RouteWithUsage findReusableRouteSync(@NonNull String destinationAddressName, int remainingHops) {
+			// Answered by the caches of the repositories
+			Long destination = nodes.get(destinationAddressName);
+			RouteEntry route = destination == null ? null : routesByDestination.get(destination);
+			return route == null || route.getHopCount() > remainingHops ? null : new RouteWithUsage(route, null, null);
+		}
+
+		@Override
+		public void insertRouteRequestSync(@NonNull RouteRequestEntry requestEntry, long maxTtl) {
+			statement(() -> requests.put(requestEntry.getRequestUuid(), requestEntry));
+		}
+
+		@Override
+		public void insertRouteEntrySync(@NonNull RouteEntry routeEntry) {
+			statement(() -> routes.put(routeEntry.getDiscoveryUuid(), routeEntry));
+		}
+
+		@Override
+		public void insertRouteUsageSync(@NonNull RouteUsage routeUsage) {
+			statement(() -> usages.put(routeUsage.getUsageRequestUuid(), routeUsage));
+		}
+
+		@Override
+		public void insertRouteUsageBacktrackingSync(@NonNull RouteUsageBacktracking backtracking) {
+			statement(() -> backtrackings.put(backtracking.usageUuid(), backtracking));
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class RouteRequestReaperTest {
+
+	private static final long TICK = 100L;
+	private static final int WHEEL_SIZE = 8;
+	private static final long GRACE = 50L;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private long now = 1_000L;
+	private final RouteRequestReaper reaper = new RouteRequestReaper(scheduler, () -> now, expired -> {
+	}, TICK, WHEEL_SIZE, GRACE);
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void expiresRequestsAfterTheirTtl() {
+		reaper.schedule("short", now + 200);
+		reaper.schedule("completed", now + 200);
+		// Several turns of the wheel away
+		reaper.schedule("long", now + 3 * TICK * WHEEL_SIZE);
+		reaper.cancel("completed");
+		assertEquals(2, reaper.getStats().pending());
+
+		now += 200;
+		assertTrue("The grace delay isn't over", reaper.advance(now).isEmpty());
+		now += GRACE + TICK;
+		assertEquals(List.of("short"), reaper.advance(now));
+		assertTrue(reaper.advance(now + TICK * WHEEL_SIZE).isEmpty());
+
+		now += 3 * TICK * WHEEL_SIZE;
+		assertEquals("Kept for the additional turns", List.of("long"), reaper.advance(now));
+		RouteRequestReaper.ReaperStats stats = reaper.getStats();
+		assertEquals(0, stats.pending());
+		assertEquals(3, stats.scheduled());
+		assertEquals(2, stats.reaped());
+	}
+
+	@Test
+	public void pastDeadlinesExpireOnTheNextTick() {
+		now += 10 * TICK * WHEEL_SIZE;
+		reaper.advance(now);
+		reaper.schedule("late", now - 10_000);
+		// Rescheduling replaces the deadline
+		reaper.schedule("rescheduled", now - 10_000);
+		reaper.schedule("rescheduled", now + 10_000);
+		now += TICK;
+		assertEquals(List.of("late"), reaper.advance(now));
+		assertEquals(1, reaper.getStats().pending());
+	}
+}
@@ -0,0 +1,64 @@
+package org.sedo.satmesh.nearby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class TrickleTimerTest {
+
+	// Long enough for the scheduled firings never to run: the test fires by hand
+	private static final long MIN = 1_000_000L;
+	private static final long MAX = 4 * MIN;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private boolean somethingToSend;
+	private int firings;
+	private final TrickleTimer timer = new TrickleTimer(scheduler, () -> {
+		firings++;
+		return somethingToSend;
+	}, MIN, MAX, new Random(1));
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void backsOffThenGoesDormantWhenStable() {
+		assertTrue("Dormant until the first change", timer.isDormant());
+		timer.reset();
+		assertEquals(MIN, timer.getInterval());
+
+		somethingToSend = true;
+		timer.fire();
+		assertEquals(2 * MIN, timer.getInterval());
+		somethingToSend = false;
+		timer.fire();
+		assertEquals("Capped", MAX, timer.getInterval());
+		assertFalse(timer.isDormant());
+		timer.fire();
+		assertTrue("Nothing to send at the maximum interval", timer.isDormant());
+		timer.fire();
+		assertEquals("A dormant timer doesn't fire", 3, firings);
+	}
+
+	@Test
+	public void resetsOnChanges() {
+		timer.reset();
+		timer.fire();
+		timer.fire();
+		assertEquals(4 * MIN, timer.getInterval());
+		timer.reset();
+		assertEquals(MIN, timer.getInterval());
+		timer.stop();
+		assertTrue(timer.isDormant());
+		timer.reset();
+		assertEquals(MIN, timer.getInterval());
+	}
+}
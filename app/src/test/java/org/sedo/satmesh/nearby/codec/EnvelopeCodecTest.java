@@ -0,0 +1,129 @@
+package org.sedo.satmesh.nearby.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.sedo.satmesh.proto.BatchedFrame;
+import org.sedo.satmesh.proto.NearbyMessage;
+import org.sedo.satmesh.proto.NearbyMessageBatch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class EnvelopeCodecTest {
+
+	private static final int ITERATIONS = 20_000;
+	private static final int CHAT_MESSAGE_SIZE = 160;
+
+	private static byte[] ciphertext(int size) {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return data;
+	}
+
+	@Test
+	public void envelopesMatchTheGeneratedEncoding() throws InvalidProtocolBufferException {
+		for (int size : new int[]{1, 127, 128, 300, 70_000}) {
+			byte[] ciphertext = ciphertext(size);
+			byte[] expected = NearbyMessage.newBuilder().setExchange(false)
+					.setBody(ByteString.copyFrom(ciphertext)).build().toByteArray();
+			assertArrayEquals("Body envelope of " + size + " bytes", expected, EnvelopeCodec.encodeBody(ciphertext));
+		}
+
+		List<Payload> frames = new ArrayList<>();
+		NearbyMessageBatch.Builder batch = NearbyMessageBatch.newBuilder();
+		for (int size : new int[]{40, 200, 1_000}) {
+			Payload frame = Payload.fromBytes(EnvelopeCodec.encodeBody(ciphertext(size)));
+			frames.add(frame);
+			batch.addFrames(BatchedFrame.newBuilder().setFrameId(frame.getId())
+					.setNearbyMessage(ByteString.copyFrom(frame.asBytes())));
+		}
+		byte[] encoded = EnvelopeCodec.encodeBatch(frames);
+		assertArrayEquals("Batch envelope", NearbyMessage.newBuilder().setBatch(batch).build().toByteArray(), encoded);
+		NearbyMessage parsed = NearbyMessage.parseFrom(encoded);
+		assertEquals(3, parsed.getBatch().getFramesCount());
+		NearbyMessage inner = EnvelopeCodec.parseAliased(NearbyMessage.parser(), parsed.getBatch().getFrames(1).getNearbyMessage());
+		assertArrayEquals("Frames survive the round trip", ciphertext(200), inner.getBody().toByteArray());
+	}
+
+	@Test
+	public void allocatesLessPerMessage() throws InvalidProtocolBufferException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue("Allocation accounting unavailable",
+				threads instanceof com.sun.management.ThreadMXBean
+						&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		allocations.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+		// Signal messages of the size of a short chat message
+		byte[] ciphertext = ciphertext(CHAT_MESSAGE_SIZE);
+		List<Payload> frames = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			frames.add(Payload.fromBytes(EnvelopeCodec.encodeBody(ciphertext)));
+		}
+		byte[] received = EnvelopeCodec.encodeBatch(frames);
+
+		Runnable legacySend = () -> {
+			NearbyMessage.newBuilder().setExchange(false).setBody(ByteString.copyFrom(ciphertext)).build().toByteArray();
+			NearbyMessageBatch.Builder batch = NearbyMessageBatch.newBuilder();
+			for (Payload frame : frames) {
+				batch.addFrames(BatchedFrame.newBuilder().setFrameId(frame.getId())
+						.setNearbyMessage(ByteString.copyFrom(frame.asBytes())));
+			}
+			NearbyMessage.newBuilder().setBatch(batch).build().toByteArray();
+		};
+		Runnable codecSend = () -> {
+			EnvelopeCodec.encodeBody(ciphertext);
+			EnvelopeCodec.encodeBatch(frames);
+		};
+		Runnable legacyReceive = () -> {
+			try {
+				for (BatchedFrame frame : NearbyMessage.parseFrom(received).getBatch().getFramesList()) {
+					NearbyMessage.parseFrom(frame.getNearbyMessage()).getBody().toByteArray();
+				}
+			} catch (InvalidProtocolBufferException e) {
+				throw new AssertionError(e);
+			}
+		};
+		Runnable codecReceive = () -> {
+			try {
+				for (BatchedFrame frame : NearbyMessage.parseFrom(received).getBatch().getFramesList()) {
+					EnvelopeCodec.parseAliased(NearbyMessage.parser(), frame.getNearbyMessage()).getBody().toByteArray();
+				}
+			} catch (InvalidProtocolBufferException e) {
+				throw new AssertionError(e);
+			}
+		};
+
+		double legacySendBytes = bytesPerRun(allocations, thread, legacySend);
+		double codecSendBytes = bytesPerRun(allocations, thread, codecSend);
+		double legacyReceiveBytes = bytesPerRun(allocations, thread, legacyReceive);
+		double codecReceiveBytes = bytesPerRun(allocations, thread, codecReceive);
+		// Sending a body and a batch of 4 bodies copies the ciphertext 5 times less, receiving the batch 4 times less
+		assertTrue("The send path should save a copy of each body: " + legacySendBytes + " -> " + codecSendBytes + " B",
+				legacySendBytes - codecSendBytes >= 5 * ciphertext.length);
+		assertTrue("The receive path should save a copy of each body: " + legacyReceiveBytes + " -> " + codecReceiveBytes + " B",
+				legacyReceiveBytes - codecReceiveBytes >= 4 * ciphertext.length);
+	}
+
+	private static double bytesPerRun(com.sun.management.ThreadMXBean allocations, long thread, Runnable task) {
+		for (int i = 0; i < ITERATIONS; i++) {
+			task.run(); // Warm-up, so that the measured runs are compiled
+		}
+		long before = allocations.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < ITERATIONS; i++) {
+			task.run();
+		}
+		return (double) (allocations.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+	}
+}
@@ -0,0 +1,78 @@
+package org.sedo.satmesh.nearby.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+
+public class PayloadCompressorTest {
+
+	private final PayloadCompressor compressor = new PayloadCompressor();
+
+	private static byte[] routeRequestLike() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			builder.append("satmesh-").append(UUID.randomUUID()).append('\u0012');
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void compressedBodyIsRestored() throws DataFormatException {
+		byte[] plain = routeRequestLike();
+		byte[] encoded = compressor.encode(plain, true);
+
+		assertTrue("Body should be compressed", PayloadCompressor.isCompressed(encoded));
+		assertTrue("Compressed body should be smaller", encoded.length < plain.length);
+		assertArrayEquals("Decoded body", plain, compressor.decode(encoded));
+		PayloadCompressor.CompressionStats stats = compressor.getStats();
+		assertEquals(1L, stats.compressed());
+		assertEquals(1L, stats.decompressed());
+		assertTrue("Ratio should reflect the gain", stats.ratio() < 1.0);
+	}
+
+	@Test
+	public void bodyIsLeftUntouchedWhenNotWorthIt() throws DataFormatException {
+		byte[] small = "satmesh-".getBytes(StandardCharsets.US_ASCII);
+		byte[] random = new byte[512];
+		new Random(7).nextBytes(random);
+		random[0] = 0x1a; // A protobuf tag, as any serialized body
+
+		assertSame("Small bodies aren't compressed", small, compressor.encode(small, true));
+		byte[] request = routeRequestLike();
+		assertSame("Peers without the capability get plain bodies", request, compressor.encode(request, false));
+		assertSame("Incompressible bodies are sent as they are", random, compressor.encode(random, true));
+		assertSame("Plain bodies decode to themselves", random, compressor.decode(random));
+		PayloadCompressor.CompressionStats stats = compressor.getStats();
+		assertEquals(2L, stats.skipped());
+		assertEquals(1L, stats.incompressible());
+		assertEquals("Nothing compressed", 1.0, stats.ratio(), 0.0);
+	}
+
+	@Test
+	public void corruptedBodyIsRejected() {
+		byte[] encoded = compressor.encode(routeRequestLike(), true);
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+		byte[] otherDictionary = encoded.clone();
+		otherDictionary[1] = 42;
+
+		for (byte[] corrupted : new byte[][]{truncated, otherDictionary}) {
+			try {
+				compressor.decode(corrupted);
+				fail("Corrupted body should be rejected");
+			} catch (DataFormatException expected) {
+				assertFalse(expected.getMessage().isEmpty());
+			}
+		}
+	}
+}
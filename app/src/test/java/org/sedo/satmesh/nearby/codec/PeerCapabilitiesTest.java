@@ -0,0 +1,44 @@
+package org.sedo.satmesh.nearby.codec;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PeerCapabilitiesTest {
+
+	private static final String PEER = "peer";
+
+	@Test
+	public void provenFeatureDoesNotCompleteTheNegotiation() {
+		PeerCapabilities capabilities = new PeerCapabilities();
+		capabilities.add(PEER, PeerCapabilities.DEFLATE);
+
+		assertTrue("The proven feature is used", capabilities.supports(PEER, PeerCapabilities.DEFLATE));
+		assertFalse("The other features are still to be advertised", capabilities.isKnown(PEER));
+		assertFalse("No other feature is assumed", capabilities.supports(PEER, PeerCapabilities.BATCHING));
+	}
+
+	@Test
+	public void advertisedFeaturesCompleteTheNegotiation() {
+		PeerCapabilities capabilities = new PeerCapabilities();
+		capabilities.add(PEER, PeerCapabilities.DEFLATE);
+		capabilities.update(PEER, PeerCapabilities.DEFLATE | PeerCapabilities.COMPACT_ROUTING);
+
+		assertTrue("The features are known once advertised", capabilities.isKnown(PEER));
+		assertTrue(capabilities.supports(PEER, PeerCapabilities.COMPACT_ROUTING));
+		assertFalse(capabilities.supports(PEER, PeerCapabilities.ROUTE_BEACONS));
+
+		capabilities.clear();
+		assertFalse("Cleared", capabilities.isKnown(PEER));
+	}
+
+	@Test
+	public void nodeAdvertisingNothingIsKnown() {
+		PeerCapabilities capabilities = new PeerCapabilities();
+		capabilities.update(PEER, 0);
+
+		assertTrue("An old node advertising no feature is known", capabilities.isKnown(PEER));
+		assertFalse(capabilities.supports(PEER, PeerCapabilities.DEFLATE));
+	}
+}
@@ -0,0 +1,152 @@
+package org.sedo.satmesh.nearby.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.junit.Test;
+import org.sedo.satmesh.proto.NearbyMessageBody;
+import org.sedo.satmesh.proto.NearbyMessageType;
+import org.sedo.satmesh.proto.RouteDestroyMessage;
+import org.sedo.satmesh.proto.RouteRequestMessage;
+import org.sedo.satmesh.proto.RouteResponseMessage;
+import org.sedo.satmesh.proto.RoutedMessage;
+
+import java.util.Random;
+import java.util.UUID;
+
+public class RoutingWireCodecTest {
+
+	private static final String SENDER = "satmesh-" + UUID.randomUUID();
+	private static final String DESTINATION = "satmesh-" + UUID.randomUUID();
+	private static final String NEIGHBOR = "satmesh-" + UUID.randomUUID();
+
+	private final RoutingWireCodec sending = new RoutingWireCodec();
+	private final RoutingWireCodec receiving = new RoutingWireCodec();
+
+	private static NearbyMessageBody body(NearbyMessageType type, ByteString data) {
+		return NearbyMessageBody.newBuilder().setMessageTypeValue(type.getNumber()).setBinaryData(data).build();
+	}
+
+	/**
+	 * A routed text message: about a hundred bytes of E2E ciphertext, on a route used by its source.
+	 */
+	private static RoutedMessage routedText(String routeUuid, long payloadId) {
+		byte[] ciphertext = new byte[100];
+		new Random(payloadId).nextBytes(ciphertext);
+		return RoutedMessage.newBuilder()
+				.setFinalDestinationNodeId(DESTINATION)
+				.setRouteUuid(routeUuid)
+				.setRouteUsageUuid(routeUuid)
+				.setEncryptedRoutedMessageBody(ByteString.copyFrom(ciphertext))
+				.setOriginalSenderNodeId(SENDER)
+				.setPayloadId(payloadId)
+				.build();
+	}
+
+	private NearbyMessageBody transmit(NearbyMessageBody body) throws InvalidProtocolBufferException {
+		RoutingWireCodec.Encoded encoded = sending.encode(NEIGHBOR, body, true);
+		encoded.onDelivered();
+		NearbyMessageBody received = NearbyMessageBody.parseFrom(encoded.body().toByteArray());
+		receiving.learn(NEIGHBOR, received);
+		return received;
+	}
+
+	@Test
+	public void routingFramesAreRestored() throws InvalidProtocolBufferException {
+		String uuid = UUID.randomUUID().toString();
+		RouteRequestMessage request = RouteRequestMessage.newBuilder()
+				.setUuid(uuid).setDestinationNodeId(DESTINATION).setInitiatorNodeId(SENDER)
+				.setRemainingHops(5).setMaxTtl(123L).addRelayNeighbors(42).build();
+		NearbyMessageBody received = transmit(body(NearbyMessageType.ROUTE_DISCOVERY_REQ, request.toByteString()));
+		assertEquals("Both address names defined", 2, received.getNodeRefsCount());
+		RouteRequestMessage compactRequest = RouteRequestMessage.parseFrom(received.getBinaryData());
+		assertTrue("Sent compact", compactRequest.getUuid().isEmpty() && compactRequest.getInitiatorNodeRef() != 0);
+		assertEquals(request, receiving.decode(NEIGHBOR, compactRequest));
+
+		RouteResponseMessage response = RouteResponseMessage.newBuilder()
+				.setRequestUuid(uuid).setHopCount(3).setStatusValue(1).setLinkCost(300).build();
+		received = transmit(body(NearbyMessageType.ROUTE_DISCOVERY_RESP, response.toByteString()));
+		assertEquals(response, receiving.decode(RouteResponseMessage.parseFrom(received.getBinaryData())));
+
+		RoutedMessage routed = routedText(uuid, 7L);
+		received = transmit(body(NearbyMessageType.ROUTED_MESSAGE, routed.toByteString()));
+		assertEquals("Address names delivered already", 0, received.getNodeRefsCount());
+		assertEquals(routed, receiving.decode(NEIGHBOR, RoutedMessage.parseFrom(received.getBinaryData())));
+		RoutedMessage backward = routed.toBuilder().setRouteUsageUuid(UUID.randomUUID().toString())
+				.setForBacktracking(true).setFinalDestinationNodeId("not-a-satmesh-name").build();
+		received = transmit(body(NearbyMessageType.ROUTED_MESSAGE, backward.toByteString()));
+		assertEquals("Other names are defined as they are", "not-a-satmesh-name", received.getNodeRefs(0).getAddressName());
+		assertEquals(backward, receiving.decode(NEIGHBOR, RoutedMessage.parseFrom(received.getBinaryData())));
+
+		RouteDestroyMessage destroy = RouteDestroyMessage.newBuilder().setRouteUuid(uuid).build();
+		received = transmit(body(NearbyMessageType.ROUTE_DESTROY, destroy.toByteString()));
+		assertEquals(destroy, receiving.decode(RouteDestroyMessage.parseFrom(received.getBinaryData())));
+	}
+
+	@Test
+	public void oldPeersAndOtherFramesAreLeftUntouched() throws InvalidProtocolBufferException {
+		NearbyMessageBody routed = body(NearbyMessageType.ROUTED_MESSAGE, routedText(UUID.randomUUID().toString(), 1L).toByteString());
+		assertSame("Peers without the capability get the original format", routed, sending.encode(NEIGHBOR, routed, false).body());
+		NearbyMessageBody text = body(NearbyMessageType.ENCRYPTED_MESSAGE, ByteString.copyFromUtf8("text"));
+		assertSame("Not a routing frame", text, sending.encode(NEIGHBOR, text, true).body());
+		RouteDestroyMessage destroy = RouteDestroyMessage.newBuilder().setRouteUuid("NOT-CANONICAL").build();
+		assertEquals("Not a canonical UUID", destroy, RouteDestroyMessage.parseFrom(
+				sending.encode(NEIGHBOR, body(NearbyMessageType.ROUTE_DESTROY, destroy.toByteString()), true).body().getBinaryData()));
+		RoutedMessage original = RoutedMessage.parseFrom(routed.getBinaryData());
+		assertSame("Original frames decode to themselves", original, receiving.decode(NEIGHBOR, original));
+	}
+
+	@Test
+	public void definitionsAreRepeatedUntilDeliveredAndForgottenOnReset() throws InvalidProtocolBufferException {
+		String route = UUID.randomUUID().toString();
+		NearbyMessageBody routed = body(NearbyMessageType.ROUTED_MESSAGE, routedText(route, 1L).toByteString());
+		RoutingWireCodec.Encoded lost = sending.encode(NEIGHBOR, routed, true);
+		assertTrue(lost.definesRefs());
+		RoutingWireCodec.Encoded next = sending.encode(NEIGHBOR, routed, true);
+		assertEquals("Defined again, the first one may be lost", 2, next.body().getNodeRefsCount());
+		next.onDelivered();
+		assertFalse(sending.encode(NEIGHBOR, routed, true).definesRefs());
+
+		receiving.learn(NEIGHBOR, next.body());
+		receiving.reset(NEIGHBOR);
+		try {
+			receiving.decode(NEIGHBOR, RoutedMessage.parseFrom(sending.encode(NEIGHBOR, routed, true).body().getBinaryData()));
+			fail("References are forgotten on reset");
+		} catch (InvalidProtocolBufferException e) {
+			// Expected: the frame is dropped
+		}
+		sending.reset(NEIGHBOR);
+		RoutingWireCodec.Encoded afterReset = sending.encode(NEIGHBOR, routed, true);
+		assertEquals("Defined again after a reset", 2, afterReset.body().getNodeRefsCount());
+		lost.onDelivered();
+		assertTrue("Stale deliveries have no effect", sending.encode(NEIGHBOR, routed, true).definesRefs());
+	}
+
+	@Test
+	public void compactFramesOfARoutedTextAreSmaller() throws InvalidProtocolBufferException {
+		PayloadCompressor compressor = new PayloadCompressor();
+		String route = UUID.randomUUID().toString();
+		NearbyMessageBody v1 = body(NearbyMessageType.ROUTED_MESSAGE, routedText(route, 1L).toByteString());
+		NearbyMessageBody first = transmit(v1);
+		NearbyMessageBody steady = transmit(body(NearbyMessageType.ROUTED_MESSAGE, routedText(route, 2L).toByteString()));
+		int v1Size = v1.getSerializedSize();
+		int firstSize = first.getSerializedSize();
+		int steadySize = steady.getSerializedSize();
+		int v1Deflated = compressor.encode(v1.toByteArray(), true).length;
+		int steadyDeflated = compressor.encode(steady.toByteArray(), true).length;
+		String sizes = "v1 " + v1Size + " (deflated " + v1Deflated + "), first v2 " + firstSize
+				+ ", steady v2 " + steadySize + " (deflated " + steadyDeflated + ") bytes";
+
+		assertTrue("The first frame carries the definitions: " + sizes, firstSize < v1Size);
+		// The 2 address names of 44 characters become 1-byte references, the route UUID is sent as its 16 bytes,
+		// the usage UUID equal to it is left out and the length prefix of the routed message loses a byte
+		assertEquals("The next ones save the names and UUIDs: " + sizes, 2 * 44 + (36 - 16) + (2 + 36) + 1, v1Size - steadySize);
+		assertTrue("Also when compressed: " + sizes, Math.min(steadySize, steadyDeflated) < v1Deflated);
+	}
+}
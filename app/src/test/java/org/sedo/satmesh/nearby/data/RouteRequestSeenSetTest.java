@@ -0,0 +1,82 @@
+package org.sedo.satmesh.nearby.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+public class RouteRequestSeenSetTest {
+
+	private static final long ROTATION = 1_000L;
+	private static final int EXPECTED = 1_000;
+	private static final double RATE = 0.01;
+	private static final int PROBES = 100_000;
+	private long now = 0L;
+	private final RouteRequestSeenSet seenSet = new RouteRequestSeenSet(() -> now, EXPECTED, RATE, ROTATION, 16);
+
+	private static String uuid(Random random) {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+
+	@Test
+	public void duplicatesAreAnsweredFromMemory() {
+		assertNull("A previous run may have left requests", seenSet.isInProgress("first"));
+		now = ROTATION;
+		assertEquals(Boolean.FALSE, seenSet.isInProgress("first"));
+
+		seenSet.add("first", now + ROTATION);
+		assertEquals("Duplicate", Boolean.TRUE, seenSet.isInProgress("first"));
+		seenSet.remove("first");
+		assertNull("Still in the filter: the database decides", seenSet.isInProgress("first"));
+
+		seenSet.add("second", now + 100);
+		now += 101;
+		assertNull("Expired: the database decides", seenSet.isInProgress("second"));
+
+		// Rotated out after two periods
+		now += 2 * ROTATION;
+		assertEquals(Boolean.FALSE, seenSet.isInProgress("first"));
+
+		seenSet.add("long-lived", now + 10 * ROTATION);
+		seenSet.remove("long-lived");
+		now += 3 * ROTATION;
+		assertNull("May still be relayed, while rotated out", seenSet.isInProgress("long-lived"));
+		now += 8 * ROTATION;
+		assertEquals(Boolean.FALSE, seenSet.isInProgress("long-lived"));
+	}
+
+	@Test
+	public void exactSetIsBounded() {
+		now = ROTATION;
+		for (int i = 0; i < 32; i++) {
+			seenSet.add("request-" + i, now + ROTATION);
+		}
+		assertNull("Evicted from the exact set", seenSet.isInProgress("request-0"));
+		assertEquals(Boolean.TRUE, seenSet.isInProgress("request-31"));
+	}
+
+	@Test
+	public void falsePositivesStayWithinTheBound() {
+		Random random = new Random(42);
+		now = ROTATION;
+		for (int i = 0; i < EXPECTED; i++) {
+			seenSet.add(uuid(random), now + ROTATION);
+		}
+		double bound = seenSet.falsePositiveRate();
+		assertTrue("Sized for the expected requests: " + bound, bound <= RATE * 1.1);
+		assertEquals(RATE, RouteRequestSeenSet.falsePositiveRate(seenSet.bitCount(), seenSet.hashCount(), EXPECTED), RATE / 10);
+
+		int falsePositives = 0;
+		for (int i = 0; i < PROBES; i++) {
+			if (seenSet.isInProgress(uuid(random)) == null) {
+				falsePositives++;
+			}
+		}
+		double measured = (double) falsePositives / PROBES;
+		assertTrue("Measured rate " + measured + " above the bound " + bound, measured <= bound * 1.25);
+	}
+}
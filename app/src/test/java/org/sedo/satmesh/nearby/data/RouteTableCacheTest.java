@@ -0,0 +1,101 @@
+package org.sedo.satmesh.nearby.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sedo.satmesh.model.rt.RouteEntry;
+import org.sedo.satmesh.model.rt.RouteUsage;
+import org.sedo.satmesh.model.rt.RouteUsageBacktracking;
+
+import java.util.Collections;
+import java.util.List;
+
+public class RouteTableCacheTest {
+
+	private static final long DESTINATION = 7L;
+	private static final long INITIATOR = 9L;
+	private final RouteTableCache cache = new RouteTableCache();
+
+	private static RouteEntry route(String uuid, Long destination, Long lastUse) {
+		RouteEntry route = new RouteEntry();
+		route.setDiscoveryUuid(uuid);
+		route.setDestinationNodeLocalId(destination);
+		route.setNextHopLocalId(2L);
+		route.setHopCount(1);
+		route.setLastUseTimestamp(lastUse);
+		return route;
+	}
+
+	private static RouteUsage usage(String uuid, String routeUuid) {
+		RouteUsage usage = new RouteUsage(uuid);
+		usage.setRouteEntryDiscoveryUuid(routeUuid);
+		usage.setPreviousHopLocalId(3L);
+		return usage;
+	}
+
+	@Test
+	public void findsTheMostRecentRouteLikeTheQuery() {
+		cache.load(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+		assertTrue(cache.isLoaded());
+		assertNull("Empty table", cache.findMostRecentRoute(DESTINATION));
+
+		cache.putRoute(route("old", DESTINATION, 100L));
+		cache.putRoute(route("never-used", DESTINATION, null));
+		assertEquals("old", cache.findMostRecentRoute(DESTINATION).routeEntry.getDiscoveryUuid());
+		assertTrue("No usage recorded", cache.findMostRecentRoute(DESTINATION).isWithoutUsage());
+
+		// A route to another node, used by a request of the destination, leads back to it
+		cache.putRoute(route("reverse", INITIATOR, 200L));
+		cache.putUsage(usage("usage", "reverse"));
+		cache.putBacktracking(new RouteUsageBacktracking("usage", DESTINATION));
+		RouteWithUsage found = cache.findMostRecentRoute(DESTINATION);
+		assertNotNull(found);
+		assertEquals("The backtracked route is more recent", "reverse", found.routeEntry.getDiscoveryUuid());
+		assertEquals("usage", found.routeUsage.getUsageRequestUuid());
+		assertEquals(Long.valueOf(DESTINATION), found.backtracking.destinationNodeLocalId());
+
+		RouteEntry old = cache.getRoute("old");
+		old.setLastUseTimestamp(300L);
+		cache.refreshRoute(old);
+		assertEquals("Refreshed by the use", "old", cache.findMostRecentRoute(DESTINATION).routeEntry.getDiscoveryUuid());
+	}
+
+	@Test
+	public void destroyedRoutesDisappearWithTheirUsages() {
+		cache.load(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+		RouteEntry reverse = route("reverse", INITIATOR, 200L);
+		cache.putRoute(reverse);
+		cache.putUsage(usage("usage", "reverse"));
+		cache.putBacktracking(new RouteUsageBacktracking("usage", DESTINATION));
+
+		cache.removeUsagesOf("reverse");
+		assertNull("Usage dropped", cache.getUsage("usage"));
+		assertNull("Nothing leads back anymore", cache.findMostRecentRoute(DESTINATION));
+		assertSame("The route is kept", reverse, cache.getRoute("reverse"));
+
+		cache.removeRoute("reverse");
+		assertNull(cache.getRoute("reverse"));
+		assertNull(cache.findMostRecentRoute(INITIATOR));
+		cache.refreshRoute(reverse);
+		assertNull("A late update doesn't resurrect the route", cache.getRoute("reverse"));
+	}
+
+	@Test
+	public void loadingKeepsTheWritesMadeMeanwhile() {
+		List<RouteEntry> snapshot = List.of(route("destroyed", DESTINATION, 100L), route("stale", INITIATOR, 100L));
+		assertFalse(cache.isLoaded());
+		cache.removeRoute("destroyed");
+		cache.putRoute(route("stale", INITIATOR, 500L));
+		cache.load(snapshot, List.of(usage("usage", "destroyed")), List.of(new RouteUsageBacktracking("usage", INITIATOR)));
+
+		assertNull("Destroyed while loading", cache.getRoute("destroyed"));
+		assertNull(cache.getUsage("usage"));
+		assertEquals("The write through wins over the snapshot", Long.valueOf(500L),
+				cache.getRoute("stale").getLastUseTimestamp());
+	}
+}
@@ -0,0 +1,95 @@
+package org.sedo.satmesh.nearby.link;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class KeepaliveMonitorTest {
+
+	private static final String ENDPOINT = "endpoint-1";
+	private long now = 1_000_000L;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final LinkQualityMonitor linkQualityMonitor = new LinkQualityMonitor(() -> now);
+	private final List<KeepaliveMonitor.Probe> sent = new ArrayList<>();
+	private final List<String> events = new ArrayList<>();
+	// Never started: the test drives the ticks
+	private final KeepaliveMonitor monitor = new KeepaliveMonitor(scheduler, () -> now, linkQualityMonitor,
+			(endpointId, probe) -> sent.add(probe), 2_000L, 500L);
+
+	{
+		monitor.setLivenessListener(new KeepaliveMonitor.LivenessListener() {
+			@Override
+			public void onSuspected(@NonNull String endpointId, double phi) {
+				events.add("suspected");
+			}
+
+			@Override
+			public void onRecovered(@NonNull String endpointId) {
+				events.add("recovered");
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	private void advance(long millis) {
+		for (long elapsed = 0; elapsed < millis; elapsed += 500L) {
+			now += 500L;
+			monitor.tick();
+		}
+	}
+
+	@Test
+	public void peersUnawareOfProbesAreNeverSuspected() {
+		monitor.track(ENDPOINT);
+		assertEquals("The support is announced on connection", 1, sent.size());
+		advance(60_000L);
+		assertEquals("No probe toward a peer that never probed", 1, sent.size());
+		assertFalse("A silent legacy peer isn't suspected", monitor.isSuspected(ENDPOINT));
+	}
+
+	@Test
+	public void trafficReplacesProbesAndSilenceIsSuspected() {
+		monitor.track(ENDPOINT);
+		monitor.onProbeReceived(ENDPOINT, new KeepaliveMonitor.Probe(7L, 0L, 0L));
+		for (int i = 0; i < 20; i++) {
+			monitor.onSent(ENDPOINT);
+			monitor.onReceived(ENDPOINT);
+			advance(500L);
+		}
+		assertEquals("A busy link needs no probe", 1, sent.size());
+
+		advance(2_000L);
+		assertEquals("An idle link is probed", 2, sent.size());
+		assertEquals("The probe echoes the peer's one", 7L, sent.get(1).echoTimestamp());
+		assertFalse("The idle gap isn't a failure", monitor.isSuspected(ENDPOINT));
+
+		advance(10_000L);
+		assertTrue("The silent peer should be suspected", monitor.isSuspected(ENDPOINT));
+		assertEquals(List.of("suspected"), events);
+
+		long echoed = sent.get(sent.size() - 1).timestamp();
+		long elapsed = now + 100L - echoed;
+		now += 100L;
+		monitor.onProbeReceived(ENDPOINT, new KeepaliveMonitor.Probe(9L, echoed, 40L));
+		assertFalse("A probe clears the suspicion", monitor.isSuspected(ENDPOINT));
+		assertEquals(List.of("suspected", "recovered"), events);
+		LinkQualityMonitor.LinkQuality quality = linkQualityMonitor.getQuality(ENDPOINT);
+		assertNotNull(quality);
+		assertEquals("RTT = elapsed time - time held by the peer", elapsed - 40L, quality.smoothedRttMillis());
+	}
+}
@@ -0,0 +1,118 @@
+package org.sedo.satmesh.nearby.link;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LinkQualityMonitorTest {
+
+	private static final String ENDPOINT = "endpoint-1";
+	private long now = 1_000_000L;
+	private final LinkQualityMonitor monitor = new LinkQualityMonitor(() -> now);
+
+	private static PayloadTransferUpdate update(long payloadId, int status, long transferred) {
+		return new PayloadTransferUpdate.Builder().setPayloadId(payloadId).setStatus(status)
+				.setBytesTransferred(transferred).setTotalBytes(transferred).build();
+	}
+
+	@Test
+	public void roundTripsAreSmoothed() {
+		for (long token = 1; token <= 8; token++) {
+			monitor.expectAnswer(ENDPOINT, token);
+			now += token == 8 ? 900L : 100L;
+			monitor.onAnswer(ENDPOINT, token);
+		}
+		monitor.onAnswer(ENDPOINT, 42L); // Unknown token
+
+		LinkQualityMonitor.LinkQuality quality = monitor.getQuality(ENDPOINT);
+		assertNotNull(quality);
+		assertEquals("Unknown answers shouldn't be sampled", 8L, quality.rttSamples());
+		assertEquals("A single slow answer moves the estimate by an eighth", 200L, quality.smoothedRttMillis());
+		assertTrue("The outlier should raise the variation", quality.rttVariationMillis() >= 200L);
+		assertEquals("RTO = SRTT + 4 RTTVAR", quality.smoothedRttMillis() + 4 * quality.rttVariationMillis(),
+				monitor.getRetransmissionTimeoutMillis(ENDPOINT, 30_000L));
+		assertEquals("Unknown links use the default", 30_000L, monitor.getRetransmissionTimeoutMillis("other", 30_000L));
+	}
+
+	@Test
+	public void throughputCountsTransferredBytesOverTheWindow() {
+		monitor.onTransferUpdate(ENDPOINT, update(1L, PayloadTransferUpdate.Status.IN_PROGRESS, 4_000L));
+		monitor.onTransferUpdate(ENDPOINT, update(1L, PayloadTransferUpdate.Status.IN_PROGRESS, 6_000L));
+		monitor.onTransferUpdate(ENDPOINT, update(1L, PayloadTransferUpdate.Status.SUCCESS, 10_000L));
+		monitor.onTransferUpdate(ENDPOINT, update(2L, PayloadTransferUpdate.Status.SUCCESS, 10_000L));
+
+		assertEquals("Progress updates shouldn't count bytes twice", 2_000.0,
+				monitor.getQuality(ENDPOINT).bytesPerSecond(), 0.001);
+		now += LinkQualityMonitor.THROUGHPUT_WINDOW_MILLIS;
+		assertEquals("Old bytes leave the window", 0.0, monitor.getQuality(ENDPOINT).bytesPerSecond(), 0.001);
+	}
+
+	@Test
+	public void failureRatioCoversTheWindow() {
+		monitor.onTransferUpdate(ENDPOINT, update(1L, PayloadTransferUpdate.Status.SUCCESS, 10L));
+		monitor.onTransferUpdate(ENDPOINT, update(2L, PayloadTransferUpdate.Status.FAILURE, 0L));
+		monitor.onTransferUpdate(ENDPOINT, update(3L, PayloadTransferUpdate.Status.CANCELED, 0L));
+		monitor.onSendFailed(ENDPOINT);
+
+		assertEquals(0.75, monitor.getQuality(ENDPOINT).failureRatio(), 0.001);
+		now += LinkQualityMonitor.FAILURE_WINDOW_MILLIS;
+		assertEquals("Old failures are forgotten", 0.0, monitor.getQuality(ENDPOINT).failureRatio(), 0.001);
+
+		monitor.forget(ENDPOINT);
+		assertNull("Forgotten endpoint", monitor.getQuality(ENDPOINT));
+		assertFalse(monitor.getQualities().containsKey(ENDPOINT));
+	}
+
+	@Test
+	public void linkCostGrowsWithLossesAndSlowTransfers() {
+		assertEquals("Unknown link", LinkQualityMonitor.LINK_COST_UNIT, LinkQualityMonitor.linkCost(null));
+		monitor.onTransferUpdate(ENDPOINT, update(1L, PayloadTransferUpdate.Status.SUCCESS, 100L));
+		assertEquals("Lossless, bandwidth unknown", LinkQualityMonitor.LINK_COST_UNIT,
+				LinkQualityMonitor.linkCost(monitor.getQuality(ENDPOINT)));
+
+		// 64 KiB in a second: a quarter of the reference bandwidth
+		monitor.onTransferUpdate(ENDPOINT, update(2L, PayloadTransferUpdate.Status.IN_PROGRESS, 0L));
+		now += 1_000L;
+		monitor.onTransferUpdate(ENDPOINT, update(2L, PayloadTransferUpdate.Status.SUCCESS, 64L * 1024));
+		LinkQualityMonitor.LinkQuality quality = monitor.getQuality(ENDPOINT);
+		assertEquals(64L * 1024, quality.bandwidthBytesPerSecond());
+		assertEquals(4 * LinkQualityMonitor.LINK_COST_UNIT, LinkQualityMonitor.linkCost(quality));
+
+		// Small payloads don't sample the bandwidth, one in three transfers lost
+		monitor.onTransferUpdate(ENDPOINT, update(3L, PayloadTransferUpdate.Status.IN_PROGRESS, 0L));
+		now += 1_000L;
+		monitor.onTransferUpdate(ENDPOINT, update(3L, PayloadTransferUpdate.Status.FAILURE, 10L));
+		quality = monitor.getQuality(ENDPOINT);
+		assertEquals(64L * 1024, quality.bandwidthBytesPerSecond());
+		assertEquals("ETX of a 2/3 delivery ratio", 1.5, quality.expectedTransmissions(), 0.001);
+		assertEquals(6 * LinkQualityMonitor.LINK_COST_UNIT, LinkQualityMonitor.linkCost(quality));
+	}
+
+	@Test
+	public void concurrentAdditionsAreNotLost() throws InterruptedException {
+		RollingCounter counter = new RollingCounter(4, 1_000L, () -> now);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					counter.add(1L);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals("Every addition should be counted", 40_000L, counter.sum());
+	}
+}
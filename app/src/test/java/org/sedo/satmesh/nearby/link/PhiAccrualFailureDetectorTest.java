@@ -0,0 +1,69 @@
+package org.sedo.satmesh.nearby.link;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PhiAccrualFailureDetectorTest {
+
+	private static final String KEY = "endpoint-1";
+	private long now = 1_000_000L;
+	private final PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(() -> now,
+			PhiAccrualFailureDetector.DEFAULT_THRESHOLD, PhiAccrualFailureDetector.DEFAULT_MAX_SAMPLES,
+			100L, 0L, 1_000L);
+
+	private void beat(int count, long intervalMillis) {
+		for (int i = 0; i < count; i++) {
+			now += intervalMillis;
+			detector.heartbeat(KEY);
+		}
+	}
+
+	@Test
+	public void upperTailMatchesTheNormalDistribution() {
+		assertEquals("Half of the values are above the mean", 0.5, PhiAccrualFailureDetector.upperTail(0.0), 1e-4);
+		assertEquals("P(X > mean + sigma)", 0.1587, PhiAccrualFailureDetector.upperTail(1.0), 1e-3);
+		assertEquals("P(X > mean - 2 sigma)", 0.9772, PhiAccrualFailureDetector.upperTail(-2.0), 1e-3);
+	}
+
+	@Test
+	public void suspicionGrowsWithTheSilence() {
+		assertEquals("Unknown keys aren't suspected", 0.0, detector.phi(KEY), 0.0);
+		beat(50, 1_000L);
+		assertTrue("Right after a heartbeat", detector.isAvailable(KEY));
+		now += 1_000L;
+		double onTime = detector.phi(KEY);
+		now += 300L;
+		double late = detector.phi(KEY);
+		assertTrue("Phi should grow with the delay", late > onTime);
+		assertTrue("A regular delay isn't a failure", detector.isAvailable(KEY));
+		now += 2_700L;
+		assertFalse("Four intervals of silence on a regular link", detector.isAvailable(KEY));
+		detector.heartbeat(KEY);
+		assertTrue("A heartbeat clears the suspicion", detector.isAvailable(KEY));
+	}
+
+	@Test
+	public void jitteryLinksAreSuspectedLater() {
+		long[] jitteryNow = {now};
+		PhiAccrualFailureDetector jittery = new PhiAccrualFailureDetector(() -> jitteryNow[0],
+				PhiAccrualFailureDetector.DEFAULT_THRESHOLD, PhiAccrualFailureDetector.DEFAULT_MAX_SAMPLES,
+				100L, 0L, 1_000L);
+		for (int i = 0; i < 50; i++) {
+			jitteryNow[0] += i % 2 == 0 ? 200L : 1_800L;
+			jittery.heartbeat(KEY);
+		}
+		// Same mean delay, regular beats
+		beat(50, 1_000L);
+		now += 3_500L;
+		jitteryNow[0] += 3_500L;
+		assertTrue("The jittery link should be less suspected", jittery.phi(KEY) < detector.phi(KEY));
+		assertTrue("The jittery link is still available", jittery.isAvailable(KEY));
+
+		detector.remove(KEY);
+		assertFalse("Removed keys aren't monitored", detector.isMonitored(KEY));
+		assertTrue("Removed keys aren't suspected", detector.isAvailable(KEY));
+	}
+}
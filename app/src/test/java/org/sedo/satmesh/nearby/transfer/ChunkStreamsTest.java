@@ -0,0 +1,158 @@
+package org.sedo.satmesh.nearby.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sedo.satmesh.proto.ChunkStreamHeader;
+import org.sedo.satmesh.proto.TransferChunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+public class ChunkStreamsTest {
+
+	private static final String TRANSFER_ID = "transfer-1";
+	private static final int CHUNK_SIZE = 1024;
+	private static final ChunkStreamHeader HEADER = ChunkStreamHeader.newBuilder()
+			.setTransferId(TRANSFER_ID).setSourceNodeId("alice").setDestinationNodeId("carol").build();
+	private final byte[] key = ChunkCipher.newKey();
+	private final File target;
+
+	public ChunkStreamsTest() throws IOException {
+		target = File.createTempFile("chunks", ".part");
+	}
+
+	private static byte[] content(int size) {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		return content;
+	}
+
+	private byte[] write(byte[] content, long startOffset) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChunkStreams.writeTransfer(out, HEADER, ContentSource.of(content), startOffset, CHUNK_SIZE,
+				new ChunkCipher(key, TRANSFER_ID), null);
+		return out.toByteArray();
+	}
+
+	private ChunkReassembler reassembler(long size) throws IOException {
+		return new ChunkReassembler(target, size, CHUNK_SIZE, new ChunkCipher(key, TRANSFER_ID));
+	}
+
+	@After
+	public void tearDown() {
+		//noinspection ResultOfMethodCallIgnored
+		target.delete();
+	}
+
+	@Test
+	public void contentIsReassembledFromTheStream() throws Exception {
+		byte[] content = content(10 * CHUNK_SIZE + 123);
+		ByteArrayInputStream in = new ByteArrayInputStream(write(content, 0L));
+		assertEquals("Header should come first", HEADER, ChunkStreams.readHeader(in));
+
+		try (ChunkReassembler reassembler = reassembler(content.length)) {
+			TransferChunk chunk;
+			int chunks = 0;
+			while ((chunk = ChunkStreams.readChunk(in)) != null) {
+				reassembler.accept(chunk);
+				chunks++;
+			}
+			assertEquals("One frame per chunk", 11, chunks);
+			assertTrue("Transfer should be complete", reassembler.isComplete());
+		}
+		assertArrayEquals("Reassembled content", content, Files.readAllBytes(target.toPath()));
+	}
+
+	@Test
+	public void interruptedTransferResumesAfterTheLastCompleteChunk() throws Exception {
+		byte[] content = content(5 * CHUNK_SIZE);
+		ByteArrayInputStream in = new ByteArrayInputStream(write(content, 0L));
+		ChunkStreams.readHeader(in);
+		try (ChunkReassembler reassembler = reassembler(content.length)) {
+			reassembler.accept(ChunkStreams.readChunk(in));
+			reassembler.accept(ChunkStreams.readChunk(in));
+		}
+		// Half of a chunk written before a crash
+		Files.write(target.toPath(), content(CHUNK_SIZE / 2), StandardOpenOption.APPEND);
+
+		try (ChunkReassembler resumed = reassembler(content.length)) {
+			assertEquals("Resume offset should be after the complete chunks", 2L * CHUNK_SIZE, resumed.getNextOffset());
+			ByteArrayInputStream rest = new ByteArrayInputStream(write(content, resumed.getNextOffset()));
+			ChunkStreams.readHeader(rest);
+			TransferChunk chunk;
+			while ((chunk = ChunkStreams.readChunk(rest)) != null) {
+				resumed.accept(chunk);
+			}
+			assertTrue("Resumed transfer should complete", resumed.isComplete());
+		}
+		assertArrayEquals("Resumed content", content, Files.readAllBytes(target.toPath()));
+	}
+
+	@Test
+	public void gapAndTamperingAreRejected() throws Exception {
+		byte[] content = content(3 * CHUNK_SIZE);
+		ByteArrayInputStream in = new ByteArrayInputStream(write(content, 0L));
+		ChunkStreams.readHeader(in);
+		TransferChunk first = ChunkStreams.readChunk(in);
+		TransferChunk second = ChunkStreams.readChunk(in);
+		assertNotNull(first);
+		assertNotNull(second);
+		try (ChunkReassembler reassembler = reassembler(content.length)) {
+			try {
+				reassembler.accept(second);
+				fail("A chunk after a gap should be rejected");
+			} catch (IOException expected) {
+				// Expected
+			}
+			try {
+				reassembler.accept(first.toBuilder().setOffset(0L).setEncryptedData(second.getEncryptedData()).build());
+				fail("A chunk moved to another offset shouldn't authenticate");
+			} catch (GeneralSecurityException expected) {
+				// Expected
+			}
+			assertFalse("First chunk doesn't complete the transfer", reassembler.accept(first));
+			assertFalse("Duplicate of an old chunk is ignored", reassembler.accept(first));
+			assertEquals("Only the first chunk should be written", CHUNK_SIZE, reassembler.getNextOffset());
+		}
+	}
+
+	@Test
+	public void relayCopiesThroughABoundedBuffer() throws Exception {
+		byte[] content = content(64 * CHUNK_SIZE);
+		byte[] stream = write(content, 0L);
+		ByteArrayInputStream in = new ByteArrayInputStream(stream);
+		ChunkStreamHeader header = ChunkStreams.readHeader(in);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[512];
+
+		ChunkStreams.relay(in, out, header, buffer);
+		assertArrayEquals("Relayed stream should be identical", stream, out.toByteArray());
+	}
+
+	@Test
+	public void emptyContentIsASingleLastChunk() throws Exception {
+		ByteArrayInputStream in = new ByteArrayInputStream(write(new byte[0], 0L));
+		ChunkStreams.readHeader(in);
+		TransferChunk chunk = ChunkStreams.readChunk(in);
+		assertNotNull("Empty content still has a chunk", chunk);
+		assertTrue("It should be the last", chunk.getLast());
+		assertNull("Nothing should follow", ChunkStreams.readChunk(in));
+		try (ChunkReassembler reassembler = reassembler(0L)) {
+			assertTrue("Empty transfer completes on its only chunk", reassembler.accept(chunk));
+		}
+	}
+}
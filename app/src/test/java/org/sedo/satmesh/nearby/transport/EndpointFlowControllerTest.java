@@ -0,0 +1,151 @@
+package org.sedo.satmesh.nearby.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class EndpointFlowControllerTest {
+
+	private static final String ENDPOINT = "EP01";
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final List<Payload> dispatched = new CopyOnWriteArrayList<>();
+	private final List<Boolean> congestionEvents = new CopyOnWriteArrayList<>();
+
+	private static PayloadTransferUpdate update(@NonNull Payload payload, int status) {
+		return new PayloadTransferUpdate.Builder().setPayloadId(payload.getId()).setStatus(status).build();
+	}
+
+	private EndpointFlowController controller(int window, int maxQueued, long timeoutMillis) {
+		EndpointFlowController controller = new EndpointFlowController(scheduler,
+				(endpointId, payload, callback) -> {
+					dispatched.add(payload);
+					callback.onSuccess();
+				}, window, maxQueued, timeoutMillis);
+		controller.setCongestionListener((endpointId, congested) -> congestionEvents.add(congested));
+		return controller;
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void windowLimitsPayloadsInFlight() {
+		EndpointFlowController controller = controller(2, 8, TimeUnit.MINUTES.toMillis(1));
+		RecordingCallback callback = new RecordingCallback();
+		Payload first = Payload.fromBytes(new byte[]{1});
+		controller.submit(ENDPOINT, first, callback);
+		controller.submit(ENDPOINT, Payload.fromBytes(new byte[]{2}), callback);
+		Payload third = Payload.fromBytes(new byte[]{3});
+		controller.submit(ENDPOINT, third, callback);
+
+		assertEquals("Only the window should be dispatched", 2, dispatched.size());
+		assertEquals("In-flight count", 2, controller.getInFlightCount(ENDPOINT));
+		assertEquals("Queue depth", 1, controller.getQueueDepth(ENDPOINT));
+		assertEquals("Acceptance by the transport isn't a delivery", 0, callback.successes.size());
+
+		controller.onPayloadTransferUpdate(ENDPOINT, update(first, PayloadTransferUpdate.Status.SUCCESS));
+		assertEquals("Completed payload should be reported as sent", List.of(first), callback.successes);
+		assertEquals("The released credit should dispatch the queued payload", third, dispatched.get(2));
+		assertEquals("Queue should be drained", 0, controller.getQueueDepth(ENDPOINT));
+	}
+
+	@Test
+	public void transferFailureReleasesCredit() {
+		EndpointFlowController controller = controller(1, 8, TimeUnit.MINUTES.toMillis(1));
+		RecordingCallback callback = new RecordingCallback();
+		Payload first = Payload.fromBytes(new byte[]{1});
+		controller.submit(ENDPOINT, first, callback);
+		controller.submit(ENDPOINT, Payload.fromBytes(new byte[]{2}), callback);
+
+		controller.onPayloadTransferUpdate(ENDPOINT, update(first, PayloadTransferUpdate.Status.FAILURE));
+		assertEquals("Failed transfer should be reported", List.of(first), callback.failures);
+		assertEquals("The next payload should take the credit", 2, dispatched.size());
+		assertEquals("In-flight count", 1, controller.getInFlightCount(ENDPOINT));
+	}
+
+	@Test
+	public void fullQueueRejectsAndSignalsCongestion() {
+		EndpointFlowController controller = controller(1, 4, TimeUnit.MINUTES.toMillis(1));
+		RecordingCallback callback = new RecordingCallback();
+		Payload head = Payload.fromBytes(new byte[]{0});
+		controller.submit(ENDPOINT, head, callback);
+		for (int i = 0; i < 4; i++) {
+			controller.submit(ENDPOINT, Payload.fromBytes(new byte[]{(byte) i}), callback);
+		}
+		assertTrue("Endpoint should be congested at the high watermark", controller.isCongested(ENDPOINT));
+		assertEquals("Congestion should be signaled once", List.of(true), congestionEvents);
+
+		Payload overflow = Payload.fromBytes(new byte[]{9});
+		controller.submit(ENDPOINT, overflow, callback);
+		assertEquals("Payload beyond the queue bound should be rejected", List.of(overflow), callback.failures);
+		assertTrue("Rejection cause should be backpressure", callback.lastCause instanceof EndpointFlowController.BackpressureException);
+		assertEquals("Rejections should be counted", 1L, controller.getStats().get(ENDPOINT).rejected());
+
+		// Complete payloads until the queue falls to the low watermark
+		for (int i = 0; i < 3; i++) {
+			Payload inFlight = dispatched.get(dispatched.size() - 1);
+			controller.onPayloadTransferUpdate(ENDPOINT, update(inFlight, PayloadTransferUpdate.Status.SUCCESS));
+		}
+		assertFalse("Endpoint should be relieved", controller.isCongested(ENDPOINT));
+		assertEquals("Relief should be signaled", List.of(true, false), congestionEvents);
+	}
+
+	@Test
+	public void missingTransferReportTimesOut() throws InterruptedException {
+		EndpointFlowController controller = controller(1, 8, 20L);
+		RecordingCallback callback = new RecordingCallback();
+		controller.submit(ENDPOINT, Payload.fromBytes(new byte[]{1}), callback);
+		assertTrue("Payload without report should fail after the timeout", callback.failed.await(2, TimeUnit.SECONDS));
+		assertEquals("Credit should be given back", 0, controller.getInFlightCount(ENDPOINT));
+	}
+
+	@Test
+	public void discardFailsEverything() {
+		EndpointFlowController controller = controller(1, 8, TimeUnit.MINUTES.toMillis(1));
+		RecordingCallback callback = new RecordingCallback();
+		controller.submit(ENDPOINT, Payload.fromBytes(new byte[]{1}), callback);
+		controller.submit(ENDPOINT, Payload.fromBytes(new byte[]{2}), callback);
+		controller.discard(ENDPOINT);
+
+		assertEquals("In-flight and queued payloads should fail", 2, callback.failures.size());
+		assertEquals("Nothing should remain in flight", 0, controller.getInFlightCount(ENDPOINT));
+	}
+
+	private static class RecordingCallback implements TransmissionCallback {
+		final List<Payload> successes = new CopyOnWriteArrayList<>();
+		final List<Payload> failures = new CopyOnWriteArrayList<>();
+		final CountDownLatch failed = new CountDownLatch(1);
+		volatile Exception lastCause;
+
+		@Override
+		public void onSuccess(@NonNull Payload payload) {
+			successes.add(payload);
+		}
+
+		@Override
+		public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+			failures.add(payload);
+			lastCause = cause;
+			failed.countDown();
+		}
+	}
+}
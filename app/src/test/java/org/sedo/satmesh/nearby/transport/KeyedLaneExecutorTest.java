@@ -0,0 +1,127 @@
+package org.sedo.satmesh.nearby.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sedo.satmesh.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedLaneExecutorTest {
+
+	private static final int LANES = 4;
+	private final KeyedLaneExecutor executor = newExecutor(LANES);
+
+	private static KeyedLaneExecutor newExecutor(int lanes) {
+		return new KeyedLaneExecutor(Executors.newFixedThreadPool(lanes), lanes, Clock.SYSTEM,
+				PriorityTaskScheduler.DEFAULT_MAX_WAIT_MILLIS);
+	}
+
+	/**
+	 * Returns keys bound to distinct lanes.
+	 */
+	private static List<String> keysOnDistinctLanes(KeyedLaneExecutor executor, int count) {
+		List<String> keys = new ArrayList<>();
+		Set<Integer> lanes = new HashSet<>();
+		for (int i = 0; keys.size() < count; i++) {
+			String key = "peer-" + i;
+			if (lanes.add(executor.laneOf(key))) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void tasksOfSameKeyRunInOrderAndOneAtATime() throws InterruptedException {
+		int keys = 8;
+		int tasksPerKey = 200;
+		Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+		Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+		AtomicBoolean overlap = new AtomicBoolean();
+		CountDownLatch done = new CountDownLatch(keys * tasksPerKey);
+		for (int i = 0; i < tasksPerKey; i++) {
+			for (int k = 0; k < keys; k++) {
+				String key = "node-" + k;
+				final int index = i;
+				executor.execute(key, TrafficClass.INTERACTIVE, () -> {
+					if (running.computeIfAbsent(key, ignored -> new AtomicInteger()).incrementAndGet() > 1) {
+						overlap.set(true);
+					}
+					executed.computeIfAbsent(key, ignored -> new CopyOnWriteArrayList<>()).add(index);
+					running.get(key).decrementAndGet();
+					done.countDown();
+				});
+			}
+		}
+		assertTrue("All tasks should run", done.await(10, TimeUnit.SECONDS));
+		assertTrue("Tasks of a key mustn't run concurrently", !overlap.get());
+		for (List<Integer> indexes : executed.values()) {
+			for (int i = 0; i < tasksPerKey; i++) {
+				assertEquals("Tasks of a key should run in submission order", i, indexes.get(i).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void keysAreBoundToStableLanes() {
+		Set<Integer> used = new HashSet<>();
+		for (int i = 0; i < 64; i++) {
+			String key = "node-" + i;
+			int lane = executor.laneOf(key);
+			assertEquals("A key should always use the same lane", lane, executor.laneOf(key));
+			assertTrue("Lane index out of range: " + lane, lane >= 0 && lane < LANES);
+			used.add(lane);
+		}
+		assertEquals("64 keys should be spread over every lane", LANES, used.size());
+	}
+
+	@Test
+	public void keysOfDistinctLanesRunInParallel() throws InterruptedException {
+		List<String> keys = keysOnDistinctLanes(executor, LANES);
+		CountDownLatch started = new CountDownLatch(LANES);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(LANES + 1);
+		AtomicBoolean nextStarted = new AtomicBoolean();
+		for (String key : keys) {
+			executor.execute(key, TrafficClass.INTERACTIVE, () -> {
+				started.countDown();
+				try {
+					// Only reached by every task if the lanes run at once
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		executor.execute(keys.get(0), TrafficClass.INTERACTIVE, () -> {
+			nextStarted.set(true);
+			done.countDown();
+		});
+		assertTrue("A task per lane should run at once", started.await(10, TimeUnit.SECONDS));
+		assertFalse("A task should wait for the previous task of its key", nextStarted.get());
+		release.countDown();
+		assertTrue("All tasks should run", done.await(10, TimeUnit.SECONDS));
+		assertTrue("The waiting task should run once its key is free", nextStarted.get());
+	}
+}
@@ -0,0 +1,186 @@
+package org.sedo.satmesh.nearby.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class LoopbackMeshNetworkTest {
+
+	private static final long TIMEOUT_SECONDS = 5L;
+
+	private static <T> T poll(BlockingQueue<T> queue) throws InterruptedException {
+		T value = queue.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		assertNotNull("Expected event not received in time", value);
+		return value;
+	}
+
+	/**
+	 * Links node 0 and node 1, establishes their connection and returns the listeners.
+	 */
+	private static RecordingListener[] connect(LoopbackMeshNetwork network) throws InterruptedException {
+		RecordingListener first = new RecordingListener();
+		RecordingListener second = new RecordingListener();
+		MeshTransport a = network.transport(0);
+		MeshTransport b = network.transport(1);
+		a.setListener(first);
+		b.setListener(second);
+		a.startAdvertising("node-0", RecordingListener.IGNORED);
+		b.startDiscovery(RecordingListener.IGNORED);
+		assertEquals("Discoverer should find the advertiser", "node-0", poll(second.found));
+
+		b.requestConnection("node-1", network.endpointIdOf(0));
+		assertEquals("Requester should see the handshake", "node-0", poll(second.initiated));
+		assertEquals("Advertiser should see the handshake", "node-1", poll(first.initiated));
+		a.acceptConnection(network.endpointIdOf(1));
+		b.acceptConnection(network.endpointIdOf(0));
+		assertTrue("Connection should succeed on node 0", poll(first.results).isSuccess());
+		assertTrue("Connection should succeed on node 1", poll(second.results).isSuccess());
+		return new RecordingListener[]{first, second};
+	}
+
+	@Test
+	public void lineTopology() {
+		LoopbackMeshNetwork network = LoopbackMeshNetwork.line(5, LoopbackMeshNetwork.LinkProfile.IDEAL, 1L);
+		try {
+			assertEquals("A line of 5 nodes has 4 links", 4, network.linkCount());
+			assertEquals("First node has only one neighbor", List.of(1), network.neighborsOf(0));
+			assertEquals("Middle node is linked to both sides", List.of(1, 3), network.neighborsOf(2));
+			assertEquals("Last node has only one neighbor", List.of(3), network.neighborsOf(4));
+		} finally {
+			network.shutdown();
+		}
+	}
+
+	@Test
+	public void gridTopology() {
+		LoopbackMeshNetwork network = LoopbackMeshNetwork.grid(5, 10, LoopbackMeshNetwork.LinkProfile.IDEAL, 1L);
+		try {
+			assertEquals("Grid size", 50, network.size());
+			assertEquals("A 5x10 grid has 5*9 + 10*4 links", 85, network.linkCount());
+			assertEquals("Corner has two neighbors", List.of(1, 10), network.neighborsOf(0));
+			assertEquals("Inner node has four neighbors", List.of(1, 10, 12, 21), network.neighborsOf(11));
+		} finally {
+			network.shutdown();
+		}
+	}
+
+	@Test
+	public void randomGeometricTopologyIsReproducible() {
+		LoopbackMeshNetwork first = LoopbackMeshNetwork.randomGeometric(60, 0.25, LoopbackMeshNetwork.LinkProfile.IDEAL, 42L);
+		LoopbackMeshNetwork second = LoopbackMeshNetwork.randomGeometric(60, 0.25, LoopbackMeshNetwork.LinkProfile.IDEAL, 42L);
+		try {
+			assertEquals("Same seed should give the same number of links", first.linkCount(), second.linkCount());
+			for (int i = 0; i < first.size(); i++) {
+				assertEquals("Same seed should give the same neighbors for node " + i, first.neighborsOf(i), second.neighborsOf(i));
+			}
+			assertTrue("Radius 0.25 over 60 nodes should create links", first.linkCount() > 0);
+		} finally {
+			first.shutdown();
+			second.shutdown();
+		}
+	}
+
+	@Test
+	public void payloadIsDeliveredAfterLinkLatency() throws InterruptedException {
+		LoopbackMeshNetwork network = new LoopbackMeshNetwork(2, 7L);
+		network.link(0, 1, new LoopbackMeshNetwork.LinkProfile(30L, 0d, 0L));
+		try {
+			RecordingListener[] listeners = connect(network);
+			byte[] data = {1, 2, 3, 4};
+			long start = System.nanoTime();
+			network.transport(0).sendPayload(network.endpointIdOf(1), Payload.fromBytes(data), RecordingListener.IGNORED);
+
+			Payload received = poll(listeners[1].payloads);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertArrayEquals("Receiver should get the sent bytes", data, received.asBytes());
+			assertTrue("Delivery shouldn't be faster than the link latency, was " + elapsedMillis, elapsedMillis >= 30L);
+			assertEquals("Sender should be notified of the success", PayloadTransferUpdate.Status.SUCCESS,
+					poll(listeners[0].updates).getStatus());
+			assertEquals("Delivered payloads", 1L, network.getDeliveredPayloads());
+			assertEquals("Delivered bytes", 4L, network.getDeliveredBytes());
+		} finally {
+			network.shutdown();
+		}
+	}
+
+	@Test
+	public void lostPayloadIsReportedAsFailure() throws InterruptedException {
+		LoopbackMeshNetwork network = new LoopbackMeshNetwork(2, 7L);
+		network.link(0, 1, new LoopbackMeshNetwork.LinkProfile(0L, 1d, 0L));
+		try {
+			RecordingListener[] listeners = connect(network);
+			network.transport(1).sendPayload(network.endpointIdOf(0), Payload.fromBytes(new byte[]{9}), RecordingListener.IGNORED);
+
+			assertEquals("Sender should be notified of the loss", PayloadTransferUpdate.Status.FAILURE,
+					poll(listeners[1].updates).getStatus());
+			assertEquals("Dropped payloads", 1L, network.getDroppedPayloads());
+			assertTrue("Receiver shouldn't get anything", listeners[0].payloads.isEmpty());
+		} finally {
+			network.shutdown();
+		}
+	}
+
+	private static class RecordingListener implements MeshTransport.Listener {
+		static final MeshTransport.OperationCallback IGNORED = new MeshTransport.OperationCallback() {
+			@Override
+			public void onSuccess() {
+			}
+
+			@Override
+			public void onFailure(@NonNull Exception e) {
+			}
+		};
+		final BlockingQueue<String> found = new LinkedBlockingQueue<>();
+		final BlockingQueue<String> initiated = new LinkedBlockingQueue<>();
+		final BlockingQueue<Status> results = new LinkedBlockingQueue<>();
+		final BlockingQueue<Payload> payloads = new LinkedBlockingQueue<>();
+		final BlockingQueue<PayloadTransferUpdate> updates = new LinkedBlockingQueue<>();
+
+		@Override
+		public void onConnectionInitiated(@NonNull String endpointId, @NonNull String endpointName) {
+			initiated.add(endpointName);
+		}
+
+		@Override
+		public void onConnectionResult(@NonNull String endpointId, @NonNull Status status) {
+			results.add(status);
+		}
+
+		@Override
+		public void onDisconnected(@NonNull String endpointId) {
+		}
+
+		@Override
+		public void onEndpointFound(@NonNull String endpointId, @NonNull String endpointName) {
+			found.add(endpointName);
+		}
+
+		@Override
+		public void onEndpointLost(@NonNull String endpointId) {
+		}
+
+		@Override
+		public void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload) {
+			payloads.add(payload);
+		}
+
+		@Override
+		public void onPayloadTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update) {
+			updates.add(update);
+		}
+	}
+}
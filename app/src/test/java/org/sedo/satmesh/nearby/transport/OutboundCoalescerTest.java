@@ -0,0 +1,158 @@
+package org.sedo.satmesh.nearby.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.nearby.connection.Payload;
+import com.google.protobuf.ByteString;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sedo.satmesh.nearby.data.TransmissionCallback;
+import org.sedo.satmesh.proto.NearbyMessage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundCoalescerTest {
+
+	private static final String ENDPOINT = "EP01";
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final BlockingQueue<Payload> sent = new LinkedBlockingQueue<>();
+	// Every payload handed to the sender succeeds, the callbacks are notified before the payload is published
+	private final OutboundCoalescer.PayloadSender sender = (endpointId, payload, callback) -> {
+		callback.onSuccess(payload);
+		sent.add(payload);
+	};
+
+	private static byte[] frame(int size) {
+		return NearbyMessage.newBuilder().setBody(ByteString.copyFrom(new byte[size])).build().toByteArray();
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void framesWithinWindowAreBatched() throws Exception {
+		OutboundCoalescer coalescer = new OutboundCoalescer(scheduler, sender, endpointId -> true, 50L, 32 * 1024);
+		RecordingCallback first = new RecordingCallback();
+		RecordingCallback second = new RecordingCallback();
+		byte[] firstFrame = frame(10);
+		byte[] secondFrame = frame(20);
+		coalescer.enqueue(ENDPOINT, firstFrame, first);
+		coalescer.enqueue(ENDPOINT, secondFrame, second);
+		assertEquals("Both frames should wait for the window", 2, coalescer.getQueuedFrameCount(ENDPOINT));
+
+		Payload carrier = sent.poll(2, TimeUnit.SECONDS);
+		assertNotNull("The window expiration should flush the queue", carrier);
+		NearbyMessage batch = NearbyMessage.parseFrom(carrier.asBytes());
+		assertEquals("Carrier should be a batch", NearbyMessage.PayloadContentCase.BATCH, batch.getPayloadContentCase());
+		assertEquals("Batch should hold both frames", 2, batch.getBatch().getFramesCount());
+		assertArrayEquals("Frames should keep their order", firstFrame, batch.getBatch().getFrames(0).getNearbyMessage().toByteArray());
+		assertArrayEquals("Frames should keep their order", secondFrame, batch.getBatch().getFrames(1).getNearbyMessage().toByteArray());
+
+		assertNotNull("Each frame callback should be notified", first.success);
+		assertNotNull("Each frame callback should be notified", second.success);
+		assertEquals("Frame ID should be the ID of the payload given to the callback",
+				first.success.getId(), batch.getBatch().getFrames(0).getFrameId());
+		assertEquals("Frame ID should be the ID of the payload given to the callback",
+				second.success.getId(), batch.getBatch().getFrames(1).getFrameId());
+		assertTrue("Frame IDs should be distinct", first.success.getId() != second.success.getId());
+	}
+
+	@Test
+	public void singleFrameIsSentWithoutEnvelope() throws Exception {
+		OutboundCoalescer coalescer = new OutboundCoalescer(scheduler, sender, endpointId -> true, 5L, 32 * 1024);
+		RecordingCallback callback = new RecordingCallback();
+		byte[] data = frame(10);
+		coalescer.enqueue(ENDPOINT, data, callback);
+
+		Payload payload = sent.poll(2, TimeUnit.SECONDS);
+		assertNotNull("The frame should be flushed", payload);
+		assertArrayEquals("A lone frame should be sent as-is", data, payload.asBytes());
+		assertEquals("The callback should get the very payload sent", payload.getId(), callback.success.getId());
+	}
+
+	@Test
+	public void budgetOverflowFlushesImmediately() {
+		OutboundCoalescer coalescer = new OutboundCoalescer(scheduler, sender, endpointId -> true, TimeUnit.MINUTES.toMillis(1), 200);
+		coalescer.enqueue(ENDPOINT, frame(100), null);
+		assertEquals("First frame fits the budget", 0, sent.size());
+		coalescer.enqueue(ENDPOINT, frame(100), null);
+		assertEquals("Second frame doesn't fit, the first one should leave alone", 1, sent.size());
+		coalescer.enqueue(ENDPOINT, frame(300), null);
+		assertEquals("Oversized frame should leave right away, after the queued one", 3, sent.size());
+		assertEquals("Nothing should remain queued", 0, coalescer.getQueuedFrameCount(ENDPOINT));
+	}
+
+	@Test
+	public void zeroWindowDisablesCoalescing() {
+		OutboundCoalescer coalescer = new OutboundCoalescer(scheduler, sender, endpointId -> true, 0L, 32 * 1024);
+		coalescer.enqueue(ENDPOINT, frame(10), null);
+		coalescer.enqueue(ENDPOINT, frame(10), null);
+		assertEquals("Each frame should be sent immediately", 2, sent.size());
+	}
+
+	@Test
+	public void framesToNodesWithoutBatchingAreSentAlone() {
+		Set<String> batching = ConcurrentHashMap.newKeySet();
+		OutboundCoalescer coalescer = new OutboundCoalescer(scheduler, sender, batching::contains,
+				TimeUnit.MINUTES.toMillis(1), 32 * 1024);
+		byte[] first = frame(10);
+		coalescer.enqueue(ENDPOINT, first, null);
+		coalescer.enqueue(ENDPOINT, frame(10), null);
+		assertEquals("Nodes of the previous releases drop the batches", 2, sent.size());
+		assertArrayEquals("Each frame should be sent as-is", first, sent.peek().asBytes());
+
+		batching.add(ENDPOINT);
+		coalescer.enqueue(ENDPOINT, frame(10), null);
+		coalescer.enqueue(ENDPOINT, frame(10), null);
+		assertEquals("Frames wait for the window once batches are accepted", 2, coalescer.getQueuedFrameCount(ENDPOINT));
+		batching.clear();
+		coalescer.enqueue(ENDPOINT, frame(10), null);
+		assertEquals("Queued frames should leave one by one, before the new one", 5, sent.size());
+		assertEquals(0, coalescer.getQueuedFrameCount(ENDPOINT));
+	}
+
+	@Test
+	public void discardFailsQueuedFrames() {
+		OutboundCoalescer coalescer = new OutboundCoalescer(scheduler, sender, endpointId -> true, TimeUnit.MINUTES.toMillis(1), 32 * 1024);
+		RecordingCallback callback = new RecordingCallback();
+		coalescer.enqueue(ENDPOINT, frame(10), callback);
+		coalescer.discard(ENDPOINT);
+
+		assertNull("Discarded frame mustn't be reported as sent", callback.success);
+		assertEquals("Discarded frame should be reported as failed", 1, callback.failures.size());
+		assertEquals("Nothing should be sent", 0, sent.size());
+	}
+
+	private static class RecordingCallback implements TransmissionCallback {
+		final List<Payload> failures = new CopyOnWriteArrayList<>();
+		volatile Payload success;
+
+		@Override
+		public void onSuccess(@NonNull Payload payload) {
+			success = payload;
+		}
+
+		@Override
+		public void onFailure(@Nullable Payload payload, @Nullable Exception cause) {
+			failures.add(payload);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.sedo.satmesh.nearby.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PriorityTaskSchedulerTest {
+
+	private static final long MAX_WAIT_MILLIS = 1_000L;
+	private final List<Runnable> drains = new ArrayList<>();
+	private final List<String> ran = new ArrayList<>();
+	private long now;
+	// The drain loops are only collected, tests run them or poll the tasks by themselves
+	private final PriorityTaskScheduler scheduler = new PriorityTaskScheduler(drains::add, () -> now, MAX_WAIT_MILLIS);
+
+	private void submit(TrafficClass trafficClass, int count) {
+		for (int i = 0; i < count; i++) {
+			String label = trafficClass.name().charAt(0) + String.valueOf(i);
+			scheduler.execute(trafficClass, () -> ran.add(label));
+		}
+	}
+
+	private String pollAndRun(int count) {
+		StringBuilder order = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			Runnable task = scheduler.poll();
+			if (task == null) {
+				break;
+			}
+			task.run();
+			order.append(ran.get(ran.size() - 1).charAt(0));
+		}
+		return order.toString();
+	}
+
+	@Test
+	public void classesShareTheWorkerByWeight() {
+		submit(TrafficClass.BULK, 20);
+		submit(TrafficClass.INTERACTIVE, 20);
+		submit(TrafficClass.CONTROL, 20);
+
+		assertEquals("First round should follow the weights, higher classes first",
+				"CCCCCCCCIIIIB", pollAndRun(13));
+		assertEquals("Second round should be alike", "CCCCCCCCIIIIB", pollAndRun(13));
+	}
+
+	@Test
+	public void bulkIsServedOnceOthersAreIdle() {
+		submit(TrafficClass.BULK, 3);
+		submit(TrafficClass.CONTROL, 1);
+
+		assertEquals("Idle classes shouldn't hold back bulk traffic", "CBBB", pollAndRun(10));
+		assertNull("Queues should be empty", scheduler.poll());
+	}
+
+	@Test
+	public void tasksOfSameClassKeepTheirOrder() {
+		submit(TrafficClass.INTERACTIVE, 6);
+		pollAndRun(6);
+		assertEquals("FIFO order within a class", List.of("I0", "I1", "I2", "I3", "I4", "I5"), ran);
+	}
+
+	@Test
+	public void overdueTaskBypassesTheWeights() {
+		submit(TrafficClass.BULK, 2);
+		now = MAX_WAIT_MILLIS;
+		submit(TrafficClass.CONTROL, 4);
+
+		assertEquals("Bulk tasks waiting too long should run first, then the weighted order resumes",
+				"BBCCCC", pollAndRun(6));
+	}
+
+	@Test
+	public void drainLoopRunsEverythingOnTheWorker() {
+		submit(TrafficClass.BULK, 1);
+		submit(TrafficClass.CONTROL, 2);
+		assertEquals("A single drain loop should be submitted", 1, drains.size());
+
+		drains.get(0).run();
+		assertEquals("Drain loop should run the tasks by priority", List.of("C0", "C1", "B0"), ran);
+
+		submit(TrafficClass.INTERACTIVE, 1);
+		assertEquals("An idle scheduler should submit a new drain loop", 2, drains.size());
+		scheduler.shutdown();
+		drains.get(1).run();
+		assertEquals("Shutdown should drop the pending tasks", 3, ran.size());
+		submit(TrafficClass.CONTROL, 1);
+		assertEquals("Tasks after shutdown are ignored", 0, scheduler.getPendingCount(TrafficClass.CONTROL));
+		assertEquals("Dropped and ignored tasks are counted", 2, scheduler.getDroppedCount());
+	}
+
+	@Test
+	public void failingTaskIsReportedAndTheNextOnesRun() {
+		List<RuntimeException> failures = new ArrayList<>();
+		scheduler.setFailureListener(failures::add);
+		scheduler.execute(TrafficClass.CONTROL, () -> {
+			throw new IllegalStateException("Task failure");
+		});
+		submit(TrafficClass.CONTROL, 1);
+
+		drains.get(0).run();
+		assertEquals("The failure should be reported", 1, failures.size());
+		assertEquals("The next task should run", List.of("C0"), ran);
+	}
+}
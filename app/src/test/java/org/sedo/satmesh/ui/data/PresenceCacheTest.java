@@ -0,0 +1,98 @@
+package org.sedo.satmesh.ui.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.sedo.satmesh.model.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+@RunWith(RobolectricTestRunner.class)
+@org.robolectric.annotation.Config(sdk = {Build.VERSION_CODES.UPSIDE_DOWN_CAKE})
+public class PresenceCacheTest {
+
+	private static final String ADDRESS = "node-1";
+	private long now = 1_000_000L;
+	private boolean failing;
+	private final List<Map<String, Long>> batches = new ArrayList<>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	// Never started: the test drives the flushes
+	private final PresenceCache cache = new PresenceCache(scheduler, () -> now, lastSeen -> {
+		if (failing) {
+			throw new IllegalStateException("Database unavailable");
+		}
+		batches.add(lastSeen);
+	}, PresenceCache.DEFAULT_FLUSH_INTERVAL_MS);
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	private static Node node(String addressName, Long lastSeen) {
+		Node node = new Node();
+		node.setAddressName(addressName);
+		node.setLastSeen(lastSeen);
+		return node;
+	}
+
+	@Test
+	public void updatesAreCoalescedInOneBatch() {
+		for (int i = 0; i < 1_000; i++) {
+			now += 10L;
+			cache.touch(ADDRESS);
+			cache.touch("node-" + (i % 3 + 2));
+		}
+		assertTrue(cache.hasPending());
+		assertEquals("One write per node", 4, cache.flushNow());
+		assertEquals("A single batch", 1, batches.size());
+		assertEquals("The freshest timestamp is written", Long.valueOf(now), batches.get(0).get(ADDRESS));
+		assertFalse(cache.hasPending());
+		assertEquals("Nothing left to write", 0, cache.flushNow());
+
+		cache.touch(ADDRESS, now - 5_000L);
+		assertFalse("An older timestamp is ignored", cache.hasPending());
+	}
+
+	@Test
+	public void readersSeeTheFreshestValue() {
+		Node stored = node(ADDRESS, now - 60_000L);
+		assertSame("Nothing cached, the row is served", stored, cache.overlay(stored));
+		cache.touch(ADDRESS);
+		assertEquals(Long.valueOf(now), cache.getLastSeen(stored));
+		Node fresh = cache.overlay(stored);
+		assertNotSame("The row isn't modified", stored, fresh);
+		assertEquals(Long.valueOf(now), fresh.getLastSeen());
+		assertEquals(Long.valueOf(now - 60_000L), stored.getLastSeen());
+
+		Node rewritten = node(ADDRESS, now + 1_000L);
+		assertEquals("A fresher row wins", Long.valueOf(now + 1_000L), cache.getLastSeen(rewritten));
+		assertEquals(Long.valueOf(now), cache.getLastSeen(node(ADDRESS, null)));
+		assertNull(cache.getLastSeen(node("unknown", null)));
+	}
+
+	@Test
+	public void failedFlushesAreRetried() {
+		cache.touch(ADDRESS);
+		failing = true;
+		assertEquals(0, cache.flushNow());
+		assertTrue("The timestamps stay pending", cache.hasPending());
+		failing = false;
+		assertEquals(1, cache.flushNow());
+		assertEquals(Long.valueOf(now), batches.get(0).get(ADDRESS));
+	}
+}